@@ -41,12 +41,11 @@ public class BytesDeserializer extends JsonDeserializer<Bytes> {
     }
 
     /*
-     * Jackson does not seem to honor the call below, somehow...
-     * final byte[] data = parser.getBinaryValue(Base64Variants.MIME_NO_LINEFEEDS);
-     * Manually read a string and dencode base64
+     * Decode base64 straight from the parser's character buffers, with no
+     * intermediate String (this also handles embedded binary values).
      */
     protected static final byte[] deserializeBytes(JsonParser parser, Base64Variant variant)
     throws IOException {
-        return variant.decode(parser.getText());
+        return parser.getBinaryValue(variant);
     }
 }
@@ -28,9 +28,11 @@ import org.usrz.jose.jwk.JWKKeyOperation;
 import org.usrz.jose.jwk.JWKKeyType;
 import org.usrz.jose.jwk.JWKPublicKeyUse;
 import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.jws.JWS;
 import org.usrz.jose.jws.JWSAlgorithm;
 import org.usrz.jose.shared.Bytes;
 import org.usrz.jose.shared.JOSEAlgorithm;
+import org.usrz.jose.shared.Secret;
 
 import com.fasterxml.jackson.databind.module.SimpleDeserializers;
 
@@ -39,11 +41,13 @@ public class JOSEDeserializers extends SimpleDeserializers {
     public JOSEDeserializers() {
         addDeserializer(Bytes.class, new BytesDeserializer());
         addDeserializer(BigInteger.class, new BigIntegerDeserializer());
+        addDeserializer(Secret.class, new SecretDeserializer());
         addDeserializer(MediaType.class, new MediaTypeDeserializer());
         addDeserializer(X509Certificate.class, new X509CertificateDeserializer());
 
         addDeserializer(JOSEAlgorithm.class,   new JOSEAlgorithmDeserializer());
         addDeserializer(JWK.class,             new JWKDeserializer());
+        addDeserializer(JWS.class,             new JWSDeserializer());
 
         addDeserializer(ECCurve.class,         new JOSEIdentifierDeserializer<ECCurve        >(ECCurve.class));
         addDeserializer(JWECompression.class,  new JOSEIdentifierDeserializer<JWECompression >(JWECompression.class));
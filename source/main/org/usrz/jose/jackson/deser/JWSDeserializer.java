@@ -0,0 +1,153 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jackson.deser;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.usrz.jose.jws.JWS.PAYLOAD;
+import static org.usrz.jose.jws.JWS.SIGNATURES;
+import static org.usrz.jose.jws.JWSSignature.PROTECTED_HEADER;
+import static org.usrz.jose.jws.JWSSignature.SIGNATURE;
+import static org.usrz.jose.jws.JWSSignature.UNPROTECTED_HEADER;
+
+import java.io.IOException;
+
+import org.usrz.jose.jws.JWS;
+import org.usrz.jose.jws.JWSHeader;
+import org.usrz.jose.jws.JWSSignature;
+import org.usrz.jose.shared.Base64URL;
+import org.usrz.jose.shared.Bytes;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Deserialize {@link JWS} instances from both the <i>general</i> and the
+ * <i>flattened</i> syntaxes of the <i>JWS JSON Serialization</i>.
+ *
+ * <p>The encoded payload and protected headers are kept in the resulting
+ * objects, so that signatures can be verified over the exact bytes that
+ * were signed.</p>
+ *
+ * <p>Unencoded payloads (RFC 7797) are read as UTF-8 strings, while a missing
+ * payload is considered <i>detached</i> and left {@code null}.</p>
+ */
+public class JWSDeserializer extends JsonDeserializer<JWS> {
+
+    @Override
+    public JWS deserialize(JsonParser parser, DeserializationContext context)
+    throws IOException, JsonProcessingException {
+
+        final ObjectCodec codec = parser.getCodec();
+        final JsonNode node = parser.readValueAsTree();
+        if (!node.isObject()) throw new JsonMappingException("JWS must be a JSON object");
+
+        final JWS.Builder builder = new JWS.Builder();
+
+        final JsonNode signatures = node.get(SIGNATURES);
+        if (signatures == null) {
+            /* Flattened syntax, signature fields are at the top level */
+            builder.addSignature(signature(node, codec));
+        } else if (signatures.isArray()) {
+            for (JsonNode signature: signatures) {
+                if (!signature.isObject()) throw new JsonMappingException("JWS signature must be a JSON object");
+                builder.addSignature(signature(signature, codec));
+            }
+        } else {
+            throw new JsonMappingException("JWS \"" + SIGNATURES + "\" must be a JSON array");
+        }
+
+        /*
+         * Absent payloads are detached, unencoded ones (RFC 7797) are UTF-8:
+         * build once just to ask our signatures, builders can be reused...
+         */
+        final JsonNode payload = node.get(PAYLOAD);
+        if (payload != null) {
+            if (encoded(builder.build())) {
+                final byte[] ascii = ascii(payload, PAYLOAD);
+                builder.setPayload(new Bytes(decode(ascii, PAYLOAD)));
+                builder.setEncodedPayload(new Bytes(ascii));
+            } else {
+                if (!payload.isTextual()) throw new JsonMappingException("JWS \"" + PAYLOAD + "\" must be a string");
+                final Bytes bytes = new Bytes(payload.textValue().getBytes(UTF_8));
+                builder.setPayload(bytes);
+                builder.setEncodedPayload(bytes);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /* ====================================================================== */
+
+    private static JWSSignature signature(JsonNode node, ObjectCodec codec)
+    throws IOException {
+        final JWSSignature.Builder builder = new JWSSignature.Builder();
+
+        final JsonNode header = node.get(PROTECTED_HEADER);
+        if (header != null) {
+            final byte[] ascii = ascii(header, PROTECTED_HEADER);
+            final JsonParser json = codec.getFactory().createParser(decode(ascii, PROTECTED_HEADER));
+            try {
+                builder.setHeader(codec.readValue(json, JWSHeader.class));
+            } finally {
+                json.close();
+            }
+            builder.setEncodedHeader(new Bytes(ascii));
+        }
+
+        final JsonNode unprotectedHeader = node.get(UNPROTECTED_HEADER);
+        if (unprotectedHeader != null) {
+            builder.setUnprotectedHeader(codec.treeToValue(unprotectedHeader, JWSHeader.class));
+        }
+
+        final JsonNode signature = node.get(SIGNATURE);
+        if (signature != null) {
+            builder.setSignature(new Bytes(decode(ascii(signature, SIGNATURE), SIGNATURE)));
+        }
+
+        return builder.build();
+    }
+
+    private static boolean encoded(JWS jws)
+    throws JsonMappingException {
+        try {
+            return jws.isPayloadEncoded();
+        } catch (IllegalArgumentException exception) {
+            throw new JsonMappingException("Invalid JWS protected header", exception);
+        }
+    }
+
+    private static byte[] ascii(JsonNode node, String name)
+    throws JsonMappingException {
+        if (!node.isTextual()) throw new JsonMappingException("JWS \"" + name + "\" must be a string");
+        return node.textValue().getBytes(US_ASCII);
+    }
+
+    private static byte[] decode(byte[] ascii, String name)
+    throws JsonMappingException {
+        try {
+            return Base64URL.decode(ascii, 0, ascii.length);
+        } catch (IllegalArgumentException exception) {
+            throw new JsonMappingException("Invalid base64url in JWS \"" + name + "\"", exception);
+        }
+    }
+}
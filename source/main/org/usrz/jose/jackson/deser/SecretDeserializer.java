@@ -0,0 +1,49 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jackson.deser;
+
+import static com.fasterxml.jackson.core.Base64Variants.MODIFIED_FOR_URL;
+import static org.usrz.jose.jackson.deser.BytesDeserializer.deserializeBytes;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.usrz.jose.shared.Secret;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+public class SecretDeserializer extends JsonDeserializer<Secret> {
+
+    @Override
+    public Secret deserialize(JsonParser parser, DeserializationContext context)
+    throws IOException, JsonProcessingException {
+        final byte[] data = deserializeBytes(parser, MODIFIED_FOR_URL);
+        try {
+            return new Secret(data);
+        } finally {
+            Arrays.fill(data, (byte) 0);
+        }
+    }
+
+    @Override
+    public Class<Secret> handledType() {
+        return Secret.class;
+    }
+
+}
@@ -35,7 +35,11 @@ extends JsonSerializer<Bytes> {
                           JsonGenerator generator,
                           SerializerProvider provider)
     throws IOException, JsonProcessingException {
-        serializeBytes(value.getBytes(), generator, MODIFIED_FOR_URL);
+        if (generator.canWriteBinaryNatively()) {
+            serializeBytes(value.getBytes(), generator, MODIFIED_FOR_URL);
+        } else {
+            generator.writeBinary(MODIFIED_FOR_URL, value.asInputStream(), value.length());
+        }
     }
 
     @Override
@@ -44,15 +48,20 @@ extends JsonSerializer<Bytes> {
     }
 
     /*
-     * Jackson does not seem to honor the call below, somehow...
-     * generator.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, encoded, 0, encoded.length);
-     * Manually encode base64 and write as string!
+     * Text generators encode base64 straight into their output buffers, with
+     * no intermediate String. Generators writing binary natively (such as the
+     * TokenBuffer behind "valueToTree(...)") would keep a raw byte[] around,
+     * while JOSE always wants base64 strings: encode manually for them.
      */
     protected static final void serializeBytes(byte[] value,
                                                JsonGenerator generator,
                                                Base64Variant variant)
     throws IOException {
-        generator.writeString(variant.encode(value));
+        if (generator.canWriteBinaryNatively()) {
+            generator.writeString(variant.encode(value));
+        } else {
+            generator.writeBinary(variant, value, 0, value.length);
+        }
     }
 
 }
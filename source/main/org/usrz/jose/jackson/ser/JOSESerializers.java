@@ -20,8 +20,10 @@ import java.security.cert.X509Certificate;
 
 import javax.ws.rs.core.MediaType;
 
+import org.usrz.jose.jws.JWS;
 import org.usrz.jose.shared.Bytes;
 import org.usrz.jose.shared.JOSEIdentifier;
+import org.usrz.jose.shared.Secret;
 
 import com.fasterxml.jackson.databind.module.SimpleSerializers;
 
@@ -30,9 +32,11 @@ public class JOSESerializers extends SimpleSerializers {
     public JOSESerializers() {
         addSerializer(Bytes.class, new BytesSerializer());
         addSerializer(BigInteger.class, new BigIntegerSerializer());
+        addSerializer(Secret.class, new SecretSerializer());
         addSerializer(JOSEIdentifier.class, new JOSEIdentifierSerializer());
         addSerializer(MediaType.class, new MediaTypeSerializer());
         addSerializer(X509Certificate.class, new X509CertificateSerializer());
+        addSerializer(JWS.class, new JWSSerializer());
     }
 
 }
@@ -0,0 +1,127 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jackson.ser;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.usrz.jose.jws.JWS.PAYLOAD;
+import static org.usrz.jose.jws.JWS.SIGNATURES;
+import static org.usrz.jose.jws.JWSSignature.PROTECTED_HEADER;
+import static org.usrz.jose.jws.JWSSignature.SIGNATURE;
+import static org.usrz.jose.jws.JWSSignature.UNPROTECTED_HEADER;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.usrz.jose.jackson.JOSEObjectMapper;
+import org.usrz.jose.jws.JWS;
+import org.usrz.jose.jws.JWSCompactSerialization;
+import org.usrz.jose.jws.JWSSignature;
+import org.usrz.jose.shared.Bytes;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Serialize {@link JWS} instances in their <i>JWS JSON Serialization</i>:
+ * the <i>flattened</i> syntax is used when a single signature is present,
+ * while the <i>general</i> syntax is used otherwise.
+ *
+ * <p>Unencoded payloads (RFC 7797) are written as UTF-8 strings, while
+ * <i>detached</i> ones (a {@code null} payload) are omitted.</p>
+ */
+public class JWSSerializer
+extends JsonSerializer<JWS> {
+
+    @Override
+    public void serialize(JWS value,
+                          JsonGenerator generator,
+                          SerializerProvider provider)
+    throws IOException, JsonProcessingException {
+        final JWSCompactSerialization serialization = serialization(generator);
+        final List<JWSSignature> signatures = value.getSignatures();
+
+        generator.writeStartObject();
+        if ((value.getPayload() != null) || (value.getEncodedPayload() != null)) {
+            try {
+                final Bytes payload = serialization.encodedPayload(value);
+                generator.writeStringField(PAYLOAD, new String(payload.getBytes(), value.isPayloadEncoded() ? US_ASCII : UTF_8));
+            } catch (IllegalArgumentException exception) {
+                throw new JsonMappingException("Unable to serialize JWS payload", exception);
+            }
+        }
+        if (signatures.size() == 1) {
+            writeSignature(signatures.get(0), serialization, generator, provider);
+        } else {
+            generator.writeArrayFieldStart(SIGNATURES);
+            for (JWSSignature signature: signatures) {
+                generator.writeStartObject();
+                writeSignature(signature, serialization, generator, provider);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public Class<JWS> handledType() {
+        return JWS.class;
+    }
+
+    /* ====================================================================== */
+
+    /* Write the fields of a signature in the currently open object */
+    private static void writeSignature(JWSSignature signature,
+                                       JWSCompactSerialization serialization,
+                                       JsonGenerator generator,
+                                       SerializerProvider provider)
+    throws IOException {
+        try {
+            if ((signature.getEncodedHeader() != null) || (signature.getHeader() != null)) {
+                writeAscii(PROTECTED_HEADER, serialization.encodedHeader(signature), generator);
+            }
+        } catch (IllegalArgumentException exception) {
+            throw new JsonMappingException("Unable to serialize JWS protected header", exception);
+        }
+
+        if (signature.getUnprotectedHeader() != null) {
+            provider.defaultSerializeField(UNPROTECTED_HEADER, signature.getUnprotectedHeader(), generator);
+        }
+        if (signature.getSignature() != null) {
+            provider.defaultSerializeField(SIGNATURE, signature.getSignature(), generator);
+        }
+    }
+
+    /* Encoded headers are already base64url, never re-encode */
+    private static void writeAscii(String name, Bytes ascii, JsonGenerator generator)
+    throws IOException {
+        generator.writeStringField(name, new String(ascii.getBytes(), US_ASCII));
+    }
+
+    /* Protected headers must be written with the mapper serializing us */
+    private static JWSCompactSerialization serialization(JsonGenerator generator) {
+        final ObjectCodec codec = generator.getCodec();
+        return codec instanceof ObjectMapper ?
+                new JWSCompactSerialization((ObjectMapper) codec) :
+                new JWSCompactSerialization(JOSEObjectMapper.MAPPER);
+    }
+}
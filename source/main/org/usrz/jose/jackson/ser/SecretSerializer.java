@@ -0,0 +1,51 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jackson.ser;
+
+import static com.fasterxml.jackson.core.Base64Variants.MODIFIED_FOR_URL;
+import static org.usrz.jose.jackson.ser.BytesSerializer.serializeBytes;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.usrz.jose.shared.Secret;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+public class SecretSerializer extends JsonSerializer<Secret> {
+
+    @Override
+    public void serialize(Secret value,
+                          JsonGenerator generator,
+                          SerializerProvider provider)
+    throws IOException, JsonProcessingException {
+        final byte[] bytes = value.getBytes();
+        try {
+            serializeBytes(bytes, generator, MODIFIED_FOR_URL);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    @Override
+    public Class<Secret> handledType() {
+        return Secret.class;
+    }
+
+}
@@ -15,21 +15,143 @@
  * ========================================================================== */
 package org.usrz.jose.jwe;
 
+import lombok.Data;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
 import org.usrz.jose.shared.Bytes;
 import org.usrz.jose.shared.JOSE;
+import org.usrz.jose.shared.JOSEBuilder;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
 /**
  * A JSON Web Encryption ({@link JWE}) represents encrypted content using
  * JavaScript Object Notation (JSON) based data structures.
  */
+@JsonDeserialize(builder=JWE.Builder.class)
 public interface JWE extends JOSE<JWEHeader> {
 
+    /** The {@code encrypted_key} field name. */
+    public static final String ENCRYPTED_KEY = "encrypted_key";
+
+    /** The {@code iv} field name. */
+    public static final String INITIALIZATION_VECTOR = "iv";
+
+    /** The {@code ciphertext} field name. */
+    public static final String CIPHER_TEXT = "ciphertext";
+
+    /** The {@code tag} field name. */
+    public static final String AUTHENTICATION_TAG = "tag";
+
+    /**
+     * Return the encrypted Content Encryption Key (CEK), empty when the key
+     * is directly agreed upon or shared.
+     */
+    @JsonProperty(ENCRYPTED_KEY)
     public Bytes getEncryptedKey();
 
+    /**
+     * Return the Initialization Vector used when encrypting the plaintext.
+     */
+    @JsonProperty(INITIALIZATION_VECTOR)
     public Bytes getInitializationVector();
 
+    /**
+     * Return the encrypted content.
+     */
+    @JsonProperty(CIPHER_TEXT)
     public Bytes getCipherText();
 
+    /**
+     * Return the Authentication Tag resulting from the encryption.
+     */
+    @JsonProperty(AUTHENTICATION_TAG)
     public Bytes getAuthenticationTag();
 
+    /**
+     * Return the ASCII bytes of the encoded protected header, the
+     * <i>Additional Authenticated Data</i> of the encryption, if this instance
+     * was parsed from its compact serialization, or {@code null}.
+     *
+     * @see JWECompactSerialization
+     */
+    @JsonIgnore
+    public Bytes getAdditionalAuthenticatedData();
+
+    /* ====================================================================== */
+
+    /** A builder of immutable {@link JWE} instances. */
+    @Accessors(chain=true)
+    @JsonPOJOBuilder(withPrefix="set")
+    public static final class Builder
+    extends JOSEBuilder<JWE> {
+
+        private static final Maker<JWE> MAKER = maker(Builder.class, Impl.class);
+
+        public Builder() {
+            super(MAKER);
+        }
+
+        /* ================================================================== */
+
+        /** The {@link JWE} header */
+        @Setter(onMethod=@__({@JsonProperty(PROTECTED_HEADER)}))
+        private JWEHeader header;
+
+        /** The encrypted Content Encryption Key */
+        @Setter(onMethod=@__({@JsonProperty(ENCRYPTED_KEY)}))
+        private Bytes encryptedKey;
+
+        /** The Initialization Vector */
+        @Setter(onMethod=@__({@JsonProperty(INITIALIZATION_VECTOR)}))
+        private Bytes initializationVector;
+
+        /** The encrypted content */
+        @Setter(onMethod=@__({@JsonProperty(CIPHER_TEXT)}))
+        private Bytes cipherText;
+
+        /** The Authentication Tag */
+        @Setter(onMethod=@__({@JsonProperty(AUTHENTICATION_TAG)}))
+        private Bytes authenticationTag;
+
+        /** The ASCII bytes of the encoded protected header */
+        @Setter(onMethod=@__({@JsonIgnore}))
+        private Bytes additionalAuthenticatedData;
+
+        /* ================================================================== */
+
+        @Override
+        public JWE build() {
+            return super.build();
+        }
+
+        @Override
+        public Builder reset() {
+            header = null;
+            encryptedKey = null;
+            initializationVector = null;
+            cipherText = null;
+            authenticationTag = null;
+            additionalAuthenticatedData = null;
+            return this;
+        }
+
+        /* ================================================================== */
+
+        @Data
+        private static final class Impl implements JWE {
+
+            private final JWEHeader header;
+            private final Bytes encryptedKey;
+            private final Bytes initializationVector;
+            private final Bytes cipherText;
+            private final Bytes authenticationTag;
+            private final Bytes additionalAuthenticatedData;
+
+        }
+    }
 }
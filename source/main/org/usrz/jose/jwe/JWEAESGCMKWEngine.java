@@ -0,0 +1,136 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.oct.OctetSequenceJWK;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.KeyedPool;
+
+/**
+ * A {@link JWEKeyManagementEngine} for the AES GCM key wrapping
+ * {@link JWEAlgorithm}s.
+ *
+ * <p>Every key is encrypted with a new initialization vector, therefore
+ * pooled {@link Cipher}s must be initialized for each operation: they are
+ * still pooled by {@link Key}, as providers can (and SunJCE does) skip the
+ * AES key expansion when re-initialized with the key they already hold.</p>
+ */
+final class JWEAESGCMKWEngine extends JWEKeyManagementEngine {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+
+    private final int keyLength;
+    private final KeyedPool<Key, Cipher> pool;
+
+    JWEAESGCMKWEngine(JWEAlgorithm algorithm, int keyLength) {
+        super(algorithm);
+        this.keyLength = keyLength;
+        pool = new KeyedPool<>((key) -> create());
+    }
+
+    private Cipher create()
+    throws GeneralSecurityException {
+        return Cipher.getInstance(TRANSFORMATION);
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public SecretKey encrypt(JWK<?> jwk, JWEEncryption encryption, JWEHeader.Builder header, JWE.Builder builder)
+    throws GeneralSecurityException {
+        final Key key = key(jwk);
+        final SecretKey contentKey = contentKey(encryption);
+
+        final byte[] iv = new byte[IV_LENGTH];
+        JWEEncryptionEngine.RANDOM.nextBytes(iv);
+
+        /* Encrypted key and tag come out together, just slice them */
+        final byte[] encoded = contentKey.getEncoded();
+        final byte[] output = new byte[encoded.length + TAG_LENGTH];
+        try {
+            final KeyedPool.Entry<Key, Cipher> entry = pool.acquire(key);
+            entry.get().init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+            entry.get().doFinal(encoded, 0, encoded.length, output, 0);
+            pool.release(entry);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+
+        final Bytes encrypted = new Bytes(output);
+        builder.setEncryptedKey(encrypted.slice(0, encoded.length));
+        header(header, encryption);
+        header.setInitializationVector(new Bytes(iv));
+        header.setAuthenticationTag(encrypted.slice(encoded.length, TAG_LENGTH));
+        return contentKey;
+    }
+
+    @Override
+    public SecretKey decrypt(JWK<?> jwk, JWEHeader header, Bytes encryptedKey)
+    throws GeneralSecurityException {
+        final Key key = key(jwk);
+
+        final Bytes initializationVector = header.getInitializationVector();
+        final Bytes authenticationTag = header.getAuthenticationTag();
+        final int contentKeyLength = contentKeyLength(header);
+
+        if ((initializationVector == null) || (initializationVector.length() != IV_LENGTH)) {
+            throw new AEADBadTagException("Invalid initialization vector for " + getAlgorithm().joseName());
+        } else if ((authenticationTag == null) || (authenticationTag.length() != TAG_LENGTH)) {
+            throw new AEADBadTagException("Invalid authentication tag for " + getAlgorithm().joseName());
+        } else if ((encryptedKey == null) || (encryptedKey.length() != contentKeyLength)) {
+            throw new InvalidKeyException("Invalid encrypted key length for " + getAlgorithm().joseName());
+        }
+
+        final byte[] decrypted = new byte[contentKeyLength];
+        try {
+            final KeyedPool.Entry<Key, Cipher> entry = pool.acquire(key);
+            entry.get().init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, initializationVector.getBytes()));
+
+            /* GCM buffers everything until the tag is verified */
+            final int length = encryptedKey.update(entry.get(), decrypted, 0);
+            authenticationTag.doFinal(entry.get(), decrypted, length);
+            pool.release(entry);
+
+            return new SecretKeySpec(decrypted, "AES");
+        } finally {
+            Arrays.fill(decrypted, (byte) 0);
+        }
+    }
+
+    /* Check the JWK and return its (cached) key */
+    private Key key(JWK<?> jwk)
+    throws GeneralSecurityException {
+        final OctetSequenceJWK oct = checkKey(jwk, OctetSequenceJWK.class);
+        if (oct.getKeyValue().length() != keyLength) {
+            throw new InvalidKeyException("Key length " + oct.getKeyValue().length() + " not supported by " + getAlgorithm().joseName());
+        }
+        return oct.toKey();
+    }
+}
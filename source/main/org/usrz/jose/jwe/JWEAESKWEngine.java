@@ -0,0 +1,183 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.oct.OctetSequenceJWK;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.KeyedPool;
+import org.usrz.jose.shared.Pool;
+
+/**
+ * A {@link JWEKeyManagementEngine} for the AES Key Wrap {@link JWEAlgorithm}s
+ * (RFC 3394, with the default initial value).
+ *
+ * <p>AES key wrapping needs no parameter other than the key: pooled
+ * {@link Cipher}s are initialized only once (one pool for wrapping, one for
+ * unwrapping) and go back to that state after each operation.</p>
+ *
+ * <p>Keys used for a single message (derived by key agreement) would only
+ * churn those pools: they are wrapped and unwrapped {@linkplain
+ * #wrapOnce(Key, SecretKey) once} by ciphers pooled with no key.</p>
+ */
+final class JWEAESKWEngine extends JWEKeyManagementEngine {
+
+    private static final String TRANSFORMATION = "AESWrap";
+
+    private final int keyLength;
+    private final KeyedPool<Key, Cipher> wrappers;
+    private final KeyedPool<Key, Cipher> unwrappers;
+    private final Pool<Cipher> ciphers;
+
+    JWEAESKWEngine(JWEAlgorithm algorithm, int keyLength) {
+        super(algorithm);
+        this.keyLength = keyLength;
+        wrappers = new KeyedPool<>((key) -> create(Cipher.WRAP_MODE, key));
+        unwrappers = new KeyedPool<>((key) -> create(Cipher.UNWRAP_MODE, key));
+        ciphers = new Pool<>(this::create);
+    }
+
+    private Cipher create(int mode, Key key)
+    throws GeneralSecurityException {
+        final Cipher cipher = create();
+        cipher.init(mode, key);
+        return cipher;
+    }
+
+    private Cipher create()
+    throws GeneralSecurityException {
+        return Cipher.getInstance(TRANSFORMATION);
+    }
+
+    /**
+     * Return the length (in bytes) of the AES key used by this engine.
+     */
+    int getKeyLength() {
+        return keyLength;
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public SecretKey encrypt(JWK<?> jwk, JWEEncryption encryption, JWEHeader.Builder header, JWE.Builder builder)
+    throws GeneralSecurityException {
+        final Key key = key(jwk);
+        final SecretKey contentKey = contentKey(encryption);
+        builder.setEncryptedKey(new Bytes(wrap(key, contentKey)));
+        header(header, encryption);
+        return contentKey;
+    }
+
+    @Override
+    public SecretKey decrypt(JWK<?> jwk, JWEHeader header, Bytes encryptedKey)
+    throws GeneralSecurityException {
+        return unwrap(key(jwk), encryptedKey, contentKeyLength(header));
+    }
+
+    /* Check the JWK and return its (cached) key */
+    private Key key(JWK<?> jwk)
+    throws GeneralSecurityException {
+        final OctetSequenceJWK oct = checkKey(jwk, OctetSequenceJWK.class);
+        if (oct.getKeyValue().length() != keyLength) {
+            throw new InvalidKeyException("Key length " + oct.getKeyValue().length() + " not supported by " + getAlgorithm().joseName());
+        }
+        return oct.toKey();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Wrap a <i>Content Encryption Key</i> with the specified AES key.
+     */
+    byte[] wrap(Key key, SecretKey contentKey)
+    throws GeneralSecurityException {
+        final KeyedPool.Entry<Key, Cipher> entry = wrappers.acquire(key);
+        final byte[] wrapped = entry.get().wrap(contentKey);
+        wrappers.release(entry);
+        return wrapped;
+    }
+
+    /**
+     * Unwrap a <i>Content Encryption Key</i> of the specified length with
+     * the specified AES key.
+     */
+    SecretKey unwrap(Key key, Bytes encryptedKey, int contentKeyLength)
+    throws GeneralSecurityException {
+        checkLength(encryptedKey, contentKeyLength);
+
+        final KeyedPool.Entry<Key, Cipher> entry = unwrappers.acquire(key);
+        final SecretKey contentKey = (SecretKey) entry.get().unwrap(encryptedKey.getBytes(), "AES", Cipher.SECRET_KEY);
+        unwrappers.release(entry);
+
+        return checkLength(contentKey, contentKeyLength);
+    }
+
+    /**
+     * Wrap a <i>Content Encryption Key</i> with an AES key used only once.
+     */
+    byte[] wrapOnce(Key key, SecretKey contentKey)
+    throws GeneralSecurityException {
+        final Cipher cipher = ciphers.acquire();
+        cipher.init(Cipher.WRAP_MODE, key);
+        final byte[] wrapped = cipher.wrap(contentKey);
+        ciphers.release(cipher);
+        return wrapped;
+    }
+
+    /**
+     * Unwrap a <i>Content Encryption Key</i> of the specified length with
+     * an AES key used only once.
+     */
+    SecretKey unwrapOnce(Key key, Bytes encryptedKey, int contentKeyLength)
+    throws GeneralSecurityException {
+        checkLength(encryptedKey, contentKeyLength);
+
+        final Cipher cipher = ciphers.acquire();
+        cipher.init(Cipher.UNWRAP_MODE, key);
+        final SecretKey contentKey = (SecretKey) cipher.unwrap(encryptedKey.getBytes(), "AES", Cipher.SECRET_KEY);
+        ciphers.release(cipher);
+
+        return checkLength(contentKey, contentKeyLength);
+    }
+
+    /* ====================================================================== */
+
+    private void checkLength(Bytes encryptedKey, int contentKeyLength)
+    throws InvalidKeyException {
+        if ((encryptedKey == null) || (encryptedKey.length() != contentKeyLength + 8)) {
+            throw new InvalidKeyException("Invalid encrypted key length for " + getAlgorithm().joseName());
+        }
+    }
+
+    private SecretKey checkLength(SecretKey contentKey, int contentKeyLength)
+    throws InvalidKeyException {
+        final byte[] encoded = contentKey.getEncoded();
+        try {
+            if (encoded.length == contentKeyLength) return contentKey;
+            throw new InvalidKeyException("Invalid content encryption key length " + encoded.length);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+}
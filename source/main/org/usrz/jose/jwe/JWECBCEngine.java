@@ -0,0 +1,220 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.KeyedPool;
+
+/**
+ * A {@link JWEEncryptionEngine} for the AES CBC with HMAC SHA-2 composite
+ * {@link JWEEncryption}s.
+ *
+ * <p>Each <i>Content Encryption Key</i> is split in its MAC and encryption
+ * halves only once: pooled {@link Mac}s are kept initialized with the
+ * former, along with a {@link Cipher} and the latter.</p>
+ *
+ * <p>Data is processed in a single pass, chunk by chunk: each chunk of
+ * cipher text is fed to the {@link Mac} right after being produced (when
+ * encrypting) or right before being decrypted (when decrypting), with no
+ * concatenated buffer ever built for the authentication tag.</p>
+ *
+ * <p>Entries go back to the pool even when a message fails to decrypt (or
+ * any exception is thrown): their {@link Mac} is reset, and their
+ * {@link Cipher} is initialized again for the next message, so forged
+ * messages never force the creation of new ones.</p>
+ */
+final class JWECBCEngine extends JWEEncryptionEngine {
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+    private static final int IV_LENGTH = 16;
+    private static final int BLOCK_SIZE = 16;
+    private static final int CHUNK_SIZE = 16384;
+
+    private final String macAlgorithm;
+    private final int tagLength;
+    private final KeyedPool<Key, Entry> pool;
+
+    JWECBCEngine(JWEEncryption encryption, String macAlgorithm, int keyLength) {
+        super(encryption, keyLength);
+        this.macAlgorithm = macAlgorithm;
+        tagLength = keyLength / 2;
+        pool = new KeyedPool<>(this::create);
+    }
+
+    /* Split the key only once, for both the Mac and the Cipher */
+    private Entry create(Key key)
+    throws GeneralSecurityException {
+        checkKey(key);
+
+        final int half = getKeyLength() / 2;
+        final byte[] encoded = key.getEncoded();
+        try {
+            final Mac mac = Mac.getInstance(macAlgorithm);
+            mac.init(new SecretKeySpec(encoded, 0, half, macAlgorithm));
+
+            return new Entry(mac, Cipher.getInstance(TRANSFORMATION), new SecretKeySpec(encoded, half, half, "AES"));
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public JWE.Builder encrypt(Key key, Bytes aad, Bytes plainText, JWE.Builder builder)
+    throws GeneralSecurityException {
+        if (key == null) throw new NullPointerException("Null key");
+
+        final byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        /* Cipher text (always padded) and tag in the same array */
+        final int length = (plainText.length() / BLOCK_SIZE + 1) * BLOCK_SIZE;
+        final byte[] output = new byte[length + tagLength];
+
+        final KeyedPool.Entry<Key, Entry> pooled = pool.acquire(key);
+        final Entry entry = pooled.get();
+        try {
+            entry.cipher.init(Cipher.ENCRYPT_MODE, entry.key, new IvParameterSpec(iv));
+            aad.update(entry.mac);
+            entry.mac.update(iv);
+
+            int position = 0;
+            for (int offset = 0; offset < plainText.length(); offset += CHUNK_SIZE) {
+                final Bytes chunk = plainText.slice(offset, Math.min(CHUNK_SIZE, plainText.length() - offset));
+                final int written = chunk.update(entry.cipher, output, position);
+                entry.mac.update(output, position, written);
+                position += written;
+            }
+            final int written = entry.cipher.doFinal(output, position);
+            entry.mac.update(output, position, written);
+            position += written;
+
+            if (position != length) throw new IllegalStateException("Wrong CBC output length " + position);
+
+            /* The tag is the first half of the MAC, right after the cipher text */
+            entry.mac.update(entry.aadLength(aad));
+            entry.mac.doFinal(entry.tag, 0);
+            System.arraycopy(entry.tag, 0, output, length, tagLength);
+        } finally {
+            release(pooled);
+        }
+
+        final Bytes encrypted = new Bytes(output);
+        return builder.setInitializationVector(new Bytes(iv))
+                      .setCipherText(encrypted.slice(0, length))
+                      .setAuthenticationTag(encrypted.slice(length, tagLength))
+                      .setAdditionalAuthenticatedData(aad);
+    }
+
+    @Override
+    public int decrypt(Key key, Bytes aad, Bytes initializationVector, Bytes cipherText,
+                       Bytes authenticationTag, ByteBuffer plainText)
+    throws GeneralSecurityException {
+        if (key == null) throw new NullPointerException("Null key");
+
+        if ((initializationVector == null) || (initializationVector.length() != IV_LENGTH)) {
+            throw new AEADBadTagException("Invalid initialization vector for " + getEncryption().joseName());
+        } else if ((authenticationTag == null) || (authenticationTag.length() != tagLength)) {
+            throw new AEADBadTagException("Invalid authentication tag for " + getEncryption().joseName());
+        } else if ((cipherText.length() == 0) || (cipherText.length() % BLOCK_SIZE != 0)) {
+            throw new AEADBadTagException("Invalid cipher text length for " + getEncryption().joseName());
+        }
+
+        final KeyedPool.Entry<Key, Entry> pooled = pool.acquire(key);
+        final Entry entry = pooled.get();
+        final int start = plainText.position();
+        boolean authentic = false;
+        try {
+            entry.cipher.init(Cipher.DECRYPT_MODE, entry.key, new IvParameterSpec(initializationVector.getBytes()));
+            aad.update(entry.mac);
+            initializationVector.update(entry.mac);
+
+            /* Authenticate and decrypt in the same pass, wipe on failure */
+            for (int offset = 0; offset < cipherText.length(); offset += CHUNK_SIZE) {
+                final Bytes chunk = cipherText.slice(offset, Math.min(CHUNK_SIZE, cipherText.length() - offset));
+                chunk.update(entry.mac);
+                chunk.update(entry.cipher, plainText);
+            }
+
+            entry.mac.update(entry.aadLength(aad));
+            entry.mac.doFinal(entry.tag, 0);
+
+            /* Padding is only checked once we know the cipher text is authentic */
+            if (authenticationTag.constantTimeEquals(entry.tag, 0, tagLength)) try {
+                entry.cipher.doFinal(EMPTY, plainText);
+                authentic = true;
+                return plainText.position() - start;
+            } catch (BadPaddingException exception) {
+                /* Fall through, wipe and fail just like a bad tag */
+            }
+
+            throw new AEADBadTagException("Authentication failed for " + getEncryption().joseName());
+        } finally {
+            /* Unauthenticated output never survives a failure */
+            if (!authentic) {
+                for (int x = start; x < plainText.position(); x ++) plainText.put(x, (byte) 0);
+                plainText.position(start);
+            }
+            release(pooled);
+        }
+    }
+
+    /* Whatever happened, the Mac is reset and the next message re-inits the Cipher */
+    private void release(KeyedPool.Entry<Key, Entry> pooled) {
+        pooled.get().mac.reset();
+        pool.release(pooled);
+    }
+
+    /* ====================================================================== */
+
+    /* A keyed Mac, a Cipher and its key, and buffers for the tag */
+    private final class Entry {
+
+        private final Mac mac;
+        private final Cipher cipher;
+        private final SecretKeySpec key;
+        private final byte[] tag;
+        private final byte[] length = new byte[8];
+
+        private Entry(Mac mac, Cipher cipher, SecretKeySpec key) {
+            tag = new byte[mac.getMacLength()];
+            this.cipher = cipher;
+            this.mac = mac;
+            this.key = key;
+        }
+
+        /* The "AL" value: the length of the AAD in bits, 64 bits big endian */
+        private byte[] aadLength(Bytes aad) {
+            final long bits = aad.length() * 8L;
+            for (int x = 0; x < 8; x ++) length[x] = (byte) (bits >>> (56 - 8 * x));
+            return length;
+        }
+    }
+}
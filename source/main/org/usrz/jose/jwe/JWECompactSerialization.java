@@ -0,0 +1,268 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import static org.usrz.jose.shared.Base64URL.decodedLength;
+import static org.usrz.jose.shared.Base64URL.encodedLength;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.usrz.jose.jackson.JOSEObjectMapper;
+import org.usrz.jose.shared.Base64URL;
+import org.usrz.jose.shared.Bytes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A parser and writer for the <i>JWE Compact Serialization</i> of {@link JWE}
+ * objects, that is {@code header.key.iv.ciphertext.tag}.
+ *
+ * <p>The four binary parts of a parsed {@link JWE} are decoded in a single
+ * array, and exposed as {@link Bytes} windows over it. Parsed instances also
+ * keep the ASCII bytes of their encoded protected header, the
+ * {@linkplain JWE#getAdditionalAuthenticatedData() AAD} of the encryption,
+ * and writing them back produces exactly the same serialization.</p>
+ */
+public class JWECompactSerialization {
+
+    private static final Bytes EMPTY = new Bytes(new byte[0]);
+
+    private final ObjectMapper mapper;
+
+    /**
+     * Create a new {@link JWECompactSerialization} using the shared
+     * {@link JOSEObjectMapper} instance.
+     */
+    public JWECompactSerialization() {
+        this(JOSEObjectMapper.MAPPER);
+    }
+
+    /**
+     * Create a new {@link JWECompactSerialization} using the specified
+     * {@link ObjectMapper} to read and write headers.
+     */
+    public JWECompactSerialization(ObjectMapper mapper) {
+        if (mapper == null) throw new NullPointerException("Null mapper");
+        this.mapper = mapper;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Parse a {@link JWE} from its compact serialization.
+     *
+     * @throws IllegalArgumentException If the serialization was invalid.
+     */
+    public JWE parse(CharSequence compact) {
+        final int length = compact.length();
+        final byte[] ascii = new byte[length];
+        final int[] periods = new int[4];
+        int count = 0;
+
+        /* A single pass, converting to ASCII and looking for periods */
+        for (int x = 0; x < length; x ++) {
+            final char character = compact.charAt(x);
+            if (character > 0x7F) throw new IllegalArgumentException("Invalid character at offset " + x + " in JWE");
+            if (character == '.') {
+                if (count == 4) throw new IllegalArgumentException("Too many parts in JWE");
+                periods[count ++] = x;
+            }
+            ascii[x] = (byte) character;
+        }
+
+        if (count < 4) throw new IllegalArgumentException("Not enough parts in JWE");
+        return parse(ascii, 0, length, periods);
+    }
+
+    /**
+     * Parse a {@link JWE} from its compact serialization as ASCII bytes.
+     *
+     * @throws IllegalArgumentException If the serialization was invalid.
+     */
+    public JWE parse(byte[] ascii) {
+        return parse(ascii, 0, ascii.length);
+    }
+
+    /**
+     * Parse a {@link JWE} from its compact serialization as a range of ASCII
+     * bytes.
+     *
+     * <p>The {@linkplain JWE#getAdditionalAuthenticatedData() AAD} of the
+     * returned {@link JWE} will share the specified array, which therefore
+     * should not be modified afterwards.</p>
+     *
+     * @throws IllegalArgumentException If the serialization was invalid.
+     */
+    public JWE parse(byte[] ascii, int offset, int length) {
+        if ((offset < 0) || (length < 0) || (offset > ascii.length - length)) {
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " and length " + length + " for " + ascii.length + " bytes");
+        }
+
+        final int end = offset + length;
+        final int[] periods = new int[4];
+        int count = 0;
+        for (int x = offset; x < end; x ++) {
+            if (ascii[x] == '.') {
+                if (count == 4) throw new IllegalArgumentException("Too many parts in JWE");
+                periods[count ++] = x;
+            }
+        }
+
+        if (count < 4) throw new IllegalArgumentException("Not enough parts in JWE");
+        return parse(ascii, offset, end, periods);
+    }
+
+    private JWE parse(byte[] ascii, int start, int end, int[] periods) {
+        final JWEHeader header;
+        try {
+            header = mapper.readValue(Base64URL.decode(ascii, start, periods[0] - start), JWEHeader.class);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException("Unable to parse JWE header", exception);
+        }
+
+        /* Encoded lengths of the four binary parts, and total decoded length */
+        final int[] lengths = new int[4];
+        int total = 0;
+        for (int x = 0; x < 4; x ++) {
+            lengths[x] = (x == 3 ? end : periods[x + 1]) - periods[x] - 1;
+            total += decodedLength(lengths[x]);
+        }
+
+        /* Decode everything in a single array, and slice it */
+        final byte[] data = new byte[total];
+        final Bytes decoded = new Bytes(data);
+        final Bytes[] parts = new Bytes[4];
+        for (int x = 0, position = 0; x < 4; x ++) {
+            final int length = Base64URL.decode(ascii, periods[x] + 1, lengths[x], data, position);
+            parts[x] = decoded.slice(position, length);
+            position += length;
+        }
+
+        final JWE.Builder builder = new JWE.Builder();
+        builder.setHeader(header);
+        builder.setEncryptedKey(parts[0]);
+        builder.setInitializationVector(parts[1]);
+        builder.setCipherText(parts[2]);
+        builder.setAuthenticationTag(parts[3]);
+        builder.setAdditionalAuthenticatedData(new Bytes(ascii, start, periods[0] - start));
+        return builder.build();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the ASCII bytes of the encoded protected header of the specified
+     * {@link JWE}, the <i>Additional Authenticated Data</i> of its encryption,
+     * either the one it was parsed from, or a newly computed one.
+     */
+    public Bytes additionalAuthenticatedData(JWE jwe) {
+        final Bytes additionalAuthenticatedData = jwe.getAdditionalAuthenticatedData();
+        if (additionalAuthenticatedData != null) return additionalAuthenticatedData;
+
+        if (jwe.getHeader() == null) throw new IllegalArgumentException("No header in JWE");
+        final byte[] header;
+        try {
+            header = mapper.writeValueAsBytes(jwe.getHeader());
+        } catch (JsonProcessingException exception) {
+            throw new IllegalArgumentException("Unable to serialize JWE header", exception);
+        }
+
+        final byte[] ascii = new byte[encodedLength(header.length)];
+        Base64URL.encode(header, 0, header.length, ascii, 0);
+        return new Bytes(ascii);
+    }
+
+    /**
+     * Return the compact serialization of the specified {@link JWE}.
+     */
+    public String write(JWE jwe) {
+        return write(jwe, new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the compact serialization of the specified {@link JWE} to the
+     * given {@link StringBuilder}, and return it.
+     */
+    public StringBuilder write(JWE jwe, StringBuilder builder) {
+        final Bytes header = additionalAuthenticatedData(jwe);
+        final Bytes[] parts = parts(jwe);
+
+        builder.ensureCapacity(builder.length() + length(header, parts));
+        for (int x = 0; x < header.length(); x ++) builder.append((char) header.getByte(x));
+        for (Bytes part: parts) Base64URL.encode(part, builder.append('.'));
+        return builder;
+    }
+
+    /**
+     * Write the compact serialization of the specified {@link JWE} as ASCII
+     * bytes in the given {@link ByteBuffer}, advancing its position.
+     *
+     * @throws BufferOverflowException If the buffer is too small, in which
+     *                                 case its position is not modified.
+     */
+    public void write(JWE jwe, ByteBuffer buffer) {
+        final Bytes header = additionalAuthenticatedData(jwe);
+        final Bytes[] parts = parts(jwe);
+
+        if (buffer.remaining() < length(header, parts)) throw new BufferOverflowException();
+
+        buffer.put(header.asByteBuffer());
+        for (Bytes part: parts) Base64URL.encode(part, buffer.put((byte) '.'));
+    }
+
+    /**
+     * Write the compact serialization of the specified {@link JWE} as ASCII
+     * bytes to the given {@link OutputStream}.
+     */
+    public void write(JWE jwe, OutputStream output)
+    throws IOException {
+        final Bytes header = additionalAuthenticatedData(jwe);
+        final Bytes[] parts = parts(jwe);
+
+        final byte[] encoded = new byte[length(header, parts) - header.length()];
+        int position = 0;
+        for (Bytes part: parts) {
+            encoded[position ++] = '.';
+            position += Base64URL.encode(part, encoded, position);
+        }
+
+        header.writeTo(output);
+        output.write(encoded);
+    }
+
+    /* ====================================================================== */
+
+    private static Bytes[] parts(JWE jwe) {
+        return new Bytes[] { orEmpty(jwe.getEncryptedKey()),
+                             orEmpty(jwe.getInitializationVector()),
+                             orEmpty(jwe.getCipherText()),
+                             orEmpty(jwe.getAuthenticationTag()) };
+    }
+
+    private static Bytes orEmpty(Bytes bytes) {
+        return bytes == null ? EMPTY : bytes;
+    }
+
+    private static int length(Bytes header, Bytes[] parts) {
+        int length = header.length();
+        for (Bytes part: parts) length += 1 + encodedLength(part.length());
+        return length;
+    }
+}
@@ -0,0 +1,99 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.DigestException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Pool;
+
+/**
+ * The <i>Concat KDF</i> (NIST SP 800-56A, single-step key derivation using
+ * SHA-256) as profiled for ECDH-ES by RFC 7518, section 4.6.2.
+ *
+ * <p>The {@code OtherInfo} is never assembled in a buffer: its fields are
+ * fed to a pooled {@link MessageDigest} one at a time, and each round of
+ * the derivation is digested straight into the output array.</p>
+ */
+final class JWEConcatKDF {
+
+    private static final int DIGEST_LENGTH = 32;
+    private static final Pool<MessageDigest> DIGESTS = new Pool<>(() -> MessageDigest.getInstance("SHA-256"));
+    private static final Bytes EMPTY = new Bytes(new byte[0]);
+
+    private JWEConcatKDF() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /**
+     * Derive a key from the specified shared secret {@code Z}.
+     *
+     * @param algorithmId The {@code enc} value for direct key agreement, or
+     *                    the {@code alg} value for key agreement with key
+     *                    wrapping.
+     * @param partyUInfo The {@code apu} header value, or {@code null}.
+     * @param partyVInfo The {@code apv} header value, or {@code null}.
+     * @param output The array where the derived key will be written, its
+     *               length being the length of the derived key.
+     */
+    static void derive(byte[] z, String algorithmId, Bytes partyUInfo, Bytes partyVInfo, byte[] output)
+    throws GeneralSecurityException {
+        if (partyUInfo == null) partyUInfo = EMPTY;
+        if (partyVInfo == null) partyVInfo = EMPTY;
+
+        final MessageDigest digest = DIGESTS.acquire();
+        byte[] last = null;
+        try {
+            for (int counter = 1, offset = 0; offset < output.length; counter ++, offset += DIGEST_LENGTH) {
+                update(digest, counter);
+                digest.update(z);
+
+                /* OtherInfo: AlgorithmID, PartyUInfo, PartyVInfo, SuppPubInfo */
+                update(digest, algorithmId.length());
+                for (int x = 0; x < algorithmId.length(); x ++) digest.update((byte) algorithmId.charAt(x));
+                update(digest, partyUInfo.length());
+                partyUInfo.update(digest);
+                update(digest, partyVInfo.length());
+                partyVInfo.update(digest);
+                update(digest, output.length * 8);
+
+                /* Only the last round might need a (partial) copy */
+                if (output.length - offset >= DIGEST_LENGTH) {
+                    digest.digest(output, offset, DIGEST_LENGTH);
+                } else {
+                    last = digest.digest();
+                    System.arraycopy(last, 0, output, offset, output.length - offset);
+                }
+            }
+            DIGESTS.release(digest);
+        } catch (DigestException exception) {
+            throw new IllegalStateException("Digest length is not " + DIGEST_LENGTH, exception);
+        } finally {
+            if (last != null) Arrays.fill(last, (byte) 0);
+        }
+    }
+
+    /* A 32 bits, big endian integer */
+    private static void update(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+}
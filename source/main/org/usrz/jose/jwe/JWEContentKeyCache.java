@@ -0,0 +1,252 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.SecretKey;
+
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Pool;
+import org.usrz.jose.shared.Secret;
+
+/**
+ * A bounded cache of decrypted <i>Content Encryption Keys</i>, sparing the
+ * (expensive) private key operation when the same {@code encrypted_key} is
+ * received over and over again, for example by clients resending the same
+ * {@link JWE} for the lifetime of a session.
+ *
+ * <p>Entries are keyed on a SHA-256 digest of the algorithm, encryption and
+ * {@code kid} of the recipient's JWK together with the encrypted key: JWKs
+ * with no {@code kid} can not be told apart, and their keys are never
+ * cached. Cached keys are stored <em>off-heap</em> (as {@link Secret}s) and
+ * are zeroed when evicted.</p>
+ *
+ * <p>Entries expire after a fixed time to live and are evicted in the order
+ * they were added (as that is also the order they expire in) whenever the
+ * cache grows past its maximum size. Lookups never lock.</p>
+ *
+ * @see JWEKeyManagementEngine#getInstance(JWEAlgorithm, JWEContentKeyCache)
+ */
+public final class JWEContentKeyCache {
+
+    private static final Pool<MessageDigest> DIGESTS = new Pool<>(() -> MessageDigest.getInstance("SHA-256"));
+
+    private final ConcurrentHashMap<Bytes, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final int maximumSize;
+    private final long timeToLive;
+
+    /**
+     * Create a new {@link JWEContentKeyCache} holding at most the specified
+     * number of keys, each for at most the given time.
+     */
+    public JWEContentKeyCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize < 1) throw new IllegalArgumentException("Invalid maximum size " + maximumSize);
+        if (timeToLive <= 0) throw new IllegalArgumentException("Invalid time to live " + timeToLive);
+        if (unit == null) throw new NullPointerException("Null time unit");
+        this.maximumSize = maximumSize;
+        this.timeToLive = unit.toNanos(timeToLive);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the cached key for the specified parameters, or decrypt it
+     * with the given {@link Decrypter} and cache it.
+     */
+    SecretKey get(JWEAlgorithm algorithm, JWEEncryption encryption, String keyId, Bytes encryptedKey, Decrypter decrypter)
+    throws GeneralSecurityException {
+        if (keyId == null) return decrypter.decrypt();
+
+        final Bytes digest = digest(algorithm, encryption, keyId, encryptedKey);
+        final Entry entry = entries.get(digest);
+
+        if ((entry != null) && (entry.expires - System.nanoTime() <= 0)) {
+            remove(entry, expirations);
+        } else if (entry != null) try {
+            final SecretKey key = entry.secret.toSecretKey("AES");
+            /* Destroyed while we were copying? Then it's a miss */
+            if (!entry.secret.isDestroyed()) {
+                hits.increment();
+                return key;
+            }
+        } catch (IllegalStateException exception) {
+            /* Evicted (and destroyed) since we got it */
+        }
+
+        misses.increment();
+        final SecretKey key = decrypter.decrypt();
+        put(digest, key);
+        return key;
+    }
+
+    /**
+     * Remove (and destroy) all the keys from this cache.
+     */
+    public void clear() {
+        Entry entry;
+        while ((entry = order.poll()) != null) {
+            if (entries.remove(entry.digest, entry)) entry.secret.destroy();
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the maximum number of keys held by this cache.
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Return the number of keys currently cached.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Return the number of lookups satisfied by a cached key.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Return the number of lookups requiring a key to be decrypted.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Return the ratio of lookups satisfied by a cached key, between zero
+     * and one (zero if no lookup was ever made).
+     */
+    public double hitRate() {
+        final long hits = this.hits.sum();
+        final long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Return the number of keys evicted as this cache was full.
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Return the number of keys evicted as their time to live elapsed.
+     */
+    public long expirations() {
+        return expirations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ",hits=" + hits() + ",misses=" + misses() + "]";
+    }
+
+    /* ====================================================================== */
+
+    private void put(Bytes digest, SecretKey key) {
+        final byte[] encoded = key.getEncoded();
+        final Entry entry;
+        try {
+            entry = new Entry(digest, new Secret(encoded), System.nanoTime() + timeToLive);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+
+        /* Two threads decrypting the same key? Only one gets cached */
+        if (entries.putIfAbsent(digest, entry) != null) {
+            entry.secret.destroy();
+            return;
+        }
+
+        /* The head of our queue is the oldest entry, and first to expire */
+        order.offer(entry);
+        Entry head;
+        while ((head = order.peek()) != null) {
+            final boolean expired = head.expires - System.nanoTime() <= 0;
+            if ((!expired) && (entries.size() <= maximumSize)) break;
+            if ((head = order.poll()) != null) remove(head, expired ? expirations : evictions);
+        }
+    }
+
+    private void remove(Entry entry, LongAdder counter) {
+        if (entries.remove(entry.digest, entry)) {
+            entry.secret.destroy();
+            counter.increment();
+        }
+    }
+
+    private static Bytes digest(JWEAlgorithm algorithm, JWEEncryption encryption, String keyId, Bytes encryptedKey)
+    throws GeneralSecurityException {
+        final MessageDigest digest = DIGESTS.acquire();
+        digest.update(algorithm.joseName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(encryption.joseName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(keyId.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        encryptedKey.update(digest);
+        final Bytes result = new Bytes(digest.digest());
+        DIGESTS.release(digest);
+        return result;
+    }
+
+    /* ====================================================================== */
+
+    private static final class Entry {
+
+        private final Bytes digest;
+        private final Secret secret;
+        private final long expires;
+
+        private Entry(Bytes digest, Secret secret, long expires) {
+            this.digest = digest;
+            this.secret = secret;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Decrypt a <i>Content Encryption Key</i> not found in the cache.
+     */
+    @FunctionalInterface
+    static interface Decrypter {
+
+        SecretKey decrypt()
+        throws GeneralSecurityException;
+
+    }
+}
@@ -0,0 +1,199 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Arrays;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.JWKKeyType;
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.jwk.ec.ECPrivateJWK;
+import org.usrz.jose.jwk.ec.ECPublicJWK;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.KeyedPool;
+import org.usrz.jose.shared.Pool;
+
+/**
+ * A {@link JWEKeyManagementEngine} for the ECDH-ES {@link JWEAlgorithm}s,
+ * both for direct key agreement and with AES key wrapping.
+ *
+ * <p>When encrypting, ephemeral key pairs are taken from a
+ * {@link JWEEphemeralKeyPool} (if one was configured) and key agreements
+ * are pooled with no key; when decrypting, key agreements are pooled by
+ * (static) private key, already initialized. Ephemeral public keys from
+ * headers are converted here and never {@linkplain
+ * org.usrz.jose.jwk.JWKKeyCache cached}, as they are used only once.</p>
+ *
+ * <p>The optional {@code apu} and {@code apv} parameters are never set
+ * when encrypting, but are always honored when decrypting.</p>
+ */
+final class JWEECDHEngine extends JWEKeyManagementEngine {
+
+    private static final Bytes EMPTY = new Bytes(new byte[0]);
+
+    private static final Pool<KeyFactory> FACTORIES = new Pool<>(() -> KeyFactory.getInstance("EC"));
+    private static final Pool<KeyAgreement> AGREEMENTS = new Pool<>(() -> KeyAgreement.getInstance("ECDH"));
+
+    private final JWEAESKWEngine wrapper;
+    private final JWEEphemeralKeyPool keyPairs;
+    private final KeyedPool<Key, KeyAgreement> receivers;
+
+    JWEECDHEngine(JWEAlgorithm algorithm, JWEAESKWEngine wrapper, JWEEphemeralKeyPool keyPairs) {
+        super(algorithm);
+        this.wrapper = wrapper;
+        this.keyPairs = keyPairs;
+        receivers = new KeyedPool<>((key) -> {
+            final KeyAgreement agreement = KeyAgreement.getInstance("ECDH");
+            agreement.init(key);
+            return agreement;
+        });
+    }
+
+    /**
+     * Return a new engine for the same algorithm, taking its ephemeral key
+     * pairs from the specified {@link JWEEphemeralKeyPool}.
+     */
+    JWEECDHEngine withKeyPairs(JWEEphemeralKeyPool keyPairs) {
+        if (keyPairs == null) throw new NullPointerException("Null key pair pool");
+        return new JWEECDHEngine(getAlgorithm(), wrapper, keyPairs);
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public SecretKey encrypt(JWK<?> jwk, JWEEncryption encryption, JWEHeader.Builder header, JWE.Builder builder)
+    throws GeneralSecurityException {
+        final ECPublicJWK recipient = checkKey(jwk, ECPublicJWK.class);
+        final ECCurve curve = recipient.getCurve();
+        if (curve == null) throw new InvalidKeyException("No curve specified");
+        final PublicKey publicKey = recipient.toKey();
+
+        final KeyPair ephemeral = keyPairs == null ? JWEEphemeralKeyPool.generate(curve) : keyPairs.take(curve);
+        final byte[] z = new byte[curve.getFieldLength()];
+        try {
+            final KeyAgreement agreement = AGREEMENTS.acquire();
+            agreement.init(ephemeral.getPrivate());
+            agreement.doPhase(publicKey, true);
+            agreement.generateSecret(z, 0);
+            AGREEMENTS.release(agreement);
+
+            header(header, encryption);
+            header.setEphemeralPublicKey(ephemeralPublicKey(curve, (ECPublicKey) ephemeral.getPublic()));
+
+            if (wrapper == null) {
+                builder.setEncryptedKey(EMPTY);
+                return derive(z, encryption.joseName(), null, null, JWEEncryptionEngine.getInstance(encryption).getKeyLength());
+            }
+
+            final SecretKey key = derive(z, getAlgorithm().joseName(), null, null, wrapper.getKeyLength());
+            final SecretKey contentKey = contentKey(encryption);
+            builder.setEncryptedKey(new Bytes(wrapper.wrapOnce(key, contentKey)));
+            return contentKey;
+        } finally {
+            Arrays.fill(z, (byte) 0);
+        }
+    }
+
+    @Override
+    public SecretKey decrypt(JWK<?> jwk, JWEHeader header, Bytes encryptedKey)
+    throws GeneralSecurityException {
+        final ECPrivateJWK recipient = checkKey(jwk, ECPrivateJWK.class);
+        final ECCurve curve = recipient.getCurve();
+        if (curve == null) throw new InvalidKeyException("No curve specified");
+        final PrivateKey privateKey = recipient.toKey();
+        final PublicKey publicKey = ephemeralPublicKey(curve, header.getEphemeralPublicKey());
+        final int contentKeyLength = contentKeyLength(header);
+
+        final byte[] z = new byte[curve.getFieldLength()];
+        try {
+            /* Generating the secret resets the agreement to its initial state */
+            final KeyedPool.Entry<Key, KeyAgreement> entry = receivers.acquire(privateKey);
+            entry.get().doPhase(publicKey, true);
+            entry.get().generateSecret(z, 0);
+            receivers.release(entry);
+
+            if (wrapper == null) {
+                if ((encryptedKey != null) && (encryptedKey.length() != 0)) {
+                    throw new InvalidKeyException("Encrypted key specified for " + getAlgorithm().joseName());
+                }
+                return derive(z, header.getEncryption().joseName(), header.getAgreementPartyUInfo(), header.getAgreementPartyVInfo(), contentKeyLength);
+            }
+
+            final SecretKey key = derive(z, getAlgorithm().joseName(), header.getAgreementPartyUInfo(), header.getAgreementPartyVInfo(), wrapper.getKeyLength());
+            return wrapper.unwrapOnce(key, encryptedKey, contentKeyLength);
+        } finally {
+            Arrays.fill(z, (byte) 0);
+        }
+    }
+
+    /* ====================================================================== */
+
+    private static SecretKey derive(byte[] z, String algorithmId, Bytes partyUInfo, Bytes partyVInfo, int length)
+    throws GeneralSecurityException {
+        final byte[] derived = new byte[length];
+        try {
+            JWEConcatKDF.derive(z, algorithmId, partyUInfo, partyVInfo, derived);
+            return new SecretKeySpec(derived, "AES");
+        } finally {
+            Arrays.fill(derived, (byte) 0);
+        }
+    }
+
+    /* The "epk" for the header, from our ephemeral key */
+    private static ECPublicJWK ephemeralPublicKey(ECCurve curve, ECPublicKey key) {
+        final ECPublicJWK.Builder builder = new ECPublicJWK.Builder();
+        builder.setKeyType(JWKKeyType.EC);
+        builder.setCurve(curve);
+        builder.setXCoordinate(key.getW().getAffineX());
+        builder.setYCoordinate(key.getW().getAffineY());
+        return builder.build();
+    }
+
+    /* The ephemeral public key from the header "epk", validated */
+    private PublicKey ephemeralPublicKey(ECCurve curve, JWK<?> jwk)
+    throws GeneralSecurityException {
+        if (!(jwk instanceof ECPublicJWK)) {
+            throw new InvalidKeyException("Missing or invalid ephemeral public key for " + getAlgorithm().joseName());
+        }
+
+        final ECPublicJWK ephemeral = (ECPublicJWK) jwk;
+        if (ephemeral.getCurve() != curve) {
+            throw new InvalidKeyException("Ephemeral public key not on curve " + curve.joseName());
+        } else if (!curve.isOnCurve(ephemeral.getXCoordinate(), ephemeral.getYCoordinate())) {
+            throw new InvalidKeyException("Ephemeral public key point not on curve " + curve.joseName());
+        }
+
+        final ECPoint point = new ECPoint(ephemeral.getXCoordinate(), ephemeral.getYCoordinate());
+        final KeyFactory factory = FACTORIES.acquire();
+        final PublicKey key = factory.generatePublic(new ECPublicKeySpec(point, curve.getECParameterSpec()));
+        FACTORIES.release(factory);
+        return key;
+    }
+}
@@ -0,0 +1,183 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.usrz.jose.shared.Bytes;
+
+/**
+ * An engine encrypting and decrypting the content of {@link JWE}s according
+ * to a specific {@link JWEEncryption} algorithm.
+ *
+ * <p>Engines are thread-safe, and share a {@link org.usrz.jose.shared.Pool
+ * Pool} of {@link javax.crypto.Cipher Cipher} instances per algorithm: each
+ * instance is looked up only once, and afterwards it is simply re-initialized
+ * with the key and initialization vector used for each message.</p>
+ *
+ * <p>The <i>Additional Authenticated Data</i> is always the ASCII of the
+ * encoded protected header, as {@linkplain JWECompactSerialization#parse(
+ * CharSequence) parsed}, or as {@linkplain
+ * JWECompactSerialization#additionalAuthenticatedData(JWE) computed} once
+ * for a new {@link JWE}: it is never re-encoded here.</p>
+ */
+public abstract class JWEEncryptionEngine {
+
+    private static final Map<JWEEncryption, JWEEncryptionEngine> ENGINES;
+
+    static {
+        final Map<JWEEncryption, JWEEncryptionEngine> engines = new EnumMap<>(JWEEncryption.class);
+        engines.put(JWEEncryption.A128CBC_HS256, new JWECBCEngine(JWEEncryption.A128CBC_HS256, "HmacSHA256", 32));
+        engines.put(JWEEncryption.A192CBC_HS384, new JWECBCEngine(JWEEncryption.A192CBC_HS384, "HmacSHA384", 48));
+        engines.put(JWEEncryption.A256CBC_HS512, new JWECBCEngine(JWEEncryption.A256CBC_HS512, "HmacSHA512", 64));
+        engines.put(JWEEncryption.A128GCM, new JWEGCMEngine(JWEEncryption.A128GCM, 16));
+        engines.put(JWEEncryption.A192GCM, new JWEGCMEngine(JWEEncryption.A192GCM, 24));
+        engines.put(JWEEncryption.A256GCM, new JWEGCMEngine(JWEEncryption.A256GCM, 32));
+        ENGINES = Collections.unmodifiableMap(engines);
+    }
+
+    /**
+     * Return the {@link JWEEncryptionEngine} for the specified
+     * {@link JWEEncryption} algorithm.
+     *
+     * @throws IllegalArgumentException If the algorithm is not supported.
+     */
+    public static JWEEncryptionEngine getInstance(JWEEncryption encryption) {
+        final JWEEncryptionEngine engine = ENGINES.get(encryption);
+        if (engine == null) throw new IllegalArgumentException("Unsupported JWE encryption " + encryption);
+        return engine;
+    }
+
+    /* ====================================================================== */
+
+    /** A shared (thread-safe) source of initialization vectors. */
+    static final SecureRandom RANDOM = new SecureRandom();
+
+    private final JWEEncryption encryption;
+    private final int keyLength;
+
+    JWEEncryptionEngine(JWEEncryption encryption, int keyLength) {
+        this.encryption = encryption;
+        this.keyLength = keyLength;
+    }
+
+    /**
+     * Return the {@link JWEEncryption} implemented by this engine.
+     */
+    public final JWEEncryption getEncryption() {
+        return encryption;
+    }
+
+    /**
+     * Return the length (in bytes) of the <i>Content Encryption Key</i>
+     * required by this engine.
+     */
+    public final int getKeyLength() {
+        return keyLength;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Encrypt the specified plain text with the given <i>Content Encryption
+     * Key</i>, setting the initialization vector, cipher text, authentication
+     * tag and additional authenticated data of the given {@link JWE.Builder}.
+     *
+     * @param aad The ASCII bytes of the encoded protected header.
+     * @return The same {@link JWE.Builder} specified as a parameter.
+     */
+    public abstract JWE.Builder encrypt(Key key, Bytes aad, Bytes plainText, JWE.Builder builder)
+    throws GeneralSecurityException;
+
+    /**
+     * Decrypt (and authenticate) the specified parts of a {@link JWE} with
+     * the given <i>Content Encryption Key</i>, writing the plain text in the
+     * specified {@link ByteBuffer}.
+     *
+     * <p>If authentication fails, no plain text is left in the output (some
+     * engines decrypt while authenticating, and wipe what they wrote).</p>
+     *
+     * @param aad The ASCII bytes of the encoded protected header.
+     * @return The number of plain text bytes written.
+     * @throws javax.crypto.AEADBadTagException If authentication failed.
+     */
+    public abstract int decrypt(Key key, Bytes aad, Bytes initializationVector, Bytes cipherText,
+                                Bytes authenticationTag, ByteBuffer plainText)
+    throws GeneralSecurityException;
+
+    /**
+     * Decrypt (and authenticate) the specified {@link JWE} with the given
+     * <i>Content Encryption Key</i>, writing the plain text in the specified
+     * {@link ByteBuffer}.
+     *
+     * @return The number of plain text bytes written.
+     * @throws IllegalArgumentException If the {@link JWE} had no
+     *                                  additional authenticated data.
+     * @throws javax.crypto.AEADBadTagException If authentication failed.
+     */
+    public int decrypt(Key key, JWE jwe, ByteBuffer plainText)
+    throws GeneralSecurityException {
+        final Bytes aad = jwe.getAdditionalAuthenticatedData();
+        if (aad == null) throw new IllegalArgumentException("No additional authenticated data in JWE");
+        return decrypt(key, aad, jwe.getInitializationVector(), jwe.getCipherText(), jwe.getAuthenticationTag(), plainText);
+    }
+
+    /**
+     * Decrypt (and authenticate) the specified {@link JWE} with the given
+     * <i>Content Encryption Key</i>, returning the plain text.
+     *
+     * @throws IllegalArgumentException If the {@link JWE} had no
+     *                                  additional authenticated data.
+     * @throws javax.crypto.AEADBadTagException If authentication failed.
+     */
+    public Bytes decrypt(Key key, JWE jwe)
+    throws GeneralSecurityException {
+        final byte[] plainText = new byte[jwe.getCipherText().length()];
+        final int length = decrypt(key, jwe, ByteBuffer.wrap(plainText));
+        return new Bytes(plainText, 0, length);
+    }
+
+    /* ====================================================================== */
+
+    /* Check the length of raw keys, without hanging on to their bytes */
+    void checkKey(Key key)
+    throws InvalidKeyException {
+        if (key == null) throw new NullPointerException("Null key");
+        final byte[] encoded = key.getEncoded();
+        if (encoded == null) return;
+        try {
+            if (encoded.length != keyLength) {
+                throw new InvalidKeyException("Key for " + encryption.joseName() + " must be "
+                                            + keyLength + " bytes, not " + encoded.length);
+            }
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + encryption.joseName() + "]";
+    }
+}
@@ -0,0 +1,271 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.shared.Pool;
+
+/**
+ * A bounded pool of fresh, <em>single-use</em> ephemeral EC key pairs for
+ * ECDH-ES key agreement, kept full by a background generator.
+ *
+ * <p>Generating an ephemeral key pair is the most expensive step of every
+ * ECDH-ES encryption: with a pool {@linkplain
+ * JWEKeyManagementEngine#getInstance(JWEAlgorithm, JWEEphemeralKeyPool)
+ * configured}, encryption simply takes a pair generated beforehand. Pairs
+ * are never handed out twice, and when a pool is empty (or closed) a new
+ * pair is generated by the caller.</p>
+ *
+ * <p>Each {@link ECCurve} has its own queue of pairs, refilled up to the
+ * pool's {@linkplain #capacity() capacity} as soon as one is taken (or when
+ * {@linkplain #prepare(ECCurve...) prepared}). Depth, hits, misses and the
+ * refill rate are reported per curve, so that pools can be sized for the
+ * rate at which pairs are taken.</p>
+ */
+public final class JWEEphemeralKeyPool implements AutoCloseable {
+
+    /* Shared by all pools, and by engines with no pool for their misses */
+    private static final Map<ECCurve, Pool<KeyPairGenerator>> GENERATORS;
+
+    static {
+        final Map<ECCurve, Pool<KeyPairGenerator>> generators = new EnumMap<>(ECCurve.class);
+        for (ECCurve curve: ECCurve.values()) generators.put(curve, new Pool<>(() -> {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(curve.getECParameterSpec(), JWEEncryptionEngine.RANDOM);
+            return generator;
+        }));
+        GENERATORS = Collections.unmodifiableMap(generators);
+    }
+
+    /**
+     * Generate a new EC key pair on the specified {@link ECCurve}.
+     */
+    static KeyPair generate(ECCurve curve)
+    throws GeneralSecurityException {
+        final Pool<KeyPairGenerator> generators = GENERATORS.get(curve);
+        if (generators == null) throw new NullPointerException("Null curve");
+
+        final KeyPairGenerator generator = generators.acquire();
+        final KeyPair pair = generator.generateKeyPair();
+        generators.release(generator);
+        return pair;
+    }
+
+    /* ====================================================================== */
+
+    private final Map<ECCurve, Queue> queues = new EnumMap<>(ECCurve.class);
+    private final ExecutorService owned;
+    private final Executor executor;
+    private final int capacity;
+    private volatile boolean closed;
+
+    /**
+     * Create a new {@link JWEEphemeralKeyPool} keeping at most the specified
+     * number of key pairs per curve, generated by its own (daemon) thread.
+     */
+    public JWEEphemeralKeyPool(int capacity) {
+        this(capacity, Executors.newSingleThreadExecutor((runnable) -> {
+            final Thread thread = new Thread(runnable, JWEEphemeralKeyPool.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * Create a new {@link JWEEphemeralKeyPool} keeping at most the specified
+     * number of key pairs per curve, generated by the given {@link Executor}
+     * (which will not be shut down when this pool is {@linkplain #close()
+     * closed}).
+     */
+    public JWEEphemeralKeyPool(int capacity, Executor executor) {
+        this(capacity, executor, false);
+    }
+
+    private JWEEphemeralKeyPool(int capacity, Executor executor, boolean owned) {
+        if (executor == null) throw new NullPointerException("Null executor");
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity " + capacity);
+        for (ECCurve curve: ECCurve.values()) queues.put(curve, new Queue(curve));
+        this.owned = owned ? (ExecutorService) executor : null;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Start filling this pool with key pairs for the specified curves,
+     * without waiting for the first ones to be taken.
+     */
+    public void prepare(ECCurve... curves) {
+        for (ECCurve curve: curves) refill(queue(curve));
+    }
+
+    /**
+     * Take a fresh key pair on the specified {@link ECCurve} from this pool,
+     * generating a new one if none was available.
+     */
+    public KeyPair take(ECCurve curve)
+    throws GeneralSecurityException {
+        final Queue queue = queue(curve);
+        final KeyPair pair = queue.pairs.poll();
+
+        if (pair != null) {
+            queue.depth.decrementAndGet();
+            queue.hits.increment();
+        } else {
+            queue.misses.increment();
+        }
+
+        refill(queue);
+        return pair != null ? pair : generate(curve);
+    }
+
+    /**
+     * Stop refilling this pool, and discard all the key pairs it holds.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (owned != null) owned.shutdownNow();
+        for (Queue queue: queues.values()) {
+            while (queue.pairs.poll() != null) queue.depth.decrementAndGet();
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the maximum number of key pairs kept for each curve.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Return the number of key pairs currently available for a curve.
+     */
+    public int depth(ECCurve curve) {
+        return queue(curve).depth.get();
+    }
+
+    /**
+     * Return the number of key pairs for a curve taken from this pool.
+     */
+    public long hits(ECCurve curve) {
+        return queue(curve).hits.sum();
+    }
+
+    /**
+     * Return the number of key pairs for a curve that had to be generated
+     * by the caller, as none was available.
+     */
+    public long misses(ECCurve curve) {
+        return queue(curve).misses.sum();
+    }
+
+    /**
+     * Return the number of key pairs for a curve generated in background.
+     */
+    public long generated(ECCurve curve) {
+        return queue(curve).generated.sum();
+    }
+
+    /**
+     * Return the rate (in key pairs per second) at which this pool refills
+     * its key pairs for a curve, measured while generating them.
+     *
+     * <p>When pairs are taken faster than this, the pool will eventually
+     * be drained and {@linkplain #misses(ECCurve) misses} will grow.</p>
+     */
+    public double refillRate(ECCurve curve) {
+        final Queue queue = queue(curve);
+        final long nanos = queue.nanos.sum();
+        return nanos == 0 ? 0 : queue.generated.sum() * 1000000000.0 / nanos;
+    }
+
+    /* ====================================================================== */
+
+    private Queue queue(ECCurve curve) {
+        if (curve == null) throw new NullPointerException("Null curve");
+        return queues.get(curve);
+    }
+
+    /* Schedule a refill, unless one is already pending */
+    private void refill(Queue queue) {
+        if (closed || (queue.depth.get() >= capacity)) return;
+        if (!queue.pending.compareAndSet(false, true)) return;
+        try {
+            executor.execute(() -> fill(queue));
+        } catch (RejectedExecutionException exception) {
+            queue.pending.set(false);
+        }
+    }
+
+    /* Fill a queue up to capacity, in background */
+    private void fill(Queue queue) {
+        try {
+            while ((!closed) && (queue.depth.get() < capacity)) {
+                final long start = System.nanoTime();
+                final KeyPair pair = generate(queue.curve);
+                queue.nanos.add(System.nanoTime() - start);
+                queue.generated.increment();
+
+                queue.pairs.offer(pair);
+                queue.depth.incrementAndGet();
+            }
+        } catch (GeneralSecurityException | RuntimeException exception) {
+            /* Give up for now, the next pair taken will retry */
+            queue.pending.set(false);
+            return;
+        }
+
+        /* A pair might have been taken after our last check */
+        queue.pending.set(false);
+        if (queue.depth.get() < capacity) refill(queue);
+    }
+
+    /* The pairs and statistics for a single curve */
+    private static final class Queue {
+
+        private final ConcurrentLinkedQueue<KeyPair> pairs = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean pending = new AtomicBoolean();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder generated = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final ECCurve curve;
+
+        private Queue(ECCurve curve) {
+            this.curve = curve;
+        }
+    }
+}
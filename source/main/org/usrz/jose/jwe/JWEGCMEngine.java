@@ -0,0 +1,106 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Pool;
+
+/**
+ * A {@link JWEEncryptionEngine} for the AES GCM {@link JWEEncryption}s.
+ */
+final class JWEGCMEngine extends JWEEncryptionEngine {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+
+    private final Pool<Cipher> pool;
+
+    JWEGCMEngine(JWEEncryption encryption, int keyLength) {
+        super(encryption, keyLength);
+        pool = new Pool<>(this::create);
+    }
+
+    private Cipher create()
+    throws GeneralSecurityException {
+        return Cipher.getInstance(TRANSFORMATION);
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public JWE.Builder encrypt(Key key, Bytes aad, Bytes plainText, JWE.Builder builder)
+    throws GeneralSecurityException {
+        checkKey(key);
+
+        final byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        /* Cipher text and tag come out together, just slice them */
+        final byte[] output = new byte[plainText.length() + TAG_LENGTH];
+        final int length;
+
+        final Cipher cipher = pool.acquire();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+            aad.updateAAD(cipher);
+            length = plainText.doFinal(cipher, output, 0);
+        } finally {
+            pool.release(cipher);
+        }
+
+        if (length != output.length) throw new IllegalStateException("Wrong GCM output length " + length);
+
+        final Bytes encrypted = new Bytes(output);
+        return builder.setInitializationVector(new Bytes(iv))
+                      .setCipherText(encrypted.slice(0, plainText.length()))
+                      .setAuthenticationTag(encrypted.slice(plainText.length(), TAG_LENGTH))
+                      .setAdditionalAuthenticatedData(aad);
+    }
+
+    @Override
+    public int decrypt(Key key, Bytes aad, Bytes initializationVector, Bytes cipherText,
+                       Bytes authenticationTag, ByteBuffer plainText)
+    throws GeneralSecurityException {
+        checkKey(key);
+
+        if ((initializationVector == null) || (initializationVector.length() != IV_LENGTH)) {
+            throw new AEADBadTagException("Invalid initialization vector for " + getEncryption().joseName());
+        } else if ((authenticationTag == null) || (authenticationTag.length() != TAG_LENGTH)) {
+            throw new AEADBadTagException("Invalid authentication tag for " + getEncryption().joseName());
+        }
+
+        final Cipher cipher = pool.acquire();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, initializationVector.getBytes()));
+            aad.updateAAD(cipher);
+
+            /* GCM buffers everything until the tag is verified */
+            final int length = cipherText.update(cipher, plainText);
+            return length + authenticationTag.doFinal(cipher, plainText);
+        } finally {
+            pool.release(cipher);
+        }
+    }
+}
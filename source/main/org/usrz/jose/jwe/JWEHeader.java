@@ -44,6 +44,20 @@ public interface JWEHeader extends JOSEHeader<JWEAlgorithm> {
     public static final String ENCRYPTION = "enc";
     /** The {@code zip} JWE header field name. */
     public static final String COMPRESSION = "zip";
+    /** The {@code iv} JWE header field name (AES GCM key wrapping). */
+    public static final String INITIALIZATION_VECTOR = "iv";
+    /** The {@code tag} JWE header field name (AES GCM key wrapping). */
+    public static final String AUTHENTICATION_TAG = "tag";
+    /** The {@code epk} JWE header field name (ECDH-ES key agreement). */
+    public static final String EPHEMERAL_PUBLIC_KEY = "epk";
+    /** The {@code apu} JWE header field name (ECDH-ES key agreement). */
+    public static final String AGREEMENT_PARTY_U_INFO = "apu";
+    /** The {@code apv} JWE header field name (ECDH-ES key agreement). */
+    public static final String AGREEMENT_PARTY_V_INFO = "apv";
+    /** The {@code p2s} JWE header field name (PBES2 key encryption). */
+    public static final String PBES2_SALT_INPUT = "p2s";
+    /** The {@code p2c} JWE header field name (PBES2 key encryption). */
+    public static final String PBES2_COUNT = "p2c";
 
     /**
      * The "enc" (encryption algorithm) Header Parameter identifies the
@@ -60,6 +74,55 @@ public interface JWEHeader extends JOSEHeader<JWEAlgorithm> {
     @JsonProperty(COMPRESSION)
     public JWECompression getCompression();
 
+    /**
+     * The "iv" (initialization vector) Header Parameter is the 96-bit
+     * initialization vector used for the AES GCM key encryption operation.
+     */
+    @JsonProperty(INITIALIZATION_VECTOR)
+    public Bytes getInitializationVector();
+
+    /**
+     * The "tag" (authentication tag) Header Parameter is the 128-bit
+     * authentication tag resulting from the AES GCM key encryption operation.
+     */
+    @JsonProperty(AUTHENTICATION_TAG)
+    public Bytes getAuthenticationTag();
+
+    /**
+     * The "epk" (ephemeral public key) Header Parameter is the public key
+     * created by the originator for use in ECDH-ES key agreement.
+     */
+    @JsonProperty(EPHEMERAL_PUBLIC_KEY)
+    public JWK<?> getEphemeralPublicKey();
+
+    /**
+     * The "apu" (agreement PartyUInfo) Header Parameter contains information
+     * about the producer, used in ECDH-ES key agreement.
+     */
+    @JsonProperty(AGREEMENT_PARTY_U_INFO)
+    public Bytes getAgreementPartyUInfo();
+
+    /**
+     * The "apv" (agreement PartyVInfo) Header Parameter contains information
+     * about the recipient, used in ECDH-ES key agreement.
+     */
+    @JsonProperty(AGREEMENT_PARTY_V_INFO)
+    public Bytes getAgreementPartyVInfo();
+
+    /**
+     * The "p2s" (PBES2 salt input) Header Parameter encodes a Salt Input
+     * value, used as part of the PBKDF2 salt value.
+     */
+    @JsonProperty(PBES2_SALT_INPUT)
+    public Bytes getPbes2SaltInput();
+
+    /**
+     * The "p2c" (PBES2 count) Header Parameter contains the PBKDF2
+     * iteration count.
+     */
+    @JsonProperty(PBES2_COUNT)
+    public Integer getPbes2Count();
+
     /* ====================================================================== */
 
     @Accessors(chain=true)
@@ -67,8 +130,10 @@ public interface JWEHeader extends JOSEHeader<JWEAlgorithm> {
     public static final class Builder
     extends JOSEHeader.Builder<JWEAlgorithm, JWEHeader, Builder> {
 
+        private static final Maker<JWEHeader> MAKER = maker(Builder.class, Impl.class);
+
         public Builder() {
-            super(Impl.class);
+            super(MAKER);
         }
 
         @Override
@@ -76,6 +141,20 @@ public interface JWEHeader extends JOSEHeader<JWEAlgorithm> {
             return super.build();
         }
 
+        @Override
+        public Builder reset() {
+            encryption = null;
+            compression = null;
+            initializationVector = null;
+            authenticationTag = null;
+            ephemeralPublicKey = null;
+            agreementPartyUInfo = null;
+            agreementPartyVInfo = null;
+            pbes2SaltInput = null;
+            pbes2Count = null;
+            return super.reset();
+        }
+
         /* ================================================================== */
 
         /**
@@ -93,6 +172,55 @@ public interface JWEHeader extends JOSEHeader<JWEAlgorithm> {
         @Setter(onMethod=@__({@JsonProperty(COMPRESSION)}))
         private JWECompression compression;
 
+        /**
+         * The "iv" (initialization vector) Header Parameter is the 96-bit
+         * initialization vector used for the AES GCM key encryption operation.
+         */
+        @Setter(onMethod=@__({@JsonProperty(INITIALIZATION_VECTOR)}))
+        private Bytes initializationVector;
+
+        /**
+         * The "tag" (authentication tag) Header Parameter is the 128-bit
+         * authentication tag resulting from the AES GCM key encryption operation.
+         */
+        @Setter(onMethod=@__({@JsonProperty(AUTHENTICATION_TAG)}))
+        private Bytes authenticationTag;
+
+        /**
+         * The "epk" (ephemeral public key) Header Parameter is the public key
+         * created by the originator for use in ECDH-ES key agreement.
+         */
+        @Setter(onMethod=@__({@JsonProperty(EPHEMERAL_PUBLIC_KEY)}))
+        private JWK<?> ephemeralPublicKey;
+
+        /**
+         * The "apu" (agreement PartyUInfo) Header Parameter contains information
+         * about the producer, used in ECDH-ES key agreement.
+         */
+        @Setter(onMethod=@__({@JsonProperty(AGREEMENT_PARTY_U_INFO)}))
+        private Bytes agreementPartyUInfo;
+
+        /**
+         * The "apv" (agreement PartyVInfo) Header Parameter contains information
+         * about the recipient, used in ECDH-ES key agreement.
+         */
+        @Setter(onMethod=@__({@JsonProperty(AGREEMENT_PARTY_V_INFO)}))
+        private Bytes agreementPartyVInfo;
+
+        /**
+         * The "p2s" (PBES2 salt input) Header Parameter encodes a Salt Input
+         * value, used as part of the PBKDF2 salt value.
+         */
+        @Setter(onMethod=@__({@JsonProperty(PBES2_SALT_INPUT)}))
+        private Bytes pbes2SaltInput;
+
+        /**
+         * The "p2c" (PBES2 count) Header Parameter contains the PBKDF2
+         * iteration count.
+         */
+        @Setter(onMethod=@__({@JsonProperty(PBES2_COUNT)}))
+        private Integer pbes2Count;
+
         @Data
         private static final class Impl implements JWEHeader {
 
@@ -115,6 +243,13 @@ public interface JWEHeader extends JOSEHeader<JWEAlgorithm> {
             /* JWE */
             private final JWEEncryption encryption;
             private final JWECompression compression;
+            private final Bytes initializationVector;
+            private final Bytes authenticationTag;
+            private final JWK<?> ephemeralPublicKey;
+            private final Bytes agreementPartyUInfo;
+            private final Bytes agreementPartyVInfo;
+            private final Bytes pbes2SaltInput;
+            private final Integer pbes2Count;
         }
     }
 }
@@ -0,0 +1,232 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.Destroyable;
+
+import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.shared.Bytes;
+
+/**
+ * An engine managing the <i>Content Encryption Key</i> of {@link JWE}s
+ * according to a specific {@link JWEAlgorithm}: creating and encrypting
+ * a new key for a recipient's {@link JWK}, and decrypting it back.
+ *
+ * <p>Engines are thread-safe and never lock: whenever it makes sense, the
+ * {@link javax.crypto.Cipher Cipher}s they use are pooled by {@link Key}
+ * (as {@linkplain JWK#toKey() converted} from each {@link JWK}), so that
+ * repeatedly using the same {@link JWK} never pays for its key schedule
+ * again.</p>
+ */
+public abstract class JWEKeyManagementEngine {
+
+    private static final Map<JWEAlgorithm, JWEKeyManagementEngine> ENGINES;
+
+    static {
+        final JWEAESKWEngine a128kw = new JWEAESKWEngine(JWEAlgorithm.A128KW, 16);
+        final JWEAESKWEngine a192kw = new JWEAESKWEngine(JWEAlgorithm.A192KW, 24);
+        final JWEAESKWEngine a256kw = new JWEAESKWEngine(JWEAlgorithm.A256KW, 32);
+
+        final Map<JWEAlgorithm, JWEKeyManagementEngine> engines = new EnumMap<>(JWEAlgorithm.class);
+        engines.put(JWEAlgorithm.RSA1_5, new JWERSAEngine(JWEAlgorithm.RSA1_5, "RSA/ECB/PKCS1Padding", null));
+        engines.put(JWEAlgorithm.RSA_OAEP, new JWERSAEngine(JWEAlgorithm.RSA_OAEP, "RSA/ECB/OAEPPadding", JWERSAEngine.OAEP));
+        engines.put(JWEAlgorithm.RSA_OAEP_256, new JWERSAEngine(JWEAlgorithm.RSA_OAEP_256, "RSA/ECB/OAEPPadding", JWERSAEngine.OAEP_256));
+        engines.put(JWEAlgorithm.A128KW, a128kw);
+        engines.put(JWEAlgorithm.A192KW, a192kw);
+        engines.put(JWEAlgorithm.A256KW, a256kw);
+        engines.put(JWEAlgorithm.ECDH_ES, new JWEECDHEngine(JWEAlgorithm.ECDH_ES, null, null));
+        engines.put(JWEAlgorithm.ECDH_ESwithA128KW, new JWEECDHEngine(JWEAlgorithm.ECDH_ESwithA128KW, a128kw, null));
+        engines.put(JWEAlgorithm.ECDH_ESwithA192KW, new JWEECDHEngine(JWEAlgorithm.ECDH_ESwithA192KW, a192kw, null));
+        engines.put(JWEAlgorithm.ECDH_ESwithA256KW, new JWEECDHEngine(JWEAlgorithm.ECDH_ESwithA256KW, a256kw, null));
+        engines.put(JWEAlgorithm.PBES2_HS256withA128KW, new JWEPBES2Engine(JWEAlgorithm.PBES2_HS256withA128KW, "HmacSHA256", a128kw));
+        engines.put(JWEAlgorithm.PBES2_HS384withA192KW, new JWEPBES2Engine(JWEAlgorithm.PBES2_HS384withA192KW, "HmacSHA384", a192kw));
+        engines.put(JWEAlgorithm.PBES2_HS512withA256KW, new JWEPBES2Engine(JWEAlgorithm.PBES2_HS512withA256KW, "HmacSHA512", a256kw));
+        engines.put(JWEAlgorithm.A128GCMKW, new JWEAESGCMKWEngine(JWEAlgorithm.A128GCMKW, 16));
+        engines.put(JWEAlgorithm.A192GCMKW, new JWEAESGCMKWEngine(JWEAlgorithm.A192GCMKW, 24));
+        engines.put(JWEAlgorithm.A256GCMKW, new JWEAESGCMKWEngine(JWEAlgorithm.A256GCMKW, 32));
+        ENGINES = Collections.unmodifiableMap(engines);
+    }
+
+    /**
+     * Return the {@link JWEKeyManagementEngine} for the specified
+     * {@link JWEAlgorithm}.
+     *
+     * @throws IllegalArgumentException If the algorithm is not supported.
+     */
+    public static JWEKeyManagementEngine getInstance(JWEAlgorithm algorithm) {
+        final JWEKeyManagementEngine engine = ENGINES.get(algorithm);
+        if (engine == null) throw new IllegalArgumentException("Unsupported JWE algorithm " + algorithm);
+        return engine;
+    }
+
+    /**
+     * Return a new {@link JWEKeyManagementEngine} for the specified ECDH-ES
+     * {@link JWEAlgorithm}, taking its ephemeral key pairs from the given
+     * {@link JWEEphemeralKeyPool} when encrypting.
+     *
+     * @throws IllegalArgumentException If the algorithm is not supported,
+     *                                  or does not use ephemeral keys.
+     */
+    public static JWEKeyManagementEngine getInstance(JWEAlgorithm algorithm, JWEEphemeralKeyPool keyPairs) {
+        final JWEKeyManagementEngine engine = getInstance(algorithm);
+        if (engine instanceof JWEECDHEngine) return ((JWEECDHEngine) engine).withKeyPairs(keyPairs);
+        throw new IllegalArgumentException("JWE algorithm " + algorithm + " does not use ephemeral keys");
+    }
+
+    /**
+     * Return a new {@link JWEKeyManagementEngine} for the specified RSA
+     * {@link JWEAlgorithm}, caching the keys it decrypts in the given
+     * {@link JWEContentKeyCache}.
+     *
+     * @throws IllegalArgumentException If the algorithm is not supported,
+     *                                  or does not decrypt with RSA.
+     */
+    public static JWEKeyManagementEngine getInstance(JWEAlgorithm algorithm, JWEContentKeyCache cache) {
+        final JWEKeyManagementEngine engine = getInstance(algorithm);
+        if (engine instanceof JWERSAEngine) return ((JWERSAEngine) engine).withCache(cache);
+        throw new IllegalArgumentException("JWE algorithm " + algorithm + " does not decrypt with RSA");
+    }
+
+    /**
+     * Return a new {@link JWEKeyManagementEngine} for the specified PBES2
+     * {@link JWEAlgorithm}, deriving its keys with the given
+     * {@link JWEPasswordKeyDeriver}.
+     *
+     * @throws IllegalArgumentException If the algorithm is not supported,
+     *                                  or does not derive keys from passwords.
+     */
+    public static JWEKeyManagementEngine getInstance(JWEAlgorithm algorithm, JWEPasswordKeyDeriver deriver) {
+        final JWEKeyManagementEngine engine = getInstance(algorithm);
+        if (engine instanceof JWEPBES2Engine) return ((JWEPBES2Engine) engine).withDeriver(deriver);
+        throw new IllegalArgumentException("JWE algorithm " + algorithm + " does not derive keys from passwords");
+    }
+
+    /* ====================================================================== */
+
+    private final JWEAlgorithm algorithm;
+
+    JWEKeyManagementEngine(JWEAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Return the {@link JWEAlgorithm} implemented by this engine.
+     */
+    public final JWEAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Create a new <i>Content Encryption Key</i> for the specified
+     * {@link JWEEncryption}, and encrypt it for the given {@link JWK}.
+     *
+     * <p>The algorithm, the encryption and any other parameter required by
+     * this engine (for example {@code iv} and {@code tag}) are set on the
+     * given {@link JWEHeader.Builder}, while the encrypted key is set on the
+     * given {@link JWE.Builder}. Parameters set by this engine (including
+     * the optional {@code apu} and {@code apv} ones for key agreement)
+     * must not be set by callers.</p>
+     *
+     * @return The new <i>Content Encryption Key</i>.
+     * @throws InvalidKeyException If the {@link JWK} can not be used by
+     *                             this engine.
+     */
+    public abstract SecretKey encrypt(JWK<?> jwk, JWEEncryption encryption, JWEHeader.Builder header, JWE.Builder builder)
+    throws GeneralSecurityException;
+
+    /**
+     * Decrypt the <i>Content Encryption Key</i> of a {@link JWE} with the
+     * given {@link JWK}, reading any parameter required by this engine from
+     * the specified {@link JWEHeader}.
+     *
+     * @return The decrypted <i>Content Encryption Key</i>.
+     * @throws InvalidKeyException If the {@link JWK} can not be used by
+     *                             this engine, or if the key could not be
+     *                             decrypted.
+     */
+    public abstract SecretKey decrypt(JWK<?> jwk, JWEHeader header, Bytes encryptedKey)
+    throws GeneralSecurityException;
+
+    /**
+     * Decrypt the <i>Content Encryption Key</i> of the specified {@link JWE}
+     * with the given {@link JWK}.
+     *
+     * @return The decrypted <i>Content Encryption Key</i>.
+     * @throws InvalidKeyException If the {@link JWK} can not be used by
+     *                             this engine, or if the key could not be
+     *                             decrypted.
+     */
+    public SecretKey decrypt(JWK<?> jwk, JWE jwe)
+    throws GeneralSecurityException {
+        return decrypt(jwk, jwe.getHeader(), jwe.getEncryptedKey());
+    }
+
+    /* ====================================================================== */
+
+    /* Check that the JWK can be used by this engine, and cast it */
+    final <J extends JWK<?>> J checkKey(JWK<?> jwk, Class<J> type)
+    throws InvalidKeyException {
+        if (jwk == null) throw new NullPointerException("Null JWK");
+
+        if (!type.isInstance(jwk)) {
+            throw new InvalidKeyException("Key type " + jwk.getKeyType() + " not supported by " + algorithm.joseName());
+        } else if ((jwk.getAlgorithm() != null) && (jwk.getAlgorithm() != algorithm)) {
+            throw new InvalidKeyException("Key for " + jwk.getAlgorithm().joseName() + " not supported by " + algorithm.joseName());
+        } else if ((jwk instanceof Destroyable) && ((Destroyable) jwk).isDestroyed()) {
+            throw new InvalidKeyException("Key destroyed");
+        }
+        return type.cast(jwk);
+    }
+
+    /* Set the algorithm and encryption on a header */
+    final void header(JWEHeader.Builder header, JWEEncryption encryption) {
+        header.setAlgorithm(algorithm);
+        header.setEncryption(encryption);
+    }
+
+    /* Return the length of the Content Encryption Key for a header */
+    static int contentKeyLength(JWEHeader header) {
+        return JWEEncryptionEngine.getInstance(header.getEncryption()).getKeyLength();
+    }
+
+    /* Create a new random Content Encryption Key */
+    static SecretKey contentKey(JWEEncryption encryption) {
+        final byte[] bytes = new byte[JWEEncryptionEngine.getInstance(encryption).getKeyLength()];
+        try {
+            JWEEncryptionEngine.RANDOM.nextBytes(bytes);
+            return new SecretKeySpec(bytes, "AES");
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + algorithm.joseName() + "]";
+    }
+}
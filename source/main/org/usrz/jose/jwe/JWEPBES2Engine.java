@@ -0,0 +1,148 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.oct.OctetSequenceJWK;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
+
+/**
+ * A {@link JWEKeyManagementEngine} for the PBES2 {@link JWEAlgorithm}s,
+ * where the key value of an {@link OctetSequenceJWK} is the password.
+ *
+ * <p>Key encryption keys are derived by a {@link JWEPasswordKeyDeriver},
+ * and when decrypting they are cached <em>off-heap</em> by it. Either way
+ * derived keys are only copied on the heap for as long as we use them, to
+ * wrap or unwrap with ciphers the AES key wrapping engine pools with no
+ * key (pooling ciphers by key would keep them there).</p>
+ */
+final class JWEPBES2Engine extends JWEKeyManagementEngine {
+
+    /* RFC 7518 requires at least 8, we generate twice as many */
+    private static final int MINIMUM_SALT_INPUT_LENGTH = 8;
+    private static final int SALT_INPUT_LENGTH = 16;
+
+    private final String macAlgorithm;
+    private final JWEAESKWEngine wrapper;
+    private final JWEPasswordKeyDeriver deriver;
+    private final byte[] algorithmName;
+
+    JWEPBES2Engine(JWEAlgorithm algorithm, String macAlgorithm, JWEAESKWEngine wrapper) {
+        this(algorithm, macAlgorithm, wrapper, null);
+    }
+
+    private JWEPBES2Engine(JWEAlgorithm algorithm, String macAlgorithm, JWEAESKWEngine wrapper, JWEPasswordKeyDeriver deriver) {
+        super(algorithm);
+        this.macAlgorithm = macAlgorithm;
+        this.wrapper = wrapper;
+        this.deriver = deriver;
+        algorithmName = algorithm.joseName().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return a new engine for the same algorithm, deriving its keys with
+     * the specified {@link JWEPasswordKeyDeriver}.
+     */
+    JWEPBES2Engine withDeriver(JWEPasswordKeyDeriver deriver) {
+        if (deriver == null) throw new NullPointerException("Null password key deriver");
+        return new JWEPBES2Engine(getAlgorithm(), macAlgorithm, wrapper, deriver);
+    }
+
+    /* The default deriver is only created (with its threads) when needed */
+    private JWEPasswordKeyDeriver deriver() {
+        return deriver != null ? deriver : JWEPasswordKeyDeriver.defaultInstance();
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public SecretKey encrypt(JWK<?> jwk, JWEEncryption encryption, JWEHeader.Builder header, JWE.Builder builder)
+    throws GeneralSecurityException {
+        final OctetSequenceJWK password = password(jwk);
+        final JWEPasswordKeyDeriver deriver = deriver();
+        final int count = deriver.count();
+
+        final byte[] saltInput = new byte[SALT_INPUT_LENGTH];
+        JWEEncryptionEngine.RANDOM.nextBytes(saltInput);
+        final Bytes salt = new Bytes(saltInput);
+
+        final SecretKey key = deriver.derive(password, getAlgorithm(), salt, count, false,
+                                             () -> derive(password.getKeyValue(), salt, count));
+        final SecretKey contentKey = contentKey(encryption);
+        builder.setEncryptedKey(new Bytes(wrapper.wrapOnce(key, contentKey)));
+
+        header(header, encryption);
+        header.setPbes2SaltInput(salt);
+        header.setPbes2Count(count);
+        return contentKey;
+    }
+
+    @Override
+    public SecretKey decrypt(JWK<?> jwk, JWEHeader header, Bytes encryptedKey)
+    throws GeneralSecurityException {
+        final OctetSequenceJWK password = password(jwk);
+        final Bytes salt = header.getPbes2SaltInput();
+        final Integer count = header.getPbes2Count();
+
+        if ((salt == null) || (count == null)) {
+            throw new InvalidKeyException("Missing salt input or iteration count for " + getAlgorithm().joseName());
+        } else if (salt.length() < MINIMUM_SALT_INPUT_LENGTH) {
+            throw new InvalidKeyException("Salt input too short for " + getAlgorithm().joseName());
+        }
+
+        final SecretKey key = deriver().derive(password, getAlgorithm(), salt, count, true,
+                                               () -> derive(password.getKeyValue(), salt, count));
+        return wrapper.unwrapOnce(key, encryptedKey, contentKeyLength(header));
+    }
+
+    /* ====================================================================== */
+
+    private OctetSequenceJWK password(JWK<?> jwk)
+    throws InvalidKeyException {
+        final OctetSequenceJWK password = checkKey(jwk, OctetSequenceJWK.class);
+        if (password.getKeyValue().length() == 0) throw new InvalidKeyException("Empty password");
+        return password;
+    }
+
+    /* The salt is our algorithm name, a zero byte, and the salt input */
+    private SecretKey derive(Secret password, Bytes saltInput, int count)
+    throws GeneralSecurityException {
+        final byte[] salt = new byte[algorithmName.length + 1 + saltInput.length()];
+        System.arraycopy(algorithmName, 0, salt, 0, algorithmName.length);
+        saltInput.copyTo(salt, algorithmName.length + 1);
+
+        final byte[] derived = new byte[wrapper.getKeyLength()];
+        try {
+            /* Never pooled: looking it up costs nothing compared to PBKDF2 */
+            final Mac mac = Mac.getInstance(macAlgorithm);
+            mac.init(password.toSecretKey(macAlgorithm));
+            JWEPBKDF2.derive(mac, salt, count, derived);
+            return new SecretKeySpec(derived, "AES");
+        } finally {
+            Arrays.fill(derived, (byte) 0);
+        }
+    }
+}
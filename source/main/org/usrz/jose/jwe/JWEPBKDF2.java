@@ -0,0 +1,75 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+
+/**
+ * The <i>PBKDF2</i> key derivation function (RFC 2898, section 5.2) as used
+ * by the PBES2 {@link JWEAlgorithm}s.
+ *
+ * <p>Unlike the JCA {@code PBKDF2WithHmac...} factories, passwords here are
+ * arbitrary octets (never characters), and the pseudo-random function is a
+ * {@link Mac} already keyed with the password: its key schedule is computed
+ * once, and every iteration digests straight into the same buffer.</p>
+ */
+final class JWEPBKDF2 {
+
+    private JWEPBKDF2() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /**
+     * Derive a key with the specified {@link Mac}, already initialized with
+     * the password.
+     *
+     * @param salt The full salt (not the {@code p2s} salt input alone).
+     * @param count The iteration count.
+     * @param output The array where the derived key will be written, its
+     *               length being the length of the derived key.
+     */
+    static void derive(Mac mac, byte[] salt, int count, byte[] output)
+    throws GeneralSecurityException {
+        final int length = mac.getMacLength();
+        final byte[] u = new byte[length];
+        final byte[] t = new byte[length];
+        try {
+            for (int block = 1, offset = 0; offset < output.length; block ++, offset += length) {
+                mac.update(salt);
+                mac.update((byte) (block >>> 24));
+                mac.update((byte) (block >>> 16));
+                mac.update((byte) (block >>> 8));
+                mac.update((byte) block);
+                mac.doFinal(u, 0);
+                System.arraycopy(u, 0, t, 0, length);
+
+                for (int iteration = 1; iteration < count; iteration ++) {
+                    mac.update(u);
+                    mac.doFinal(u, 0);
+                    for (int x = 0; x < length; x ++) t[x] ^= u[x];
+                }
+
+                System.arraycopy(t, 0, output, offset, Math.min(length, output.length - offset));
+            }
+        } finally {
+            Arrays.fill(u, (byte) 0);
+            Arrays.fill(t, (byte) 0);
+        }
+    }
+}
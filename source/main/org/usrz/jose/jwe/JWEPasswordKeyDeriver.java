@@ -0,0 +1,482 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.SecretKey;
+
+import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.JWKKeyCache;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
+
+/**
+ * The PBKDF2 key derivation for the PBES2 {@link JWEAlgorithm}s, run on a
+ * dedicated, bounded {@link Executor} and with derived keys cached.
+ *
+ * <p>With iteration counts in the hundreds of thousands, each derivation
+ * burns milliseconds of CPU: they are executed by a fixed number of
+ * threads with a bounded queue of pending derivations, so request threads
+ * only ever wait for them, and when the queue is full derivations are
+ * rejected (with a {@link RejectedExecutionException}) rather than piling
+ * up. Iteration counts above the {@linkplain #maximumCount() maximum} are
+ * rejected before any work is done.</p>
+ *
+ * <p>Keys derived when decrypting are cached by <em>identity</em> of the
+ * password JWK, salt input ({@code p2s}) and iteration count ({@code p2c}):
+ * concurrent decryptions needing the same key share a single derivation.
+ * As in the {@link JWEContentKeyCache}, cached keys are stored
+ * <em>off-heap</em> (as {@link Secret}s) and are zeroed when evicted.
+ * Entries expire after a fixed time to live, and are evicted in the order
+ * they were added when the cache grows past its maximum size.</p>
+ *
+ * <p>Password JWKs are referenced <em>weakly</em>, and keys derived from
+ * them are evicted as soon as they are {@linkplain
+ * javax.security.auth.Destroyable#destroy() destroyed} (or garbage
+ * collected). Keys derived when encrypting (always with a fresh salt) are
+ * never cached.</p>
+ *
+ * @see JWEKeyManagementEngine#getInstance(JWEAlgorithm, JWEPasswordKeyDeriver)
+ */
+public final class JWEPasswordKeyDeriver implements AutoCloseable {
+
+    /** The default iteration count used when encrypting. */
+    public static final int DEFAULT_COUNT = 100000;
+    /** The default maximum iteration count accepted when decrypting. */
+    public static final int DEFAULT_MAXIMUM_COUNT = 1000000;
+
+    /* Half our processors, with a few pending derivations per thread */
+    private static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int QUEUE_SIZE_PER_THREAD = 16;
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+    private static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toNanos(10);
+
+    /* Used by engines with no deriver configured, threads started lazily */
+    private static final class Default {
+        private static final JWEPasswordKeyDeriver INSTANCE = new JWEPasswordKeyDeriver(DEFAULT_COUNT, DEFAULT_MAXIMUM_COUNT, DEFAULT_THREADS);
+    }
+
+    static JWEPasswordKeyDeriver defaultInstance() {
+        return Default.INSTANCE;
+    }
+
+    /* ====================================================================== */
+
+    private final ConcurrentHashMap<Object, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final ReferenceQueue<JWK<?>> queue = new ReferenceQueue<>();
+    private final JWKKeyCache.Listener listener = this::evict;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final ExecutorService owned;
+    private final Executor executor;
+    private final int count;
+    private final int maximumCount;
+    private final int cacheSize;
+    private final long timeToLive;
+
+    /**
+     * Create a new {@link JWEPasswordKeyDeriver} running derivations on the
+     * specified number of its own (daemon) threads, and with a default cache.
+     *
+     * @param count The iteration count used when encrypting.
+     * @param maximumCount The maximum iteration count accepted.
+     * @param threads The number of threads running derivations.
+     */
+    public JWEPasswordKeyDeriver(int count, int maximumCount, int threads) {
+        this(count, maximumCount, executor(threads), true, DEFAULT_CACHE_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Create a new {@link JWEPasswordKeyDeriver} running derivations on the
+     * given (bounded) {@link Executor}, and caching at most the specified
+     * number of keys, each for at most the given time.
+     *
+     * @param count The iteration count used when encrypting.
+     * @param maximumCount The maximum iteration count accepted.
+     */
+    public JWEPasswordKeyDeriver(int count, int maximumCount, Executor executor, int cacheSize, long timeToLive, TimeUnit unit) {
+        this(count, maximumCount, executor, false, cacheSize, unit.toNanos(timeToLive));
+    }
+
+    private JWEPasswordKeyDeriver(int count, int maximumCount, Executor executor, boolean owned, int cacheSize, long timeToLive) {
+        if (executor == null) throw new NullPointerException("Null executor");
+        if (maximumCount < 1) throw new IllegalArgumentException("Invalid maximum count " + maximumCount);
+        if ((count < 1) || (count > maximumCount)) throw new IllegalArgumentException("Invalid count " + count);
+        if (cacheSize < 1) throw new IllegalArgumentException("Invalid cache size " + cacheSize);
+        if (timeToLive <= 0) throw new IllegalArgumentException("Invalid time to live " + timeToLive);
+
+        this.owned = owned ? (ExecutorService) executor : null;
+        this.executor = executor;
+        this.count = count;
+        this.maximumCount = maximumCount;
+        this.cacheSize = cacheSize;
+        this.timeToLive = timeToLive;
+
+        /* Evict keys derived from destroyed passwords */
+        JWKKeyCache.addListener(listener);
+    }
+
+    private static ExecutorService executor(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Invalid number of threads " + threads);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD), (runnable) -> {
+                    final Thread thread = new Thread(runnable, JWEPasswordKeyDeriver.class.getSimpleName());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+    /* ====================================================================== */
+
+    /**
+     * Derive a key for the specified password, salt input and iteration
+     * count with the given {@link Derivation}, run by our {@link Executor},
+     * and optionally cache it.
+     *
+     * @throws InvalidKeyException If the iteration count is not accepted.
+     * @throws RejectedExecutionException If too many derivations are pending.
+     */
+    SecretKey derive(JWK<?> password, JWEAlgorithm algorithm, Bytes saltInput, int count, boolean cached, Derivation derivation)
+    throws GeneralSecurityException {
+        if ((count < 1) || (count > maximumCount)) {
+            throw new InvalidKeyException("Iteration count " + count + " not accepted by " + algorithm.joseName());
+        }
+
+        if (!cached) return derive(derivation);
+        expunge();
+
+        final Entry entry = entries.get(new Lookup(password, algorithm, saltInput, count));
+        if ((entry != null) && (entry.expires - System.nanoTime() <= 0)) {
+            remove(entry);
+        } else if (entry != null) {
+            final SecretKey key = hit(entry);
+            if (key != null) return key;
+        }
+
+        /* Never hold on a window over someone else's (larger) array */
+        final Entry created = new Entry(password, algorithm, new Bytes(saltInput.getBytes()), count,
+                                        System.nanoTime() + timeToLive, queue);
+
+        /* Someone else started the same derivation? Wait for it */
+        final Entry existing = entries.putIfAbsent(created, created);
+        if (existing != null) {
+            final SecretKey key = hit(existing);
+            if (key != null) return key;
+            misses.increment();
+            return derive(derivation);
+        }
+
+        misses.increment();
+        order.offer(created);
+        evict();
+
+        execute(created.future, () -> secret(derivation.derive()));
+        final SecretKey key;
+        try {
+            key = key(created);
+        } catch (GeneralSecurityException | RuntimeException exception) {
+            entries.remove(created, created);
+            throw exception;
+        }
+
+        /* Evicted (and destroyed) as soon as derived? Derive once more */
+        return key != null ? key : derive(derivation);
+    }
+
+    /**
+     * Discard all cached keys and, if the {@link Executor} running
+     * derivations was created by this instance, shut it down.
+     */
+    @Override
+    public void close() {
+        JWKKeyCache.removeListener(listener);
+        if (owned != null) owned.shutdownNow();
+        Entry entry;
+        while ((entry = order.poll()) != null) remove(entry);
+        entries.values().forEach(this::remove);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the iteration count used when encrypting.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Return the maximum iteration count accepted.
+     */
+    public int maximumCount() {
+        return maximumCount;
+    }
+
+    /**
+     * Return the number of keys currently cached.
+     */
+    public int size() {
+        expunge();
+        return entries.size();
+    }
+
+    /**
+     * Return the number of derivations spared by a cached key.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Return the number of keys that had to be derived when decrypting.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Return the number of derivations rejected as too many were pending.
+     */
+    public long rejections() {
+        return rejections.sum();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[count=" + count + ",maximumCount=" + maximumCount + ",size=" + size() + "]";
+    }
+
+    /* ====================================================================== */
+
+    private SecretKey derive(Derivation derivation)
+    throws GeneralSecurityException {
+        final CompletableFuture<SecretKey> future = new CompletableFuture<>();
+        execute(future, derivation::derive);
+        return await(future);
+    }
+
+    private <T> void execute(CompletableFuture<T> future, Task<T> task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.run());
+                } catch (Throwable throwable) {
+                    future.completeExceptionally(throwable);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            /* Whoever is waiting for this derivation must know */
+            rejections.increment();
+            future.completeExceptionally(exception);
+        }
+    }
+
+    /* Counted as soon as we wait, unless destroyed before we got it */
+    private SecretKey hit(Entry entry)
+    throws GeneralSecurityException {
+        hits.increment();
+        final SecretKey key = key(entry);
+        if (key != null) return key;
+        hits.decrement();
+        return null;
+    }
+
+    /* A copy of a cached key, or null if it was destroyed meanwhile */
+    private static SecretKey key(Entry entry)
+    throws GeneralSecurityException {
+        final Secret secret = await(entry.future);
+        try {
+            final SecretKey key = secret.toSecretKey("AES");
+            if (!secret.isDestroyed()) return key;
+        } catch (IllegalStateException exception) {
+            /* Evicted (and destroyed) since we got it */
+        }
+        return null;
+    }
+
+    /* Move a derived key off-heap */
+    private static Secret secret(SecretKey key) {
+        final byte[] encoded = key.getEncoded();
+        try {
+            return new Secret(encoded);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    /* Keys still being derived are destroyed as soon as they are */
+    private void remove(Entry entry) {
+        if (entries.remove(entry, entry)) entry.future.thenAccept((secret) -> secret.destroy());
+    }
+
+    /* Called when a password is destroyed */
+    private void evict(JWK<?> password) {
+        for (Entry entry: entries.values()) if (entry.get() == password) remove(entry);
+    }
+
+    /* The head of our queue is the oldest entry, and first to expire */
+    private void evict() {
+        Entry head;
+        while ((head = order.peek()) != null) {
+            if ((head.expires - System.nanoTime() > 0) && (entries.size() <= cacheSize)) break;
+            if ((head = order.poll()) != null) remove(head);
+        }
+    }
+
+    /* Drop entries whose password was garbage collected */
+    private void expunge() {
+        Reference<? extends JWK<?>> reference;
+        while ((reference = queue.poll()) != null) remove((Entry) reference);
+    }
+
+    private static <T> T await(CompletableFuture<T> future)
+    throws GeneralSecurityException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new GeneralSecurityException("Interrupted waiting for key derivation", exception);
+        } catch (ExecutionException exception) {
+            final Throwable cause = exception.getCause();
+            if (cause instanceof GeneralSecurityException) throw (GeneralSecurityException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new GeneralSecurityException("Exception deriving key", cause);
+        }
+    }
+
+    /* ====================================================================== */
+
+    /*
+     * Cache entries (and their keys): entries weakly reference their password,
+     * while lookups (cheap and short lived) hold it strongly. Both compare the
+     * password on identity, and everything else on value.
+     */
+    private static final class Entry extends WeakReference<JWK<?>> {
+
+        private final CompletableFuture<Secret> future = new CompletableFuture<>();
+        private final JWEAlgorithm algorithm;
+        private final Bytes saltInput;
+        private final int count;
+        private final long expires;
+        private final int hash;
+
+        private Entry(JWK<?> password, JWEAlgorithm algorithm, Bytes saltInput, int count, long expires, ReferenceQueue<JWK<?>> queue) {
+            super(password, queue);
+            this.algorithm = algorithm;
+            this.saltInput = saltInput;
+            this.count = count;
+            this.expires = expires;
+            hash = hash(password, algorithm, saltInput, count);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) return true;
+            if (object instanceof Lookup) return ((Lookup) object).equals(this);
+            if (!(object instanceof Entry)) return false;
+            final Entry entry = (Entry) object;
+            final JWK<?> password = get();
+            return (password != null) && (password == entry.get())
+                && (algorithm == entry.algorithm)
+                && (count == entry.count)
+                && saltInput.equals(entry.saltInput);
+        }
+    }
+
+    private static final class Lookup {
+
+        private final JWK<?> password;
+        private final JWEAlgorithm algorithm;
+        private final Bytes saltInput;
+        private final int count;
+
+        private Lookup(JWK<?> password, JWEAlgorithm algorithm, Bytes saltInput, int count) {
+            this.password = password;
+            this.algorithm = algorithm;
+            this.saltInput = saltInput;
+            this.count = count;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(password, algorithm, saltInput, count);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) return true;
+            if (!(object instanceof Entry)) return false;
+            final Entry entry = (Entry) object;
+            return (password == entry.get())
+                && (algorithm == entry.algorithm)
+                && (count == entry.count)
+                && saltInput.equals(entry.saltInput);
+        }
+    }
+
+    private static int hash(JWK<?> password, JWEAlgorithm algorithm, Bytes saltInput, int count) {
+        return ((System.identityHashCode(password) * 31 + algorithm.hashCode()) * 31 + saltInput.hashCode()) * 31 + count;
+    }
+
+    /**
+     * Derive a key, on one of our {@link Executor}'s threads.
+     */
+    @FunctionalInterface
+    static interface Derivation {
+
+        SecretKey derive()
+        throws GeneralSecurityException;
+
+    }
+
+    /* A task run on our executor */
+    @FunctionalInterface
+    private static interface Task<T> {
+
+        T run()
+        throws GeneralSecurityException;
+
+    }
+}
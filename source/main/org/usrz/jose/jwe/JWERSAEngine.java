@@ -0,0 +1,175 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.interfaces.RSAKey;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Arrays;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.rsa.RSAPrivateJWK;
+import org.usrz.jose.jwk.rsa.RSAPublicJWK;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.KeyedPool;
+
+/**
+ * A {@link JWEKeyManagementEngine} for the RSA {@link JWEAlgorithm}s
+ * (RSAES-PKCS1-v1_5 and RSAES-OAEP).
+ *
+ * <p>{@link Cipher}s are pooled by key, already initialized for encrypting
+ * (with public keys) or decrypting (with private keys). As required by
+ * RFC 7518, keys shorter than 2048 bits are never accepted.</p>
+ *
+ * <p>For RSA1_5, a random key is generated <em>before</em> decrypting: if
+ * the encrypted key is not properly padded (or does not hold a key of the
+ * right length), the random key is returned in its place, so that the
+ * failure only shows when authenticating the content, and no padding oracle
+ * is exposed (RFC 7516, section 11.5).</p>
+ *
+ * <p>An optional {@link JWEContentKeyCache} can spare the private key
+ * operation altogether for encrypted keys decrypted before.</p>
+ */
+final class JWERSAEngine extends JWEKeyManagementEngine {
+
+    private static final int MINIMUM_KEY_SIZE = 2048;
+
+    /** The OAEP parameters for RSA-OAEP (the JCA defaults). */
+    static final OAEPParameterSpec OAEP = new OAEPParameterSpec("SHA-1", "MGF1", MGF1ParameterSpec.SHA1, PSource.PSpecified.DEFAULT);
+    /** The OAEP parameters for RSA-OAEP-256 (SHA-256 for the MGF1, too). */
+    static final OAEPParameterSpec OAEP_256 = new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+
+    private final String transformation;
+    private final AlgorithmParameterSpec parameters;
+    private final JWEContentKeyCache cache;
+    private final KeyedPool<Key, Cipher> encrypters;
+    private final KeyedPool<Key, Cipher> decrypters;
+
+    JWERSAEngine(JWEAlgorithm algorithm, String transformation, AlgorithmParameterSpec parameters) {
+        this(algorithm, transformation, parameters, null);
+    }
+
+    private JWERSAEngine(JWEAlgorithm algorithm, String transformation, AlgorithmParameterSpec parameters, JWEContentKeyCache cache) {
+        super(algorithm);
+        this.transformation = transformation;
+        this.parameters = parameters;
+        this.cache = cache;
+        encrypters = new KeyedPool<>((key) -> create(Cipher.WRAP_MODE, key));
+        decrypters = new KeyedPool<>((key) -> create(Cipher.DECRYPT_MODE, key));
+    }
+
+    /**
+     * Return a new engine for the same algorithm, caching decrypted keys in
+     * the specified {@link JWEContentKeyCache}.
+     */
+    JWERSAEngine withCache(JWEContentKeyCache cache) {
+        if (cache == null) throw new NullPointerException("Null content key cache");
+        return new JWERSAEngine(getAlgorithm(), transformation, parameters, cache);
+    }
+
+    private Cipher create(int mode, Key key)
+    throws GeneralSecurityException {
+        final Cipher cipher = Cipher.getInstance(transformation);
+        if (parameters == null) {
+            cipher.init(mode, key, JWEEncryptionEngine.RANDOM);
+        } else {
+            cipher.init(mode, key, parameters, JWEEncryptionEngine.RANDOM);
+        }
+        return cipher;
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public SecretKey encrypt(JWK<?> jwk, JWEEncryption encryption, JWEHeader.Builder header, JWE.Builder builder)
+    throws GeneralSecurityException {
+        final Key key = checkSize(checkKey(jwk, RSAPublicJWK.class).toKey());
+        final SecretKey contentKey = contentKey(encryption);
+
+        final KeyedPool.Entry<Key, Cipher> entry = encrypters.acquire(key);
+        builder.setEncryptedKey(new Bytes(entry.get().wrap(contentKey)));
+        encrypters.release(entry);
+
+        header(header, encryption);
+        return contentKey;
+    }
+
+    @Override
+    public SecretKey decrypt(JWK<?> jwk, JWEHeader header, Bytes encryptedKey)
+    throws GeneralSecurityException {
+        final RSAPrivateJWK recipient = checkKey(jwk, RSAPrivateJWK.class);
+        final Key key = checkSize(recipient.toKey());
+        final int contentKeyLength = contentKeyLength(header);
+
+        final int length = (((RSAKey) key).getModulus().bitLength() + 7) / 8;
+        if ((encryptedKey == null) || (encryptedKey.length() != length)) {
+            throw new InvalidKeyException("Invalid encrypted key length for " + getAlgorithm().joseName());
+        }
+
+        if (cache == null) return decrypt(key, encryptedKey, contentKeyLength);
+        return cache.get(getAlgorithm(), header.getEncryption(), recipient.getKeyId(), encryptedKey,
+                         () -> decrypt(key, encryptedKey, contentKeyLength));
+    }
+
+    /* ====================================================================== */
+
+    private SecretKey decrypt(Key key, Bytes encryptedKey, int contentKeyLength)
+    throws GeneralSecurityException {
+        final byte[] random = parameters == null ? new byte[contentKeyLength] : null;
+        if (random != null) JWEEncryptionEngine.RANDOM.nextBytes(random);
+
+        final byte[] decrypted = new byte[encryptedKey.length()];
+        try {
+            final KeyedPool.Entry<Key, Cipher> entry = decrypters.acquire(key);
+            int length;
+            try {
+                length = encryptedKey.doFinal(entry.get(), decrypted, 0);
+            } catch (BadPaddingException | IllegalBlockSizeException exception) {
+                if (random == null) throw new InvalidKeyException("Unable to decrypt key for " + getAlgorithm().joseName(), exception);
+                length = -1;
+            }
+
+            /* Ciphers reset themselves even on bad padding, keep this one */
+            decrypters.release(entry);
+
+            if (length == contentKeyLength) return new SecretKeySpec(decrypted, 0, length, "AES");
+            if (random != null) return new SecretKeySpec(random, "AES");
+            throw new InvalidKeyException("Invalid content encryption key length " + length);
+
+        } finally {
+            Arrays.fill(decrypted, (byte) 0);
+            if (random != null) Arrays.fill(random, (byte) 0);
+        }
+    }
+
+    private Key checkSize(Key key)
+    throws InvalidKeyException {
+        final int size = ((RSAKey) key).getModulus().bitLength();
+        if (size >= MINIMUM_KEY_SIZE) return key;
+        throw new InvalidKeyException("Key size " + size + " not supported by " + getAlgorithm().joseName());
+    }
+}
@@ -15,6 +15,7 @@
  * ========================================================================== */
 package org.usrz.jose.jwk;
 
+import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -68,21 +69,40 @@ public interface JWK<K extends Key> extends JOSEAbstract<JOSEAlgorithm> {
     @JsonProperty(KEY_OPERATIONS)
     public List<JWKKeyOperation> getKeyOperations();
 
+    /**
+     * Convert this {@link JWK} into a Java {@link Key}.
+     *
+     * <p>Conversions are {@linkplain JWKKeyCache cached}, therefore calling
+     * this method repeatedly on the same instance returns the same
+     * {@link Key} and only the first call pays for its creation.</p>
+     *
+     * @throws GeneralSecurityException If the key could not be created.
+     */
+    public K toKey()
+    throws GeneralSecurityException;
+
     @Accessors(chain=true)
     public abstract static class Builder<K extends Key,
                                          J extends JWK<K>,
                                          B extends Builder<K, J, B>>
     extends JOSEAbstract.Builder<JOSEAlgorithm, J, B> {
 
+        /* Lazily allocated, empty builders build with a shared empty list */
         @SuppressWarnings("unused")
-        private final List<JWKKeyOperation> keyOperations;
-        private final List<JWKKeyOperation> keyOperationsList;
+        private List<JWKKeyOperation> keyOperations = Collections.emptyList();
+        private List<JWKKeyOperation> keyOperationsList;
 
-        protected Builder(Class<? extends J> type) {
-            super(type);
+        protected Builder(Maker<J> maker) {
+            super(maker);
+        }
 
-            keyOperationsList = new ArrayList<>();
-            keyOperations = Collections.unmodifiableList(keyOperationsList);
+        @Override
+        public B reset() {
+            keyType = null;
+            publicKeyUse = null;
+            keyOperations = Collections.emptyList();
+            keyOperationsList = null;
+            return super.reset();
         }
 
         /* ================================================================== */
@@ -110,7 +130,7 @@ public interface JWK<K extends Key> extends JOSEAbstract<JOSEAlgorithm> {
         public B setKeyOperations(List<JWKKeyOperation> keyOperations) {
             if (keyOperations == null) return (B) this;
             keyOperations.forEach((keyOperation) -> {
-                this.keyOperationsList.add(keyOperation);
+                addKeyOperation(keyOperation);
             });
             return (B) this;
         }
@@ -118,6 +138,10 @@ public interface JWK<K extends Key> extends JOSEAbstract<JOSEAlgorithm> {
         @JsonIgnore
         @SuppressWarnings("unchecked")
         public B addKeyOperation(JWKKeyOperation keyOperation) {
+            if (keyOperationsList == null) {
+                keyOperationsList = new ArrayList<>();
+                keyOperations = Collections.unmodifiableList(keyOperationsList);
+            }
             keyOperationsList.add(keyOperation);
             return (B) this;
         }
@@ -0,0 +1,250 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwk;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.usrz.jose.shared.KeyedPool;
+
+/**
+ * A cache associating {@link JWK} instances with the Java {@link Key}s
+ * they were {@linkplain JWK#toKey() converted} to.
+ *
+ * <p>Entries are keyed on the <em>identity</em> of the {@link JWK} (never on
+ * its value, as hashing moduli and coordinates would cost about as much as
+ * converting them) and are held <em>weakly</em>: once a {@link JWK} is no
+ * longer referenced, its {@link Key} is eventually discarded as well.</p>
+ *
+ * <p>Private and secret {@link JWK}s remove themselves from this cache when
+ * {@linkplain javax.security.auth.Destroyable#destroy() destroyed}, and
+ * their {@link Key}s are then {@linkplain KeyedPool#evictAll(Object)
+ * evicted} from the pools of engines initialized with them. Other caches
+ * of material derived from {@link JWK}s can be notified as well, by
+ * registering a {@link Listener}.</p>
+ */
+public final class JWKKeyCache {
+
+    private static final ConcurrentHashMap<Object, Key> CACHE = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<JWK<?>> QUEUE = new ReferenceQueue<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final Queue<WeakReference<Listener>> LISTENERS = new ConcurrentLinkedQueue<>();
+
+    private JWKKeyCache() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the {@link Key} associated with the specified {@link JWK},
+     * converting it with the given {@link Factory} only if none was cached.
+     */
+    @SuppressWarnings("unchecked")
+    public static <J extends JWK<K>, K extends Key> K get(J jwk, Factory<J, K> factory)
+    throws GeneralSecurityException {
+        if (jwk == null) throw new NullPointerException("Null JWK");
+
+        final Key cached = CACHE.get(new Lookup(jwk));
+        if (cached != null) {
+            HITS.increment();
+            return (K) cached;
+        }
+
+        MISSES.increment();
+        expunge();
+
+        final K key = factory.create(jwk);
+        if (key == null) throw new NullPointerException("Factory returned null key");
+
+        /* Two threads converting at the same time? Both get the same key */
+        final Key existing = CACHE.putIfAbsent(new Entry(jwk, QUEUE), key);
+        return existing == null ? key : (K) existing;
+    }
+
+    /**
+     * Remove any {@link Key} associated with the specified {@link JWK}.
+     */
+    public static void evict(JWK<?> jwk) {
+        if (jwk != null) {
+            KeyedPool.evictAll(CACHE.remove(new Lookup(jwk)));
+
+            final Iterator<WeakReference<Listener>> iterator = LISTENERS.iterator();
+            while (iterator.hasNext()) {
+                final Listener listener = iterator.next().get();
+                if (listener == null) iterator.remove();
+                else listener.evicted(jwk);
+            }
+        }
+        expunge();
+    }
+
+    /**
+     * Register a {@link Listener} to be notified when a {@link JWK} is
+     * {@linkplain #evict(JWK) evicted}, normally as it was destroyed.
+     *
+     * <p>Listeners are referenced <em>weakly</em>: whoever registers one
+     * must hold on to it for as long as it needs to be notified.</p>
+     */
+    public static void addListener(Listener listener) {
+        if (listener == null) throw new NullPointerException("Null listener");
+        LISTENERS.add(new WeakReference<>(listener));
+    }
+
+    /**
+     * Remove a previously {@linkplain #addListener(Listener) registered}
+     * {@link Listener}.
+     */
+    public static void removeListener(Listener listener) {
+        LISTENERS.removeIf((reference) -> {
+            final Listener registered = reference.get();
+            return (registered == null) || (registered == listener);
+        });
+    }
+
+    /**
+     * Remove all the {@link Key}s from this cache.
+     */
+    public static void clear() {
+        CACHE.clear();
+        expunge();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the number of {@link Key}s currently cached.
+     */
+    public static int size() {
+        expunge();
+        return CACHE.size();
+    }
+
+    /**
+     * Return the number of lookups satisfied by a cached {@link Key}.
+     */
+    public static long hits() {
+        return HITS.sum();
+    }
+
+    /**
+     * Return the number of lookups requiring a {@link JWK} to be converted.
+     */
+    public static long misses() {
+        return MISSES.sum();
+    }
+
+    /* ====================================================================== */
+
+    /* Drop entries whose JWK was garbage collected */
+    private static void expunge() {
+        Reference<?> reference;
+        while ((reference = QUEUE.poll()) != null) CACHE.remove(reference);
+    }
+
+    /*
+     * Cache keys: entries weakly reference their JWK, while lookups (cheap
+     * and short lived) hold it strongly. Both hash and compare on identity.
+     */
+    private static final class Entry extends WeakReference<JWK<?>> {
+
+        private final int hash;
+
+        private Entry(JWK<?> jwk, ReferenceQueue<JWK<?>> queue) {
+            super(jwk, queue);
+            hash = System.identityHashCode(jwk);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) return true;
+            if (object instanceof Lookup) return ((Lookup) object).jwk == get();
+            if (object instanceof Entry) {
+                final JWK<?> jwk = get();
+                return (jwk != null) && (jwk == ((Entry) object).get());
+            }
+            return false;
+        }
+    }
+
+    private static final class Lookup {
+
+        private final JWK<?> jwk;
+
+        private Lookup(JWK<?> jwk) {
+            this.jwk = jwk;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(jwk);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) return true;
+            if (object instanceof Entry) return ((Entry) object).get() == jwk;
+            if (object instanceof Lookup) return ((Lookup) object).jwk == jwk;
+            return false;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * A listener notified when a {@link JWK} is evicted from the cache.
+     */
+    @FunctionalInterface
+    public static interface Listener {
+
+        /**
+         * Notify that the specified {@link JWK} was evicted.
+         */
+        public void evicted(JWK<?> jwk);
+
+    }
+
+    /**
+     * A factory converting a {@link JWK} into a Java {@link Key}.
+     *
+     * @param <J> The type of the {@link JWK} to convert.
+     * @param <K> The type of the {@link Key} to create.
+     */
+    @FunctionalInterface
+    public static interface Factory<J extends JWK<K>, K extends Key> {
+
+        /**
+         * Convert the specified {@link JWK} into a Java {@link Key}.
+         */
+        public K create(J jwk)
+        throws GeneralSecurityException;
+
+    }
+}
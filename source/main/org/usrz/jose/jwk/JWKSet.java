@@ -52,14 +52,15 @@ public interface JWKSet {
     public class Builder
     extends JOSEBuilder<JWKSet> {
 
+        private static final Maker<JWKSet> MAKER = maker(Builder.class, Impl.class);
+
+        /* Lazily allocated, empty builders build with a shared empty list */
         @SuppressWarnings("unused")
-        private final List<JWK<?>> keys;
-        private final List<JWK<?>> keysList;
+        private List<JWK<?>> keys = Collections.emptyList();
+        private List<JWK<?>> keysList;
 
         public Builder() {
-            super(Impl.class);
-            keysList = new ArrayList<>();
-            keys = Collections.unmodifiableList(keysList);
+            super(MAKER);
         }
 
         @Override
@@ -67,14 +68,21 @@ public interface JWKSet {
             return super.build();
         }
 
+        @Override
+        public Builder reset() {
+            keys = Collections.emptyList();
+            keysList = null;
+            return this;
+        }
+
         /**
          * The value of the "keys" member is an array of {@link JWK} values.
          */
         @JsonProperty(KEYS)
         public Builder setKeys(List<JWK<?>> keys) {
             if (keys == null) return this;
-            keys.forEach((criticalExtension) -> {
-                keysList.add(criticalExtension);
+            keys.forEach((key) -> {
+                addKey(key);
             });
             return this;
         }
@@ -84,6 +92,10 @@ public interface JWKSet {
          */
         @JsonIgnore
         public Builder addKey(JWK<?> key) {
+            if (keysList == null) {
+                keysList = new ArrayList<>();
+                keys = Collections.unmodifiableList(keysList);
+            }
             keysList.add(key);
             return this;
         }
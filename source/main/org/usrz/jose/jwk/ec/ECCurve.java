@@ -15,10 +15,14 @@
  * ========================================================================== */
 package org.usrz.jose.jwk.ec;
 
+import java.math.BigInteger;
 import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.security.spec.ECFieldFp;
 import java.security.spec.ECGenParameterSpec;
 import java.security.spec.ECParameterSpec;
+import java.security.spec.EllipticCurve;
 import java.security.spec.InvalidParameterSpecException;
 
 import org.usrz.jose.shared.JOSEIdentifier;
@@ -32,25 +36,26 @@ import org.usrz.jose.shared.JOSEIdentifier;
 public enum ECCurve implements JOSEIdentifier {
 
     /** The NIST P-192 Elliptic Curve <i>(not specified in JOSE)</i> */
-    P_192("P-192", "secp192r1"),
+    P_192("P-192", "secp192r1", 192),
     /** The NIST P-224 Elliptic Curve <i>(not specified in JOSE)</i> */
-    P_224("P-224", "secp224r1"),
+    P_224("P-224", "secp224r1", 224),
     /** The NIST P-256 Elliptic Curve */
-    P_256("P-256", "secp256r1"),
+    P_256("P-256", "secp256r1", 256),
     /** The NIST P-384 Elliptic Curve */
-    P_384("P-384", "secp384r1"),
+    P_384("P-384", "secp384r1", 384),
     /** The NIST P-521 Elliptic Curve <i>(not 512)</i> */
-    P_521("P-521", "secp521r1");
+    P_521("P-521", "secp521r1", 521);
 
     /* ====================================================================== */
 
     private final String identifier;
     private final String standardName;
-    private ECParameterSpec parameterSpec;
+    private final int fieldSize;
 
-    private ECCurve(String identifier, String standardName) {
+    private ECCurve(String identifier, String standardName, int fieldSize) {
         this.identifier = identifier;
         this.standardName = standardName;
+        this.fieldSize = fieldSize;
     }
 
     @Override
@@ -58,17 +63,94 @@ public enum ECCurve implements JOSEIdentifier {
         return identifier;
     }
 
+    /**
+     * Return the size (in bits) of the field of this curve.
+     */
+    public int getFieldSize() {
+        return fieldSize;
+    }
+
+    /**
+     * Return the size (in bytes) of each coordinate, private key, or
+     * signature integer on this curve, as encoded in JOSE.
+     */
+    public int getFieldLength() {
+        return (fieldSize + 7) / 8;
+    }
+
     /**
      * Return the Java EC parameters specification of this curve.
      *
+     * <p>Specifications for all curves are computed only once and shared,
+     * so this method never needs to look up any provider.</p>
+     *
      * @throws NoSuchAlgorithmException If elliptic curves were not supported.
      * @throws InvalidParameterSpecException If the curve is unsupported.
      */
     public ECParameterSpec getECParameterSpec()
     throws NoSuchAlgorithmException, InvalidParameterSpecException {
+        final ECParameterSpec parameterSpec = Parameters.SPECS[ordinal()];
         if (parameterSpec != null) return parameterSpec;
-        final AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
-        parameters.init(new ECGenParameterSpec(standardName));
-        return parameterSpec = parameters.getParameterSpec(ECParameterSpec.class);
+
+        /* Rethrow what we got at initialization, with a fresh stack trace */
+        final Exception failure = Parameters.FAILURES[ordinal()];
+        final String message = "Curve " + identifier + " (" + standardName + ") not supported";
+        if (failure instanceof NoSuchAlgorithmException) {
+            throw new NoSuchAlgorithmException(message, failure);
+        } else {
+            throw (InvalidParameterSpecException) new InvalidParameterSpecException(message).initCause(failure);
+        }
+    }
+
+    /**
+     * Check whether the point identified by the specified coordinates lies
+     * on this curve.
+     *
+     * <p>This validates the equation {@code y^2 = x^3 + ax + b (mod p)},
+     * and that both coordinates are in the field: as all curves here have a
+     * cofactor of 1, this is enough to prevent <i>invalid curve</i> attacks.</p>
+     *
+     * @throws NoSuchAlgorithmException If elliptic curves were not supported.
+     * @throws InvalidParameterSpecException If the curve is unsupported.
+     */
+    public boolean isOnCurve(BigInteger x, BigInteger y)
+    throws NoSuchAlgorithmException, InvalidParameterSpecException {
+        if ((x == null) || (y == null)) return false;
+
+        final EllipticCurve curve = getECParameterSpec().getCurve();
+        final BigInteger p = ((ECFieldFp) curve.getField()).getP();
+        if ((x.signum() < 0) || (x.compareTo(p) >= 0)) return false;
+        if ((y.signum() < 0) || (y.compareTo(p) >= 0)) return false;
+
+        final BigInteger left = y.multiply(y).mod(p);
+        final BigInteger right = x.multiply(x).add(curve.getA()).multiply(x).add(curve.getB()).mod(p);
+        return left.equals(right);
+    }
+
+    /* ====================================================================== */
+
+    /*
+     * All curve parameters are computed once, the first time any of them is
+     * needed (class initialization makes this thread safe). A curve failing
+     * here simply records its failure, leaving all others usable.
+     */
+    private static final class Parameters {
+
+        private static final ECParameterSpec[] SPECS;
+        private static final Exception[] FAILURES;
+
+        static {
+            final ECCurve[] curves = ECCurve.values();
+            SPECS = new ECParameterSpec[curves.length];
+            FAILURES = new Exception[curves.length];
+
+            for (ECCurve curve: curves) try {
+                final AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec(curve.standardName));
+                SPECS[curve.ordinal()] = parameters.getParameterSpec(ECParameterSpec.class);
+            } catch (GeneralSecurityException | RuntimeException exception) {
+                FAILURES[curve.ordinal()] = exception;
+            }
+        }
     }
 }
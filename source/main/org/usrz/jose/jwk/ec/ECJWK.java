@@ -70,8 +70,16 @@ extends JWK<KEY> {
                                          B extends Builder<K, J, B>>
     extends JWK.Builder<K, J, B> {
 
-        protected Builder(Class<? extends J> type) {
-            super(type);
+        protected Builder(Maker<J> maker) {
+            super(maker);
+        }
+
+        @Override
+        public B reset() {
+            curve = null;
+            xCoordinate = null;
+            yCoordinate = null;
+            return super.reset();
         }
 
         /* ================================================================== */
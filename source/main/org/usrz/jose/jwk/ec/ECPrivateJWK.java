@@ -17,22 +17,30 @@ package org.usrz.jose.jwk.ec;
 
 import java.math.BigInteger;
 import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECPrivateKeySpec;
 import java.util.List;
 
+import javax.security.auth.Destroyable;
+
 import lombok.Data;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
 import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.JWKKeyCache;
 import org.usrz.jose.jwk.JWKKeyOperation;
 import org.usrz.jose.jwk.JWKKeyType;
 import org.usrz.jose.jwk.JWKPublicKeyUse;
 import org.usrz.jose.jwk.PrivateJWK;
 import org.usrz.jose.jws.JWSAlgorithm;
 import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
@@ -42,7 +50,7 @@ import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
  */
 @JsonDeserialize(builder=ECPrivateJWK.Builder.class)
 public interface ECPrivateJWK
-extends ECJWK<ECPrivateKey>, PrivateJWK<ECPrivateKey> {
+extends ECJWK<ECPrivateKey>, PrivateJWK<ECPrivateKey>, Destroyable {
 
     /** The {@code d} JWK <i>("{@code EC}")</i> field name. */
     public static final String ECC_PRIVATE_KEY = "d";
@@ -52,7 +60,44 @@ extends ECJWK<ECPrivateKey>, PrivateJWK<ECPrivateKey> {
      * key value.
      */
     @JsonProperty(ECC_PRIVATE_KEY)
-    public BigInteger getEccPrivateKey();
+    public Secret getEccPrivateKey();
+
+    /* ====================================================================== */
+
+    /**
+     * Convert this {@link JWK} into a Java {@link ECPrivateKey}.
+     *
+     * <p>Note that the returned {@link ECPrivateKey} holds a <em>heap</em>
+     * copy of the private key value, which is released from the cache when
+     * this instance is {@linkplain #destroy() destroyed}.</p>
+     */
+    @Override
+    public default ECPrivateKey toKey()
+    throws GeneralSecurityException {
+        return JWKKeyCache.get(this, (jwk) -> {
+            final ECPrivateKeySpec spec = new ECPrivateKeySpec(jwk.getEccPrivateKey().toBigInteger(), jwk.getCurve().getECParameterSpec());
+            return (ECPrivateKey) KeyFactory.getInstance("EC").generatePrivate(spec);
+        });
+    }
+
+    /**
+     * Zero the secret key material held by this key.
+     */
+    @Override
+    public default void destroy() {
+        JWKKeyCache.evict(this);
+        Secret.destroy(getEccPrivateKey());
+    }
+
+    /**
+     * Check whether the secret key material held by this key was
+     * zeroed by {@link #destroy()}.
+     */
+    @Override
+    @JsonIgnore
+    public default boolean isDestroyed() {
+        return Secret.isDestroyed(getEccPrivateKey());
+    }
 
     /* ====================================================================== */
 
@@ -61,8 +106,10 @@ extends ECJWK<ECPrivateKey>, PrivateJWK<ECPrivateKey> {
     public static final class Builder
     extends ECJWK.Builder<ECPrivateKey, ECPrivateJWK, Builder> {
 
+        private static final Maker<ECPrivateJWK> MAKER = maker(Builder.class, Impl.class);
+
         public Builder() {
-            super(Impl.class);
+            super(MAKER);
         }
 
         @Override
@@ -70,6 +117,12 @@ extends ECJWK<ECPrivateKey>, PrivateJWK<ECPrivateKey> {
             return super.build();
         }
 
+        @Override
+        public Builder reset() {
+            eccPrivateKey = null;
+            return super.reset();
+        }
+
         /* ================================================================== */
 
         /**
@@ -77,7 +130,7 @@ extends ECJWK<ECPrivateKey>, PrivateJWK<ECPrivateKey> {
          * key value.
          */
         @Setter(onMethod=@__({@JsonProperty(ECC_PRIVATE_KEY)}))
-        private BigInteger eccPrivateKey;
+        private Secret eccPrivateKey;
 
         /* ================================================================== */
 
@@ -101,7 +154,7 @@ extends ECJWK<ECPrivateKey>, PrivateJWK<ECPrivateKey> {
             private final ECCurve curve;
             private final BigInteger xCoordinate;
             private final BigInteger yCoordinate;
-            private final BigInteger eccPrivateKey;
+            private final Secret eccPrivateKey;
         }
     }
 }
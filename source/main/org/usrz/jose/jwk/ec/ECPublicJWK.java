@@ -17,14 +17,20 @@ package org.usrz.jose.jwk.ec;
 
 import java.math.BigInteger;
 import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.InvalidKeySpecException;
 import java.util.List;
 
 import lombok.Data;
 import lombok.experimental.Accessors;
 
 import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.JWKKeyCache;
 import org.usrz.jose.jwk.JWKKeyOperation;
 import org.usrz.jose.jwk.JWKKeyType;
 import org.usrz.jose.jwk.JWKPublicKeyUse;
@@ -42,7 +48,29 @@ import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 public interface ECPublicJWK
 extends ECJWK<ECPublicKey>, PublicJWK<ECPublicKey> {
 
-    /* ECPublicJWK is a simple marker interface */
+    /**
+     * Convert this {@link JWK} into a Java {@link ECPublicKey}.
+     *
+     * <p>The point is validated to be on the {@linkplain #getCurve() curve}
+     * before conversion: as conversions are {@linkplain JWKKeyCache cached},
+     * this happens only once per instance, and never on the operations
+     * (signature verification, key agreement) using the returned key.</p>
+     *
+     * @throws InvalidKeySpecException If the point was not on the curve.
+     */
+    @Override
+    public default ECPublicKey toKey()
+    throws GeneralSecurityException {
+        return JWKKeyCache.get(this, (jwk) -> {
+            if (jwk.getCurve() == null) throw new InvalidKeySpecException("No curve specified");
+            if (!jwk.getCurve().isOnCurve(jwk.getXCoordinate(), jwk.getYCoordinate())) {
+                throw new InvalidKeySpecException("Point not on curve " + jwk.getCurve().joseName());
+            }
+            final ECPoint point = new ECPoint(jwk.getXCoordinate(), jwk.getYCoordinate());
+            final ECPublicKeySpec spec = new ECPublicKeySpec(point, jwk.getCurve().getECParameterSpec());
+            return (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(spec);
+        });
+    }
 
     /* ====================================================================== */
 
@@ -51,8 +79,10 @@ extends ECJWK<ECPublicKey>, PublicJWK<ECPublicKey> {
     public static final class Builder
     extends ECJWK.Builder<ECPublicKey, ECPublicJWK, Builder> {
 
+        private static final Maker<ECPublicJWK> MAKER = maker(Builder.class, Impl.class);
+
         public Builder() {
-            super(Impl.class);
+            super(MAKER);
         }
 
         @Override
@@ -16,10 +16,12 @@
 package org.usrz.jose.jwk.oct;
 
 import java.net.URI;
+import java.security.GeneralSecurityException;
 import java.security.cert.X509Certificate;
 import java.util.List;
 
 import javax.crypto.SecretKey;
+import javax.security.auth.Destroyable;
 
 import lombok.Data;
 import lombok.Setter;
@@ -27,17 +29,22 @@ import lombok.experimental.Accessors;
 
 import org.usrz.jose.jwe.JWEAlgorithm;
 import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.JWKKeyCache;
 import org.usrz.jose.jwk.JWKKeyOperation;
 import org.usrz.jose.jwk.JWKKeyType;
 import org.usrz.jose.jwk.JWKPublicKeyUse;
+import org.usrz.jose.jws.JWSAlgorithm;
+import org.usrz.jose.shared.JOSEAlgorithm;
 import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
 @JsonDeserialize(builder=OctetSequenceJWK.Builder.class)
-public interface OctetSequenceJWK extends JWK<SecretKey> {
+public interface OctetSequenceJWK extends JWK<SecretKey>, Destroyable {
 
     /** The {@code k} JWK <i>("{@code oct}")</i> field name. */
     public static final String KEY_VALUE = "k";
@@ -47,7 +54,50 @@ public interface OctetSequenceJWK extends JWK<SecretKey> {
      * other single-valued) key.
      */
     @JsonProperty(KEY_VALUE)
-    public Bytes getKeyValue();
+    public Secret getKeyValue();
+
+    /* ====================================================================== */
+
+    /**
+     * Convert this {@link JWK} into a Java {@link SecretKey}.
+     *
+     * <p>Keys for {@linkplain JWSAlgorithm HMAC algorithms} are named after
+     * their {@link javax.crypto.Mac} algorithm, while all others are
+     * assumed to be {@code AES} keys.</p>
+     *
+     * <p>Note that the returned {@link SecretKey} holds a <em>heap</em>
+     * copy of the key value, which is released from the cache when
+     * this instance is {@linkplain #destroy() destroyed}.</p>
+     */
+    @Override
+    public default SecretKey toKey()
+    throws GeneralSecurityException {
+        return JWKKeyCache.get(this, (jwk) -> {
+            final JOSEAlgorithm algorithm = jwk.getAlgorithm();
+            return jwk.getKeyValue().toSecretKey(algorithm instanceof JWSAlgorithm ?
+                                                 ((JWSAlgorithm) algorithm).getStandardName() :
+                                                 "AES");
+        });
+    }
+
+    /**
+     * Zero the secret key material held by this key.
+     */
+    @Override
+    public default void destroy() {
+        JWKKeyCache.evict(this);
+        Secret.destroy(getKeyValue());
+    }
+
+    /**
+     * Check whether the secret key material held by this key was
+     * zeroed by {@link #destroy()}.
+     */
+    @Override
+    @JsonIgnore
+    public default boolean isDestroyed() {
+        return Secret.isDestroyed(getKeyValue());
+    }
 
     /* ====================================================================== */
 
@@ -56,8 +106,10 @@ public interface OctetSequenceJWK extends JWK<SecretKey> {
     public static final class Builder
     extends JWK.Builder<SecretKey, OctetSequenceJWK, Builder> {
 
+        private static final Maker<OctetSequenceJWK> MAKER = maker(Builder.class, Impl.class);
+
         public Builder() {
-            super(Impl.class);
+            super(MAKER);
         }
 
         @Override
@@ -65,6 +117,12 @@ public interface OctetSequenceJWK extends JWK<SecretKey> {
             return super.build();
         }
 
+        @Override
+        public Builder reset() {
+            keyValue = null;
+            return super.reset();
+        }
+
         /* ================================================================== */
 
         /**
@@ -72,7 +130,7 @@ public interface OctetSequenceJWK extends JWK<SecretKey> {
          * other single-valued) key.
          */
         @Setter(onMethod=@__({@JsonProperty(KEY_VALUE)}))
-        private Bytes keyValue;
+        private Secret keyValue;
 
         /* ================================================================== */
 
@@ -93,7 +151,7 @@ public interface OctetSequenceJWK extends JWK<SecretKey> {
             private final List<JWKKeyOperation> keyOperations;
 
             /* JWK "oct" */
-            private final Bytes keyValue;
+            private final Secret keyValue;
         }
     }
 }
@@ -58,8 +58,15 @@ extends JWK<KEY> {
                                          B extends Builder<K, J, B>>
     extends JWK.Builder<K, J, B> {
 
-        protected Builder(Class<? extends J> type) {
-            super(type);
+        protected Builder(Maker<J> maker) {
+            super(maker);
+        }
+
+        @Override
+        public B reset() {
+            modulus = null;
+            publicExponent = null;
+            return super.reset();
         }
 
         /* ================================================================== */
@@ -17,28 +17,38 @@ package org.usrz.jose.jwk.rsa;
 
 import java.math.BigInteger;
 import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.KeySpec;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPrivateKeySpec;
 import java.util.List;
 
+import javax.security.auth.Destroyable;
+
 import lombok.Data;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
+import org.usrz.jose.jwk.JWKKeyCache;
 import org.usrz.jose.jwk.JWKKeyOperation;
 import org.usrz.jose.jwk.JWKKeyType;
 import org.usrz.jose.jwk.JWKPublicKeyUse;
 import org.usrz.jose.jwk.PrivateJWK;
 import org.usrz.jose.jws.JWSAlgorithm;
 import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
 @JsonDeserialize(builder=RSAPrivateJWK.Builder.class)
 public interface RSAPrivateJWK
-extends RSAJWK<RSAPrivateKey>, PrivateJWK<RSAPrivateKey> {
+extends RSAJWK<RSAPrivateKey>, PrivateJWK<RSAPrivateKey>, Destroyable {
 
     /** The {@code d} JWK <i>("{@code RSA}")</i> field name. */
     public static final String PRIVATE_EXPONENT = "d";
@@ -58,42 +68,105 @@ extends RSAJWK<RSAPrivateKey>, PrivateJWK<RSAPrivateKey> {
      * for the RSA private key.
      */
     @JsonProperty(PRIVATE_EXPONENT)
-    public BigInteger getPrivateExponent();
+    public Secret getPrivateExponent();
 
     /**
      * The "p" (first prime factor) member contains the first prime factor
      * for the RSA private key.
      */
     @JsonProperty(PRIME_P)
-    public BigInteger getPrimeP();
+    public Secret getPrimeP();
 
     /**
      * The "q" (second prime factor) member contains the second prime factor
      * for the RSA private key.
      */
     @JsonProperty(PRIME_Q)
-    public BigInteger getPrimeQ();
+    public Secret getPrimeQ();
 
     /**
      * The "dp" (first factor CRT exponent) member contains the Chinese
      * Remainder Theorem (CRT) exponent of the first factor.
      */
     @JsonProperty(PRIME_EXPONENT_P)
-    public BigInteger getPrimeExponentP();
+    public Secret getPrimeExponentP();
 
     /**
      * The "dq" (second factor CRT exponent) member contains the Chinese
      * Remainder Theorem (CRT) exponent of the second factor.
      */
     @JsonProperty(PRIME_EXPONENT_Q)
-    public BigInteger getPrimeExponentQ();
+    public Secret getPrimeExponentQ();
 
     /**
      * The "qi" (first CRT coefficient) member contains the Chinese
      * Remainder Theorem (CRT) coefficient of the second factor.
      */
     @JsonProperty(CRT_COEFFICIENT)
-    public BigInteger getCrtCoefficient();
+    public Secret getCrtCoefficient();
+
+    /* ====================================================================== */
+
+    /**
+     * Convert this {@link JWK} into a Java {@link RSAPrivateKey}.
+     *
+     * <p>When this key carries its <i>Chinese Remainder Theorem</i>
+     * parameters, the returned key will be an
+     * {@link java.security.interfaces.RSAPrivateCrtKey}, allowing providers
+     * to sign (and decrypt) about four times faster than with the private
+     * exponent alone.</p>
+     *
+     * <p>Note that the returned {@link RSAPrivateKey} holds a <em>heap</em>
+     * copy of the private exponent, which is released from the cache when
+     * this instance is {@linkplain #destroy() destroyed}.</p>
+     */
+    @Override
+    public default RSAPrivateKey toKey()
+    throws GeneralSecurityException {
+        return JWKKeyCache.get(this, (jwk) -> {
+            final KeySpec spec = jwk.getPrimeP() == null ?
+                    new RSAPrivateKeySpec(jwk.getModulus(),
+                                          jwk.getPrivateExponent().toBigInteger()) :
+                    new RSAPrivateCrtKeySpec(jwk.getModulus(),
+                                             jwk.getPublicExponent(),
+                                             jwk.getPrivateExponent().toBigInteger(),
+                                             jwk.getPrimeP().toBigInteger(),
+                                             jwk.getPrimeQ().toBigInteger(),
+                                             jwk.getPrimeExponentP().toBigInteger(),
+                                             jwk.getPrimeExponentQ().toBigInteger(),
+                                             jwk.getCrtCoefficient().toBigInteger());
+            return (RSAPrivateKey) KeyFactory.getInstance("RSA").generatePrivate(spec);
+        });
+    }
+
+    /**
+     * Zero the secret key material held by this key.
+     */
+    @Override
+    public default void destroy() {
+        JWKKeyCache.evict(this);
+        Secret.destroy(getPrivateExponent(),
+                       getPrimeP(),
+                       getPrimeQ(),
+                       getPrimeExponentP(),
+                       getPrimeExponentQ(),
+                       getCrtCoefficient());
+    }
+
+    /**
+     * Check whether the secret key material held by this key was
+     * zeroed by {@link #destroy()}.
+     */
+    @Override
+    @JsonIgnore
+    public default boolean isDestroyed() {
+        return Secret.isDestroyed(getPrivateExponent(),
+                                  getPrimeP(),
+                                  getPrimeQ(),
+                                  getPrimeExponentP(),
+                                  getPrimeExponentQ(),
+                                  getCrtCoefficient());
+    }
 
     /* ====================================================================== */
 
@@ -102,13 +175,83 @@ extends RSAJWK<RSAPrivateKey>, PrivateJWK<RSAPrivateKey> {
     public static final class Builder
     extends RSAJWK.Builder<RSAPrivateKey, RSAPrivateJWK, Builder> {
 
+        private static final Maker<RSAPrivateJWK> MAKER = maker(Builder.class, Impl.class);
+
         public Builder() {
-            super(Impl.class);
+            super(MAKER);
         }
 
+        /**
+         * Build a new {@link RSAPrivateJWK}.
+         *
+         * @throws IllegalArgumentException If only some of the <i>Chinese
+         *                                  Remainder Theorem</i> parameters
+         *                                  were specified, or if they are not
+         *                                  consistent with the rest of the
+         *                                  key.
+         */
         @Override
         public RSAPrivateJWK build() {
-            return super.build();
+            final RSAPrivateJWK jwk = super.build();
+            validate(jwk);
+            return jwk;
+        }
+
+        /*
+         * Once, when the key is built, check that the CRT parameters are all
+         * there (or all missing) and that they are consistent. This way keys
+         * are always converted to RSAPrivateCrtKeys when they can be, and a
+         * bad parameter never turns into a (silently) bad signature later.
+         */
+        private static void validate(RSAPrivateJWK jwk) {
+            final Secret[] parameters = { jwk.getPrimeP(),
+                                          jwk.getPrimeQ(),
+                                          jwk.getPrimeExponentP(),
+                                          jwk.getPrimeExponentQ(),
+                                          jwk.getCrtCoefficient() };
+
+            int count = 0;
+            for (Secret parameter: parameters) if (parameter != null) count ++;
+            if (count == 0) return;
+            if (count != parameters.length) {
+                throw new IllegalArgumentException("Incomplete CRT parameters in RSA private key");
+            }
+
+            final BigInteger n = jwk.getModulus();
+            final BigInteger e = jwk.getPublicExponent();
+            final Secret d = jwk.getPrivateExponent();
+            if ((n == null) || (e == null) || (d == null)) {
+                throw new IllegalArgumentException("CRT parameters specified without modulus and exponents in RSA private key");
+            }
+
+            final BigInteger p = parameters[0].toBigInteger();
+            final BigInteger q = parameters[1].toBigInteger();
+            final BigInteger dp = parameters[2].toBigInteger();
+            final BigInteger dq = parameters[3].toBigInteger();
+            final BigInteger qi = parameters[4].toBigInteger();
+            final BigInteger p1 = p.subtract(BigInteger.ONE);
+            final BigInteger q1 = q.subtract(BigInteger.ONE);
+
+            if (!p.multiply(q).equals(n)) {
+                throw new IllegalArgumentException("Prime factors p and q do not match modulus in RSA private key");
+            } else if (!d.toBigInteger().mod(p1).equals(dp) || !e.multiply(dp).mod(p1).equals(BigInteger.ONE)) {
+                throw new IllegalArgumentException("Inconsistent CRT exponent dp in RSA private key");
+            } else if (!d.toBigInteger().mod(q1).equals(dq) || !e.multiply(dq).mod(q1).equals(BigInteger.ONE)) {
+                throw new IllegalArgumentException("Inconsistent CRT exponent dq in RSA private key");
+            } else if (!q.multiply(qi).mod(p).equals(BigInteger.ONE)) {
+                throw new IllegalArgumentException("Inconsistent CRT coefficient qi in RSA private key");
+            }
+        }
+
+        @Override
+        public Builder reset() {
+            privateExponent = null;
+            primeP = null;
+            primeQ = null;
+            primeExponentP = null;
+            primeExponentQ = null;
+            crtCoefficient = null;
+            return super.reset();
         }
 
         /* ================================================================== */
@@ -118,21 +261,21 @@ extends RSAJWK<RSAPrivateKey>, PrivateJWK<RSAPrivateKey> {
          * for the RSA private key.
          */
         @Setter(onMethod=@__({@JsonProperty(PRIVATE_EXPONENT)}))
-        private BigInteger privateExponent;
+        private Secret privateExponent;
 
         /**
          * The "p" (first prime factor) member contains the first prime factor
          * for the RSA private key.
          */
         @Setter(onMethod=@__({@JsonProperty(PRIME_P)}))
-        private BigInteger primeP;
+        private Secret primeP;
 
         /**
          * The "q" (second prime factor) member contains the second prime factor
          * for the RSA private key.
          */
         @Setter(onMethod=@__({@JsonProperty(PRIME_Q)}))
-        private BigInteger primeQ;
+        private Secret primeQ;
 
 
         /**
@@ -140,21 +283,21 @@ extends RSAJWK<RSAPrivateKey>, PrivateJWK<RSAPrivateKey> {
          * Remainder Theorem (CRT) exponent of the first factor.
          */
         @Setter(onMethod=@__({@JsonProperty(PRIME_EXPONENT_P)}))
-        private BigInteger primeExponentP;
+        private Secret primeExponentP;
 
         /**
          * The "dq" (second factor CRT exponent) member contains the Chinese
          * Remainder Theorem (CRT) exponent of the second factor.
          */
         @Setter(onMethod=@__({@JsonProperty(PRIME_EXPONENT_Q)}))
-        private BigInteger primeExponentQ;
+        private Secret primeExponentQ;
 
         /**
          * The "qi" (first CRT coefficient) member contains the Chinese
          * Remainder Theorem (CRT) coefficient of the second factor.
          */
         @Setter(onMethod=@__({@JsonProperty(CRT_COEFFICIENT)}))
-        private BigInteger crtCoefficient;
+        private Secret crtCoefficient;
 
         /* ================================================================== */
 
@@ -177,12 +320,12 @@ extends RSAJWK<RSAPrivateKey>, PrivateJWK<RSAPrivateKey> {
             /* JWK (RSA) */
             private final BigInteger modulus;
             private final BigInteger publicExponent;
-            private final BigInteger privateExponent;
-            private final BigInteger primeP;
-            private final BigInteger primeQ;
-            private final BigInteger primeExponentP;
-            private final BigInteger primeExponentQ;
-            private final BigInteger crtCoefficient;
+            private final Secret privateExponent;
+            private final Secret primeP;
+            private final Secret primeQ;
+            private final Secret primeExponentP;
+            private final Secret primeExponentQ;
+            private final Secret crtCoefficient;
 
         }
     }
@@ -17,13 +17,17 @@ package org.usrz.jose.jwk.rsa;
 
 import java.math.BigInteger;
 import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
 import java.util.List;
 
 import lombok.Data;
 import lombok.experimental.Accessors;
 
+import org.usrz.jose.jwk.JWKKeyCache;
 import org.usrz.jose.jwk.JWKKeyOperation;
 import org.usrz.jose.jwk.JWKKeyType;
 import org.usrz.jose.jwk.JWKPublicKeyUse;
@@ -38,7 +42,23 @@ import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 public interface RSAPublicJWK
 extends RSAJWK<RSAPublicKey>, PublicJWK<RSAPublicKey> {
 
-    /* RSAPublicJWK is a simple marker interface */
+    /**
+     * Convert this {@link org.usrz.jose.jwk.JWK JWK} into a Java
+     * {@link RSAPublicKey}.
+     *
+     * <p>Conversions are {@linkplain JWKKeyCache cached}: the modulus and
+     * public exponent are parsed by a {@link KeyFactory} only once per
+     * instance, and never again when verifying (or encrypting) with the
+     * returned key.</p>
+     */
+    @Override
+    public default RSAPublicKey toKey()
+    throws GeneralSecurityException {
+        return JWKKeyCache.get(this, (jwk) -> {
+            final RSAPublicKeySpec spec = new RSAPublicKeySpec(jwk.getModulus(), jwk.getPublicExponent());
+            return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(spec);
+        });
+    }
 
     /* ====================================================================== */
 
@@ -47,8 +67,10 @@ extends RSAJWK<RSAPublicKey>, PublicJWK<RSAPublicKey> {
     public static final class Builder
     extends RSAJWK.Builder<RSAPublicKey, RSAPublicJWK, Builder> {
 
+        private static final Maker<RSAPublicJWK> MAKER = maker(Builder.class, Impl.class);
+
         public Builder() {
-            super(Impl.class);
+            super(MAKER);
         }
 
         @Override
@@ -0,0 +1,180 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.security.SignatureException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.shared.Bytes;
+
+/**
+ * A transcoder for ECDSA signatures between their JOSE representation (the
+ * fixed-length concatenation of the {@code R} and {@code S} integers) and
+ * the ASN.1 DER {@code SEQUENCE} used by the <i>Java Cryptography
+ * Architecture</i>.
+ *
+ * <p>Transcoders never allocate: they read from and write into arrays (or
+ * {@link Bytes} windows) supplied by the caller, and they are thread-safe
+ * as they carry no state besides the size of the curve's integers.</p>
+ */
+public final class ECDSATranscoder {
+
+    private static final Map<ECCurve, ECDSATranscoder> TRANSCODERS = new EnumMap<>(ECCurve.class);
+
+    static {
+        for (ECCurve curve: ECCurve.values()) TRANSCODERS.put(curve, new ECDSATranscoder(curve));
+    }
+
+    /**
+     * Return the {@link ECDSATranscoder} for the specified {@link ECCurve}.
+     */
+    public static ECDSATranscoder getInstance(ECCurve curve) {
+        if (curve == null) throw new NullPointerException("Null curve");
+        return TRANSCODERS.get(curve);
+    }
+
+    /* ====================================================================== */
+
+    private final ECCurve curve;
+    private final int length;
+
+    private ECDSATranscoder(ECCurve curve) {
+        this.curve = curve;
+        length = curve.getFieldLength();
+    }
+
+    /**
+     * Return the {@link ECCurve} of this {@link ECDSATranscoder}.
+     */
+    public ECCurve getCurve() {
+        return curve;
+    }
+
+    /**
+     * Return the length of the JOSE {@code R||S} representation of signatures.
+     */
+    public int getConcatLength() {
+        return length * 2;
+    }
+
+    /**
+     * Return the maximum length of the DER representation of signatures.
+     */
+    public int getMaximumDERLength() {
+        /* Two integers, each with a sign byte, plus all tags and lengths */
+        final int sequence = 2 * (2 + length + 1);
+        return sequence + (sequence > 0x7F ? 3 : 2);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Transcode a JOSE {@code R||S} signature into its DER representation,
+     * returning the number of bytes written.
+     *
+     * @throws IllegalArgumentException If the signature length is wrong.
+     * @throws IndexOutOfBoundsException If the destination is too small.
+     */
+    public int toDER(Bytes concat, byte[] der, int offset) {
+        if (concat.length() != length * 2) {
+            throw new IllegalArgumentException("Invalid signature length " + concat.length() + " for curve " + curve.joseName());
+        }
+
+        /* Skip leading zeroes, but keep at least one byte */
+        int r = 0, s = length;
+        while ((r < length - 1) && (concat.getByte(r) == 0)) r ++;
+        while ((s < length * 2 - 1) && (concat.getByte(s) == 0)) s ++;
+
+        /* Positive integers, we need a zero when the high bit is set */
+        final int rPad = concat.getByte(r) < 0 ? 1 : 0;
+        final int sPad = concat.getByte(s) < 0 ? 1 : 0;
+        final int rLength = length - r + rPad;
+        final int sLength = length * 2 - s + sPad;
+        final int sequence = 2 + rLength + 2 + sLength;
+        final int total = sequence + (sequence > 0x7F ? 3 : 2);
+
+        if ((offset < 0) || (offset > der.length - total)) {
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " writing " + total + " bytes in " + der.length);
+        }
+
+        int position = offset;
+        der[position ++] = 0x30;
+        if (sequence > 0x7F) der[position ++] = (byte) 0x81;
+        der[position ++] = (byte) sequence;
+
+        der[position ++] = 0x02;
+        der[position ++] = (byte) rLength;
+        if (rPad != 0) der[position ++] = 0;
+        for (int x = r; x < length; x ++) der[position ++] = concat.getByte(x);
+
+        der[position ++] = 0x02;
+        der[position ++] = (byte) sLength;
+        if (sPad != 0) der[position ++] = 0;
+        for (int x = s; x < length * 2; x ++) der[position ++] = concat.getByte(x);
+
+        return total;
+    }
+
+    /**
+     * Transcode a DER signature into its JOSE {@code R||S} representation,
+     * writing exactly {@link #getConcatLength()} bytes.
+     *
+     * @throws SignatureException If the DER signature was malformed.
+     * @throws IndexOutOfBoundsException If the destination is too small.
+     */
+    public void toConcat(byte[] der, int offset, int length, byte[] concat, int concatOffset)
+    throws SignatureException {
+        if ((offset < 0) || (length < 0) || (offset > der.length - length)) {
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " and length " + length + " for " + der.length + " bytes");
+        }
+        if ((concatOffset < 0) || (concatOffset > concat.length - this.length * 2)) {
+            throw new IndexOutOfBoundsException("Invalid offset " + concatOffset + " writing " + (this.length * 2) + " bytes in " + concat.length);
+        }
+
+        final int end = offset + length;
+        if ((length < 8) || (der[offset] != 0x30)) throw new SignatureException("Invalid DER ECDSA signature");
+
+        /* Sequence length, short or (one byte) long form */
+        int position = offset + 1;
+        int sequence = der[position ++] & 0xFF;
+        if (sequence == 0x81) sequence = der[position ++] & 0xFF;
+        else if (sequence > 0x7F) throw new SignatureException("Invalid DER ECDSA signature length");
+        if (position + sequence != end) throw new SignatureException("Invalid DER ECDSA signature length");
+
+        for (int x = 0; x < 2; x ++) {
+            if ((position + 2 > end) || (der[position] != 0x02)) throw new SignatureException("Invalid DER ECDSA integer");
+            int integer = der[position + 1] & 0xFF;
+            position += 2;
+            if ((integer == 0) || (integer > 0x7F) || (position + integer > end)) {
+                throw new SignatureException("Invalid DER ECDSA integer length");
+            }
+
+            /* Drop the sign byte, then right-align into our fixed length */
+            while ((integer > this.length) && (der[position] == 0)) { position ++; integer --; }
+            if (integer > this.length) throw new SignatureException("DER ECDSA integer too large for curve " + curve.joseName());
+
+            final int start = concatOffset + x * this.length;
+            final int padding = this.length - integer;
+            for (int y = 0; y < padding; y ++) concat[start + y] = 0;
+            System.arraycopy(der, position, concat, start + padding, integer);
+            position += integer;
+        }
+
+        if (position != end) throw new SignatureException("Trailing data in DER ECDSA signature");
+    }
+}
@@ -15,6 +15,10 @@
  * ========================================================================== */
 package org.usrz.jose.jws;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import lombok.Data;
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -23,61 +27,187 @@ import org.usrz.jose.shared.Bytes;
 import org.usrz.jose.shared.JOSE;
 import org.usrz.jose.shared.JOSEBuilder;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
-import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
 /**
  * A JSON Web Signature ({@link JWS}) represents content secured with digital
  * signatures or Message Authentication Codes (MACs) using JavaScript Object
  * Notation (JSON) based data structures.
+ *
+ * <p>A {@link JWS} can carry one or more {@linkplain JWSSignature signatures}
+ * over the same payload, the latter being representable only in the
+ * <i>General JWS JSON Serialization</i>.</p>
  */
-@JsonDeserialize(builder=JWS.Builder.class)
 public interface JWS extends JOSE<JWSHeader> {
 
-    /** The {@code protected} field name. */
+    /** The {@code payload} field name. */
     public static final String PAYLOAD = "payload";
 
-    /** The {@code protected} field name. */
+    /** The {@code signature} field name. */
     public static final String SIGNATURE = "signature";
 
+    /** The {@code signatures} field name. */
+    public static final String SIGNATURES = "signatures";
+
     /**
-     * Return the signed payload.
+     * Return the <i>protected</i> header of the first signature, the only one
+     * in the compact and flattened serializations.
+     */
+    @Override
+    @JsonIgnore
+    public default JWSHeader getHeader() {
+        final List<JWSSignature> signatures = getSignatures();
+        return signatures.isEmpty() ? null : signatures.get(0).getHeader();
+    }
+
+    /**
+     * Return the signed payload, or {@code null} if it was <i>detached</i>.
      */
     @JsonProperty(PAYLOAD)
     public Bytes getPayload();
 
     /**
-     * Return the payload's signature.
+     * Return the bytes of the first signature, the only one in the compact
+     * and flattened serializations.
+     */
+    @JsonIgnore
+    public default Bytes getSignature() {
+        final List<JWSSignature> signatures = getSignatures();
+        return signatures.isEmpty() ? null : signatures.get(0).getSignature();
+    }
+
+    /**
+     * Return all the signatures over the payload.
+     */
+    @JsonProperty(SIGNATURES)
+    public List<JWSSignature> getSignatures();
+
+    /**
+     * Check whether the payload is <em>base64url</em> encoded in the
+     * <i>JWS Signing Input</i> (the default) or not, as per RFC 7797.
+     *
+     * @throws IllegalArgumentException If signatures disagree on this.
+     */
+    @JsonIgnore
+    public default boolean isPayloadEncoded() {
+        Boolean encoded = null;
+        for (JWSSignature signature: getSignatures()) {
+            final boolean current = signature.getHeader() == null || signature.getHeader().isPayloadEncoded();
+            if (encoded == null) encoded = current;
+            else if (encoded != current) throw new IllegalArgumentException("Signatures disagree on \"" + JWSHeader.BASE64_PAYLOAD + "\" header");
+        }
+        return encoded == null || encoded;
+    }
+
+    /**
+     * Return the bytes of the payload as they appear in the
+     * <i>JWS Signing Input</i> (ASCII if {@linkplain #isPayloadEncoded()
+     * encoded}) if this instance was parsed, or {@code null}.
      */
-    @JsonProperty(SIGNATURE)
-    public Bytes getSignature();
+    @JsonIgnore
+    public Bytes getEncodedPayload();
+
+    /**
+     * Return the ASCII bytes of the <i>JWS Signing Input</i> (the encoded
+     * protected header and payload, separated by a period) if this instance
+     * was parsed from its compact serialization, or {@code null}.
+     *
+     * @see JWSCompactSerialization
+     */
+    @JsonIgnore
+    public Bytes getSigningInput();
 
     /* ====================================================================== */
 
     /** A builder of immutable {@link JWS} instances. */
     @Accessors(chain=true)
-    @JsonPOJOBuilder(withPrefix="set")
     public static final class Builder
     extends JOSEBuilder<JWS> {
 
+        private static final Maker<JWS> MAKER = maker(Builder.class, Impl.class);
+
         public Builder() {
-            super(Impl.class);
+            super(MAKER);
         }
 
         /* ================================================================== */
 
-        /** The {@link JWS} header */
-        @Setter(onMethod=@__({@JsonProperty(PROTECTED_HEADER)}))
-        private JWSHeader header;
-
         /** The signed payload. */
-        @Setter(onMethod=@__({@JsonProperty(PAYLOAD)}))
+        @Setter
         private Bytes payload;
 
-        /** The payload's signature */
-        @Setter(onMethod=@__({@JsonProperty(SIGNATURE)}))
-        private Bytes signature;
+        /** The ASCII bytes of the encoded payload */
+        @Setter
+        private Bytes encodedPayload;
+
+        /** The ASCII bytes of the <i>JWS Signing Input</i> */
+        @Setter
+        private Bytes signingInput;
+
+        /* Lazily allocated, empty builders build with a shared empty list */
+        @SuppressWarnings("unused")
+        private List<JWSSignature> signatures = Collections.emptyList();
+        private List<JWSSignature> signaturesList;
+
+        /**
+         * Add all the specified signatures over the payload.
+         */
+        public Builder setSignatures(List<JWSSignature> signatures) {
+            if (signatures == null) return this;
+            signatures.forEach((signature) -> addSignature(signature));
+            return this;
+        }
+
+        /**
+         * Add a signature over the payload.
+         */
+        public Builder addSignature(JWSSignature signature) {
+            if (signaturesList == null) {
+                signaturesList = new ArrayList<>();
+                signatures = Collections.unmodifiableList(signaturesList);
+            }
+            signaturesList.add(signature);
+            return this;
+        }
+
+        /**
+         * Set the <i>protected</i> header of the first signature.
+         *
+         * @deprecated Use {@link #addSignature(JWSSignature)}.
+         */
+        @Deprecated
+        public Builder setHeader(JWSHeader header) {
+            return setFirstSignature(header, null);
+        }
+
+        /**
+         * Set the bytes of the first signature.
+         *
+         * @deprecated Use {@link #addSignature(JWSSignature)}.
+         */
+        @Deprecated
+        public Builder setSignature(Bytes signature) {
+            return setFirstSignature(null, signature);
+        }
+
+        /* Replace the first signature, keeping what is not being set */
+        private Builder setFirstSignature(JWSHeader header, Bytes signature) {
+            final JWSSignature first = signaturesList == null ? null : signaturesList.get(0);
+            final JWSSignature.Builder builder = new JWSSignature.Builder();
+            if (first != null) {
+                builder.setHeader(first.getHeader());
+                builder.setUnprotectedHeader(first.getUnprotectedHeader());
+                builder.setSignature(first.getSignature());
+                builder.setEncodedHeader(first.getEncodedHeader());
+            }
+            if (header != null) builder.setHeader(header).setEncodedHeader(null);
+            if (signature != null) builder.setSignature(signature);
+
+            if (first == null) return addSignature(builder.build());
+            signaturesList.set(0, builder.build());
+            return this;
+        }
 
         /* ================================================================== */
 
@@ -86,14 +216,25 @@ public interface JWS extends JOSE<JWSHeader> {
             return super.build();
         }
 
+        @Override
+        public Builder reset() {
+            payload = null;
+            encodedPayload = null;
+            signingInput = null;
+            signatures = Collections.emptyList();
+            signaturesList = null;
+            return this;
+        }
+
         /* ================================================================== */
 
         @Data
         private static final class Impl implements JWS {
 
-            private final JWSHeader header;
             private final Bytes payload;
-            private final Bytes signature;
+            private final Bytes encodedPayload;
+            private final Bytes signingInput;
+            private final List<JWSSignature> signatures;
 
         }
     }
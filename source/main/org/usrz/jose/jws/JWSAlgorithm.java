@@ -27,44 +27,56 @@ import org.usrz.jose.shared.JOSEAlgorithm;
 public enum JWSAlgorithm implements JOSEAlgorithm {
 
     /** HMAC using SHA-256 */
-    HS256("HS256", OCT),  // key="HmacSHA256", HmacSHA256, ... engine unsupported?
+    HS256("HS256", OCT, "HmacSHA256"),
     /** HMAC using SHA-384 */
-    HS384("HS384", OCT),  // key="HmacSHA384", HmacSHA384, ... engine unsupported?
+    HS384("HS384", OCT, "HmacSHA384"),
     /** HMAC using SHA-512 */
-    HS512("HS512", OCT),  // key="HmacSHA512", HmacSHA512, ... engine unsupported?
+    HS512("HS512", OCT, "HmacSHA512"),
 
     /** RSASSA-PKCS-v1_5 using SHA-256 */
-    RS256("RS256", RSA),  // key="RSA", SHA256withRSA
+    RS256("RS256", RSA, "SHA256withRSA"),
     /** RSASSA-PKCS-v1_5 using SHA-384 */
-    RS384("RS384", RSA),  // key="RSA", SHA384withRSA
+    RS384("RS384", RSA, "SHA384withRSA"),
     /** RSASSA-PKCS-v1_5 using SHA-512 */
-    RS512("RS512", RSA),  // key="RSA", SHA512withRSA
+    RS512("RS512", RSA, "SHA512withRSA"),
 
     /** ECDSA using P-256 and SHA-256 */
-    ES256("ES256", EC),   // key="EC", SHA256withECDSA
+    ES256("ES256", EC, "SHA256withECDSA"),
     /** ECDSA using P-384 and SHA-2384 */
-    ES384("ES384", EC),   // key="EC", SHA384withECDSA
+    ES384("ES384", EC, "SHA384withECDSA"),
     /** ECDSA using P-512 <i><small>(not 512)</small></i> and SHA-512 */
-    ES512("ES512", EC),   // key="EC", SHA512withECDSA
+    ES512("ES512", EC, "SHA512withECDSA"),
 
     /** RSASSA-PSS using SHA-256 and MGF1 with SHA-256 */
-    PS256("PS256", RSA),  // key="RSA", SHA256withRSA, PSSParameterSpec, ... engine unsupported?
+    PS256("PS256", RSA, "RSASSA-PSS"),
     /** RSASSA-PSS using SHA-384 and MGF1 with SHA-384 */
-    PS384("PS384", RSA),  // key="RSA", SHA384withRSA, PSSParameterSpec, ... engine unsupported?
+    PS384("PS384", RSA, "RSASSA-PSS"),
     /** RSASSA-PSS using SHA-512 and MGF1 with SHA-512 */
-    PS512("PS512", RSA),  // key="RSA", SHA512withRSA, PSSParameterSpec, ... engine unsupported?
+    PS512("PS512", RSA, "RSASSA-PSS"),
 
     /** No digital signature or MAC performed */
-    NONE ("none", null);
+    NONE ("none", null, null);
 
     /* ====================================================================== */
 
     private final String identifier;
     private final JWKKeyType keyType;
+    private final String standardName;
 
-    private JWSAlgorithm(String identifier, JWKKeyType keyType) {
+    private JWSAlgorithm(String identifier, JWKKeyType keyType, String standardName) {
         this.identifier = identifier;
         this.keyType = keyType;
+        this.standardName = standardName;
+    }
+
+    /**
+     * Return the standard name of the {@link javax.crypto.Mac Mac} or
+     * {@link java.security.Signature Signature} algorithm implementing this
+     * {@link JWSAlgorithm} in the <i>Java Cryptography Architecture</i>, or
+     * {@code null} for {@link #NONE}.
+     */
+    public String getStandardName() {
+        return standardName;
     }
 
     @Override
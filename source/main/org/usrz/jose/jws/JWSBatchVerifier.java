@@ -0,0 +1,240 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.usrz.jose.jackson.JOSEObjectMapper;
+import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.JWKKeyOperation;
+import org.usrz.jose.jwk.JWKPublicKeyUse;
+import org.usrz.jose.jwk.JWKSet;
+import org.usrz.jose.jwk.PublicJWK;
+import org.usrz.jose.jwk.oct.OctetSequenceJWK;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Verify large batches of compact {@link JWS} tokens against the keys of a
+ * {@link JWKSet}, in parallel on a {@link ForkJoinPool}.
+ *
+ * <p>Tokens are grouped by their ({@code kid}, {@code alg}) header pair: the
+ * key for each group is looked up in the {@link JWKSet}, converted and
+ * bound to a {@link JWSVerifier} only once per batch, no matter how many
+ * tokens in the batch share it.</p>
+ *
+ * <p>A token is considered valid only if it could be parsed, if a key
+ * matching its {@code kid} (if any), {@code alg}, key type and intended
+ * use was found, and if its signature was verified by that key. When a
+ * token has no {@code kid}, the first matching key is used.</p>
+ */
+public class JWSBatchVerifier {
+
+    /* Smallest number of tokens verified by a single task */
+    private static final int THRESHOLD = 32;
+
+    /* Rejects everything, for groups whose key could not be resolved */
+    private static final JWSVerifier REJECT = (signature, signingInput) -> false;
+
+    private final ForkJoinPool pool;
+    private final JWSCompactSerialization serialization;
+
+    /**
+     * Create a new {@link JWSBatchVerifier} using the
+     * {@linkplain ForkJoinPool#commonPool() common pool} and the shared
+     * {@link JOSEObjectMapper} instance.
+     */
+    public JWSBatchVerifier() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new {@link JWSBatchVerifier} using the specified
+     * {@link ForkJoinPool} and the shared {@link JOSEObjectMapper} instance.
+     */
+    public JWSBatchVerifier(ForkJoinPool pool) {
+        this(pool, JOSEObjectMapper.MAPPER);
+    }
+
+    /**
+     * Create a new {@link JWSBatchVerifier} using the specified
+     * {@link ForkJoinPool}, and {@link ObjectMapper} to parse headers.
+     */
+    public JWSBatchVerifier(ForkJoinPool pool, ObjectMapper mapper) {
+        if (pool == null) throw new NullPointerException("Null pool");
+        serialization = new JWSCompactSerialization(mapper);
+        this.pool = pool;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Verify the specified compact {@link JWS} tokens.
+     *
+     * @return A {@link BitSet} where the bit at each token's index (in the
+     *         order of the specified {@link List}) is set if the token was
+     *         verified.
+     */
+    public BitSet verify(List<? extends CharSequence> tokens, JWKSet keys) {
+        if (tokens == null) throw new NullPointerException("Null tokens");
+        if (keys == null) throw new NullPointerException("Null key set");
+
+        /* We'll be jumping around, so we want fast indexed access */
+        final List<? extends CharSequence> list = tokens instanceof RandomAccess ? tokens : new ArrayList<>(tokens);
+        final Batch batch = new Batch(list, keys.getKeys());
+        pool.invoke(new Task(batch, 0, list.size()));
+
+        final BitSet verified = new BitSet(list.size());
+        for (int x = 0; x < batch.results.length; x ++) if (batch.results[x]) verified.set(x);
+        return verified;
+    }
+
+    /**
+     * Verify the compact {@link JWS} tokens from the specified {@link Stream}.
+     *
+     * @return A {@link BitSet} where the bit at each token's index (in the
+     *         encounter order of the specified {@link Stream}) is set if the
+     *         token was verified.
+     */
+    public BitSet verify(Stream<? extends CharSequence> tokens, JWKSet keys) {
+        if (tokens == null) throw new NullPointerException("Null tokens");
+        return verify(tokens.collect(Collectors.toList()), keys);
+    }
+
+    /* ====================================================================== */
+
+    /* The state shared by all tasks verifying the same batch */
+    private final class Batch {
+
+        private final List<? extends CharSequence> tokens;
+        private final List<JWK<?>> keys;
+        private final boolean[] results;
+        private final ConcurrentHashMap<Group, JWSVerifier> verifiers = new ConcurrentHashMap<>();
+
+        private Batch(List<? extends CharSequence> tokens, List<JWK<?>> keys) {
+            this.tokens = tokens;
+            this.keys = keys;
+            results = new boolean[tokens.size()];
+        }
+
+        private boolean verify(int index) {
+            try {
+                final JWS jws = serialization.parse(tokens.get(index));
+                final JWSSignature signature = jws.getSignatures().get(0);
+                final JWSHeader header = signature.getHeader();
+
+                final JWSAlgorithm algorithm = header.getAlgorithm();
+                if ((algorithm == null) || (algorithm == JWSAlgorithm.NONE)) return false;
+
+                /* Avoid locking on the fast path, computeIfAbsent always does */
+                final Group group = new Group(header.getKeyId(), algorithm);
+                JWSVerifier verifier = verifiers.get(group);
+                if (verifier == null) verifier = verifiers.computeIfAbsent(group, this::resolve);
+
+                return verifier.verify(signature, jws.getSigningInput());
+            } catch (Exception exception) {
+                return false;
+            }
+        }
+
+        private JWSVerifier resolve(Group group) {
+            final JWSEngine engine = JWSEngine.getInstance(group.algorithm);
+            for (JWK<?> key: keys) {
+                if (!matches(key, group)) continue;
+                try {
+                    return engine.verifier(key.toKey());
+                } catch (GeneralSecurityException | RuntimeException exception) {
+                    return REJECT;
+                }
+            }
+            return REJECT;
+        }
+
+        private boolean matches(JWK<?> key, Group group) {
+            if (!((key instanceof PublicJWK) || (key instanceof OctetSequenceJWK))) return false;
+            if (key.getKeyType() != group.algorithm.getKeyType()) return false;
+            if ((group.keyId != null) && (!group.keyId.equals(key.getKeyId()))) return false;
+            if ((key.getAlgorithm() != null) && (key.getAlgorithm() != group.algorithm)) return false;
+            if ((key.getPublicKeyUse() != null) && (key.getPublicKeyUse() != JWKPublicKeyUse.SIG)) return false;
+
+            final List<JWKKeyOperation> operations = key.getKeyOperations();
+            return (operations == null) || operations.isEmpty() || operations.contains(JWKKeyOperation.VERIFY);
+        }
+    }
+
+    /* Split the batch in halves until small enough, then verify in order */
+    private static final class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Batch batch;
+        private final int from;
+        private final int to;
+
+        private Task(Batch batch, int from, int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int x = from; x < to; x ++) batch.results[x] = batch.verify(x);
+            } else {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new Task(batch, from, middle), new Task(batch, middle, to));
+            }
+        }
+    }
+
+    /* The (kid, alg) pair tokens are grouped by */
+    private static final class Group {
+
+        private final String keyId;
+        private final JWSAlgorithm algorithm;
+        private final int hash;
+
+        private Group(String keyId, JWSAlgorithm algorithm) {
+            this.keyId = keyId;
+            this.algorithm = algorithm;
+            hash = Objects.hashCode(keyId) * 31 + algorithm.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) return true;
+            if (!(object instanceof Group)) return false;
+            final Group group = (Group) object;
+            return (algorithm == group.algorithm) && Objects.equals(keyId, group.keyId);
+        }
+    }
+}
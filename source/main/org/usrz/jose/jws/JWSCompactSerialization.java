@@ -0,0 +1,318 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import static org.usrz.jose.shared.Base64URL.encodedLength;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.usrz.jose.jackson.JOSEObjectMapper;
+import org.usrz.jose.shared.Base64URL;
+import org.usrz.jose.shared.Bytes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A parser and writer for the <i>JWS Compact Serialization</i> of {@link JWS}
+ * objects, that is {@code header.payload.signature}.
+ *
+ * <p>Parsed {@link JWS} instances keep the ASCII bytes of their
+ * {@linkplain JWS#getSigningInput() signing input}, so that verification never
+ * needs to rebuild it, and so that writing them back produces exactly the
+ * same serialization.</p>
+ *
+ * <p>Unencoded payloads (RFC 7797, {@code "b64":false}) are supported as long
+ * as they are ASCII and contain no periods, while {@link JWS} instances with
+ * no payload are written with an empty (<i>detached</i>) one.</p>
+ */
+public class JWSCompactSerialization {
+
+    private static final Bytes EMPTY = new Bytes(new byte[0]);
+
+    private final ObjectMapper mapper;
+
+    /**
+     * Create a new {@link JWSCompactSerialization} using the shared
+     * {@link JOSEObjectMapper} instance.
+     */
+    public JWSCompactSerialization() {
+        this(JOSEObjectMapper.MAPPER);
+    }
+
+    /**
+     * Create a new {@link JWSCompactSerialization} using the specified
+     * {@link ObjectMapper} to read and write headers.
+     */
+    public JWSCompactSerialization(ObjectMapper mapper) {
+        if (mapper == null) throw new NullPointerException("Null mapper");
+        this.mapper = mapper;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Parse a {@link JWS} from its compact serialization.
+     *
+     * @throws IllegalArgumentException If the serialization was invalid.
+     */
+    public JWS parse(CharSequence compact) {
+        final int length = compact.length();
+        final byte[] ascii = new byte[length];
+        int first = -1, second = -1;
+
+        /* A single pass, converting to ASCII and looking for periods */
+        for (int x = 0; x < length; x ++) {
+            final char character = compact.charAt(x);
+            if (character > 0x7F) throw new IllegalArgumentException("Invalid character at offset " + x + " in JWS");
+            if (character == '.') {
+                if (first < 0) first = x;
+                else if (second < 0) second = x;
+                else throw new IllegalArgumentException("Too many parts in JWS");
+            }
+            ascii[x] = (byte) character;
+        }
+
+        return parse(ascii, 0, length, first, second);
+    }
+
+    /**
+     * Parse a {@link JWS} from its compact serialization as ASCII bytes.
+     *
+     * @throws IllegalArgumentException If the serialization was invalid.
+     */
+    public JWS parse(byte[] ascii) {
+        return parse(ascii, 0, ascii.length);
+    }
+
+    /**
+     * Parse a {@link JWS} from its compact serialization as a range of ASCII
+     * bytes.
+     *
+     * <p>The {@linkplain JWS#getSigningInput() signing input} of the returned
+     * {@link JWS} will share the specified array, which therefore should not
+     * be modified afterwards.</p>
+     *
+     * @throws IllegalArgumentException If the serialization was invalid.
+     */
+    public JWS parse(byte[] ascii, int offset, int length) {
+        if ((offset < 0) || (length < 0) || (offset > ascii.length - length)) {
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " and length " + length + " for " + ascii.length + " bytes");
+        }
+
+        final int end = offset + length;
+        int first = -1, second = -1;
+        for (int x = offset; x < end; x ++) {
+            if (ascii[x] == '.') {
+                if (first < 0) first = x;
+                else if (second < 0) second = x;
+                else throw new IllegalArgumentException("Too many parts in JWS");
+            }
+        }
+
+        return parse(ascii, offset, end, first, second);
+    }
+
+    private JWS parse(byte[] ascii, int start, int end, int first, int second) {
+        if (second < 0) throw new IllegalArgumentException("Not enough parts in JWS");
+
+        final JWSHeader header;
+        try {
+            header = mapper.readValue(Base64URL.decode(ascii, start, first - start), JWSHeader.class);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException("Unable to parse JWS header", exception);
+        }
+
+        final JWSSignature signature = new JWSSignature.Builder()
+                .setHeader(header)
+                .setEncodedHeader(new Bytes(ascii, start, first - start))
+                .setSignature(new Bytes(Base64URL.decode(ascii, second + 1, end - second - 1)))
+                .build();
+
+        /* RFC 7797, unencoded payloads are simply the bytes in the middle */
+        final Bytes payload = header.isPayloadEncoded() ?
+                new Bytes(Base64URL.decode(ascii, first + 1, second - first - 1)) :
+                new Bytes(ascii, first + 1, second - first - 1);
+
+        return new JWS.Builder()
+                .setPayload(payload)
+                .setEncodedPayload(new Bytes(ascii, first + 1, second - first - 1))
+                .setSigningInput(new Bytes(ascii, start, second - start))
+                .addSignature(signature)
+                .build();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the ASCII bytes of the encoded protected header of the specified
+     * {@link JWSSignature}, either the one it was parsed from, or a newly
+     * computed one.
+     */
+    public Bytes encodedHeader(JWSSignature signature) {
+        final Bytes encodedHeader = signature.getEncodedHeader();
+        if (encodedHeader != null) return encodedHeader;
+
+        if (signature.getHeader() == null) throw new IllegalArgumentException("No protected header in JWS signature");
+        try {
+            final byte[] header = mapper.writeValueAsBytes(signature.getHeader());
+            final byte[] ascii = new byte[encodedLength(header.length)];
+            Base64URL.encode(header, 0, header.length, ascii, 0);
+            return new Bytes(ascii);
+        } catch (JsonProcessingException exception) {
+            throw new IllegalArgumentException("Unable to serialize JWS header", exception);
+        }
+    }
+
+    /**
+     * Return the bytes of the payload of the specified {@link JWS} as they
+     * appear in its <i>JWS Signing Input</i>, either the ones it was parsed
+     * from, or newly computed ones.
+     *
+     * <p>These are the ASCII bytes of the <em>base64url</em> encoded payload,
+     * or the payload itself when {@linkplain JWS#isPayloadEncoded() not
+     * encoded} as per RFC 7797. <i>Detached</i> payloads are empty.</p>
+     */
+    public Bytes encodedPayload(JWS jws) {
+        final Bytes encodedPayload = jws.getEncodedPayload();
+        if (encodedPayload != null) return encodedPayload;
+
+        final Bytes payload = orEmpty(jws.getPayload());
+        if (!jws.isPayloadEncoded()) return payload;
+
+        final byte[] ascii = new byte[encodedLength(payload.length())];
+        Base64URL.encode(payload, ascii, 0);
+        return new Bytes(ascii);
+    }
+
+    /**
+     * Return the ASCII bytes of the <i>JWS Signing Input</i> for the
+     * specified {@link JWS}, either the one it was parsed from, or a newly
+     * computed one.
+     *
+     * @throws IllegalArgumentException If the {@link JWS} can not be
+     *                                  represented in compact form.
+     */
+    public Bytes signingInput(JWS jws) {
+        final Bytes signingInput = jws.getSigningInput();
+        if (signingInput != null) return signingInput;
+
+        final JWSSignature signature = signature(jws);
+
+        /* RFC 7797, section 5.2: no periods in unencoded compact payloads */
+        if (!jws.isPayloadEncoded()) {
+            final Bytes payload = encodedPayload(jws);
+            for (int x = 0; x < payload.length(); x ++) {
+                final byte current = payload.getByte(x);
+                if ((current == '.') || (current < 0)) {
+                    throw new IllegalArgumentException("Unencoded payload contains non-ASCII or period characters at offset " + x);
+                }
+            }
+        }
+
+        return signingInput(signature, jws);
+    }
+
+    /**
+     * Return the ASCII bytes of the <i>JWS Signing Input</i> for one of the
+     * (possibly many) {@linkplain JWS#getSignatures() signatures} of the
+     * specified {@link JWS}.
+     */
+    public Bytes signingInput(JWSSignature signature, JWS jws) {
+        final Bytes header = encodedHeader(signature);
+        final Bytes payload = encodedPayload(jws);
+        final byte[] ascii = new byte[header.length() + 1 + payload.length()];
+        header.copyTo(ascii, 0);
+        ascii[header.length()] = '.';
+        payload.copyTo(ascii, header.length() + 1);
+        return new Bytes(ascii);
+    }
+
+    /**
+     * Return the compact serialization of the specified {@link JWS}.
+     */
+    public String write(JWS jws) {
+        return write(jws, new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the compact serialization of the specified {@link JWS} to the
+     * given {@link StringBuilder}, and return it.
+     */
+    public StringBuilder write(JWS jws, StringBuilder builder) {
+        final Bytes signingInput = signingInput(jws);
+        final Bytes signature = orEmpty(signature(jws).getSignature());
+
+        builder.ensureCapacity(builder.length() + signingInput.length() + 1 + encodedLength(signature.length()));
+        for (int x = 0; x < signingInput.length(); x ++) builder.append((char) signingInput.getByte(x));
+        return Base64URL.encode(signature, builder.append('.'));
+    }
+
+    /**
+     * Write the compact serialization of the specified {@link JWS} as ASCII
+     * bytes in the given {@link ByteBuffer}, advancing its position.
+     *
+     * @throws BufferOverflowException If the buffer is too small, in which
+     *                                 case its position is not modified.
+     */
+    public void write(JWS jws, ByteBuffer buffer) {
+        final Bytes signingInput = signingInput(jws);
+        final Bytes signature = orEmpty(signature(jws).getSignature());
+
+        final int length = signingInput.length() + 1 + encodedLength(signature.length());
+        if (buffer.remaining() < length) throw new BufferOverflowException();
+
+        buffer.put(signingInput.asByteBuffer()).put((byte) '.');
+        Base64URL.encode(signature, buffer);
+    }
+
+    /**
+     * Write the compact serialization of the specified {@link JWS} as ASCII
+     * bytes to the given {@link OutputStream}.
+     */
+    public void write(JWS jws, OutputStream output)
+    throws IOException {
+        final Bytes signingInput = signingInput(jws);
+        final Bytes signature = orEmpty(signature(jws).getSignature());
+
+        final byte[] encoded = new byte[1 + encodedLength(signature.length())];
+        encoded[0] = '.';
+        Base64URL.encode(signature, encoded, 1);
+
+        signingInput.writeTo(output);
+        output.write(encoded);
+    }
+
+    private static Bytes orEmpty(Bytes bytes) {
+        return bytes == null ? EMPTY : bytes;
+    }
+
+    /* The one and only signature we can represent in compact form */
+    private static JWSSignature signature(JWS jws) {
+        if (jws.getSignatures().size() != 1) {
+            throw new IllegalArgumentException("Compact serialization requires exactly one signature, got " + jws.getSignatures().size());
+        }
+
+        final JWSSignature signature = jws.getSignatures().get(0);
+        if (signature.getUnprotectedHeader() != null) {
+            throw new IllegalArgumentException("Compact serialization does not support unprotected headers");
+        }
+        return signature;
+    }
+}
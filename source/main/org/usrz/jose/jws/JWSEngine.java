@@ -0,0 +1,111 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.KeyedPool;
+
+/**
+ * An engine signing and verifying <i>JWS Signing Inputs</i> according to a
+ * specific {@link JWSAlgorithm}.
+ *
+ * <p>Engines are thread-safe, and share a {@link KeyedPool} of
+ * {@link javax.crypto.Mac Mac} or {@link java.security.Signature Signature}
+ * instances per algorithm, keyed by the identity of the {@link Key} each
+ * was initialized with: the (costly) provider lookup and key initialization
+ * are performed only once, and no instance is ever bound to a thread.</p>
+ */
+public abstract class JWSEngine {
+
+    private static final Map<JWSAlgorithm, JWSEngine> ENGINES;
+
+    static {
+        final Map<JWSAlgorithm, JWSEngine> engines = new EnumMap<>(JWSAlgorithm.class);
+        for (JWSAlgorithm algorithm: JWSAlgorithm.values()) {
+            if (algorithm.getKeyType() == null) continue;
+            switch (algorithm.getKeyType()) {
+                case OCT: engines.put(algorithm, new JWSMacEngine(algorithm)); break;
+                default:  engines.put(algorithm, new JWSSignatureEngine(algorithm)); break;
+            }
+        }
+        ENGINES = Collections.unmodifiableMap(engines);
+    }
+
+    /**
+     * Return the {@link JWSEngine} for the specified {@link JWSAlgorithm}.
+     *
+     * @throws IllegalArgumentException If the algorithm is not supported
+     *                                  (for example {@link JWSAlgorithm#NONE}).
+     */
+    public static JWSEngine getInstance(JWSAlgorithm algorithm) {
+        final JWSEngine engine = ENGINES.get(algorithm);
+        if (engine == null) throw new IllegalArgumentException("Unsupported JWS algorithm " + algorithm);
+        return engine;
+    }
+
+    /* ====================================================================== */
+
+    private final JWSAlgorithm algorithm;
+
+    JWSEngine(JWSAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Return the {@link JWSAlgorithm} implemented by this {@link JWSEngine}.
+     */
+    public final JWSAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Sign (or MAC) the specified <i>JWS Signing Input</i> with the given
+     * {@link Key}, returning the signature bytes in their JOSE format.
+     */
+    public abstract Bytes sign(Key key, Bytes signingInput)
+    throws GeneralSecurityException;
+
+    /**
+     * Verify the specified signature bytes (in their JOSE format) over the
+     * given <i>JWS Signing Input</i> with the specified {@link Key}.
+     */
+    public abstract boolean verify(Key key, Bytes signingInput, Bytes signature)
+    throws GeneralSecurityException;
+
+    /**
+     * Return a {@link JWSVerifier} verifying {@link JWSSignature}s with this
+     * engine and the specified {@link Key}.
+     */
+    public JWSVerifier verifier(Key key)
+    throws GeneralSecurityException {
+        if (key == null) throw new NullPointerException("Null key");
+        return (signature, signingInput) -> {
+            final Bytes bytes = signature.getSignature();
+            return bytes != null && verify(key, signingInput, bytes);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + algorithm.joseName() + "]";
+    }
+}
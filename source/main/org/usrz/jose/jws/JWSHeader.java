@@ -14,13 +14,42 @@ import org.usrz.jose.jwk.JWK;
 import org.usrz.jose.shared.Bytes;
 import org.usrz.jose.shared.JOSEHeader;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
 @JsonDeserialize(builder=JWSHeader.Builder.class)
 public interface JWSHeader extends JOSEHeader<JWSAlgorithm> {
 
-    /* JWSHeader is a simple marker interface */
+    /** The {@code b64} header field name, from RFC 7797. */
+    public static final String BASE64_PAYLOAD = "b64";
+
+    /**
+     * Check whether the payload is <em>base64url</em> encoded in the
+     * <i>JWS Signing Input</i> (the default) or not, as per RFC 7797.
+     *
+     * @throws IllegalArgumentException If the {@code b64} header is not a
+     *                                  boolean, or is not listed in the
+     *                                  {@linkplain #getCriticalExtensions()
+     *                                  critical extensions}.
+     */
+    @JsonIgnore
+    public default boolean isPayloadEncoded() {
+        final Map<String, Object> headers = getAdditionalHeaders();
+        final Object encoded = headers == null ? null : headers.get(BASE64_PAYLOAD);
+        if (encoded == null) return true;
+
+        if (!(encoded instanceof Boolean)) {
+            throw new IllegalArgumentException("Header \"" + BASE64_PAYLOAD + "\" must be a boolean");
+        }
+
+        final List<String> critical = getCriticalExtensions();
+        if ((critical == null) || (!critical.contains(BASE64_PAYLOAD))) {
+            throw new IllegalArgumentException("Header \"" + BASE64_PAYLOAD + "\" must be listed in \"" + CRITICAL_EXTENSIONS + "\"");
+        }
+
+        return (Boolean) encoded;
+    }
 
     /* ====================================================================== */
 
@@ -30,8 +59,25 @@ public interface JWSHeader extends JOSEHeader<JWSAlgorithm> {
     public static final class Builder
     extends JOSEHeader.Builder<JWSAlgorithm, JWSHeader, Builder> {
 
+        private static final Maker<JWSHeader> MAKER = maker(Builder.class, Impl.class);
+
         public Builder() {
-            super(Impl.class);
+            super(MAKER);
+        }
+
+        /**
+         * Declare whether the payload is <em>base64url</em> encoded in the
+         * <i>JWS Signing Input</i> or not, as per RFC 7797.
+         *
+         * <p>Unencoded payloads set the {@code "b64"} header and list it
+         * (once) as critical, encoded ones simply remove both.</p>
+         */
+        @JsonIgnore
+        public Builder setPayloadEncoded(boolean payloadEncoded) {
+            removeCriticalExtension(BASE64_PAYLOAD);
+            if (payloadEncoded) return removeAdditionalHeader(BASE64_PAYLOAD);
+            return addAdditionalHeader(BASE64_PAYLOAD, false)
+                  .addCriticalExtension(BASE64_PAYLOAD);
         }
 
         @Override
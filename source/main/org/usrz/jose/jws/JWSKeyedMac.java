@@ -0,0 +1,158 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+import javax.crypto.Mac;
+
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Pool;
+import org.usrz.jose.shared.Secret;
+
+/**
+ * A fast signer and verifier for the HMAC-based {@link JWSAlgorithm}s bound
+ * to a single key.
+ *
+ * <p>Initializing a {@link Mac} runs the HMAC key schedule (hashing the
+ * padded key into its inner and outer states) every time: instances of this
+ * class do it <em>once</em>, and then {@linkplain Mac#clone() clone} the
+ * pre-keyed {@link Mac} into a {@link Pool} of ready-to-use instances.</p>
+ *
+ * <p>Verification reads the <i>JWS Signing Input</i> and the signature from
+ * {@link Bytes} windows (for example over a compact JWS), computes the MAC in
+ * a pooled buffer and compares it in constant time: nothing is allocated
+ * on the heap.</p>
+ */
+public final class JWSKeyedMac implements JWSVerifier {
+
+    private final JWSAlgorithm algorithm;
+    private final JWSMacEngine engine;
+    private final Key key;
+    private final Mac prototype;
+    private final Pool<Entry> pool;
+
+    /**
+     * Create a new {@link JWSKeyedMac} for the specified HMAC-based
+     * {@link JWSAlgorithm} and {@link Secret} (for example the
+     * {@linkplain org.usrz.jose.jwk.oct.OctetSequenceJWK#getKeyValue()
+     * value} of an octet sequence JWK).
+     */
+    public JWSKeyedMac(JWSAlgorithm algorithm, Secret secret)
+    throws GeneralSecurityException {
+        this(algorithm, secret.toSecretKey(algorithm.getStandardName()));
+    }
+
+    /**
+     * Create a new {@link JWSKeyedMac} for the specified HMAC-based
+     * {@link JWSAlgorithm} and {@link Key}.
+     */
+    public JWSKeyedMac(JWSAlgorithm algorithm, Key key)
+    throws GeneralSecurityException {
+        if (key == null) throw new NullPointerException("Null key");
+
+        final JWSEngine engine = JWSEngine.getInstance(algorithm);
+        if (!(engine instanceof JWSMacEngine)) {
+            throw new IllegalArgumentException("Algorithm " + algorithm.joseName() + " is not HMAC-based");
+        }
+
+        this.algorithm = algorithm;
+        this.engine = (JWSMacEngine) engine;
+        this.key = key;
+
+        prototype = this.engine.create();
+        prototype.init(key);
+        pool = new Pool<>(this::create);
+    }
+
+    /* Clone our pre-keyed prototype, or key a new instance if we can't */
+    private Entry create()
+    throws GeneralSecurityException {
+        try {
+            return new Entry((Mac) prototype.clone());
+        } catch (CloneNotSupportedException exception) {
+            final Mac mac = engine.create();
+            mac.init(key);
+            return new Entry(mac);
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the {@link JWSAlgorithm} of this {@link JWSKeyedMac}.
+     */
+    public JWSAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /*
+     * Entries are released only on success: after an exception a Mac might
+     * be left half-way through a computation, so we simply drop it.
+     */
+
+    /**
+     * Compute the MAC of the specified <i>JWS Signing Input</i>.
+     */
+    public Bytes sign(Bytes signingInput)
+    throws GeneralSecurityException {
+        final Entry entry = pool.acquire();
+        signingInput.update(entry.mac);
+        final Bytes signature = new Bytes(entry.mac.doFinal());
+        pool.release(entry);
+        return signature;
+    }
+
+    /**
+     * Verify the specified MAC over the given <i>JWS Signing Input</i>.
+     */
+    public boolean verify(Bytes signingInput, Bytes signature)
+    throws GeneralSecurityException {
+        final Entry entry = pool.acquire();
+        signingInput.update(entry.mac);
+        entry.mac.doFinal(entry.output, 0);
+        final boolean verified = signature.constantTimeEquals(entry.output, 0, entry.output.length);
+        pool.release(entry);
+        return verified;
+    }
+
+    @Override
+    public boolean verify(JWSSignature signature, Bytes signingInput)
+    throws GeneralSecurityException {
+        final Bytes bytes = signature.getSignature();
+        return bytes != null && verify(signingInput, bytes);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + algorithm.joseName() + "]";
+    }
+
+    /* ====================================================================== */
+
+    /* A pooled, pre-keyed Mac and its output buffer */
+    private static final class Entry {
+
+        private final Mac mac;
+        private final byte[] output;
+
+        private Entry(Mac mac) {
+            this.mac = mac;
+            output = new byte[mac.getMacLength()];
+        }
+    }
+}
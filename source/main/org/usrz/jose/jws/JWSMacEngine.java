@@ -0,0 +1,90 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+import javax.crypto.Mac;
+
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.KeyedPool;
+
+/**
+ * A {@link JWSEngine} for the HMAC-based {@link JWSAlgorithm}s.
+ *
+ * <p>{@link Mac}s are pooled by {@link Key}, already initialized: using the
+ * same {@link Key} repeatedly never pays for the HMAC key schedule again.</p>
+ */
+final class JWSMacEngine extends JWSEngine {
+
+    private final String standardName;
+    private final KeyedPool<Key, Mac> pool;
+
+    JWSMacEngine(JWSAlgorithm algorithm) {
+        super(algorithm);
+        standardName = algorithm.getStandardName();
+        pool = new KeyedPool<>(this::create);
+    }
+
+    private Mac create(Key key)
+    throws GeneralSecurityException {
+        final Mac mac = create();
+        mac.init(key);
+        return mac;
+    }
+
+    Mac create()
+    throws GeneralSecurityException {
+        return Mac.getInstance(standardName);
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public Bytes sign(Key key, Bytes signingInput)
+    throws GeneralSecurityException {
+        return new Bytes(mac(key, signingInput));
+    }
+
+    @Override
+    public boolean verify(Key key, Bytes signingInput, Bytes signature)
+    throws GeneralSecurityException {
+        final byte[] mac = mac(key, signingInput);
+        return signature.constantTimeEquals(mac, 0, mac.length);
+    }
+
+    /**
+     * Return a {@link JWSKeyedMac}, running the HMAC key schedule only once.
+     */
+    @Override
+    public JWSVerifier verifier(Key key)
+    throws GeneralSecurityException {
+        return new JWSKeyedMac(getAlgorithm(), key);
+    }
+
+    private byte[] mac(Key key, Bytes signingInput)
+    throws GeneralSecurityException {
+        if (key == null) throw new NullPointerException("Null key");
+
+        /* Mac.doFinal() resets, ready for reuse with the same key */
+        final KeyedPool.Entry<Key, Mac> entry = pool.acquire(key);
+        signingInput.update(entry.get());
+        final byte[] mac = entry.get().doFinal();
+        pool.release(entry);
+        return mac;
+    }
+}
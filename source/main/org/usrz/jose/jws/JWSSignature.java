@@ -0,0 +1,129 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import lombok.Data;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.JOSEBuilder;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A single signature (or MAC) over the payload of a {@link JWS}, together
+ * with its <i>protected</i> and <i>unprotected</i> headers.
+ */
+public interface JWSSignature {
+
+    /** The {@code protected} field name. */
+    public static final String PROTECTED_HEADER = "protected";
+
+    /** The {@code header} field name. */
+    public static final String UNPROTECTED_HEADER = "header";
+
+    /** The {@code signature} field name. */
+    public static final String SIGNATURE = "signature";
+
+    /**
+     * Return the <i>protected</i> header, integrity protected by the
+     * signature.
+     */
+    @JsonProperty(PROTECTED_HEADER)
+    public JWSHeader getHeader();
+
+    /**
+     * Return the <i>unprotected</i> header, not integrity protected by the
+     * signature, or {@code null}.
+     */
+    @JsonProperty(UNPROTECTED_HEADER)
+    public JWSHeader getUnprotectedHeader();
+
+    /**
+     * Return the signature (or MAC) bytes.
+     */
+    @JsonProperty(SIGNATURE)
+    public Bytes getSignature();
+
+    /**
+     * Return the ASCII bytes of the encoded protected header if this
+     * signature was parsed, or {@code null}.
+     */
+    @JsonIgnore
+    public Bytes getEncodedHeader();
+
+    /* ====================================================================== */
+
+    /** A builder of immutable {@link JWSSignature} instances. */
+    @Accessors(chain=true)
+    public static final class Builder
+    extends JOSEBuilder<JWSSignature> {
+
+        private static final Maker<JWSSignature> MAKER = maker(Builder.class, Impl.class);
+
+        public Builder() {
+            super(MAKER);
+        }
+
+        /* ================================================================== */
+
+        /** The protected header */
+        @Setter
+        private JWSHeader header;
+
+        /** The unprotected header */
+        @Setter
+        private JWSHeader unprotectedHeader;
+
+        /** The signature (or MAC) bytes */
+        @Setter
+        private Bytes signature;
+
+        /** The ASCII bytes of the encoded protected header */
+        @Setter
+        private Bytes encodedHeader;
+
+        /* ================================================================== */
+
+        @Override
+        public JWSSignature build() {
+            return super.build();
+        }
+
+        @Override
+        public Builder reset() {
+            header = null;
+            unprotectedHeader = null;
+            signature = null;
+            encodedHeader = null;
+            return this;
+        }
+
+        /* ================================================================== */
+
+        @Data
+        private static final class Impl implements JWSSignature {
+
+            private final JWSHeader header;
+            private final JWSHeader unprotectedHeader;
+            private final Bytes signature;
+            private final Bytes encodedHeader;
+
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.KeyedPool;
+
+/**
+ * A {@link JWSEngine} for the RSA and ECDSA based {@link JWSAlgorithm}s.
+ *
+ * <p>ECDSA signatures are produced and verified directly in their JOSE
+ * format when the provider supports the {@code ...inP1363Format} algorithms,
+ * or are otherwise transcoded to and from DER by an {@link ECDSATranscoder}
+ * in buffers kept along with each pooled {@link Signature}.</p>
+ *
+ * <p>{@link Signature}s are pooled by {@link Key}, already initialized for
+ * signing (with {@link PrivateKey}s) or verification (with
+ * {@link PublicKey}s), so that using the same {@link Key} repeatedly never
+ * pays for its initialization again.</p>
+ */
+final class JWSSignatureEngine extends JWSEngine {
+
+    private final String standardName;
+    private final AlgorithmParameterSpec parameters;
+    private final ECDSATranscoder transcoder;
+    private final KeyedPool<PrivateKey, Entry> signers;
+    private final KeyedPool<PublicKey, Entry> verifiers;
+    private volatile boolean p1363 = true;
+
+    JWSSignatureEngine(JWSAlgorithm algorithm) {
+        super(algorithm);
+        standardName = algorithm.getStandardName();
+
+        switch (algorithm) {
+            case PS256: parameters = new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1); break;
+            case PS384: parameters = new PSSParameterSpec("SHA-384", "MGF1", MGF1ParameterSpec.SHA384, 48, 1); break;
+            case PS512: parameters = new PSSParameterSpec("SHA-512", "MGF1", MGF1ParameterSpec.SHA512, 64, 1); break;
+            default:    parameters = null;
+        }
+
+        switch (algorithm) {
+            case ES256: transcoder = ECDSATranscoder.getInstance(ECCurve.P_256); break;
+            case ES384: transcoder = ECDSATranscoder.getInstance(ECCurve.P_384); break;
+            case ES512: transcoder = ECDSATranscoder.getInstance(ECCurve.P_521); break;
+            default:    transcoder = null;
+        }
+
+        signers = new KeyedPool<>((key) -> {
+            final Entry entry = create();
+            entry.signature.initSign(key);
+            if (parameters != null) entry.signature.setParameter(parameters);
+            return entry;
+        });
+
+        verifiers = new KeyedPool<>((key) -> {
+            final Entry entry = create();
+            entry.signature.initVerify(key);
+            if (parameters != null) entry.signature.setParameter(parameters);
+            return entry;
+        });
+    }
+
+    private Entry create()
+    throws GeneralSecurityException {
+        /* Try the P1363 (R||S) format first, remember if it's unsupported */
+        if ((transcoder != null) && p1363) try {
+            return new Entry(Signature.getInstance(standardName + "inP1363Format"), true);
+        } catch (NoSuchAlgorithmException exception) {
+            p1363 = false;
+        }
+
+        /* Parameters are set after the key: the provider is chosen by the key */
+        return new Entry(Signature.getInstance(standardName), false);
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public Bytes sign(Key key, Bytes signingInput)
+    throws GeneralSecurityException {
+        if (!(key instanceof PrivateKey)) throw new IllegalArgumentException("Signing " + getAlgorithm().joseName() + " requires a private key");
+
+        /* Signature.sign() resets, ready for reuse with the same key */
+        final KeyedPool.Entry<PrivateKey, Entry> pooled = signers.acquire((PrivateKey) key);
+        final Entry entry = pooled.get();
+        signingInput.update(entry.signature);
+
+        final byte[] result;
+        if ((transcoder == null) || entry.p1363) {
+            result = entry.signature.sign();
+        } else {
+            final int length = entry.signature.sign(entry.buffer, 0, entry.buffer.length);
+            result = new byte[transcoder.getConcatLength()];
+            transcoder.toConcat(entry.buffer, 0, length, result, 0);
+        }
+
+        /* Exceptions? Never release a Signature in an unknown state */
+        signers.release(pooled);
+        return new Bytes(result);
+    }
+
+    @Override
+    public boolean verify(Key key, Bytes signingInput, Bytes signature)
+    throws GeneralSecurityException {
+        if (!(key instanceof PublicKey)) throw new IllegalArgumentException("Verifying " + getAlgorithm().joseName() + " requires a public key");
+
+        /* Wrong length for ECDSA? No need to even try... */
+        if ((transcoder != null) && (signature.length() != transcoder.getConcatLength())) return false;
+
+        /* Signature.verify() resets, ready for reuse with the same key */
+        final KeyedPool.Entry<PublicKey, Entry> pooled = verifiers.acquire((PublicKey) key);
+        final Entry entry = pooled.get();
+        final boolean verified;
+        try {
+            signingInput.update(entry.signature);
+
+            if (transcoder == null) {
+                verified = entry.signature.verify(signature.getBytes());
+            } else if (entry.p1363) {
+                signature.copyTo(entry.buffer, 0);
+                verified = entry.signature.verify(entry.buffer, 0, signature.length());
+            } else {
+                final int length = transcoder.toDER(signature, entry.buffer, 0);
+                verified = entry.signature.verify(entry.buffer, 0, length);
+            }
+
+        } catch (SignatureException exception) {
+            /* Malformed signatures (and only those) are simply invalid */
+            return false;
+        }
+
+        /* Exceptions? Never release a Signature in an unknown state */
+        verifiers.release(pooled);
+        return verified;
+    }
+
+    /* ====================================================================== */
+
+    /* A pooled Signature, its format, and a buffer for ECDSA signatures */
+    private final class Entry {
+
+        private final Signature signature;
+        private final boolean p1363;
+        private final byte[] buffer;
+
+        private Entry(Signature signature, boolean p1363) {
+            this.signature = signature;
+            this.p1363 = p1363;
+            buffer = transcoder == null ? null : new byte[transcoder.getMaximumDERLength()];
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.usrz.jose.jackson.JOSEObjectMapper;
+import org.usrz.jose.shared.Bytes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Verify all the {@linkplain JWS#getSignatures() signatures} of a {@link JWS}
+ * in parallel on a {@link ForkJoinPool}.
+ *
+ * <p>Verification stops as soon as its outcome is known: with the
+ * {@link Policy#ANY_OF ANY_OF} policy at the first valid signature, with the
+ * {@link Policy#ALL_OF ALL_OF} policy at the first invalid one. Signatures
+ * whose verification did not start by then are never verified.</p>
+ *
+ * <p>A {@link JWSVerifier} throwing an exception (checked or not) is
+ * considered as having rejected its signature.</p>
+ */
+public class JWSSignaturesVerifier {
+
+    /**
+     * The policy deciding when a {@link JWS} with multiple signatures is
+     * considered valid.
+     */
+    public enum Policy {
+        /** At least one signature must be valid. */
+        ANY_OF,
+        /** All signatures must be valid. */
+        ALL_OF
+    }
+
+    private final ForkJoinPool pool;
+    private final JWSCompactSerialization serialization;
+
+    /**
+     * Create a new {@link JWSSignaturesVerifier} using the
+     * {@linkplain ForkJoinPool#commonPool() common pool} and the shared
+     * {@link JOSEObjectMapper} instance.
+     */
+    public JWSSignaturesVerifier() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new {@link JWSSignaturesVerifier} using the specified
+     * {@link ForkJoinPool} and the shared {@link JOSEObjectMapper} instance.
+     */
+    public JWSSignaturesVerifier(ForkJoinPool pool) {
+        this(pool, JOSEObjectMapper.MAPPER);
+    }
+
+    /**
+     * Create a new {@link JWSSignaturesVerifier} using the specified
+     * {@link ForkJoinPool}, and {@link ObjectMapper} to encode the protected
+     * headers of signatures that were not parsed.
+     */
+    public JWSSignaturesVerifier(ForkJoinPool pool, ObjectMapper mapper) {
+        if (pool == null) throw new NullPointerException("Null pool");
+        serialization = new JWSCompactSerialization(mapper);
+        this.pool = pool;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Verify the signatures of the specified {@link JWS}, waiting for the
+     * outcome.
+     *
+     * @return {@code false} if the {@link JWS} has no signatures, or if they
+     *         do not satisfy the specified {@link Policy}.
+     */
+    public boolean verify(JWS jws, JWSVerifier verifier, Policy policy) {
+        final List<JWSSignature> signatures = jws.getSignatures();
+        if (signatures.isEmpty()) return false;
+
+        /* A single signature: no point in going through the pool */
+        if (signatures.size() == 1) return verify(signatures.get(0), jws, verifier);
+
+        return verifyAsync(jws, verifier, policy).join();
+    }
+
+    /**
+     * Verify the signatures of the specified {@link JWS}, returning a
+     * {@link CompletableFuture} completed with the outcome.
+     *
+     * <p>Cancelling the returned {@link CompletableFuture} also cancels the
+     * verification of all signatures not yet verified.</p>
+     */
+    public CompletableFuture<Boolean> verifyAsync(JWS jws, JWSVerifier verifier, Policy policy) {
+        if (verifier == null) throw new NullPointerException("Null verifier");
+        if (policy == null) throw new NullPointerException("Null policy");
+
+        final List<JWSSignature> signatures = jws.getSignatures();
+        final CompletableFuture<Boolean> outcome = new CompletableFuture<>();
+        if (signatures.isEmpty()) {
+            outcome.complete(false);
+            return outcome;
+        }
+
+        /* ALL_OF decides at the first "false", ANY_OF at the first "true" */
+        final boolean decisive = policy == Policy.ANY_OF;
+        final AtomicInteger remaining = new AtomicInteger(signatures.size());
+        final ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[signatures.size()];
+
+        for (int x = 0; x < tasks.length; x ++) {
+            if (outcome.isDone()) break;
+
+            final JWSSignature signature = signatures.get(x);
+            tasks[x] = pool.submit(() -> {
+                if ((!outcome.isDone()) && (verify(signature, jws, verifier) == decisive)) {
+                    outcome.complete(decisive);
+                }
+                if (remaining.decrementAndGet() == 0) outcome.complete(!decisive);
+            });
+        }
+
+        /* Once we know, do not bother verifying anything else */
+        outcome.whenComplete((result, throwable) -> {
+            for (ForkJoinTask<?> task: tasks) if (task != null) task.cancel(false);
+        });
+
+        return outcome;
+    }
+
+    /* ====================================================================== */
+
+    private boolean verify(JWSSignature signature, JWS jws, JWSVerifier verifier) {
+        try {
+            final Bytes signingInput = (jws.getSigningInput() != null) && (jws.getSignatures().size() == 1) ?
+                    jws.getSigningInput() :
+                    serialization.signingInput(signature, jws);
+            return verifier.verify(signature, signingInput);
+        } catch (Exception exception) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import static org.usrz.jose.shared.Base64URL.encodedLength;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Locale;
+
+import javax.crypto.Mac;
+
+import org.usrz.jose.jackson.JOSEObjectMapper;
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.shared.Base64URL;
+import org.usrz.jose.shared.Bytes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Feed the <i>JWS Signing Input</i> of a {@link JWSSignature} straight into a
+ * {@link Mac} or {@link Signature}, <em>streaming</em> its payload from an
+ * {@link InputStream}, a {@link ReadableByteChannel} or a memory-mapped
+ * {@link FileChannel}.
+ *
+ * <p>This allows signing and verifying <i>detached</i> payloads of any size
+ * using a constant amount of memory: payloads are read in fixed size chunks,
+ * and are <em>base64url</em> encoded on the fly unless the signature's header
+ * declares them {@linkplain JWSHeader#isPayloadEncoded() unencoded} as per
+ * RFC 7797.</p>
+ *
+ * <p>Engines must be initialized before being passed to this class, and are
+ * left ready for their final {@link Mac#doFinal()}, {@link Signature#sign()}
+ * or {@link #verify(JWSSignature, Mac) verify(...)} call.</p>
+ *
+ * <p>ECDSA {@link Signature}s can be either in the {@code ...inP1363Format}
+ * (producing and verifying JOSE {@code R||S} signatures directly) or in the
+ * standard DER format: those are {@linkplain #verify(JWSSignature, Signature)
+ * verified} transcoding signatures with an {@link ECDSATranscoder}, which
+ * must also be used to {@linkplain ECDSATranscoder#toConcat(byte[], int,
+ * int, byte[], int) convert} what their {@link Signature#sign()} returns.</p>
+ */
+public class JWSSigningInput {
+
+    /* A multiple of 3, so that chunks always encode to whole base64 quanta */
+    private static final int CHUNK_SIZE = 8192 * 3;
+    /* The same goes for our memory-mapped windows, 48 MB each */
+    private static final int WINDOW_SIZE = 3 << 24;
+
+    private final JWSCompactSerialization serialization;
+
+    /**
+     * Create a new {@link JWSSigningInput} using the shared
+     * {@link JOSEObjectMapper} instance to encode protected headers.
+     */
+    public JWSSigningInput() {
+        this(JOSEObjectMapper.MAPPER);
+    }
+
+    /**
+     * Create a new {@link JWSSigningInput} using the specified
+     * {@link ObjectMapper} to encode protected headers.
+     */
+    public JWSSigningInput(ObjectMapper mapper) {
+        serialization = new JWSCompactSerialization(mapper);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Update the specified {@link Mac} with the <i>JWS Signing Input</i> of
+     * the given {@link JWSSignature}, reading the payload from an
+     * {@link InputStream} until its end.
+     */
+    public void update(JWSSignature signature, InputStream payload, Mac mac)
+    throws IOException {
+        try {
+            update(signature, payload, sink(mac));
+        } catch (SignatureException exception) {
+            throw new IllegalStateException("Exception updating MAC", exception);
+        }
+    }
+
+    /**
+     * Update the specified {@link Signature} with the <i>JWS Signing Input</i>
+     * of the given {@link JWSSignature}, reading the payload from an
+     * {@link InputStream} until its end.
+     */
+    public void update(JWSSignature signature, InputStream payload, Signature engine)
+    throws IOException, SignatureException {
+        update(signature, payload, sink(engine));
+    }
+
+    /**
+     * Update the specified {@link Mac} with the <i>JWS Signing Input</i> of
+     * the given {@link JWSSignature}, reading the payload from a
+     * (blocking) {@link ReadableByteChannel} until its end.
+     */
+    public void update(JWSSignature signature, ReadableByteChannel payload, Mac mac)
+    throws IOException {
+        try {
+            update(signature, payload, sink(mac));
+        } catch (SignatureException exception) {
+            throw new IllegalStateException("Exception updating MAC", exception);
+        }
+    }
+
+    /**
+     * Update the specified {@link Signature} with the <i>JWS Signing Input</i>
+     * of the given {@link JWSSignature}, reading the payload from a
+     * (blocking) {@link ReadableByteChannel} until its end.
+     */
+    public void update(JWSSignature signature, ReadableByteChannel payload, Signature engine)
+    throws IOException, SignatureException {
+        update(signature, payload, sink(engine));
+    }
+
+    /**
+     * Update the specified {@link Mac} with the <i>JWS Signing Input</i> of
+     * the given {@link JWSSignature}, <em>memory-mapping</em> the payload from
+     * the current position of a {@link FileChannel} to its end.
+     *
+     * <p>The position of the {@link FileChannel} will be moved to its end.</p>
+     */
+    public void update(JWSSignature signature, FileChannel payload, Mac mac)
+    throws IOException {
+        try {
+            update(signature, payload, sink(mac));
+        } catch (SignatureException exception) {
+            throw new IllegalStateException("Exception updating MAC", exception);
+        }
+    }
+
+    /**
+     * Update the specified {@link Signature} with the <i>JWS Signing Input</i>
+     * of the given {@link JWSSignature}, <em>memory-mapping</em> the payload
+     * from the current position of a {@link FileChannel} to its end.
+     *
+     * <p>The position of the {@link FileChannel} will be moved to its end.</p>
+     */
+    public void update(JWSSignature signature, FileChannel payload, Signature engine)
+    throws IOException, SignatureException {
+        update(signature, payload, sink(engine));
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Complete the specified {@link Mac} and compare the result with the
+     * signature bytes of the given {@link JWSSignature} in constant time.
+     */
+    public static boolean verify(JWSSignature signature, Mac mac) {
+        final Bytes bytes = signature.getSignature();
+        if (bytes == null) throw new IllegalArgumentException("No signature to verify");
+        return MessageDigest.isEqual(mac.doFinal(), bytes.getBytes());
+    }
+
+    /**
+     * Verify the signature bytes of the given {@link JWSSignature} with the
+     * specified {@link Signature}.
+     *
+     * <p>Standard (DER) ECDSA {@link Signature}s, like {@code SHA256withECDSA},
+     * are given the JOSE {@code R||S} signature transcoded by an
+     * {@link ECDSATranscoder}.</p>
+     *
+     * @throws IllegalArgumentException If the {@link Signature} uses ECDSA
+     *                                  with a digest no JWS algorithm uses.
+     */
+    public static boolean verify(JWSSignature signature, Signature engine)
+    throws SignatureException {
+        final Bytes bytes = signature.getSignature();
+        if (bytes == null) throw new IllegalArgumentException("No signature to verify");
+
+        final ECDSATranscoder transcoder = transcoder(engine);
+        if (transcoder == null) return engine.verify(bytes.getBytes());
+
+        /* Wrong length for ECDSA? No need to even try... */
+        if (bytes.length() != transcoder.getConcatLength()) return false;
+        final byte[] der = new byte[transcoder.getMaximumDERLength()];
+        return engine.verify(der, 0, transcoder.toDER(bytes, der, 0));
+    }
+
+    /* The transcoder for DER ECDSA signatures, null for anything else */
+    private static ECDSATranscoder transcoder(Signature engine) {
+        final String name = engine.getAlgorithm().toUpperCase(Locale.ROOT);
+        if (!name.endsWith("WITHECDSA")) return null;
+
+        switch (name) {
+            case "SHA256WITHECDSA": return ECDSATranscoder.getInstance(ECCurve.P_256);
+            case "SHA384WITHECDSA": return ECDSATranscoder.getInstance(ECCurve.P_384);
+            case "SHA512WITHECDSA": return ECDSATranscoder.getInstance(ECCurve.P_521);
+            default: throw new IllegalArgumentException("Unsupported ECDSA signature algorithm " + engine.getAlgorithm());
+        }
+    }
+
+    /* ====================================================================== */
+
+    private void update(JWSSignature signature, InputStream payload, Sink sink)
+    throws IOException, SignatureException {
+        final byte[] chunk = new byte[CHUNK_SIZE];
+
+        if (!header(signature, sink)) {
+            int read;
+            while ((read = payload.read(chunk)) >= 0) sink.update(chunk, 0, read);
+            return;
+        }
+
+        final byte[] ascii = new byte[encodedLength(CHUNK_SIZE)];
+        int length;
+        do {
+            /* Always fill our chunk, or we'd encode partial quanta */
+            length = 0;
+            int read;
+            while ((length < CHUNK_SIZE) && ((read = payload.read(chunk, length, CHUNK_SIZE - length)) >= 0)) {
+                length += read;
+            }
+            sink.update(ascii, 0, Base64URL.encode(chunk, 0, length, ascii, 0));
+        } while (length == CHUNK_SIZE);
+    }
+
+    private void update(JWSSignature signature, ReadableByteChannel payload, Sink sink)
+    throws IOException, SignatureException {
+        final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+        if (!header(signature, sink)) {
+            while (payload.read(chunk) >= 0) {
+                chunk.flip();
+                sink.update(chunk);
+                chunk.clear();
+            }
+            return;
+        }
+
+        final byte[] ascii = new byte[encodedLength(CHUNK_SIZE)];
+        do {
+            /* Always fill our chunk, or we'd encode partial quanta */
+            chunk.clear();
+            while (chunk.hasRemaining() && (payload.read(chunk) >= 0)) continue;
+            sink.update(ascii, 0, Base64URL.encode(chunk.array(), 0, chunk.position(), ascii, 0));
+        } while (!chunk.hasRemaining());
+    }
+
+    private void update(JWSSignature signature, FileChannel payload, Sink sink)
+    throws IOException, SignatureException {
+        final boolean encoded = header(signature, sink);
+        final byte[] chunk = encoded ? new byte[CHUNK_SIZE] : null;
+        final byte[] ascii = encoded ? new byte[encodedLength(CHUNK_SIZE)] : null;
+        final long size = payload.size();
+
+        for (long position = payload.position(); position < size; position += WINDOW_SIZE) {
+            final MappedByteBuffer window = payload.map(MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+            if (!encoded) {
+                sink.update(window);
+                continue;
+            }
+
+            /* Bulk copies out of the mapped window beat encoding it in place */
+            while (window.hasRemaining()) {
+                final int length = Math.min(CHUNK_SIZE, window.remaining());
+                window.get(chunk, 0, length);
+                sink.update(ascii, 0, Base64URL.encode(chunk, 0, length, ascii, 0));
+            }
+        }
+        payload.position(size);
+    }
+
+    /* Update with the encoded header and period, returning if the payload is encoded */
+    private boolean header(JWSSignature signature, Sink sink)
+    throws SignatureException {
+        final boolean encoded = signature.getHeader() == null || signature.getHeader().isPayloadEncoded();
+        final Bytes header = serialization.encodedHeader(signature);
+        sink.update(header.asByteBuffer());
+        sink.update(new byte[] { '.' }, 0, 1);
+        return encoded;
+    }
+
+    /* ====================================================================== */
+
+    /* Mac and Signature share no interface, adapt them */
+    private interface Sink {
+
+        void update(byte[] bytes, int offset, int length)
+        throws SignatureException;
+
+        void update(ByteBuffer buffer)
+        throws SignatureException;
+
+    }
+
+    private static Sink sink(Mac mac) {
+        return new Sink() {
+
+            @Override
+            public void update(byte[] bytes, int offset, int length) {
+                mac.update(bytes, offset, length);
+            }
+
+            @Override
+            public void update(ByteBuffer buffer) {
+                mac.update(buffer);
+            }
+        };
+    }
+
+    private static Sink sink(Signature engine) {
+        return new Sink() {
+
+            @Override
+            public void update(byte[] bytes, int offset, int length)
+            throws SignatureException {
+                engine.update(bytes, offset, length);
+            }
+
+            @Override
+            public void update(ByteBuffer buffer)
+            throws SignatureException {
+                engine.update(buffer);
+            }
+        };
+    }
+}
@@ -0,0 +1,39 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.security.GeneralSecurityException;
+
+import org.usrz.jose.shared.Bytes;
+
+/**
+ * A verifier of a single {@linkplain JWSSignature signature} over the
+ * ASCII bytes of its <i>JWS Signing Input</i>.
+ */
+@FunctionalInterface
+public interface JWSVerifier {
+
+    /**
+     * Verify the specified {@link JWSSignature} over the given
+     * <i>JWS Signing Input</i>.
+     *
+     * @return {@code true} if the signature is valid, {@code false} otherwise.
+     * @throws GeneralSecurityException If the signature could not be verified.
+     */
+    public boolean verify(JWSSignature signature, Bytes signingInput)
+    throws GeneralSecurityException;
+
+}
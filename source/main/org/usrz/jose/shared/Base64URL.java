@@ -0,0 +1,490 @@
+package org.usrz.jose.shared;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A fast, table-driven encoder and decoder for the <i>URL-safe</i> variant
+ * of Base64 <em>without padding</em>, as used everywhere in JOSE.
+ *
+ * <p>Encoding converts three bytes at a time using a table mapping twelve
+ * bits to two characters, while decoding converts four characters at a time,
+ * validating them with a single check per group. Only the final (partial)
+ * group, if any, is handled separately.</p>
+ *
+ * <p>Source and destination can be {@code byte[]} (ASCII characters),
+ * {@code char[]}, {@link CharSequence}s or {@link ByteBuffer}s, and no
+ * intermediate {@link String} is ever created.</p>
+ */
+public final class Base64URL {
+
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+
+    /* Twelve bits to two characters, high one in the high byte */
+    private static final short[] ENCODE = new short[4096];
+    /* Characters to six bits, or -1 for invalid characters */
+    private static final int[] DECODE = new int[256];
+
+    static {
+        for (int x = 0; x < ENCODE.length; x ++) {
+            ENCODE[x] = (short) ((ALPHABET[x >>> 6] << 8) | ALPHABET[x & 0x3F]);
+        }
+        Arrays.fill(DECODE, -1);
+        for (int x = 0; x < ALPHABET.length; x ++) DECODE[ALPHABET[x]] = x;
+    }
+
+    private Base64URL() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the number of characters required to encode the specified
+     * number of bytes.
+     */
+    public static int encodedLength(int length) {
+        if (length < 0) throw new IllegalArgumentException("Negative length " + length);
+        return (int) ((length * 4L + 2) / 3);
+    }
+
+    /**
+     * Return the number of bytes decoded from the specified number of
+     * characters.
+     *
+     * @throws IllegalArgumentException If no valid encoding has that length.
+     */
+    public static int decodedLength(int length) {
+        if ((length < 0) || ((length & 3) == 1)) {
+            throw new IllegalArgumentException("Invalid base64url length " + length);
+        }
+        return (int) (length * 3L / 4);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Encode the specified bytes as a {@link String}.
+     */
+    public static String encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    /**
+     * Encode the specified range of bytes as a {@link String}.
+     */
+    public static String encode(byte[] data, int offset, int length) {
+        final char[] chars = new char[encodedLength(length)];
+        encode(data, offset, length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encode the specified {@link Bytes} as a {@link String}.
+     */
+    public static String encode(Bytes bytes) {
+        return encode(bytes.array(), bytes.offset(), bytes.length());
+    }
+
+    /**
+     * Encode the specified {@link Bytes}, writing ASCII characters in the
+     * destination array and returning the number of characters written.
+     */
+    public static int encode(Bytes bytes, byte[] destination, int destinationOffset) {
+        return encode(bytes.array(), bytes.offset(), bytes.length(), destination, destinationOffset);
+    }
+
+    /**
+     * Encode the specified {@link Bytes} appending characters to the given
+     * {@link StringBuilder}, and return it.
+     */
+    public static StringBuilder encode(Bytes bytes, StringBuilder builder) {
+        return encode(bytes.array(), bytes.offset(), bytes.length(), builder);
+    }
+
+    /**
+     * Encode the specified {@link Bytes}, writing ASCII characters in the
+     * destination buffer and advancing its position.
+     *
+     * @throws BufferOverflowException If the destination is too small.
+     */
+    public static void encode(Bytes bytes, ByteBuffer destination) {
+        encode(ByteBuffer.wrap(bytes.array(), bytes.offset(), bytes.length()), destination);
+    }
+
+    /**
+     * Encode the specified range of bytes, writing ASCII characters in the
+     * destination array and returning the number of characters written.
+     */
+    public static int encode(byte[] data, int offset, int length, byte[] destination, int destinationOffset) {
+        checkRange(data.length, offset, length);
+        checkRange(destination.length, destinationOffset, encodedLength(length));
+
+        final int end = offset + length - 2;
+        int s = offset, d = destinationOffset;
+        while (s < end) {
+            final int bits = ((data[s ++] & 0xFF) << 16) | ((data[s ++] & 0xFF) << 8) | (data[s ++] & 0xFF);
+            final short hi = ENCODE[bits >>> 12];
+            final short lo = ENCODE[bits & 0xFFF];
+            destination[d ++] = (byte) (hi >>> 8);
+            destination[d ++] = (byte) hi;
+            destination[d ++] = (byte) (lo >>> 8);
+            destination[d ++] = (byte) lo;
+        }
+
+        switch (end + 2 - s) {
+            case 2:
+                final int bits = ((data[s] & 0xFF) << 10) | ((data[s + 1] & 0xFF) << 2);
+                final short hi = ENCODE[bits >>> 6];
+                destination[d ++] = (byte) (hi >>> 8);
+                destination[d ++] = (byte) hi;
+                destination[d ++] = ALPHABET[bits & 0x3F];
+                break;
+            case 1:
+                final short one = ENCODE[(data[s] & 0xFF) << 4];
+                destination[d ++] = (byte) (one >>> 8);
+                destination[d ++] = (byte) one;
+        }
+
+        return d - destinationOffset;
+    }
+
+    /**
+     * Encode the specified range of bytes, writing characters in the
+     * destination array and returning the number of characters written.
+     */
+    public static int encode(byte[] data, int offset, int length, char[] destination, int destinationOffset) {
+        checkRange(data.length, offset, length);
+        checkRange(destination.length, destinationOffset, encodedLength(length));
+
+        final int end = offset + length - 2;
+        int s = offset, d = destinationOffset;
+        while (s < end) {
+            final int bits = ((data[s ++] & 0xFF) << 16) | ((data[s ++] & 0xFF) << 8) | (data[s ++] & 0xFF);
+            final short hi = ENCODE[bits >>> 12];
+            final short lo = ENCODE[bits & 0xFFF];
+            destination[d ++] = (char) (hi >>> 8);
+            destination[d ++] = (char) (hi & 0xFF);
+            destination[d ++] = (char) (lo >>> 8);
+            destination[d ++] = (char) (lo & 0xFF);
+        }
+
+        switch (end + 2 - s) {
+            case 2:
+                final int bits = ((data[s] & 0xFF) << 10) | ((data[s + 1] & 0xFF) << 2);
+                final short hi = ENCODE[bits >>> 6];
+                destination[d ++] = (char) (hi >>> 8);
+                destination[d ++] = (char) (hi & 0xFF);
+                destination[d ++] = (char) ALPHABET[bits & 0x3F];
+                break;
+            case 1:
+                final short one = ENCODE[(data[s] & 0xFF) << 4];
+                destination[d ++] = (char) (one >>> 8);
+                destination[d ++] = (char) (one & 0xFF);
+        }
+
+        return d - destinationOffset;
+    }
+
+    /**
+     * Encode the specified range of bytes appending characters to the given
+     * {@link StringBuilder}, and return it.
+     */
+    public static StringBuilder encode(byte[] data, int offset, int length, StringBuilder builder) {
+        checkRange(data.length, offset, length);
+        builder.ensureCapacity(builder.length() + encodedLength(length));
+
+        final int end = offset + length - 2;
+        int s = offset;
+        while (s < end) {
+            final int bits = ((data[s ++] & 0xFF) << 16) | ((data[s ++] & 0xFF) << 8) | (data[s ++] & 0xFF);
+            final short hi = ENCODE[bits >>> 12];
+            final short lo = ENCODE[bits & 0xFFF];
+            builder.append((char) (hi >>> 8))
+                   .append((char) (hi & 0xFF))
+                   .append((char) (lo >>> 8))
+                   .append((char) (lo & 0xFF));
+        }
+
+        switch (end + 2 - s) {
+            case 2:
+                final int bits = ((data[s] & 0xFF) << 10) | ((data[s + 1] & 0xFF) << 2);
+                final short hi = ENCODE[bits >>> 6];
+                builder.append((char) (hi >>> 8))
+                       .append((char) (hi & 0xFF))
+                       .append((char) ALPHABET[bits & 0x3F]);
+                break;
+            case 1:
+                final short one = ENCODE[(data[s] & 0xFF) << 4];
+                builder.append((char) (one >>> 8))
+                       .append((char) (one & 0xFF));
+        }
+
+        return builder;
+    }
+
+    /**
+     * Encode all the bytes remaining in the source buffer, writing ASCII
+     * characters in the destination buffer.
+     *
+     * <p>The positions of both buffers will be advanced, and if the
+     * destination is too small, neither will be modified.</p>
+     *
+     * @throws BufferOverflowException If the destination is too small.
+     */
+    public static void encode(ByteBuffer source, ByteBuffer destination) {
+        final int length = source.remaining();
+        final int encoded = encodedLength(length);
+        if (destination.remaining() < encoded) throw new BufferOverflowException();
+
+        /* Fast path, for heap buffers */
+        if (source.hasArray() && destination.hasArray()) {
+            encode(source.array(), source.arrayOffset() + source.position(), length,
+                   destination.array(), destination.arrayOffset() + destination.position());
+            source.position(source.position() + length);
+            destination.position(destination.position() + encoded);
+            return;
+        }
+
+        while (source.remaining() > 2) {
+            final int bits = ((source.get() & 0xFF) << 16) | ((source.get() & 0xFF) << 8) | (source.get() & 0xFF);
+            final short hi = ENCODE[bits >>> 12];
+            final short lo = ENCODE[bits & 0xFFF];
+            destination.put((byte) (hi >>> 8))
+                       .put((byte) hi)
+                       .put((byte) (lo >>> 8))
+                       .put((byte) lo);
+        }
+
+        switch (source.remaining()) {
+            case 2:
+                final int bits = ((source.get() & 0xFF) << 10) | ((source.get() & 0xFF) << 2);
+                final short hi = ENCODE[bits >>> 6];
+                destination.put((byte) (hi >>> 8))
+                           .put((byte) hi)
+                           .put(ALPHABET[bits & 0x3F]);
+                break;
+            case 1:
+                final short one = ENCODE[(source.get() & 0xFF) << 4];
+                destination.put((byte) (one >>> 8))
+                           .put((byte) one);
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Decode all the characters in the specified {@link CharSequence}.
+     *
+     * @throws IllegalArgumentException If the characters are not valid.
+     */
+    public static byte[] decode(CharSequence chars) {
+        return decode(chars, 0, chars.length());
+    }
+
+    /**
+     * Decode the characters in the specified {@link CharSequence} from the
+     * {@code start} index (inclusive) to the {@code end} one (exclusive).
+     *
+     * @throws IllegalArgumentException If the characters are not valid.
+     */
+    public static byte[] decode(CharSequence chars, int start, int end) {
+        final byte[] data = new byte[decodedLength(end - start)];
+        decode(chars, start, end, data, 0);
+        return data;
+    }
+
+    /**
+     * Decode the characters in the specified {@link CharSequence} from the
+     * {@code start} index (inclusive) to the {@code end} one (exclusive),
+     * writing in the destination array and returning the number of bytes
+     * written.
+     *
+     * @throws IllegalArgumentException If the characters are not valid.
+     */
+    public static int decode(CharSequence chars, int start, int end, byte[] destination, int destinationOffset) {
+        checkRange(chars.length(), start, end - start);
+        checkRange(destination.length, destinationOffset, decodedLength(end - start));
+
+        final int last = end - 3;
+        int s = start, d = destinationOffset;
+        while (s < last) {
+            final int bits = (decode(chars.charAt(s ++)) << 18)
+                           | (decode(chars.charAt(s ++)) << 12)
+                           | (decode(chars.charAt(s ++)) << 6)
+                           |  decode(chars.charAt(s ++));
+            if (bits < 0) throw invalid(chars, s - 4, s);
+            destination[d ++] = (byte) (bits >>> 16);
+            destination[d ++] = (byte) (bits >>> 8);
+            destination[d ++] = (byte) bits;
+        }
+
+        switch (end - s) {
+            case 3: {
+                final int bits = (decode(chars.charAt(s)) << 12)
+                               | (decode(chars.charAt(s + 1)) << 6)
+                               |  decode(chars.charAt(s + 2));
+                if (bits < 0) throw invalid(chars, s, end);
+                destination[d ++] = (byte) (bits >>> 10);
+                destination[d ++] = (byte) (bits >>> 2);
+                break;
+            }
+            case 2: {
+                final int bits = (decode(chars.charAt(s)) << 6)
+                               |  decode(chars.charAt(s + 1));
+                if (bits < 0) throw invalid(chars, s, end);
+                destination[d ++] = (byte) (bits >>> 4);
+            }
+        }
+
+        return d - destinationOffset;
+    }
+
+    /**
+     * Decode the specified range of ASCII characters.
+     *
+     * @throws IllegalArgumentException If the characters are not valid.
+     */
+    public static byte[] decode(byte[] ascii, int offset, int length) {
+        final byte[] data = new byte[decodedLength(length)];
+        decode(ascii, offset, length, data, 0);
+        return data;
+    }
+
+    /**
+     * Decode the specified range of ASCII characters, writing in the
+     * destination array and returning the number of bytes written.
+     *
+     * @throws IllegalArgumentException If the characters are not valid.
+     */
+    public static int decode(byte[] ascii, int offset, int length, byte[] destination, int destinationOffset) {
+        checkRange(ascii.length, offset, length);
+        checkRange(destination.length, destinationOffset, decodedLength(length));
+
+        final int end = offset + length;
+        final int last = end - 3;
+        int s = offset, d = destinationOffset;
+        while (s < last) {
+            final int bits = (DECODE[ascii[s ++] & 0xFF] << 18)
+                           | (DECODE[ascii[s ++] & 0xFF] << 12)
+                           | (DECODE[ascii[s ++] & 0xFF] << 6)
+                           |  DECODE[ascii[s ++] & 0xFF];
+            if (bits < 0) throw invalid(ascii, s - 4, s);
+            destination[d ++] = (byte) (bits >>> 16);
+            destination[d ++] = (byte) (bits >>> 8);
+            destination[d ++] = (byte) bits;
+        }
+
+        switch (end - s) {
+            case 3: {
+                final int bits = (DECODE[ascii[s] & 0xFF] << 12)
+                               | (DECODE[ascii[s + 1] & 0xFF] << 6)
+                               |  DECODE[ascii[s + 2] & 0xFF];
+                if (bits < 0) throw invalid(ascii, s, end);
+                destination[d ++] = (byte) (bits >>> 10);
+                destination[d ++] = (byte) (bits >>> 2);
+                break;
+            }
+            case 2: {
+                final int bits = (DECODE[ascii[s] & 0xFF] << 6)
+                               |  DECODE[ascii[s + 1] & 0xFF];
+                if (bits < 0) throw invalid(ascii, s, end);
+                destination[d ++] = (byte) (bits >>> 4);
+            }
+        }
+
+        return d - destinationOffset;
+    }
+
+    /**
+     * Decode all the ASCII characters remaining in the source buffer, writing
+     * in the destination buffer.
+     *
+     * <p>The positions of both buffers will be advanced, and if the
+     * destination is too small, neither will be modified.</p>
+     *
+     * @throws BufferOverflowException If the destination is too small.
+     * @throws IllegalArgumentException If the characters are not valid.
+     */
+    public static void decode(ByteBuffer source, ByteBuffer destination) {
+        final int length = source.remaining();
+        final int decoded = decodedLength(length);
+        if (destination.remaining() < decoded) throw new BufferOverflowException();
+
+        /* Fast path, for heap buffers */
+        if (source.hasArray() && destination.hasArray()) {
+            decode(source.array(), source.arrayOffset() + source.position(), length,
+                   destination.array(), destination.arrayOffset() + destination.position());
+            source.position(source.position() + length);
+            destination.position(destination.position() + decoded);
+            return;
+        }
+
+        final int start = source.position();
+        final int end = source.limit();
+        final int last = end - 3;
+        int s = start;
+        while (s < last) {
+            final int bits = (DECODE[source.get(s ++) & 0xFF] << 18)
+                           | (DECODE[source.get(s ++) & 0xFF] << 12)
+                           | (DECODE[source.get(s ++) & 0xFF] << 6)
+                           |  DECODE[source.get(s ++) & 0xFF];
+            if (bits < 0) throw invalid(source, s - 4, s);
+            destination.put((byte) (bits >>> 16))
+                       .put((byte) (bits >>> 8))
+                       .put((byte) bits);
+        }
+
+        switch (end - s) {
+            case 3: {
+                final int bits = (DECODE[source.get(s) & 0xFF] << 12)
+                               | (DECODE[source.get(s + 1) & 0xFF] << 6)
+                               |  DECODE[source.get(s + 2) & 0xFF];
+                if (bits < 0) throw invalid(source, s, end);
+                destination.put((byte) (bits >>> 10))
+                           .put((byte) (bits >>> 2));
+                break;
+            }
+            case 2: {
+                final int bits = (DECODE[source.get(s) & 0xFF] << 6)
+                               |  DECODE[source.get(s + 1) & 0xFF];
+                if (bits < 0) throw invalid(source, s, end);
+                destination.put((byte) (bits >>> 4));
+            }
+        }
+
+        source.position(end);
+    }
+
+    /* ====================================================================== */
+
+    /* Characters outside of the table yield a negative value, no branches */
+    private static int decode(char c) {
+        return DECODE[c & 0xFF] | -(c >>> 8);
+    }
+
+    private static void checkRange(int size, int offset, int length) {
+        if ((offset < 0) || (length < 0) || (offset > size - length)) {
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " and length " + length + " for size " + size);
+        }
+    }
+
+    private static IllegalArgumentException invalid(CharSequence chars, int start, int end) {
+        return new IllegalArgumentException("Invalid base64url characters \"" + chars.subSequence(start, end) + "\" at offset " + start);
+    }
+
+    private static IllegalArgumentException invalid(byte[] ascii, int start, int end) {
+        final StringBuilder builder = new StringBuilder(end - start);
+        for (int x = start; x < end; x ++) builder.append((char) (ascii[x] & 0xFF));
+        return new IllegalArgumentException("Invalid base64url characters \"" + builder + "\" at offset " + start);
+    }
+
+    private static IllegalArgumentException invalid(ByteBuffer source, int start, int end) {
+        final StringBuilder builder = new StringBuilder(end - start);
+        for (int x = start; x < end; x ++) builder.append((char) (source.get(x) & 0xFF));
+        return new IllegalArgumentException("Invalid base64url characters \"" + builder + "\" at position " + start);
+    }
+}
@@ -1,27 +1,225 @@
 package org.usrz.jose.shared;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.SignatureException;
 import java.util.Arrays;
 
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+
+/**
+ * An immutable sequence of bytes, possibly a <i>window</i> over a larger
+ * (shared) array.
+ *
+ * <p>Instances never expose their backing array: {@link #getBytes()} returns
+ * a copy, while {@link #asByteBuffer()}, {@link #asInputStream()},
+ * {@link #writeTo(OutputStream)} and the various {@code update(...)} methods
+ * give access to the contents with no copy at all.</p>
+ */
 public final class Bytes {
 
     private final byte[] bytes;
+    private final int offset;
+    private final int length;
 
     public Bytes(byte[] bytes) {
         if (bytes == null) throw new NullPointerException("Null bytes");
         this.bytes = bytes;
+        this.offset = 0;
+        this.length = bytes.length;
+    }
+
+    /**
+     * Create a new {@link Bytes} instance as a window over the specified
+     * region of an array, which will <b>not</b> be copied.
+     */
+    public Bytes(byte[] bytes, int offset, int length) {
+        if (bytes == null) throw new NullPointerException("Null bytes");
+        if ((offset < 0) || (length < 0) || (offset > bytes.length - length)) {
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " and length " + length + " for " + bytes.length + " bytes");
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Return a {@link Bytes} instance sharing the same contents of this one
+     * starting at the specified offset and of the specified length.
+     */
+    public Bytes slice(int offset, int length) {
+        if ((offset < 0) || (length < 0) || (offset > this.length - length)) {
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " and length " + length + " for " + this.length + " bytes");
+        }
+        if ((offset == 0) && (length == this.length)) return this;
+        return new Bytes(bytes, this.offset + offset, length);
     }
 
     public byte[] getBytes() {
-        return Arrays.copyOf(bytes, bytes.length);
+        return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+
+    /**
+     * Return the byte at the specified index.
+     */
+    public byte getByte(int index) {
+        if ((index < 0) || (index >= length)) {
+            throw new IndexOutOfBoundsException("Invalid index " + index + " for " + length + " bytes");
+        }
+        return bytes[offset + index];
     }
 
     public int length() {
-        return bytes.length;
+        return length;
+    }
+
+    /* Direct access to our backing array, for the codecs in this package */
+    byte[] array() {
+        return bytes;
+    }
+
+    int offset() {
+        return offset;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return a <em>read-only</em> {@link ByteBuffer} over the contents of
+     * this instance, positioned at zero.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Return an {@link InputStream} reading the contents of this instance.
+     */
+    public InputStream asInputStream() {
+        return new ByteArrayInputStream(bytes, offset, length);
+    }
+
+    /**
+     * Copy the contents of this instance in the specified array.
+     */
+    public void copyTo(byte[] destination, int destinationOffset) {
+        System.arraycopy(bytes, offset, destination, destinationOffset, length);
     }
 
+    /**
+     * Write the contents of this instance to the specified {@link OutputStream}.
+     */
+    public void writeTo(OutputStream output)
+    throws IOException {
+        output.write(bytes, offset, length);
+    }
+
+    /**
+     * Update the specified {@link MessageDigest} with the contents of this.
+     */
+    public void update(MessageDigest digest) {
+        digest.update(bytes, offset, length);
+    }
+
+    /**
+     * Update the specified {@link Mac} with the contents of this.
+     */
+    public void update(Mac mac) {
+        mac.update(bytes, offset, length);
+    }
+
+    /**
+     * Update the specified {@link Signature} with the contents of this.
+     */
+    public void update(Signature signature)
+    throws SignatureException {
+        signature.update(bytes, offset, length);
+    }
+
+    /**
+     * Update the <i>Additional Authenticated Data</i> of the specified
+     * {@link Cipher} with the contents of this.
+     */
+    public void updateAAD(Cipher cipher) {
+        cipher.updateAAD(bytes, offset, length);
+    }
+
+    /**
+     * Continue the operation of the specified {@link Cipher} over the
+     * contents of this, writing its output in the given array.
+     *
+     * @return The number of bytes written in the output array.
+     */
+    public int update(Cipher cipher, byte[] output, int outputOffset)
+    throws ShortBufferException {
+        return cipher.update(bytes, offset, length, output, outputOffset);
+    }
+
+    /**
+     * Continue the operation of the specified {@link Cipher} over the
+     * contents of this, writing its output in the given {@link ByteBuffer}.
+     *
+     * @return The number of bytes written in the output {@link ByteBuffer}.
+     */
+    public int update(Cipher cipher, ByteBuffer output)
+    throws ShortBufferException {
+        /* Heap buffers with an accessible array are never copied by ciphers */
+        return cipher.update(ByteBuffer.wrap(bytes, offset, length), output);
+    }
+
+    /**
+     * Finish the operation of the specified {@link Cipher} over the
+     * contents of this, writing its output in the given array.
+     *
+     * @return The number of bytes written in the output array.
+     */
+    public int doFinal(Cipher cipher, byte[] output, int outputOffset)
+    throws GeneralSecurityException {
+        return cipher.doFinal(bytes, offset, length, output, outputOffset);
+    }
+
+    /**
+     * Finish the operation of the specified {@link Cipher} over the
+     * contents of this, writing its output in the given {@link ByteBuffer}.
+     *
+     * @return The number of bytes written in the output {@link ByteBuffer}.
+     */
+    public int doFinal(Cipher cipher, ByteBuffer output)
+    throws GeneralSecurityException {
+        return cipher.doFinal(ByteBuffer.wrap(bytes, offset, length), output);
+    }
+
+    /**
+     * Compare the contents of this instance with the specified range of an
+     * array in <em>constant time</em>, that is without leaking the position of
+     * the first difference (useful for MACs and signatures).
+     */
+    public boolean constantTimeEquals(byte[] array, int offset, int length) {
+        if ((offset < 0) || (length < 0) || (offset > array.length - length)) {
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " and length " + length + " for " + array.length + " bytes");
+        }
+        if (length != this.length) return false;
+
+        int result = 0;
+        for (int x = 0; x < length; x ++) result |= bytes[this.offset + x] ^ array[offset + x];
+        return result == 0;
+    }
+
+    /* ====================================================================== */
+
     @Override
     public int hashCode() {
-        return Arrays.hashCode(bytes);
+        int hash = 1;
+        for (int x = offset; x < offset + length; x ++) hash = 31 * hash + bytes[x];
+        return hash;
     }
 
     @Override
@@ -29,7 +227,12 @@ public final class Bytes {
         if (object == null) return false;
         if (object == this) return true;
         try {
-            return Arrays.equals(bytes, ((Bytes)object).bytes);
+            final Bytes other = (Bytes) object;
+            if (other.length != length) return false;
+            for (int x = 0; x < length; x ++) {
+                if (bytes[offset + x] != other.bytes[other.offset + x]) return false;
+            }
+            return true;
         } catch (ClassCastException exception) {
             return false;
         }
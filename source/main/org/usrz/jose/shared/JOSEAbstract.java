@@ -110,14 +110,26 @@ public interface JOSEAbstract<A extends JOSEAlgorithm> {
                                   B extends Builder<A, C, B>>
     extends JOSEBuilder<C> {
 
+        /* Lazily allocated, empty builders build with a shared empty list */
         @SuppressWarnings("unused")
-        private final List<X509Certificate> x509CertificateChain;
-        private final List<X509Certificate> x509CertificateChainList;
+        private List<X509Certificate> x509CertificateChain = Collections.emptyList();
+        private List<X509Certificate> x509CertificateChainList;
 
-        protected Builder(Class<? extends C> type) {
-            super(type);
-            x509CertificateChainList = new ArrayList<>();
-            x509CertificateChain = Collections.unmodifiableList(x509CertificateChainList);
+        protected Builder(Maker<C> maker) {
+            super(maker);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public B reset() {
+            algorithm = null;
+            keyId = null;
+            x509Url = null;
+            x509CertificateThumbprint = null;
+            x509CertificateThumbprintSHA256 = null;
+            x509CertificateChain = Collections.emptyList();
+            x509CertificateChainList = null;
+            return (B) this;
         }
 
         /* ================================================================== */
@@ -171,7 +183,7 @@ public interface JOSEAbstract<A extends JOSEAlgorithm> {
         public B setX509CertificateChain(Iterable<X509Certificate> x509CertificateChain) {
             if (x509CertificateChain == null) return (B) this;
             x509CertificateChain.forEach((certificate) -> {
-                x509CertificateChainList.add(certificate);
+                addX509CertificateToChain(certificate);
             });
             return (B) this;
         }
@@ -183,6 +195,10 @@ public interface JOSEAbstract<A extends JOSEAlgorithm> {
         @JsonIgnore
         @SuppressWarnings("unchecked")
         public B addX509CertificateToChain(X509Certificate x509Certificate) {
+            if (x509CertificateChainList == null) {
+                x509CertificateChainList = new ArrayList<>();
+                x509CertificateChain = Collections.unmodifiableList(x509CertificateChainList);
+            }
             x509CertificateChainList.add(x509Certificate);
             return (B) this;
         }
@@ -1,12 +1,13 @@
 package org.usrz.jose.shared;
 
 import java.beans.ConstructorProperties;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
-import java.util.AbstractMap.SimpleImmutableEntry;
-import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -16,37 +17,132 @@ import com.fasterxml.jackson.databind.type.TypeFactory;
 /**
  * A basic implementation of the <i>builder</i> pattern.
  *
+ * <p>Each concrete builder class resolves its {@link Maker} only once, when
+ * it is initialized, and passes it to the constructor of this class:</p>
+ *
+ * <pre>
+ * private static final Maker&lt;MyType&gt; MAKER = maker(Builder.class, Impl.class);
+ *
+ * public Builder() {
+ *     super(MAKER);
+ * }
+ * </pre>
+ *
  * @param <T> The type of the object to build.
  */
 public abstract class JOSEBuilder<T> {
 
     private static final TypeFactory TYPE_FACTORY = TypeFactory.defaultInstance();
-    private static final ConcurrentMap<Entry<Class<?>, Class<?>>, Maker<?>> CACHE =
+    private static final ConcurrentMap<Class<?>, Maker<?>> CACHE =
             new ConcurrentHashMap<>();
 
     private final Maker<T> beanConstructor;
 
+    /**
+     * Create a new {@link JOSEBuilder} constructing objects with the
+     * specified {@link Maker}.
+     */
+    protected JOSEBuilder(Maker<T> maker) {
+        if (maker == null) throw new NullPointerException("Null maker");
+        beanConstructor = maker;
+    }
+
+    /**
+     * Create a new {@link JOSEBuilder} constructing objects of the specified
+     * type, looking up its {@link Maker} every time.
+     *
+     * @deprecated Resolve a {@link Maker} once with
+     *             {@link #maker(Class, Class)} and pass it to
+     *             {@link #JOSEBuilder(Maker)} instead.
+     */
+    @Deprecated
     @SuppressWarnings({ "rawtypes", "unchecked" })
     protected JOSEBuilder(final Class<? extends T> type) {
         final Class thisClass = this.getClass();
 
-        final Entry cacheKey = new SimpleImmutableEntry(thisClass, type);
-
-        this.beanConstructor = (Maker<T>) CACHE.computeIfAbsent(cacheKey, (key) -> {
-            return new Maker(thisClass, type);
+        /* The builder class alone is our key: a plain "get" on the fast path */
+        Maker maker = CACHE.get(thisClass);
+        if (maker == null) maker = CACHE.computeIfAbsent(thisClass, (key) -> {
+            return new Maker(thisClass, type, false);
         });
+
+        if (maker.type != type) {
+            throw new IllegalStateException("Builder " + thisClass.getName() + " already constructs " + maker.type.getName());
+        }
+
+        this.beanConstructor = maker;
     }
 
     public T build() {
         return beanConstructor.build(this);
     }
 
-    private static class Maker<T> {
+    /**
+     * Reset all the values of this builder to their defaults, allowing the
+     * same instance to be reused for building another object.
+     *
+     * <p>Objects built before this call are never affected by it.</p>
+     */
+    public abstract JOSEBuilder<T> reset();
+
+    /**
+     * Eagerly initialize the specified builder classes.
+     *
+     * <p>Builders are normally introspected when their class is initialized,
+     * the first time one is constructed: calling this method when an
+     * application starts moves this cost away from the first requests it
+     * serves.</p>
+     *
+     * @throws IllegalArgumentException If a builder could not be initialized.
+     */
+    @SafeVarargs
+    public static void prepare(Class<? extends JOSEBuilder<?>>... builders) {
+        for (Class<? extends JOSEBuilder<?>> builder: builders) try {
+            Class.forName(builder.getName(), true, builder.getClassLoader());
+        } catch (ClassNotFoundException exception) {
+            throw new IllegalArgumentException("Unable to initialize builder " + builder.getName(), exception);
+        } catch (ExceptionInInitializerError error) {
+            throw new IllegalArgumentException("Unable to initialize builder " + builder.getName(), error.getCause());
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Introspect the specified builder and the type it constructs, returning
+     * the {@link Maker} to be passed to {@link #JOSEBuilder(Maker)}.
+     *
+     * @throws IllegalArgumentException If the builder's fields do not match
+     *                                  the type's constructor.
+     */
+    protected static <T> Maker<T> maker(Class<? extends JOSEBuilder<T>> builder, Class<? extends T> type) {
+        return new Maker<T>(builder, type, false);
+    }
+
+    /**
+     * Create a {@link Maker} instance for the specified builder and type.
+     *
+     * <p>This is normally used only by tests and benchmarks wanting to compare
+     * the {@link MethodHandle} and reflective construction paths.</p>
+     */
+    static <T> Maker<T> maker(Class<? extends JOSEBuilder<T>> builder, Class<? extends T> type, boolean reflective) {
+        return new Maker<T>(builder, type, reflective);
+    }
+
+    /**
+     * The way a builder constructs its objects, resolved only once for each
+     * builder class.
+     *
+     * @param <T> The type of the objects constructed.
+     */
+    public static final class Maker<T> {
 
+        private final Class<?> type;
         private final Constructor<?> constructor;
         private final Field[] fields;
+        private final MethodHandle handle;
 
-        public Maker(Class<? extends JOSEBuilder<T>> builder, Class<? extends T> type) {
+        private Maker(Class<? extends JOSEBuilder<T>> builder, Class<? extends T> type, boolean reflective) {
 
             Constructor<?> constructor = null;
             Field[] fields = null;
@@ -71,7 +167,7 @@ public abstract class JOSEBuilder<T> {
                     for (int x = 0; x < properties.length; x ++) {
                         final Field field = findField(properties[x], builder);
 
-                        final JavaType parameterType = TYPE_FACTORY.constructType(current.getGenericParameterTypes()[x], type);
+                        final JavaType parameterType = TYPE_FACTORY.constructType(parameters[x], type);
                         final JavaType fieldType = TYPE_FACTORY.constructType(field.getGenericType(), builder);
 
                         if (TYPE_FACTORY.moreSpecificType(fieldType, parameterType).equals(parameterType)) {
@@ -91,8 +187,10 @@ public abstract class JOSEBuilder<T> {
                 throw new IllegalArgumentException("No constructor annotated with @ConstructorProperties");
             }
 
+            this.type = type;
             this.constructor = constructor;
             this.fields = fields;
+            this.handle = reflective ? null : findHandle(constructor, fields);
         }
 
         private final Field findField(String name, Class<?> type) {
@@ -104,8 +202,44 @@ public abstract class JOSEBuilder<T> {
             }
         }
 
+        /*
+         * Compose a single method handle reading all the builder's fields and
+         * invoking the constructor with their values: the whole thing has a
+         * (JOSEBuilder)Object signature, so we can call "invokeExact" on it.
+         * If anything goes wrong here, we simply return null and the maker
+         * will fall back to plain old reflection.
+         */
+        private static final MethodHandle findHandle(Constructor<?> constructor, Field[] fields) {
+            try {
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                final Class<?>[] parameters = constructor.getParameterTypes();
+                final MethodHandle[] getters = new MethodHandle[fields.length];
+
+                for (int x = 0; x < fields.length; x ++) {
+                    getters[x] = lookup.unreflectGetter(fields[x])
+                                       .asType(MethodType.methodType(parameters[x], JOSEBuilder.class));
+                }
+
+                final MethodHandle filtered = MethodHandles.filterArguments(lookup.unreflectConstructor(constructor), 0, getters);
+                final MethodType type = MethodType.methodType(constructor.getDeclaringClass(), JOSEBuilder.class);
+                return MethodHandles.permuteArguments(filtered, type, new int[fields.length])
+                                    .asType(MethodType.methodType(Object.class, JOSEBuilder.class));
+
+            } catch (IllegalAccessException | RuntimeException exception) {
+                return null;
+            }
+        }
+
         @SuppressWarnings("unchecked")
-        public T build(JOSEBuilder<T> builder) {
+        T build(JOSEBuilder<T> builder) {
+            if (handle != null) try {
+                return (T) (Object) handle.invokeExact((JOSEBuilder<?>) builder);
+            } catch (Error error) {
+                throw error;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Exception constructing " + constructor.getDeclaringClass().getName(), throwable);
+            }
+
             final Object[] parameters = new Object[fields.length];
             for (int x = 0; x < fields.length; x ++) try {
                 parameters[x] = fields[x].get(builder);
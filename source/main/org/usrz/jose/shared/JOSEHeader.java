@@ -110,22 +110,30 @@ public interface JOSEHeader<A extends JOSEAlgorithm> extends JOSEAbstract<A> {
                                   B extends Builder<A, H, B>>
     extends JOSEAbstract.Builder<A, H, B> {
 
+        /* Lazily allocated, empty builders build with shared empty collections */
         @SuppressWarnings("unused")
-        private final List<String> criticalExtensions;
-        private final List<String> criticalExtensionsList;
+        private List<String> criticalExtensions = Collections.emptyList();
+        private List<String> criticalExtensionsList;
 
         @SuppressWarnings("unused")
-        private final Map<String, Object> additionalHeaders;
-        private final Map<String, Object> additionalHeadersMap;
+        private Map<String, Object> additionalHeaders = Collections.emptyMap();
+        private Map<String, Object> additionalHeadersMap;
 
-        protected Builder(Class<? extends H> type) {
-            super(type);
-
-            criticalExtensionsList = new ArrayList<>();
-            criticalExtensions = Collections.unmodifiableList(criticalExtensionsList);
+        protected Builder(Maker<H> maker) {
+            super(maker);
+        }
 
-            additionalHeadersMap = new HashMap<>();
-            additionalHeaders = Collections.unmodifiableMap(additionalHeadersMap);
+        @Override
+        public B reset() {
+            jsonWebKeySetUrl = null;
+            jsonWebKey = null;
+            mediaType = null;
+            contentMediaType = null;
+            criticalExtensions = Collections.emptyList();
+            criticalExtensionsList = null;
+            additionalHeaders = Collections.emptyMap();
+            additionalHeadersMap = null;
+            return super.reset();
         }
 
         /* ================================================================== */
@@ -171,7 +179,7 @@ public interface JOSEHeader<A extends JOSEAlgorithm> extends JOSEAbstract<A> {
         public B setCriticalExtensions(List<String> criticalExtensions) {
             if (criticalExtensions == null) return (B) this;
             criticalExtensions.forEach((criticalExtension) -> {
-                this.criticalExtensionsList.add(criticalExtension);
+                addCriticalExtension(criticalExtension);
             });
             return (B) this;
         }
@@ -184,10 +192,31 @@ public interface JOSEHeader<A extends JOSEAlgorithm> extends JOSEAbstract<A> {
         @JsonIgnore
         @SuppressWarnings("unchecked")
         public B addCriticalExtension(String criticalExtension) {
+            if (criticalExtensionsList == null) {
+                criticalExtensionsList = new ArrayList<>();
+                criticalExtensions = Collections.unmodifiableList(criticalExtensionsList);
+            }
             criticalExtensionsList.add(criticalExtension);
             return (B) this;
         }
 
+        /**
+         * Remove an extension from the "crit" (critical) Header Parameter,
+         * never affecting headers already built.
+         */
+        @JsonIgnore
+        @SuppressWarnings("unchecked")
+        public B removeCriticalExtension(String criticalExtension) {
+            if ((criticalExtensionsList == null) || (!criticalExtensionsList.contains(criticalExtension))) return (B) this;
+
+            final List<String> list = new ArrayList<>(criticalExtensionsList);
+            list.removeIf(criticalExtension::equals);
+            criticalExtensionsList = null;
+            criticalExtensions = Collections.emptyList();
+            list.forEach(this::addCriticalExtension);
+            return (B) this;
+        }
+
         /**
          * Additional headers to be specified for this JWS or JWE header.
          */
@@ -196,7 +225,7 @@ public interface JOSEHeader<A extends JOSEAlgorithm> extends JOSEAbstract<A> {
         public B setAdditionalHeaders(Map<String, Object> additionalHeaders) {
             if (additionalHeaders == null) return (B) this;
             additionalHeaders.forEach((headerName, headerValue) -> {
-                additionalHeadersMap.put(headerName, headerValue);
+                addAdditionalHeader(headerName, headerValue);
             });
             return (B) this;
         }
@@ -207,8 +236,29 @@ public interface JOSEHeader<A extends JOSEAlgorithm> extends JOSEAbstract<A> {
         @JsonAnySetter
         @SuppressWarnings("unchecked")
         public B addAdditionalHeader(String headerName, Object headerValue) {
+            if (additionalHeadersMap == null) {
+                additionalHeadersMap = new HashMap<>();
+                additionalHeaders = Collections.unmodifiableMap(additionalHeadersMap);
+            }
             additionalHeadersMap.put(headerName, headerValue);
             return (B) this;
         }
+
+        /**
+         * Remove an additional header from this JWS or JWE header, never
+         * affecting headers already built.
+         */
+        @JsonIgnore
+        @SuppressWarnings("unchecked")
+        public B removeAdditionalHeader(String headerName) {
+            if ((additionalHeadersMap == null) || (!additionalHeadersMap.containsKey(headerName))) return (B) this;
+
+            final Map<String, Object> map = new HashMap<>(additionalHeadersMap);
+            map.remove(headerName);
+            additionalHeadersMap = null;
+            additionalHeaders = Collections.emptyMap();
+            map.forEach(this::addAdditionalHeader);
+            return (B) this;
+        }
     }
 }
@@ -0,0 +1,275 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.shared;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, <em>lock-free</em> pool of reusable objects bound to a key,
+ * normally <i>Java Cryptography Architecture</i> engines already
+ * initialized with a {@link java.security.Key}.
+ *
+ * <p>Keys are compared by <em>identity</em>, and hashed to one of a fixed
+ * number of <i>stripes</i>: each stripe is a small array of slots holding
+ * {@link Entry entries}, claimed and returned with a single atomic operation
+ * each. As in {@link Pool}, no thread ever blocks and no state is bound to
+ * threads, so a thread can be as short-lived as a single request.</p>
+ *
+ * <p>When no idle entry for a key is found, a new one is created. When a
+ * stripe is full, a released entry replaces one of the idle entries in it,
+ * so that keys in use are never locked out by keys used in the past.</p>
+ *
+ * <p>Idle entries, their keys <em>and</em> the objects initialized with them
+ * (holding copies of the key material) are referenced strongly by the pool
+ * until replaced or {@linkplain #evict(Object) evicted}. Keys converted
+ * from private and secret {@link org.usrz.jose.jwk.JWK JWK}s are evicted
+ * from {@linkplain #evictAll(Object) all pools} when those are destroyed,
+ * and entries in use at that time are discarded when released.</p>
+ *
+ * @param <K> The type of the keys.
+ * @param <T> The type of the pooled objects.
+ */
+public final class KeyedPool<K, T> {
+
+    /* By default, 16 stripes of two slots per available processor */
+    private static final int DEFAULT_STRIPES = 16;
+    private static final int DEFAULT_SLOTS = Runtime.getRuntime().availableProcessors() * 2;
+
+    /* Every pool ever created, for keys to be evicted from all of them */
+    private static final Queue<WeakReference<KeyedPool<?, ?>>> POOLS = new ConcurrentLinkedQueue<>();
+    /* Keys evicted from all pools (weakly), never to be released again */
+    private static final ConcurrentHashMap<Evicted, Boolean> EVICTED = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+    private final AtomicReferenceArray<Entry<K, T>> slots;
+    private final Factory<K, T> factory;
+    private final int stripes;
+    private final int stripeSize;
+
+    /**
+     * Create a new {@link KeyedPool} with a default capacity.
+     */
+    public KeyedPool(Factory<K, T> factory) {
+        this(factory, DEFAULT_STRIPES, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Create a new {@link KeyedPool} with the specified number of stripes,
+     * each holding at most the specified number of idle entries.
+     */
+    public KeyedPool(Factory<K, T> factory, int stripes, int stripeSize) {
+        if (factory == null) throw new NullPointerException("Null factory");
+        if (stripes < 1) throw new IllegalArgumentException("Invalid number of stripes " + stripes);
+        if (stripeSize < 1) throw new IllegalArgumentException("Invalid stripe size " + stripeSize);
+        slots = new AtomicReferenceArray<>(stripes * stripeSize);
+        this.stripeSize = stripeSize;
+        this.stripes = stripes;
+        this.factory = factory;
+        POOLS.add(new WeakReference<>(this));
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Acquire an {@link Entry} for the specified key from this pool, creating
+     * a new one if none was idle.
+     */
+    public Entry<K, T> acquire(K key)
+    throws GeneralSecurityException {
+        if (key == null) throw new NullPointerException("Null key");
+
+        final int base = stripe(key) * stripeSize;
+        final int start = start();
+        for (int x = 0; x < stripeSize; x ++) {
+            final int index = base + (start + x) % stripeSize;
+            final Entry<K, T> entry = slots.get(index);
+            if ((entry == null) || (entry.key != key)) continue;
+            if (slots.compareAndSet(index, entry, null)) return entry;
+        }
+
+        return new Entry<>(key, factory.create(key));
+    }
+
+    /**
+     * Release an {@link Entry} previously {@linkplain #acquire(Object)
+     * acquired} back to this pool.
+     *
+     * <p>Entries whose objects might have been left in an inconsistent state
+     * (for example after an exception) should not be released.</p>
+     */
+    public void release(Entry<K, T> entry) {
+        if ((entry == null) || evicted(entry.key)) return;
+
+        final int base = stripe(entry.key) * stripeSize;
+        final int start = start();
+        int index = -1;
+        for (int x = 0; x < stripeSize; x ++) {
+            final int current = base + (start + x) % stripeSize;
+            if ((slots.get(current) == null) && slots.compareAndSet(current, null, entry)) {
+                index = current;
+                break;
+            }
+        }
+
+        /* Stripe full: the most recently used entry wins its slot */
+        if (index < 0) slots.set(index = base + start, entry);
+
+        /*
+         * Evicted after our first check? Evicting marks the key before it
+         * scans the slots, so either it saw our entry, or we see its mark.
+         */
+        if (evicted(entry.key)) slots.compareAndSet(index, entry, null);
+    }
+
+    /**
+     * Remove all the idle entries for the specified key from this pool.
+     */
+    public void evict(K key) {
+        if (key != null) evictKey(key);
+    }
+
+    /**
+     * Remove all the idle entries for the specified key from all pools, and
+     * discard those in use when they are released.
+     */
+    public static void evictAll(Object key) {
+        if (key == null) return;
+
+        Reference<?> reference;
+        while ((reference = QUEUE.poll()) != null) EVICTED.remove(reference);
+        EVICTED.put(new Evicted(key, QUEUE), Boolean.TRUE);
+
+        final Iterator<WeakReference<KeyedPool<?, ?>>> iterator = POOLS.iterator();
+        while (iterator.hasNext()) {
+            final KeyedPool<?, ?> pool = iterator.next().get();
+            if (pool == null) iterator.remove();
+            else pool.evictKey(key);
+        }
+    }
+
+    private static boolean evicted(Object key) {
+        return (!EVICTED.isEmpty()) && EVICTED.containsKey(new Evicted(key, null));
+    }
+
+    private void evictKey(Object key) {
+        final int base = stripe(key) * stripeSize;
+        for (int index = base; index < base + stripeSize; index ++) {
+            final Entry<K, T> entry = slots.get(index);
+            if ((entry != null) && (entry.key == key)) slots.compareAndSet(index, entry, null);
+        }
+    }
+
+    /**
+     * Return the maximum number of idle entries kept by this pool.
+     */
+    public int capacity() {
+        return slots.length();
+    }
+
+    /* Spread identity hashes, as HashMap does */
+    private int stripe(Object key) {
+        final int hash = System.identityHashCode(key);
+        return ((hash ^ (hash >>> 16)) & 0x7FFFFFFF) % stripes;
+    }
+
+    /* Different threads start scanning at different slots, less contention */
+    private int start() {
+        return (int) (Thread.currentThread().getId() % stripeSize);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * An object pooled by a {@link KeyedPool}, along with its key.
+     *
+     * @param <K> The type of the key.
+     * @param <T> The type of the pooled object.
+     */
+    public static final class Entry<K, T> {
+
+        private final K key;
+        private final T object;
+
+        private Entry(K key, T object) {
+            if (object == null) throw new NullPointerException("Factory created null object");
+            this.key = key;
+            this.object = object;
+        }
+
+        /**
+         * Return the key this {@link Entry} is bound to.
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * Return the pooled object.
+         */
+        public T get() {
+            return object;
+        }
+    }
+
+    /* Evicted keys, weakly referenced, hashed and compared on identity */
+    private static final class Evicted extends WeakReference<Object> {
+
+        private final int hash;
+
+        private Evicted(Object key, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) return true;
+            if (!(object instanceof Evicted)) return false;
+            final Object key = get();
+            return (key != null) && (key == ((Evicted) object).get());
+        }
+    }
+
+    /**
+     * A factory creating new objects for a {@link KeyedPool}.
+     *
+     * @param <K> The type of the keys.
+     * @param <T> The type of the created objects.
+     */
+    @FunctionalInterface
+    public static interface Factory<K, T> {
+
+        /**
+         * Create a new object for the specified key.
+         */
+        public T create(K key)
+        throws GeneralSecurityException;
+
+    }
+}
@@ -0,0 +1,122 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.shared;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, <em>lock-free</em> pool of reusable objects, normally
+ * <i>Java Cryptography Architecture</i> engines costly to look up.
+ *
+ * <p>Objects are kept in a fixed number of slots, claimed and returned with
+ * a single atomic operation each: no thread ever blocks on the pool, and no
+ * state is bound to threads (therefore it plays nicely with thread pools
+ * and short-lived threads alike). When all slots are empty a new object is
+ * created, and when they are all full a released object is simply
+ * discarded.</p>
+ *
+ * @param <T> The type of the pooled objects.
+ */
+public final class Pool<T> {
+
+    /* By default, two slots per available processor */
+    private static final int DEFAULT_CAPACITY = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final AtomicReferenceArray<T> slots;
+    private final Factory<T> factory;
+
+    /**
+     * Create a new {@link Pool} with a default capacity.
+     */
+    public Pool(Factory<T> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new {@link Pool} holding at most the specified number of idle
+     * objects.
+     */
+    public Pool(Factory<T> factory, int capacity) {
+        if (factory == null) throw new NullPointerException("Null factory");
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity " + capacity);
+        slots = new AtomicReferenceArray<>(capacity);
+        this.factory = factory;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Acquire an object from this pool, creating a new one if none was idle.
+     */
+    public T acquire()
+    throws GeneralSecurityException {
+        final int length = slots.length();
+        final int start = start(length);
+        for (int x = 0; x < length; x ++) {
+            final int index = (start + x) % length;
+            if (slots.get(index) == null) continue;
+            final T object = slots.getAndSet(index, null);
+            if (object != null) return object;
+        }
+        return factory.create();
+    }
+
+    /**
+     * Release an object previously {@linkplain #acquire() acquired} back to
+     * this pool, or discard it if the pool is full.
+     */
+    public void release(T object) {
+        if (object == null) return;
+
+        final int length = slots.length();
+        final int start = start(length);
+        for (int x = 0; x < length; x ++) {
+            final int index = (start + x) % length;
+            if ((slots.get(index) == null) && slots.compareAndSet(index, null, object)) return;
+        }
+    }
+
+    /**
+     * Return the maximum number of idle objects kept by this pool.
+     */
+    public int capacity() {
+        return slots.length();
+    }
+
+    /* Different threads start scanning at different slots, less contention */
+    private static int start(int length) {
+        return (int) (Thread.currentThread().getId() % length);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * A factory creating new objects for a {@link Pool}.
+     *
+     * @param <T> The type of the created objects.
+     */
+    @FunctionalInterface
+    public static interface Factory<T> {
+
+        /**
+         * Create a new object.
+         */
+        public T create()
+        throws GeneralSecurityException;
+
+    }
+}
@@ -0,0 +1,205 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.shared;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.Destroyable;
+
+/**
+ * A container for secret key material (symmetric keys, private exponents,
+ * &hellip;) stored <em>off-heap</em> in a direct {@link ByteBuffer}.
+ *
+ * <p>Secrets are never copied around by the garbage collector, and can be
+ * explicitly zeroed by calling {@link #destroy()}. Any heap copy returned by
+ * this class (for example by {@link #getBytes()}) should be wiped by the
+ * caller as soon as it's not needed anymore.</p>
+ */
+public final class Secret implements Destroyable {
+
+    private final ByteBuffer buffer;
+    private volatile boolean destroyed;
+
+    /**
+     * Create a new {@link Secret} copying the specified bytes.
+     *
+     * <p>The array passed to this constructor is <b>not</b> wiped.</p>
+     */
+    public Secret(byte[] bytes) {
+        if (bytes == null) throw new NullPointerException("Null bytes");
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes, 0, bytes.length).clear();
+    }
+
+    /**
+     * Create a new {@link Secret} from the unsigned, big-endian representation
+     * of the specified {@link BigInteger}.
+     */
+    public static Secret valueOf(BigInteger value) {
+        final byte[] encoded = value.toByteArray();
+        try {
+            if ((encoded.length > 1) && (encoded[0] == 0)) {
+                return new Secret(Arrays.copyOfRange(encoded, 1, encoded.length));
+            } else {
+                return new Secret(encoded);
+            }
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    /* ====================================================================== */
+
+    private ByteBuffer buffer() {
+        if (destroyed) throw new IllegalStateException("Secret destroyed");
+        return buffer.duplicate();
+    }
+
+    /**
+     * Return the number of bytes in this {@link Secret}.
+     */
+    public int length() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Return a <em>heap</em> copy of the bytes of this {@link Secret}.
+     */
+    public byte[] getBytes() {
+        final byte[] bytes = new byte[buffer.capacity()];
+        buffer().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Copy the bytes of this {@link Secret} in the specified array.
+     */
+    public void copyTo(byte[] destination, int destinationOffset) {
+        buffer().get(destination, destinationOffset, buffer.capacity());
+    }
+
+    /**
+     * Return a <em>heap</em> copy of this {@link Secret} as an unsigned
+     * {@link BigInteger}.
+     */
+    public BigInteger toBigInteger() {
+        final byte[] bytes = getBytes();
+        try {
+            return new BigInteger(1, bytes);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Return a {@link SecretKey} for the specified algorithm using the bytes
+     * of this {@link Secret}.
+     */
+    public SecretKey toSecretKey(String algorithm) {
+        final byte[] bytes = getBytes();
+        try {
+            return new SecretKeySpec(bytes, algorithm);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Update the specified {@link Mac} with the bytes of this, without
+     * copying them on the heap.
+     */
+    public void update(Mac mac) {
+        mac.update(buffer());
+    }
+
+    /**
+     * Update the specified {@link MessageDigest} with the bytes of this,
+     * without copying them on the heap.
+     */
+    public void update(MessageDigest digest) {
+        digest.update(buffer());
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Zero all the bytes of this {@link Secret}, making it unusable.
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+        for (int x = 0; x < buffer.capacity(); x ++) buffer.put(x, (byte) 0);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Destroy all the specified (possibly {@code null}) {@link Secret}s.
+     */
+    public static void destroy(Secret... secrets) {
+        for (Secret secret: secrets) if (secret != null) secret.destroy();
+    }
+
+    /**
+     * Check whether all the specified (possibly {@code null}) {@link Secret}s
+     * were destroyed.
+     */
+    public static boolean isDestroyed(Secret... secrets) {
+        for (Secret secret: secrets) if ((secret != null) && (!secret.destroyed)) return false;
+        return true;
+    }
+
+    /* ====================================================================== */
+
+    /* Constant time, to avoid leaking anything on comparisons */
+    @Override
+    public boolean equals(Object object) {
+        if (object == null) return false;
+        if (object == this) return true;
+        try {
+            final Secret secret = (Secret) object;
+            if (destroyed || secret.destroyed) return false;
+            if (secret.buffer.capacity() != buffer.capacity()) return false;
+            int result = 0;
+            for (int x = 0; x < buffer.capacity(); x ++) {
+                result |= buffer.get(x) ^ secret.buffer.get(x);
+            }
+            return result == 0;
+        } catch (ClassCastException exception) {
+            return false;
+        }
+    }
+
+    /* Never hash secret bytes */
+    @Override
+    public int hashCode() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public String toString() {
+        return "Secret[" + buffer.capacity() + " bytes" + (destroyed ? ", destroyed]" : "]");
+    }
+}
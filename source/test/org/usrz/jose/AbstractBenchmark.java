@@ -0,0 +1,98 @@
+package org.usrz.jose;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.usrz.libs.testing.AbstractTest;
+
+/**
+ * A very simple harness for our micro-benchmarks.
+ *
+ * <p>This is no replacement for a proper JMH run, but it gives a good enough
+ * idea of the relative costs of two code paths when run from the tests.</p>
+ */
+public abstract class AbstractBenchmark extends AbstractTest {
+
+    /** A sink preventing the JIT from discarding benchmarked results. */
+    protected volatile Object blackhole;
+
+    /**
+     * Run the specified task for the given number of iterations (after the
+     * same number of warm-up iterations) and return the operations/second.
+     */
+    protected double benchmark(String name, int iterations, Task task)
+    throws Exception {
+        return benchmarkBatch(name, iterations, 1, task);
+    }
+
+    /**
+     * Run the specified task, processing a batch of the given size each time,
+     * for the given number of iterations (after the same number of warm-up
+     * iterations) and return the operations/second, counting each item in
+     * the batch as one operation.
+     */
+    protected double benchmarkBatch(String name, int iterations, int size, Task task)
+    throws Exception {
+        for (int x = 0; x < iterations; x ++) blackhole = task.run();
+
+        final long started = System.nanoTime();
+        for (int x = 0; x < iterations; x ++) blackhole = task.run();
+        final long elapsed = System.nanoTime() - started;
+
+        final double operations = (double) iterations * size * 1000000000.0 / elapsed;
+        System.err.printf("BENCHMARK %-50s %,15.0f ops/sec%n", name, operations);
+        return operations;
+    }
+
+    /**
+     * Run the specified task concurrently on the given number of threads,
+     * each running the given number of iterations (after the same number of
+     * warm-up iterations), and return the aggregate operations/second.
+     */
+    protected double benchmark(String name, int threads, int iterations, Task task)
+    throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            run(executor, threads, iterations, task);
+
+            final long started = System.nanoTime();
+            run(executor, threads, iterations, task);
+            final long elapsed = System.nanoTime() - started;
+
+            final double operations = threads * iterations * 1000000000.0 / elapsed;
+            System.err.printf("BENCHMARK %-50s %,15.0f ops/sec%n", name + " (" + threads + " threads)", operations);
+            return operations;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void run(ExecutorService executor, int threads, int iterations, Task task)
+    throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Future<Object>> futures = new ArrayList<>();
+        for (int x = 0; x < threads; x ++) futures.add(executor.submit(() -> {
+            latch.await();
+            Object result = null;
+            for (int y = 0; y < iterations; y ++) result = task.run();
+            return result;
+        }));
+
+        latch.countDown();
+        for (Future<Object> future: futures) blackhole = future.get();
+    }
+
+    /** A simple benchmarked task. */
+    @FunctionalInterface
+    protected static interface Task {
+
+        /** Run the task, returning anything not to be optimized away. */
+        public Object run()
+        throws Exception;
+
+    }
+}
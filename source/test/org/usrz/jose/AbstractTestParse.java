@@ -5,6 +5,7 @@ import java.net.URL;
 
 import org.usrz.jose.jackson.JOSEObjectMapper;
 import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
 import org.usrz.libs.testing.AbstractTest;
 import org.usrz.libs.utils.codecs.Base64Codec;
 
@@ -55,4 +56,8 @@ public class AbstractTestParse extends AbstractTest {
     protected BigInteger parseBigInteger(String bigInteger) {
         return new BigInteger(1, base64.decode(bigInteger));
     }
+
+    protected Secret parseSecret(String secret) {
+        return new Secret(base64.decode(secret));
+    }
 }
@@ -1,11 +1,23 @@
 package org.usrz.jose;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+
+import java.lang.management.ManagementFactory;
+
 import org.testng.annotations.Test;
 import org.usrz.jose.jwe.JWEHeader;
 import org.usrz.jose.jwk.ec.ECPrivateJWK;
+import org.usrz.jose.jwk.JWKSet;
 import org.usrz.jose.jwk.ec.ECPublicJWK;
 import org.usrz.jose.jwk.oct.OctetSequenceJWK;
+import org.usrz.jose.jwk.rsa.RSAPrivateJWK;
+import org.usrz.jose.jwk.rsa.RSAPublicJWK;
+import org.usrz.jose.jws.JWS;
+import org.usrz.jose.jws.JWSAlgorithm;
 import org.usrz.jose.jws.JWSHeader;
+import org.usrz.jose.shared.JOSEBuilder;
 import org.usrz.libs.testing.AbstractTest;
 
 public class BuildersTest extends AbstractTest {
@@ -45,4 +57,73 @@ public class BuildersTest extends AbstractTest {
         assertNotNull(o);
     }
 
+    @Test
+    public void testPrepareBuilders() {
+        JOSEBuilder.prepare(JWEHeader.Builder.class,
+                            JWSHeader.Builder.class,
+                            ECPrivateJWK.Builder.class,
+                            ECPublicJWK.Builder.class,
+                            RSAPrivateJWK.Builder.class,
+                            RSAPublicJWK.Builder.class,
+                            OctetSequenceJWK.Builder.class,
+                            JWKSet.Builder.class,
+                            JWS.Builder.class);
+
+        assertNotNull(new RSAPublicJWK.Builder().build());
+        assertNotNull(new JWKSet.Builder().build());
+        assertNotNull(new JWS.Builder().build());
+    }
+
+    @Test
+    public void testBuilderReset() {
+        final JWSHeader.Builder builder = new JWSHeader.Builder();
+        builder.setAlgorithm(JWSAlgorithm.ES256);
+        builder.addCriticalExtension("exp");
+        builder.addAdditionalHeader("exp", 1363284000);
+        final JWSHeader first = builder.build();
+
+        builder.reset();
+        builder.setAlgorithm(JWSAlgorithm.HS256);
+        final JWSHeader second = builder.build();
+
+        assertEquals(first.getAlgorithm(),          JWSAlgorithm.ES256,   "Wrong algorithm");
+        assertEquals(first.getCriticalExtensions(), singletonList("exp"), "Wrong criticalExtensions");
+        assertEquals(first.getAdditionalHeaders().size(), 1,              "Wrong additionalHeaders");
+
+        assertEquals(second.getAlgorithm(),          JWSAlgorithm.HS256,  "Wrong algorithm");
+        assertEquals(second.getCriticalExtensions(), emptyList(),         "Wrong criticalExtensions");
+        assertEquals(second.getAdditionalHeaders(),  emptyMap(),          "Wrong additionalHeaders");
+        assertSame(second.getX509CertificateChain(), emptyList(),         "Not the shared empty list");
+    }
+
+    @Test
+    public void testBuilderAllocations() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) return;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        /* Our JWSHeader "Impl" has 12 fields, at most 8 bytes each, plus the object header */
+        final long maximum = 16 + (12 * 8);
+        final long thread = Thread.currentThread().getId();
+        final int iterations = 1000000;
+        final JWSHeader.Builder builder = new JWSHeader.Builder();
+
+        JWSHeader header = null;
+        for (int x = 0; x < iterations; x ++) header = mint(builder);
+
+        final long before = threads.getThreadAllocatedBytes(thread);
+        for (int x = 0; x < iterations; x ++) header = mint(builder);
+        final long allocated = (threads.getThreadAllocatedBytes(thread) - before) / iterations;
+
+        assertEquals(header.getKeyId(), "my key", "Wrong keyID");
+        assertTrue(allocated <= maximum, "Allocated " + allocated + " bytes per build (maximum " + maximum + ")");
+    }
+
+    private static JWSHeader mint(JWSHeader.Builder builder) {
+        builder.reset();
+        builder.setAlgorithm(JWSAlgorithm.HS256);
+        builder.setKeyId("my key");
+        return builder.build();
+    }
 }
@@ -0,0 +1,80 @@
+package org.usrz.jose.jackson;
+
+import static com.fasterxml.jackson.core.Base64Variants.MODIFIED_FOR_URL;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+import org.usrz.jose.shared.Bytes;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+public class BytesCodecBenchmark extends AbstractBenchmark {
+
+    private static final int[] SIZES = { 100, 1024, 10240, 102400, 1048576 };
+
+    private final JOSEObjectMapper mapper = new JOSEObjectMapper();
+
+    private static int iterations(int size) {
+        return Math.max(50, 20000000 / size);
+    }
+
+    @Test
+    public void benchmarkSerialize()
+    throws Exception {
+        for (int size: SIZES) {
+            final Bytes bytes = new Bytes(random(size));
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(size * 2);
+
+            /* Sanity check, both paths must produce the same JSON */
+            final String expected = '"' + MODIFIED_FOR_URL.encode(bytes.getBytes()) + '"';
+            assertEquals(mapper.writeValueAsString(bytes), expected, "Wrong serialization");
+
+            benchmark("serialize " + size + " bytes (string)", iterations(size), () -> {
+                output.reset();
+                try (JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+                    generator.writeString(MODIFIED_FOR_URL.encode(bytes.getBytes()));
+                }
+                return output;
+            });
+
+            benchmark("serialize " + size + " bytes (streaming)", iterations(size), () -> {
+                output.reset();
+                mapper.writeValue(output, bytes);
+                return output;
+            });
+        }
+    }
+
+    @Test
+    public void benchmarkDeserialize()
+    throws Exception {
+        for (int size: SIZES) {
+            final byte[] data = random(size);
+            final byte[] json = mapper.writeValueAsBytes(new Bytes(data));
+
+            /* Sanity check, we must get back what we wrote */
+            assertEquals(mapper.readValue(json, Bytes.class), new Bytes(data), "Wrong deserialization");
+
+            benchmark("deserialize " + size + " bytes (string)", iterations(size), () -> {
+                try (JsonParser parser = mapper.getFactory().createParser(json)) {
+                    parser.nextToken();
+                    return new Bytes(MODIFIED_FOR_URL.decode(parser.getText()));
+                }
+            });
+
+            benchmark("deserialize " + size + " bytes (streaming)", iterations(size), () -> {
+                return mapper.readValue(json, Bytes.class);
+            });
+        }
+    }
+
+    private static byte[] random(int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,103 @@
+package org.usrz.jose.jwe;
+
+import static org.usrz.jose.jwe.JWEAlgorithm.A128KW;
+import static org.usrz.jose.jwe.JWEEncryption.A128CBC_HS256;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractTestParse;
+import org.usrz.jose.shared.Bytes;
+
+public class JWECompactSerializationTest extends AbstractTestParse {
+
+    /* From RFC 7516, appendix A.3 */
+    private static final String HEADER = "eyJhbGciOiJBMTI4S1ciLCJlbmMiOiJBMTI4Q0JDLUhTMjU2In0";
+    private static final String ENCRYPTED_KEY = "6KB707dM9YTIgHtLvtgWQ8mKwboJW3of9locizkDTHzBC2IlrT1oOQ";
+    private static final String INITIALIZATION_VECTOR = "AxY8DCtDaGlsbGljb3RoZQ";
+    private static final String CIPHER_TEXT = "KDlTtXchhZTGufMYmOYGS4HffxPSUrfmqCHXaI9wOGY";
+    private static final String AUTHENTICATION_TAG = "U0m_YmjN04DJvceFICbCVQ";
+    private static final String COMPACT = HEADER + "." + ENCRYPTED_KEY + "." + INITIALIZATION_VECTOR + "." + CIPHER_TEXT + "." + AUTHENTICATION_TAG;
+
+    private final JWECompactSerialization serialization = new JWECompactSerialization(mapper);
+
+    @Test
+    public void testParseCharSequence()
+    throws Exception {
+        validate(serialization.parse(new StringBuilder(COMPACT)));
+    }
+
+    @Test
+    public void testParseBytes()
+    throws Exception {
+        final byte[] ascii = ("xx" + COMPACT + "yy").getBytes(StandardCharsets.US_ASCII);
+        validate(serialization.parse(ascii, 2, COMPACT.length()));
+    }
+
+    @Test
+    public void testWrite()
+    throws Exception {
+        final JWE jwe = serialization.parse(COMPACT);
+
+        assertEquals(serialization.write(jwe), COMPACT, "Wrong string");
+        assertEquals(serialization.write(jwe, new StringBuilder("x")).toString(), "x" + COMPACT, "Wrong appended string");
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        serialization.write(jwe, output);
+        assertEquals(new String(output.toByteArray(), StandardCharsets.US_ASCII), COMPACT, "Wrong stream");
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(COMPACT.length());
+        serialization.write(jwe, buffer);
+        assertFalse(buffer.hasRemaining(), "Buffer not filled");
+        final byte[] written = new byte[COMPACT.length()];
+        ((ByteBuffer) buffer.flip()).get(written);
+        assertEquals(new String(written, StandardCharsets.US_ASCII), COMPACT, "Wrong buffer");
+    }
+
+    @Test
+    public void testWriteBuilt()
+    throws Exception {
+        final JWE parsed = serialization.parse(COMPACT);
+
+        final JWE.Builder builder = new JWE.Builder();
+        builder.setHeader(parsed.getHeader());
+        builder.setInitializationVector(parsed.getInitializationVector());
+        builder.setCipherText(parsed.getCipherText());
+        builder.setAuthenticationTag(parsed.getAuthenticationTag());
+        final JWE jwe = builder.build();
+
+        assertNull(jwe.getAdditionalAuthenticatedData(), "Built JWE has AAD");
+        final JWE reparsed = serialization.parse(serialization.write(jwe));
+        assertEquals(reparsed.getHeader(), parsed.getHeader(), "Wrong header");
+        assertEquals(reparsed.getEncryptedKey().length(), 0, "Wrong encrypted key");
+        assertEquals(reparsed.getCipherText(), parsed.getCipherText(), "Wrong cipher text");
+        assertEquals(reparsed.getAdditionalAuthenticatedData(), serialization.additionalAuthenticatedData(jwe), "Wrong AAD");
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testTooFewParts() {
+        serialization.parse(HEADER + "." + ENCRYPTED_KEY + "." + INITIALIZATION_VECTOR + "." + CIPHER_TEXT);
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testTooManyParts() {
+        serialization.parse(COMPACT + ".");
+    }
+
+    private void validate(JWE jwe)
+    throws Exception {
+        assertEquals(jwe.getHeader().getAlgorithm(),  A128KW,                              "Wrong algorithm");
+        assertEquals(jwe.getHeader().getEncryption(), A128CBC_HS256,                       "Wrong encryption");
+        assertEquals(jwe.getEncryptedKey(),           parseBytes(ENCRYPTED_KEY),           "Wrong encrypted key");
+        assertEquals(jwe.getInitializationVector(),   parseBytes(INITIALIZATION_VECTOR),   "Wrong initialization vector");
+        assertEquals(jwe.getCipherText(),             parseBytes(CIPHER_TEXT),             "Wrong cipher text");
+        assertEquals(jwe.getAuthenticationTag(),      parseBytes(AUTHENTICATION_TAG),      "Wrong authentication tag");
+
+        assertEquals(jwe.getEncryptedKey().length(), 40, "Wrong encrypted key length");
+        assertEquals(jwe.getAdditionalAuthenticatedData(),
+                     new Bytes(HEADER.getBytes(StandardCharsets.US_ASCII)),
+                     "Wrong additional authenticated data");
+    }
+}
@@ -0,0 +1,129 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.libs.testing.AbstractTest;
+
+public class JWEContentKeyCacheTest extends AbstractTest {
+
+    private final AtomicInteger decrypted = new AtomicInteger();
+
+    /* One instance runs all our tests: count decryptions per test */
+    @BeforeMethod
+    public void resetDecrypted() {
+        decrypted.set(0);
+    }
+
+    @Test
+    public void testHitsAndMisses()
+    throws Exception {
+        final JWEContentKeyCache cache = new JWEContentKeyCache(16, 1, TimeUnit.MINUTES);
+        assertEquals(cache.hitRate(), 0.0, "Wrong initial hit rate");
+
+        for (int x = 0; x < 4; x ++) {
+            assertEquals(get(cache, "kid", encryptedKey(1)).getEncoded()[0], (byte) 1, "Wrong key");
+            assertEquals(get(cache, "kid", encryptedKey(2)).getEncoded()[0], (byte) 2, "Wrong key");
+        }
+        assertEquals(decrypted.get(), 2, "Wrong number of keys decrypted");
+        assertEquals(cache.misses(), 2L, "Wrong number of misses");
+        assertEquals(cache.hits(), 6L, "Wrong number of hits");
+        assertEquals(cache.hitRate(), 0.75, "Wrong hit rate");
+
+        /* Different key IDs, algorithms and encryptions never collide */
+        get(cache, "other", encryptedKey(1));
+        cache.get(JWEAlgorithm.RSA1_5, JWEEncryption.A128GCM, "kid", encryptedKey(1), () -> decrypt(1));
+        cache.get(JWEAlgorithm.RSA_OAEP, JWEEncryption.A256GCM, "kid", encryptedKey(1), () -> decrypt(1));
+        assertEquals(decrypted.get(), 5, "Wrong number of keys decrypted");
+        assertEquals(cache.size(), 5, "Wrong cache size");
+
+        /* No key ID, no caching */
+        get(cache, null, encryptedKey(1));
+        get(cache, null, encryptedKey(1));
+        assertEquals(decrypted.get(), 7, "Key with no key ID cached");
+        assertEquals(cache.hits() + cache.misses(), 11L, "Key with no key ID counted");
+
+        cache.clear();
+        assertEquals(cache.size(), 0, "Cache not cleared");
+        get(cache, "kid", encryptedKey(1));
+        assertEquals(decrypted.get(), 8, "Key not decrypted after clear");
+    }
+
+    @Test
+    public void testMaximumSize()
+    throws Exception {
+        final JWEContentKeyCache cache = new JWEContentKeyCache(4, 1, TimeUnit.MINUTES);
+        for (int x = 0; x < 10; x ++) get(cache, "kid", encryptedKey(x));
+        assertEquals(cache.size(), 4, "Wrong cache size");
+        assertEquals(cache.evictions(), 6L, "Wrong number of evictions");
+
+        /* Oldest keys are evicted first */
+        get(cache, "kid", encryptedKey(9));
+        get(cache, "kid", encryptedKey(6));
+        assertEquals(decrypted.get(), 10, "Newest keys evicted");
+        get(cache, "kid", encryptedKey(5));
+        assertEquals(decrypted.get(), 11, "Oldest keys not evicted");
+    }
+
+    @Test
+    public void testTimeToLive()
+    throws Exception {
+        final JWEContentKeyCache cache = new JWEContentKeyCache(16, 50, TimeUnit.MILLISECONDS);
+        get(cache, "kid", encryptedKey(1));
+        get(cache, "kid", encryptedKey(1));
+        assertEquals(decrypted.get(), 1, "Key not cached");
+
+        Thread.sleep(100);
+        get(cache, "kid", encryptedKey(1));
+        assertEquals(decrypted.get(), 2, "Expired key returned");
+        assertEquals(cache.expirations(), 1L, "Wrong number of expirations");
+        assertEquals(cache.size(), 1, "Wrong cache size");
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new JWEContentKeyCache(0, 1, TimeUnit.MINUTES);
+    }
+
+    /* ====================================================================== */
+
+    private SecretKey get(JWEContentKeyCache cache, String keyId, Bytes encryptedKey)
+    throws Exception {
+        final int value = encryptedKey.getByte(0);
+        return cache.get(JWEAlgorithm.RSA_OAEP, JWEEncryption.A128GCM, keyId, encryptedKey, () -> decrypt(value));
+    }
+
+    private SecretKey decrypt(int value) {
+        decrypted.incrementAndGet();
+        final byte[] key = new byte[16];
+        key[0] = (byte) value;
+        return new SecretKeySpec(key, "AES");
+    }
+
+    private static Bytes encryptedKey(int value) {
+        final byte[] encryptedKey = new byte[256];
+        encryptedKey[0] = (byte) value;
+        return new Bytes(encryptedKey);
+    }
+}
@@ -0,0 +1,107 @@
+package org.usrz.jose.jwe;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+import org.usrz.jose.shared.Bytes;
+
+public class JWEEncryptionEngineBenchmark extends AbstractBenchmark {
+
+    private static final int[] SIZES = { 1024, 65536, 1048576 };
+    private static final int[] ITERATIONS = { 20000, 1000, 50 };
+    private static final int[] CBC_SIZES = { 1024, 1048576, 8388608 };
+    private static final int[] CBC_ITERATIONS = { 20000, 50, 5 };
+
+    private final Random random = new Random();
+    private final Bytes aad = new Bytes("eyJhbGciOiJkaXIiLCJlbmMiOiJBMjU2R0NNIn0".getBytes(StandardCharsets.US_ASCII));
+
+    @Test
+    public void benchmarkGCM()
+    throws Exception {
+        final byte[] secret = new byte[32];
+        random.nextBytes(secret);
+        final SecretKey key = new SecretKeySpec(secret, "AES");
+        final JWEEncryptionEngine engine = JWEEncryptionEngine.getInstance(JWEEncryption.A256GCM);
+
+        for (int x = 0; x < SIZES.length; x ++) {
+            final byte[] data = new byte[SIZES[x]];
+            random.nextBytes(data);
+            final Bytes plainText = new Bytes(data);
+            final JWE jwe = engine.encrypt(key, aad, plainText, new JWE.Builder()).build();
+            final ByteBuffer output = ByteBuffer.allocateDirect(SIZES[x]);
+            final String name = "A256GCM " + (SIZES[x] / 1024) + "KB";
+
+            benchmark(name + " encrypt", ITERATIONS[x], () -> engine.encrypt(key, aad, plainText, new JWE.Builder()));
+            benchmark(name + " decrypt", ITERATIONS[x], () -> {
+                output.clear();
+                return engine.decrypt(key, jwe, output);
+            });
+
+            /* The naive approach: provider lookup and arrays for every message */
+            benchmark(name + " decrypt (getInstance)", ITERATIONS[x], () -> {
+                final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, jwe.getInitializationVector().getBytes()));
+                cipher.updateAAD(jwe.getAdditionalAuthenticatedData().getBytes());
+                cipher.update(jwe.getCipherText().getBytes());
+                return cipher.doFinal(jwe.getAuthenticationTag().getBytes());
+            });
+        }
+    }
+
+    @Test
+    public void benchmarkCBC()
+    throws Exception {
+        final byte[] secret = new byte[64];
+        random.nextBytes(secret);
+        final SecretKey key = new SecretKeySpec(secret, "AES");
+        final JWEEncryptionEngine engine = JWEEncryptionEngine.getInstance(JWEEncryption.A256CBC_HS512);
+
+        for (int x = 0; x < CBC_SIZES.length; x ++) {
+            final byte[] data = new byte[CBC_SIZES[x]];
+            random.nextBytes(data);
+            final Bytes plainText = new Bytes(data);
+            final JWE jwe = engine.encrypt(key, aad, plainText, new JWE.Builder()).build();
+            final ByteBuffer output = ByteBuffer.allocateDirect(CBC_SIZES[x] + 16);
+            final String name = "A256CBC-HS512 " + (CBC_SIZES[x] / 1024) + "KB";
+
+            benchmark(name + " encrypt", CBC_ITERATIONS[x], () -> engine.encrypt(key, aad, plainText, new JWE.Builder()));
+            benchmark(name + " decrypt", CBC_ITERATIONS[x], () -> {
+                output.clear();
+                return engine.decrypt(key, jwe, output);
+            });
+
+            /* The naive approach: split the key, and MAC a concatenated buffer */
+            benchmark(name + " decrypt (concatenated)", CBC_ITERATIONS[x], () -> {
+                final byte[] aad = jwe.getAdditionalAuthenticatedData().getBytes();
+                final byte[] iv = jwe.getInitializationVector().getBytes();
+                final byte[] cipherText = jwe.getCipherText().getBytes();
+                final byte[] input = new byte[aad.length + iv.length + cipherText.length + 8];
+                System.arraycopy(aad, 0, input, 0, aad.length);
+                System.arraycopy(iv, 0, input, aad.length, iv.length);
+                System.arraycopy(cipherText, 0, input, aad.length + iv.length, cipherText.length);
+                final long bits = aad.length * 8L;
+                for (int y = 0; y < 8; y ++) input[input.length - 8 + y] = (byte) (bits >>> (56 - 8 * y));
+
+                final Mac mac = Mac.getInstance("HmacSHA512");
+                mac.init(new SecretKeySpec(Arrays.copyOfRange(secret, 0, 32), "HmacSHA512"));
+                final byte[] tag = Arrays.copyOf(mac.doFinal(input), 32);
+                if (!Arrays.equals(tag, jwe.getAuthenticationTag().getBytes())) throw new IllegalStateException("Bad tag");
+
+                final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+                cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(Arrays.copyOfRange(secret, 32, 64), "AES"), new IvParameterSpec(iv));
+                return cipher.doFinal(cipherText);
+            });
+        }
+    }
+}
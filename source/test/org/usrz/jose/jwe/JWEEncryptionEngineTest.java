@@ -0,0 +1,279 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractTestParse;
+import org.usrz.jose.shared.Bytes;
+
+public class JWEEncryptionEngineTest extends AbstractTestParse {
+
+    /* RFC 7516, Appendix A.1 */
+    private static final String KEY = "saH0gFSP4XM_tAP_a5rU9ooHbltwLiJpL4LLLnrqQPw";
+    private static final String HEADER = "eyJhbGciOiJSU0EtT0FFUCIsImVuYyI6IkEyNTZHQ00ifQ";
+    private static final String INITIALIZATION_VECTOR = "48V1_ALb6US04U3b";
+    private static final String CIPHER_TEXT = "5eym8TW_c8SuK0ltJ3rpYIzOeDQz7TALvtu6UG9oMo4vpzs9tX_EFShS8iB7j6jiSdiwkIr3ajwQzaBtQD_A";
+    private static final String AUTHENTICATION_TAG = "XFBoMYUZodetZdvTiFvSkQ";
+    private static final String PLAIN_TEXT = "The true sign of intelligence is not knowledge but imagination.";
+
+    /* RFC 7516, Appendix A.3 */
+    private static final String CBC_KEY = "BNMfxVSd_P4LZJ36P6pqzmt81C1vawnbyLEA8I-cLM8";
+    private static final String CBC_HEADER = "eyJhbGciOiJBMTI4S1ciLCJlbmMiOiJBMTI4Q0JDLUhTMjU2In0";
+    private static final String CBC_INITIALIZATION_VECTOR = "AxY8DCtDaGlsbGljb3RoZQ";
+    private static final String CBC_CIPHER_TEXT = "KDlTtXchhZTGufMYmOYGS4HffxPSUrfmqCHXaI9wOGY";
+    private static final String CBC_AUTHENTICATION_TAG = "U0m_YmjN04DJvceFICbCVQ";
+    private static final String CBC_PLAIN_TEXT = "Live long and prosper.";
+
+    /* Our own vectors for the longer CBC keys, key bytes are 0, 1, 2, ... */
+    private static final String LONG_HEADER = "eyJhbGciOiJkaXIiLCJlbmMiOiJBMjU2Q0JDLUhTNTEyIn0";
+    private static final String LONG_INITIALIZATION_VECTOR = "ZGVmZ2hpamtsbW5vcHFycw";
+    private static final String LONG_PLAIN_TEXT = "A message for our legacy partners, padded to some blocks.";
+    private static final String HS384_KEY = "AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8gISIjJCUmJygpKissLS4v";
+    private static final String HS384_CIPHER_TEXT = "OJ1IUrZpMqZe8q4BIsGsYpObNvq2E1nKe8Iycn9hHWipyOjBfh1ASiGOd8HVo_nfot-XIcWSyanl0TzgoWwVoQ";
+    private static final String HS384_AUTHENTICATION_TAG = "0QmcT_fTqOXfOhAZnoECz8QaSd9ipleX";
+    private static final String HS512_KEY = "AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8gISIjJCUmJygpKissLS4vMDEyMzQ1Njc4OTo7PD0-Pw";
+    private static final String HS512_CIPHER_TEXT = "xaPdc6QyFMqvz46sFa7hO713lZs6VEs-FktzUWF3MSMAz_elOvlb11K0Syv9kXIJo-4QW8tGagmqV_2B7U91_A";
+    private static final String HS512_AUTHENTICATION_TAG = "28Itldbzk72PoQ_5Mj2IrXRQYJ56EzilFnQCWqUY2zc";
+
+    private final Random random = new Random();
+
+    @Test
+    public void testAppendixA1()
+    throws Exception {
+        final JWEEncryptionEngine engine = JWEEncryptionEngine.getInstance(JWEEncryption.A256GCM);
+        final SecretKey key = new SecretKeySpec(parseBytes(KEY).getBytes(), "AES");
+        final Bytes aad = new Bytes(HEADER.getBytes(StandardCharsets.US_ASCII));
+
+        for (ByteBuffer output: new ByteBuffer[] { ByteBuffer.allocate(100), ByteBuffer.allocateDirect(100) }) {
+            final int length = engine.decrypt(key, aad, parseBytes(INITIALIZATION_VECTOR), parseBytes(CIPHER_TEXT),
+                                              parseBytes(AUTHENTICATION_TAG), output);
+            assertEquals(length, PLAIN_TEXT.length(), "Wrong plain text length");
+            assertEquals(output.position(), length, "Wrong buffer position");
+
+            final byte[] decrypted = new byte[length];
+            ((ByteBuffer) output.flip()).get(decrypted);
+            assertEquals(new String(decrypted, StandardCharsets.UTF_8), PLAIN_TEXT, "Wrong plain text");
+        }
+    }
+
+    @Test
+    public void testRoundTrip()
+    throws Exception {
+        for (JWEEncryption encryption: new JWEEncryption[] { JWEEncryption.A128GCM, JWEEncryption.A192GCM, JWEEncryption.A256GCM }) {
+            final JWEEncryptionEngine engine = JWEEncryptionEngine.getInstance(encryption);
+            final SecretKey key = key(engine.getKeyLength());
+            final Bytes aad = new Bytes(HEADER.getBytes(StandardCharsets.US_ASCII));
+
+            for (int size: new int[] { 0, 1, 15, 16, 17, 1024, 65536 }) {
+                final Bytes plainText = random(size);
+                final JWE jwe = engine.encrypt(key, aad, plainText, new JWE.Builder()).build();
+
+                assertEquals(jwe.getInitializationVector().length(), 12, "Wrong initialization vector length");
+                assertEquals(jwe.getCipherText().length(), size, "Wrong cipher text length");
+                assertEquals(jwe.getAuthenticationTag().length(), 16, "Wrong authentication tag length");
+                assertEquals(jwe.getAdditionalAuthenticatedData(), aad, "Wrong additional authenticated data");
+                assertEquals(engine.decrypt(key, jwe), plainText, "Wrong decrypted plain text for " + encryption);
+            }
+
+            /* Never the same initialization vector */
+            final JWE jwe1 = engine.encrypt(key, aad, random(10), new JWE.Builder()).build();
+            final JWE jwe2 = engine.encrypt(key, aad, random(10), new JWE.Builder()).build();
+            assertNotEquals(jwe1.getInitializationVector(), jwe2.getInitializationVector(), "Same initialization vector");
+        }
+    }
+
+    @Test
+    public void testAppendixA3()
+    throws Exception {
+        final JWEEncryptionEngine engine = JWEEncryptionEngine.getInstance(JWEEncryption.A128CBC_HS256);
+        final SecretKey key = new SecretKeySpec(parseBytes(CBC_KEY).getBytes(), "AES");
+        final Bytes aad = new Bytes(CBC_HEADER.getBytes(StandardCharsets.US_ASCII));
+
+        for (ByteBuffer output: new ByteBuffer[] { ByteBuffer.allocate(100), ByteBuffer.allocateDirect(100) }) {
+            final int length = engine.decrypt(key, aad, parseBytes(CBC_INITIALIZATION_VECTOR), parseBytes(CBC_CIPHER_TEXT),
+                                              parseBytes(CBC_AUTHENTICATION_TAG), output);
+            assertEquals(length, CBC_PLAIN_TEXT.length(), "Wrong plain text length");
+            assertEquals(output.position(), length, "Wrong buffer position");
+
+            final byte[] decrypted = new byte[length];
+            ((ByteBuffer) output.flip()).get(decrypted);
+            assertEquals(new String(decrypted, StandardCharsets.UTF_8), CBC_PLAIN_TEXT, "Wrong plain text");
+        }
+    }
+
+    @Test
+    public void testLongerCBCKeys()
+    throws Exception {
+        final Bytes aad = new Bytes(LONG_HEADER.getBytes(StandardCharsets.US_ASCII));
+        final Bytes iv = parseBytes(LONG_INITIALIZATION_VECTOR);
+
+        final JWEEncryptionEngine engine384 = JWEEncryptionEngine.getInstance(JWEEncryption.A192CBC_HS384);
+        final SecretKey key384 = new SecretKeySpec(parseBytes(HS384_KEY).getBytes(), "AES");
+        final JWE jwe384 = engine384.encrypt(key384, aad, random(0), new JWE.Builder())
+                                    .setInitializationVector(iv)
+                                    .setCipherText(parseBytes(HS384_CIPHER_TEXT))
+                                    .setAuthenticationTag(parseBytes(HS384_AUTHENTICATION_TAG))
+                                    .build();
+        assertEquals(new String(engine384.decrypt(key384, jwe384).getBytes(), StandardCharsets.UTF_8), LONG_PLAIN_TEXT, "Wrong HS384 plain text");
+
+        final JWEEncryptionEngine engine512 = JWEEncryptionEngine.getInstance(JWEEncryption.A256CBC_HS512);
+        final SecretKey key512 = new SecretKeySpec(parseBytes(HS512_KEY).getBytes(), "AES");
+        final JWE jwe512 = engine512.encrypt(key512, aad, random(0), new JWE.Builder())
+                                    .setInitializationVector(iv)
+                                    .setCipherText(parseBytes(HS512_CIPHER_TEXT))
+                                    .setAuthenticationTag(parseBytes(HS512_AUTHENTICATION_TAG))
+                                    .build();
+        assertEquals(new String(engine512.decrypt(key512, jwe512).getBytes(), StandardCharsets.UTF_8), LONG_PLAIN_TEXT, "Wrong HS512 plain text");
+    }
+
+    @Test
+    public void testCBCRoundTrip()
+    throws Exception {
+        for (JWEEncryption encryption: new JWEEncryption[] { JWEEncryption.A128CBC_HS256, JWEEncryption.A192CBC_HS384, JWEEncryption.A256CBC_HS512 }) {
+            final JWEEncryptionEngine engine = JWEEncryptionEngine.getInstance(encryption);
+            final SecretKey key = key(engine.getKeyLength());
+            final Bytes aad = new Bytes(HEADER.getBytes(StandardCharsets.US_ASCII));
+
+            /* Include sizes spanning several processing chunks */
+            for (int size: new int[] { 0, 1, 15, 16, 17, 1024, 65536, 3 * 1048576 + 5 }) {
+                final Bytes plainText = random(size);
+                final JWE jwe = engine.encrypt(key, aad, plainText, new JWE.Builder()).build();
+
+                assertEquals(jwe.getInitializationVector().length(), 16, "Wrong initialization vector length");
+                assertEquals(jwe.getCipherText().length(), (size / 16 + 1) * 16, "Wrong cipher text length");
+                assertEquals(jwe.getAuthenticationTag().length(), engine.getKeyLength() / 2, "Wrong authentication tag length");
+                assertEquals(jwe.getAdditionalAuthenticatedData(), aad, "Wrong additional authenticated data");
+                assertEquals(engine.decrypt(key, jwe), plainText, "Wrong decrypted plain text for " + encryption);
+            }
+        }
+    }
+
+    @Test
+    public void testCBCTamperedTag()
+    throws Exception {
+        final JWEEncryptionEngine engine = JWEEncryptionEngine.getInstance(JWEEncryption.A128CBC_HS256);
+        final SecretKey key = new SecretKeySpec(parseBytes(CBC_KEY).getBytes(), "AES");
+        final Bytes aad = new Bytes(CBC_HEADER.getBytes(StandardCharsets.US_ASCII));
+
+        final byte[] tag = parseBytes(CBC_AUTHENTICATION_TAG).getBytes();
+        tag[tag.length - 1] ^= 1;
+
+        final ByteBuffer output = ByteBuffer.allocate(100);
+        output.position(10);
+        try {
+            engine.decrypt(key, aad, parseBytes(CBC_INITIALIZATION_VECTOR), parseBytes(CBC_CIPHER_TEXT), new Bytes(tag), output);
+            fail("Tampered tag accepted");
+        } catch (AEADBadTagException exception) {
+            /* The decrypted plain text must have been wiped */
+            assertEquals(output.position(), 10, "Wrong buffer position");
+            for (int x = 0; x < output.capacity(); x ++) assertEquals(output.get(x), (byte) 0, "Plain text not wiped at " + x);
+        }
+
+        /* The engine must still work with the same key after a failure */
+        assertEquals(engine.decrypt(key, aad, parseBytes(CBC_INITIALIZATION_VECTOR), parseBytes(CBC_CIPHER_TEXT),
+                                    parseBytes(CBC_AUTHENTICATION_TAG), ByteBuffer.allocate(100)),
+                     CBC_PLAIN_TEXT.length(), "Wrong plain text length");
+    }
+
+    @Test
+    public void testCBCConcurrentDecrypt()
+    throws Exception {
+        final JWEEncryptionEngine engine = JWEEncryptionEngine.getInstance(JWEEncryption.A128CBC_HS256);
+        final SecretKey key = key(engine.getKeyLength());
+        final Bytes aad = new Bytes(HEADER.getBytes(StandardCharsets.US_ASCII));
+
+        /* Different lengths, for different padding, and one tampered message */
+        final List<Bytes> plainTexts = new ArrayList<>();
+        final List<JWE> jwes = new ArrayList<>();
+        for (int x = 0; x < 32; x ++) {
+            final Bytes plainText = random(x * 7 + 1);
+            plainTexts.add(plainText);
+            jwes.add(engine.encrypt(key, aad, plainText, new JWE.Builder()).build());
+        }
+        final byte[] tag = jwes.get(0).getAuthenticationTag().getBytes();
+        tag[0] ^= 1;
+        final JWE tampered = new JWE.Builder().setInitializationVector(jwes.get(0).getInitializationVector())
+                                              .setCipherText(jwes.get(0).getCipherText())
+                                              .setAuthenticationTag(new Bytes(tag))
+                                              .setAdditionalAuthenticatedData(aad)
+                                              .build();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int x = 0; x < 8; x ++) futures.add(executor.submit((Callable<String>) () -> {
+                for (int y = 0; y < 500; y ++) {
+                    final int index = random.nextInt(jwes.size());
+                    if (!engine.decrypt(key, jwes.get(index)).equals(plainTexts.get(index))) return "Wrong plain text " + index;
+                    try {
+                        engine.decrypt(key, tampered);
+                        return "Tampered message accepted";
+                    } catch (AEADBadTagException exception) {
+                        /* Expected */
+                    }
+                }
+                return null;
+            }));
+            for (Future<String> future: futures) assertNull(future.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions=AEADBadTagException.class)
+    public void testTamperedHeader()
+    throws Exception {
+        final JWEEncryptionEngine engine = JWEEncryptionEngine.getInstance(JWEEncryption.A256GCM);
+        final SecretKey key = new SecretKeySpec(parseBytes(KEY).getBytes(), "AES");
+        final Bytes aad = new Bytes(("x" + HEADER).getBytes(StandardCharsets.US_ASCII));
+        engine.decrypt(key, aad, parseBytes(INITIALIZATION_VECTOR), parseBytes(CIPHER_TEXT),
+                       parseBytes(AUTHENTICATION_TAG), ByteBuffer.allocate(100));
+    }
+
+    @Test(expectedExceptions=InvalidKeyException.class)
+    public void testWrongKeyLength()
+    throws Exception {
+        JWEEncryptionEngine.getInstance(JWEEncryption.A128GCM)
+                           .encrypt(key(32), new Bytes(new byte[0]), random(10), new JWE.Builder());
+    }
+
+    /* ====================================================================== */
+
+    private Bytes random(int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return new Bytes(bytes);
+    }
+
+    private SecretKey key(int length) {
+        return new SecretKeySpec(random(length).getBytes(), "AES");
+    }
+}
@@ -0,0 +1,88 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.testng.annotations.Test;
+import org.usrz.libs.testing.AbstractTest;
+import org.usrz.jose.jwk.ec.ECCurve;
+
+public class JWEEphemeralKeyPoolTest extends AbstractTest {
+
+    @Test
+    public void testPrepareAndTake()
+    throws Exception {
+        try (JWEEphemeralKeyPool pool = new JWEEphemeralKeyPool(8)) {
+            pool.prepare(ECCurve.P_256);
+            waitForDepth(pool, ECCurve.P_256, 8);
+
+            assertEquals(pool.generated(ECCurve.P_256), 8L, "Wrong number of generated key pairs");
+            assertEquals(pool.depth(ECCurve.P_384), 0, "Unprepared curve filled");
+            assertTrue(pool.refillRate(ECCurve.P_256) > 0, "No refill rate");
+
+            /* Never the same pair twice */
+            final Set<KeyPair> pairs = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int x = 0; x < 100; x ++) {
+                final KeyPair pair = pool.take(ECCurve.P_256);
+                assertEquals(((ECPublicKey) pair.getPublic()).getParams().getCurve(),
+                             ECCurve.P_256.getECParameterSpec().getCurve(), "Wrong curve");
+                assertTrue(pairs.add(pair), "Key pair taken twice");
+            }
+            assertEquals(pool.hits(ECCurve.P_256) + pool.misses(ECCurve.P_256), 100L, "Wrong number of key pairs taken");
+            assertTrue(pool.hits(ECCurve.P_256) >= 8, "Prepared key pairs not taken");
+
+            /* Refilled in background */
+            waitForDepth(pool, ECCurve.P_256, 8);
+        }
+    }
+
+    @Test
+    public void testNoRefillWhenClosed()
+    throws Exception {
+        /* Run refills inline, so that we can count them */
+        final Executor executor = (runnable) -> runnable.run();
+        final JWEEphemeralKeyPool pool = new JWEEphemeralKeyPool(2, executor);
+
+        pool.take(ECCurve.P_384);
+        assertEquals(pool.misses(ECCurve.P_384), 1L, "Wrong number of misses");
+        assertEquals(pool.depth(ECCurve.P_384), 2, "Pool not refilled");
+
+        pool.take(ECCurve.P_384);
+        assertEquals(pool.hits(ECCurve.P_384), 1L, "Wrong number of hits");
+        assertEquals(pool.depth(ECCurve.P_384), 2, "Pool not refilled");
+
+        pool.close();
+        assertEquals(pool.depth(ECCurve.P_384), 0, "Pool not emptied");
+        assertNotNull(pool.take(ECCurve.P_384), "No key pair after close");
+        assertEquals(pool.depth(ECCurve.P_384), 0, "Pool refilled after close");
+        assertEquals(pool.generated(ECCurve.P_384), 3L, "Wrong number of generated key pairs");
+    }
+
+    private static void waitForDepth(JWEEphemeralKeyPool pool, ECCurve curve, int depth)
+    throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 30000;
+        while (pool.depth(curve) < depth) {
+            if (System.currentTimeMillis() > deadline) fail("Pool not filled in time");
+            Thread.sleep(10);
+        }
+    }
+}
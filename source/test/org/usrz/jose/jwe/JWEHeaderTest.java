@@ -5,6 +5,7 @@ import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static javax.ws.rs.core.MediaType.TEXT_HTML_TYPE;
 import static org.usrz.jose.jwe.JWEAlgorithm.A128KW;
+import static org.usrz.jose.jwe.JWEAlgorithm.A256GCMKW;
 import static org.usrz.jose.jwe.JWEAlgorithm.RSA1_5;
 import static org.usrz.jose.jwe.JWEAlgorithm.RSA_OAEP;
 import static org.usrz.jose.jwe.JWECompression.DEF;
@@ -103,6 +104,22 @@ public class JWEHeaderTest extends AbstractTestParse {
         assertEquals(header.getCompression(),                     null,                 "Wrong compression");
     }
 
+    @Test
+    public void testRFC7520Section57()
+    throws Exception {
+        final String json = "{\"alg\":\"A256GCMKW\",\"kid\":\"18ec08e1-bfa9-4d95-b205-2b4dd1d4321d\",\"tag\":\"kfPduVQ3T3H6vnewt--ksw\",\"iv\":\"KkYT0GX_2jHlfqN_\",\"enc\":\"A128CBC-HS256\"}";
+        final JWEHeader header = mapper.readValue(json, JWEHeader.class);
+        validateObject(json, header);
+
+        assertEquals(header.getAlgorithm(),                       A256GCMKW,            "Wrong algorithm");
+        assertEquals(header.getKeyId(),                           "18ec08e1-bfa9-4d95-b205-2b4dd1d4321d", "Wrong keyID");
+        assertEquals(header.getAdditionalHeaders(),               emptyMap(),           "Wrong additionalHeaders");
+
+        assertEquals(header.getEncryption(),                      A128CBC_HS256,        "Wrong encryption");
+        assertEquals(header.getInitializationVector(),            parseBytes("KkYT0GX_2jHlfqN_"),       "Wrong initialization vector");
+        assertEquals(header.getAuthenticationTag(),               parseBytes("kfPduVQ3T3H6vnewt--ksw"), "Wrong authentication tag");
+    }
+
     @Test
     public void testFullJWEHeader()
     throws Exception {
@@ -0,0 +1,193 @@
+package org.usrz.jose.jwe;
+
+import java.security.Key;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+import org.usrz.jose.jwk.JWKKeyType;
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.jwk.ec.ECPublicJWK;
+import org.usrz.jose.jwk.oct.OctetSequenceJWK;
+import org.usrz.jose.jwk.rsa.RSAPrivateJWK;
+import org.usrz.jose.jwk.rsa.RSAPublicJWK;
+import org.usrz.jose.shared.Secret;
+
+public class JWEKeyManagementEngineBenchmark extends AbstractBenchmark {
+
+    private static final int ITERATIONS = 200000;
+
+    private final Random random = new Random();
+
+    @Test
+    public void benchmarkUnwrap()
+    throws Exception {
+        for (JWEAlgorithm algorithm: new JWEAlgorithm[] { JWEAlgorithm.A128KW, JWEAlgorithm.A256KW, JWEAlgorithm.A128GCMKW, JWEAlgorithm.A256GCMKW }) {
+            final byte[] secret = new byte[algorithm.joseName().startsWith("A128") ? 16 : 32];
+            random.nextBytes(secret);
+
+            final OctetSequenceJWK.Builder oct = new OctetSequenceJWK.Builder();
+            oct.setKeyType(JWKKeyType.OCT);
+            oct.setAlgorithm(algorithm);
+            oct.setKeyValue(new Secret(secret));
+            final OctetSequenceJWK jwk = oct.build();
+
+            final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(algorithm);
+            final JWEHeader.Builder header = new JWEHeader.Builder();
+            final JWE.Builder builder = new JWE.Builder();
+            engine.encrypt(jwk, JWEEncryption.A256GCM, header, builder);
+            final JWE jwe = builder.setHeader(header.build()).build();
+            final Key key = jwk.toKey();
+
+            benchmark(algorithm.joseName() + " unwrap", ITERATIONS, () -> engine.decrypt(jwk, jwe));
+
+            /* The naive approach: provider lookup and key schedule for every message */
+            if (algorithm.joseName().endsWith("GCMKW")) {
+                benchmark(algorithm.joseName() + " unwrap (getInstance)", ITERATIONS, () -> {
+                    final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, jwe.getHeader().getInitializationVector().getBytes()));
+                    cipher.update(jwe.getEncryptedKey().getBytes());
+                    return cipher.doFinal(jwe.getHeader().getAuthenticationTag().getBytes());
+                });
+            } else {
+                benchmark(algorithm.joseName() + " unwrap (getInstance)", ITERATIONS, () -> {
+                    final Cipher cipher = Cipher.getInstance("AESWrap");
+                    cipher.init(Cipher.UNWRAP_MODE, key);
+                    return cipher.unwrap(jwe.getEncryptedKey().getBytes(), "AES", Cipher.SECRET_KEY);
+                });
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkEphemeralKeys()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(ECCurve.P_256.getECParameterSpec());
+        final ECPublicKey publicKey = (ECPublicKey) generator.generateKeyPair().getPublic();
+
+        final ECPublicJWK.Builder ec = new ECPublicJWK.Builder();
+        ec.setKeyType(JWKKeyType.EC);
+        ec.setCurve(ECCurve.P_256);
+        ec.setXCoordinate(publicKey.getW().getAffineX());
+        ec.setYCoordinate(publicKey.getW().getAffineY());
+        final ECPublicJWK jwk = ec.build();
+
+        final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(JWEAlgorithm.ECDH_ES);
+        benchmark("ECDH-ES encrypt", 512, () ->
+            engine.encrypt(jwk, JWEEncryption.A128GCM, new JWEHeader.Builder(), new JWE.Builder()));
+
+        /*
+         * Refills are deferred and run only before measuring: this gives the
+         * cost on the request path, regardless of how many cores are left to
+         * generate key pairs in background.
+         */
+        final Queue<Runnable> refills = new ArrayDeque<>();
+        try (JWEEphemeralKeyPool pool = new JWEEphemeralKeyPool(1024, refills::add)) {
+            pool.prepare(ECCurve.P_256);
+            while (!refills.isEmpty()) refills.poll().run();
+
+            final JWEKeyManagementEngine pooled = JWEKeyManagementEngine.getInstance(JWEAlgorithm.ECDH_ES, pool);
+            /* Warm-up and measurement together take the whole pool */
+            benchmark("ECDH-ES encrypt (pooled)", pool.capacity() / 2, () ->
+                pooled.encrypt(jwk, JWEEncryption.A128GCM, new JWEHeader.Builder(), new JWE.Builder()));
+
+            System.err.printf("BENCHMARK %-50s %,15.0f pairs/sec (%d hits, %d misses)%n", "ECDH-ES P-256 refill rate",
+                              pool.refillRate(ECCurve.P_256), pool.hits(ECCurve.P_256), pool.misses(ECCurve.P_256));
+        }
+    }
+
+    @Test
+    public void benchmarkContentKeyCache()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        final RSAPrivateCrtKey key = (RSAPrivateCrtKey) generator.generateKeyPair().getPrivate();
+
+        final RSAPublicJWK.Builder rsaPublic = new RSAPublicJWK.Builder();
+        rsaPublic.setKeyType(JWKKeyType.RSA);
+        rsaPublic.setModulus(key.getModulus());
+        rsaPublic.setPublicExponent(key.getPublicExponent());
+
+        final RSAPrivateJWK.Builder rsaPrivate = new RSAPrivateJWK.Builder();
+        rsaPrivate.setKeyType(JWKKeyType.RSA);
+        rsaPrivate.setKeyId("benchmark");
+        rsaPrivate.setModulus(key.getModulus());
+        rsaPrivate.setPublicExponent(key.getPublicExponent());
+        rsaPrivate.setPrivateExponent(Secret.valueOf(key.getPrivateExponent()));
+        rsaPrivate.setPrimeP(Secret.valueOf(key.getPrimeP()));
+        rsaPrivate.setPrimeQ(Secret.valueOf(key.getPrimeQ()));
+        rsaPrivate.setPrimeExponentP(Secret.valueOf(key.getPrimeExponentP()));
+        rsaPrivate.setPrimeExponentQ(Secret.valueOf(key.getPrimeExponentQ()));
+        rsaPrivate.setCrtCoefficient(Secret.valueOf(key.getCrtCoefficient()));
+        final RSAPrivateJWK jwk = rsaPrivate.build();
+
+        for (JWEAlgorithm algorithm: new JWEAlgorithm[] { JWEAlgorithm.RSA1_5, JWEAlgorithm.RSA_OAEP_256 }) {
+            final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(algorithm);
+            final JWEHeader.Builder header = new JWEHeader.Builder();
+            final JWE.Builder builder = new JWE.Builder();
+            engine.encrypt(rsaPublic.build(), JWEEncryption.A128GCM, header, builder);
+            final JWE jwe = builder.setHeader(header.build()).build();
+
+            benchmark(algorithm.joseName() + " decrypt", 1000, () -> engine.decrypt(jwk, jwe));
+
+            /* The same JWE resent over and over */
+            final JWEContentKeyCache cache = new JWEContentKeyCache(1024, 10, TimeUnit.MINUTES);
+            final JWEKeyManagementEngine cached = JWEKeyManagementEngine.getInstance(algorithm, cache);
+            benchmark(algorithm.joseName() + " decrypt (cached)", ITERATIONS, () -> cached.decrypt(jwk, jwe));
+            System.err.printf("BENCHMARK %-50s %,15.4f hit rate%n", algorithm.joseName() + " cache", cache.hitRate());
+        }
+    }
+
+    @Test
+    public void benchmarkPasswordKeyDerivation()
+    throws Exception {
+        final int count = 10000;
+        final String password = "correct horse battery staple";
+        final byte[] salt = new byte[32];
+        random.nextBytes(salt);
+
+        /* Our keyed MAC, against the JCA factory (character passwords only) */
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(password.getBytes("UTF-8"), "HmacSHA256"));
+        benchmark("PBKDF2 " + count + " iterations", 50, () -> {
+            final byte[] derived = new byte[16];
+            JWEPBKDF2.derive(mac, salt, count, derived);
+            return derived;
+        });
+
+        final SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        benchmark("PBKDF2 " + count + " iterations (SecretKeyFactory)", 50, () ->
+            factory.generateSecret(new PBEKeySpec(password.toCharArray(), salt, count, 128)).getEncoded());
+
+        final OctetSequenceJWK.Builder oct = new OctetSequenceJWK.Builder();
+        oct.setKeyType(JWKKeyType.OCT);
+        oct.setKeyValue(new Secret(password.getBytes("UTF-8")));
+        final OctetSequenceJWK jwk = oct.build();
+
+        /* The same JWE resent over and over */
+        try (JWEPasswordKeyDeriver deriver = new JWEPasswordKeyDeriver(count, count, 1)) {
+            final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(JWEAlgorithm.PBES2_HS256withA128KW, deriver);
+            final JWEHeader.Builder header = new JWEHeader.Builder();
+            final JWE.Builder builder = new JWE.Builder();
+            engine.encrypt(jwk, JWEEncryption.A128GCM, header, builder);
+            final JWE jwe = builder.setHeader(header.build()).build();
+
+            benchmark("PBES2-HS256+A128KW decrypt (cached)", ITERATIONS, () -> engine.decrypt(jwk, jwe));
+            System.err.printf("BENCHMARK %-50s %,15d hits, %d misses%n", "PBES2-HS256+A128KW cache", deriver.hits(), deriver.misses());
+        }
+    }
+}
@@ -0,0 +1,715 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractTestParse;
+import org.usrz.jose.jwk.JWKKeyType;
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.jwk.ec.ECPrivateJWK;
+import org.usrz.jose.jwk.ec.ECPublicJWK;
+import org.usrz.jose.jwk.oct.OctetSequenceJWK;
+import org.usrz.jose.jwk.rsa.RSAPrivateJWK;
+import org.usrz.jose.jwk.rsa.RSAPublicJWK;
+import org.usrz.jose.jws.JWSAlgorithm;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
+
+public class JWEKeyManagementEngineTest extends AbstractTestParse {
+
+    /* RFC 7516, Appendix A.3 */
+    private static final String KW_KEY = "GawgguFyGrWKav7AX4VKUg";
+    private static final String KW_ENCRYPTED_KEY = "6KB707dM9YTIgHtLvtgWQ8mKwboJW3of9locizkDTHzBC2IlrT1oOQ";
+    private static final String KW_CONTENT_KEY = "BNMfxVSd_P4LZJ36P6pqzmt81C1vawnbyLEA8I-cLM8";
+
+    /* RFC 7520, Section 5.7 */
+    private static final String GCMKW_KEY = "qC57l_uxcm7Nm3K-ct4GFjx8tM1U8CZ0NLBvdQstiS8";
+    private static final String GCMKW_INITIALIZATION_VECTOR = "KkYT0GX_2jHlfqN_";
+    private static final String GCMKW_AUTHENTICATION_TAG = "kfPduVQ3T3H6vnewt--ksw";
+    private static final String GCMKW_ENCRYPTED_KEY = "lJf3HbOApxMEBkCMOoTnnABxs_CvTWUmZQ2ElLvYNok";
+    private static final String GCMKW_CONTENT_KEY = "UWxARpat23nL9ReIj4WG3D1ee9I4r-Mv5QLuFXdy_rE";
+
+    /* RFC 7518, Appendix C (and our own vectors for longer keys) */
+    private static final String ECDH_X = "weNJy2HscCSM6AEDTDg04biOvhFhyyWvOHQfeF_PxMQ";
+    private static final String ECDH_Y = "e8lnCO-AlStT-NJVX-crhB7QRYhiix03illJOVAOyck";
+    private static final String ECDH_D = "VEmDZpDXXK8p8N0Cndsxs924q6nS1RXFASRl6BfUqdw";
+    private static final String ECDH_EPK_X = "gI0GAILBdu7T53akrFmMyGcsF3n5dO7MmwNBHKW5SV0";
+    private static final String ECDH_EPK_Y = "SLW_xSffzlPWrHEVI30DHM_4egVwt3NQqeUD7nMFpps";
+    private static final String ECDH_APU = "QWxpY2U";
+    private static final String ECDH_APV = "Qm9i";
+    private static final String ECDH_A128GCM_KEY = "VqqN6vgjbSBcIijNcacQGg";
+    private static final String ECDH_A192CBC_HS384_KEY = "YFl7v565kcUWLxnzcownRAp0YC-ias5IeWtqkyLdE8vCbVC-M0KZLcy0XIGntdW3";
+    private static final String ECDH_A256CBC_HS512_KEY = "OYaqefY5ZCDlgOXTiQ9iP-5dRSIweSnrme40JaAB7MF1sXVOP7ZEzoJQNLViUj6aiAa8qNdq-oYem3lRWAMiXQ";
+
+    private static final JWEAlgorithm[] ECDH_ALGORITHMS = {
+            JWEAlgorithm.ECDH_ES, JWEAlgorithm.ECDH_ESwithA128KW,
+            JWEAlgorithm.ECDH_ESwithA192KW, JWEAlgorithm.ECDH_ESwithA256KW };
+
+    /* The RSA key from RFC 7517, Appendix A.2, with keys encrypted by a third party */
+    private static final String RSA_MODULUS = "0vx7agoebGcQSuuPiLJXZptN9nndrQmbXEps2aiAFbWhM78LhWx4cbbfAAtVT86zwu1RK7aPFFxuhDR1L6tSoc_BJECPebWKRXjBZCiFV4n3oknjhMstn64tZ_2W-5JsGY4Hc5n9yBXArwl93lqt7_RN5w6Cf0h4QyQ5v-65YGjQR0_FDW2QvzqY368QQMicAtaSqzs8KJZgnYb9c7d0zgdAZHzu6qMQvRL5hajrn1n91CbOpbISD08qNLyrdkt-bFTWhAI4vMQFh6WeZu0fM4lFd2NcRwr3XPksINHaQ-G_xBniIqbw0Ls1jF44-csFCur-kEgU8awapJzKnqDKgw";
+    private static final String RSA_PUBLIC_EXPONENT = "AQAB";
+    private static final String RSA_PRIVATE_EXPONENT = "X4cTteJY_gn4FYPsXB8rdXix5vwsg1FLN5E3EaG6RJoVH-HLLKD9M7dx5oo7GURknchnrRweUkC7hT5fJLM0WbFAKNLWY2vv7B6NqXSzUvxT0_YSfqijwp3RTzlBaCxWp4doFk5N2o8Gy_nHNKroADIkJ46pRUohsXywbReAdYaMwFs9tv8d_cPVY3i07a3t8MN6TNwm0dSawm9v47UiCl3Sk5ZiG7xojPLu4sbg1U2jx4IBTNBznbJSzFHK66jT8bgkuqsk0GjskDJk19Z4qwjwbsnn4j2WBii3RL-Us2lGVkY8fkFzme1z0HbIkfz0Y6mqnOYtqc0X4jfcKoAC8Q";
+    private static final String RSA_PRIME_P = "83i-7IvMGXoMXCskv73TKr8637FiO7Z27zv8oj6pbWUQyLPQBQxtPVnwD20R-60eTDmD2ujnMt5PoqMrm8RfmNhVWDtjjMmCMjOpSXicFHj7XOuVIYQyqVWlWEh6dN36GVZYk93N8Bc9vY41xy8B9RzzOGVQzXvNEvn7O0nVbfs";
+    private static final String RSA_PRIME_Q = "3dfOR9cuYq-0S-mkFLzgItgMEfFzB2q3hWehMuG0oCuqnb3vobLyumqjVZQO1dIrdwgTnCdpYzBcOfW5r370AFXjiWft_NGEiovonizhKpo9VVS78TzFgxkIdrecRezsZ-1kYd_s1qDbxtkDEgfAITAG9LUnADun4vIcb6yelxk";
+    private static final String RSA_PRIME_EXPONENT_P = "G4sPXkc6Ya9y8oJW9_ILj4xuppu0lzi_H7VTkS8xj5SdX3coE0oimYwxIi2emTAue0UOa5dpgFGyBJ4c8tQ2VF402XRugKDTP8akYhFo5tAA77Qe_NmtuYZc3C3m3I24G2GvR5sSDxUyAN2zq8Lfn9EUms6rY3Ob8YeiKkTiBj0";
+    private static final String RSA_PRIME_EXPONENT_Q = "s9lAH9fggBsoFR8Oac2R_E2gw282rT2kGOAhvIllETE1efrA6huUUvMfBcMpn8lqeW6vzznYY5SSQF7pMdC_agI3nG8Ibp1BUb0JUiraRNqUfLhcQb_d9GF4Dh7e74WbRsobRonujTYN1xCaP6TO61jvWrX-L18txXw494Q_cgk";
+    private static final String RSA_CRT_COEFFICIENT = "GyM_p6JrXySiz1toFgKbWV-JdI3jQ4ypu9rbMWx3rQJBfmt0FoYzgUIZEVFEcOqwemRN81zoDAaa-Bk0KWNGDjJHZDdDmFhW3AN7lI-puxk_mHZGJ11rxyR8O55XLSe3SPmRfKwZI6yU24ZxvQKFYItdldUKGzO6Ia6zTKhAVRU";
+    private static final String RSA_KEY_ID = "2011-04-29";
+    private static final String RSA_CONTENT_KEY = "AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8";
+    private static final String RSA_OAEP_ENCRYPTED_KEY = "G2woSTaUNTtk8sJVOHf2PsUpGWUsThqCbfYFB6etSlH2VRyUDz6jqKagoOxBDbRZbwmh_fJEh5C9go5uaLDWq5G17J0JbTprnUuuhim4flLKWRmJtlLRH6-_f5vAu2hXpmd0pBVri4gD7ONLIOBkpSLoFDT76PaDzEoYaXK_B3r9qBsBdSdyz_Y2Ck3L_FtLLgxo7Gw7GEEG40xXwA6itvxFjXZF-8xg69clr5nz52ADM1yB0_y1Wh9se4SAOJa9NPqsgkI6ag8ft9_qCa9g-CDJGCPZqq-7NP1l4y14YSLXnYXu6v7V_3lIKOBHRn6AnPG1ETn4xkrbweRQ1k4WlQ";
+    private static final String RSA_OAEP_256_ENCRYPTED_KEY = "eiLP7kJz73DUXQpqIgj4xoPwixsZZLRQ4nyIHwyfXoRnNvpDTqYrRVlU_D11ZYx1OxEc4bqFufeE0oSpqdf09RUZHsI8oH6YlmZ-_7JjK_Rudkqn12qcOg9Xtoc7gPWA5PS2Vb6XElJ6EeLhIz8IBDd9Nec-y44uo6u6dkPpqIG-lrDJQEBGLtgTQf2vk2mdVGKt7AmrQa26t2V-crNHuckZdgz2sbYFmp2IbnBBx_wseRkYVqiEpCLiVeNpajElTKxoZXu3imuwjvLbHfiL_B9l7LIwzs-VI_8-5gXezh3QU34iUmZVxjTSRg0O81rIIULZoI__6DQkr-Km_xKCwA";
+    private static final String RSA1_5_ENCRYPTED_KEY = "ozoe5s2zz59LzsOvcbkzQER55Bo2ix1G_B83_j9DBUQJusDx4cqzt0yWdGH9GY-q9m71TBZP82R_CUQ-Opb73Vztu6oOWHtjFBvxmGFpqwcaTUUMl8PuSs0K5zsRBvU7gsT6PLEre_1lr9Oqemcn6YiXsOdSrqsD9F332LSQfXDhn1jl8z14r-POxK2f3uCCCKIYmW_SBBw5gFnQFYX0nEvXiVbP3Zpm8zLnH_bwVnRsISQUCQVb1fg4WqyBmqJrsAgJ6cR3qnrxQvAvOGQEv3TSxaHzRqWirzNlmUCpivW5oyPzw2lSCJTENjaqNlDhTgBltSeM88L3cl0W1Pl5Jw";
+
+    private static final JWEAlgorithm[] RSA_ALGORITHMS = {
+            JWEAlgorithm.RSA1_5, JWEAlgorithm.RSA_OAEP, JWEAlgorithm.RSA_OAEP_256 };
+
+    /* RFC 7517, Appendix C */
+    private static final String PBES2_PASSWORD = "VGh1cyBmcm9tIG15IGxpcHMsIGJ5IHlvdXJzLCBteSBzaW4gaXMgcHVyZ2VkLg";
+    private static final String PBES2_SALT_INPUT = "2WCTcJZ1Rvd_CJuJripQ1w";
+    private static final int PBES2_COUNT = 4096;
+    private static final String PBES2_ENCRYPTED_KEY = "TrqXOwuNUfDV9VPTNbyGvEJ9JMjefAVn-TR1uIxR9p6hsRQh9Tk7BA";
+    private static final String PBES2_CONTENT_KEY = "bxsZNEIdFE5csDjwQdBScKGDJDfK7LmsgReZwsMw_bY";
+
+    private static final JWEAlgorithm[] PBES2_ALGORITHMS = {
+            JWEAlgorithm.PBES2_HS256withA128KW, JWEAlgorithm.PBES2_HS384withA192KW,
+            JWEAlgorithm.PBES2_HS512withA256KW };
+
+    private static final JWEAlgorithm[] ALGORITHMS = {
+            JWEAlgorithm.A128KW, JWEAlgorithm.A192KW, JWEAlgorithm.A256KW,
+            JWEAlgorithm.A128GCMKW, JWEAlgorithm.A192GCMKW, JWEAlgorithm.A256GCMKW };
+
+    private final Random random = new Random();
+
+    @Test
+    public void testAppendixA3()
+    throws Exception {
+        final JWEHeader.Builder header = new JWEHeader.Builder();
+        header.setAlgorithm(JWEAlgorithm.A128KW);
+        header.setEncryption(JWEEncryption.A128CBC_HS256);
+
+        final SecretKey key = JWEKeyManagementEngine.getInstance(JWEAlgorithm.A128KW)
+                                                    .decrypt(jwk(null, parseBytes(KW_KEY).getBytes()), header.build(), parseBytes(KW_ENCRYPTED_KEY));
+        assertEquals(new Bytes(key.getEncoded()), parseBytes(KW_CONTENT_KEY), "Wrong content encryption key");
+    }
+
+    @Test
+    public void testRFC7520Section57()
+    throws Exception {
+        final JWEHeader.Builder header = new JWEHeader.Builder();
+        header.setAlgorithm(JWEAlgorithm.A256GCMKW);
+        header.setEncryption(JWEEncryption.A128CBC_HS256);
+        header.setInitializationVector(parseBytes(GCMKW_INITIALIZATION_VECTOR));
+        header.setAuthenticationTag(parseBytes(GCMKW_AUTHENTICATION_TAG));
+
+        final SecretKey key = JWEKeyManagementEngine.getInstance(JWEAlgorithm.A256GCMKW)
+                                                    .decrypt(jwk(JWEAlgorithm.A256GCMKW, parseBytes(GCMKW_KEY).getBytes()), header.build(), parseBytes(GCMKW_ENCRYPTED_KEY));
+        assertEquals(new Bytes(key.getEncoded()), parseBytes(GCMKW_CONTENT_KEY), "Wrong content encryption key");
+    }
+
+    @Test
+    public void testRoundTrip()
+    throws Exception {
+        for (JWEAlgorithm algorithm: ALGORITHMS) {
+            final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(algorithm);
+            final OctetSequenceJWK jwk = jwk(algorithm, random(length(algorithm)));
+            final boolean gcm = algorithm.joseName().endsWith("GCMKW");
+
+            for (JWEEncryption encryption: new JWEEncryption[] { JWEEncryption.A128GCM, JWEEncryption.A256CBC_HS512 }) {
+                final int length = JWEEncryptionEngine.getInstance(encryption).getKeyLength();
+
+                final JWEHeader.Builder header = new JWEHeader.Builder();
+                final JWE.Builder builder = new JWE.Builder();
+                final SecretKey key = engine.encrypt(jwk, encryption, header, builder);
+                final JWE jwe = builder.setHeader(header.build()).build();
+
+                assertEquals(key.getEncoded().length, length, "Wrong content encryption key length");
+                assertEquals(jwe.getHeader().getAlgorithm(), algorithm, "Wrong algorithm");
+                assertEquals(jwe.getHeader().getEncryption(), encryption, "Wrong encryption");
+                assertEquals(jwe.getEncryptedKey().length(), gcm ? length : length + 8, "Wrong encrypted key length");
+                if (gcm) {
+                    assertEquals(jwe.getHeader().getInitializationVector().length(), 12, "Wrong initialization vector length");
+                    assertEquals(jwe.getHeader().getAuthenticationTag().length(), 16, "Wrong authentication tag length");
+                } else {
+                    assertNull(jwe.getHeader().getInitializationVector(), "Initialization vector in header");
+                    assertNull(jwe.getHeader().getAuthenticationTag(), "Authentication tag in header");
+                }
+
+                /* Repeatedly, to exercise pooled ciphers */
+                for (int x = 0; x < 3; x ++) {
+                    assertEquals(new Bytes(engine.decrypt(jwk, jwe).getEncoded()), new Bytes(key.getEncoded()),
+                                 "Wrong content encryption key for " + algorithm + " and " + encryption);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentUnwrap()
+    throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (JWEAlgorithm algorithm: new JWEAlgorithm[] { JWEAlgorithm.A256KW, JWEAlgorithm.A256GCMKW }) {
+                final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(algorithm);
+                final OctetSequenceJWK jwk = jwk(algorithm, random(32));
+
+                final List<Future<Boolean>> futures = new ArrayList<>();
+                for (int x = 0; x < 64; x ++) {
+                    final JWEHeader.Builder header = new JWEHeader.Builder();
+                    final JWE.Builder builder = new JWE.Builder();
+                    final SecretKey key = engine.encrypt(jwk, JWEEncryption.A256GCM, header, builder);
+                    final JWE jwe = builder.setHeader(header.build()).build();
+
+                    futures.add(executor.submit((Callable<Boolean>) () -> {
+                        for (int y = 0; y < 100; y ++) {
+                            if (!new Bytes(engine.decrypt(jwk, jwe).getEncoded()).equals(new Bytes(key.getEncoded()))) return false;
+                        }
+                        return true;
+                    }));
+                }
+                for (Future<Boolean> future: futures) assertTrue(future.get(), "Wrong content encryption key for " + algorithm);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions=InvalidKeyException.class)
+    public void testTamperedKW()
+    throws Exception {
+        final JWEHeader.Builder header = new JWEHeader.Builder();
+        header.setAlgorithm(JWEAlgorithm.A128KW);
+        header.setEncryption(JWEEncryption.A128CBC_HS256);
+
+        final byte[] encryptedKey = parseBytes(KW_ENCRYPTED_KEY).getBytes();
+        encryptedKey[10] ^= 1;
+        JWEKeyManagementEngine.getInstance(JWEAlgorithm.A128KW)
+                              .decrypt(jwk(null, parseBytes(KW_KEY).getBytes()), header.build(), new Bytes(encryptedKey));
+    }
+
+    @Test(expectedExceptions=AEADBadTagException.class)
+    public void testTamperedGCMKW()
+    throws Exception {
+        final byte[] tag = parseBytes(GCMKW_AUTHENTICATION_TAG).getBytes();
+        tag[0] ^= 1;
+
+        final JWEHeader.Builder header = new JWEHeader.Builder();
+        header.setAlgorithm(JWEAlgorithm.A256GCMKW);
+        header.setEncryption(JWEEncryption.A128CBC_HS256);
+        header.setInitializationVector(parseBytes(GCMKW_INITIALIZATION_VECTOR));
+        header.setAuthenticationTag(new Bytes(tag));
+
+        JWEKeyManagementEngine.getInstance(JWEAlgorithm.A256GCMKW)
+                              .decrypt(jwk(null, parseBytes(GCMKW_KEY).getBytes()), header.build(), parseBytes(GCMKW_ENCRYPTED_KEY));
+    }
+
+    @Test
+    public void testInvalidKeys()
+    throws Exception {
+        final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(JWEAlgorithm.A128KW);
+
+        try {
+            engine.encrypt(jwk(null, random(32)), JWEEncryption.A128GCM, new JWEHeader.Builder(), new JWE.Builder());
+            fail("Wrong key length accepted");
+        } catch (InvalidKeyException exception) {
+            /* Expected */
+        }
+
+        try {
+            engine.encrypt(jwk(JWEAlgorithm.A128GCMKW, random(16)), JWEEncryption.A128GCM, new JWEHeader.Builder(), new JWE.Builder());
+            fail("Wrong key algorithm accepted");
+        } catch (InvalidKeyException exception) {
+            /* Expected */
+        }
+
+        final OctetSequenceJWK destroyed = jwk(null, random(16));
+        destroyed.destroy();
+        try {
+            engine.encrypt(destroyed, JWEEncryption.A128GCM, new JWEHeader.Builder(), new JWE.Builder());
+            fail("Destroyed key accepted");
+        } catch (InvalidKeyException exception) {
+            /* Expected */
+        }
+    }
+
+    @Test
+    public void testRFC7518AppendixC()
+    throws Exception {
+        final ECPrivateJWK.Builder bob = new ECPrivateJWK.Builder();
+        bob.setKeyType(JWKKeyType.EC);
+        bob.setCurve(ECCurve.P_256);
+        bob.setXCoordinate(parseBigInteger(ECDH_X));
+        bob.setYCoordinate(parseBigInteger(ECDH_Y));
+        bob.setEccPrivateKey(parseSecret(ECDH_D));
+        final ECPrivateJWK jwk = bob.build();
+
+        final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(JWEAlgorithm.ECDH_ES);
+        final ECPublicJWK epk = publicJWK(ECCurve.P_256, parseBigInteger(ECDH_EPK_X), parseBigInteger(ECDH_EPK_Y));
+
+        final JWEEncryption[] encryptions = { JWEEncryption.A128GCM, JWEEncryption.A192CBC_HS384, JWEEncryption.A256CBC_HS512 };
+        final String[] keys = { ECDH_A128GCM_KEY, ECDH_A192CBC_HS384_KEY, ECDH_A256CBC_HS512_KEY };
+        for (int x = 0; x < encryptions.length; x ++) {
+            final JWEHeader.Builder header = new JWEHeader.Builder();
+            header.setAlgorithm(JWEAlgorithm.ECDH_ES);
+            header.setEncryption(encryptions[x]);
+            header.setEphemeralPublicKey(epk);
+            header.setAgreementPartyUInfo(parseBytes(ECDH_APU));
+            header.setAgreementPartyVInfo(parseBytes(ECDH_APV));
+
+            final SecretKey key = engine.decrypt(jwk, header.build(), new Bytes(new byte[0]));
+            assertEquals(new Bytes(key.getEncoded()), parseBytes(keys[x]), "Wrong content encryption key for " + encryptions[x]);
+        }
+    }
+
+    @Test
+    public void testECDHRoundTrip()
+    throws Exception {
+        for (ECCurve curve: new ECCurve[] { ECCurve.P_256, ECCurve.P_384, ECCurve.P_521 }) {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(curve.getECParameterSpec());
+            final KeyPair pair = generator.generateKeyPair();
+            final ECPublicKey publicKey = (ECPublicKey) pair.getPublic();
+
+            final ECPublicJWK recipient = publicJWK(curve, publicKey.getW().getAffineX(), publicKey.getW().getAffineY());
+            final ECPrivateJWK.Builder builder = new ECPrivateJWK.Builder();
+            builder.setKeyType(JWKKeyType.EC);
+            builder.setCurve(curve);
+            builder.setXCoordinate(publicKey.getW().getAffineX());
+            builder.setYCoordinate(publicKey.getW().getAffineY());
+            builder.setEccPrivateKey(Secret.valueOf(((ECPrivateKey) pair.getPrivate()).getS()));
+            final ECPrivateJWK jwk = builder.build();
+
+            for (JWEAlgorithm algorithm: ECDH_ALGORITHMS) {
+                final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(algorithm);
+                for (JWEEncryption encryption: new JWEEncryption[] { JWEEncryption.A128GCM, JWEEncryption.A256CBC_HS512 }) {
+                    final JWEHeader.Builder header = new JWEHeader.Builder();
+                    final JWE.Builder jweBuilder = new JWE.Builder();
+                    final SecretKey key = engine.encrypt(recipient, encryption, header, jweBuilder);
+                    final JWE jwe = jweBuilder.setHeader(header.build()).build();
+
+                    assertEquals(key.getEncoded().length, JWEEncryptionEngine.getInstance(encryption).getKeyLength(), "Wrong content encryption key length");
+                    assertEquals(jwe.getHeader().getAlgorithm(), algorithm, "Wrong algorithm");
+                    assertTrue(jwe.getHeader().getEphemeralPublicKey() instanceof ECPublicJWK, "Wrong ephemeral public key");
+                    assertEquals(jwe.getEncryptedKey().length() == 0, algorithm == JWEAlgorithm.ECDH_ES, "Wrong encrypted key");
+
+                    for (int x = 0; x < 3; x ++) {
+                        assertEquals(new Bytes(engine.decrypt(jwk, jwe).getEncoded()), new Bytes(key.getEncoded()),
+                                     "Wrong content encryption key for " + algorithm + " on " + curve + " and " + encryption);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testECDHInvalidEphemeralKey()
+    throws Exception {
+        final ECPrivateJWK.Builder bob = new ECPrivateJWK.Builder();
+        bob.setKeyType(JWKKeyType.EC);
+        bob.setCurve(ECCurve.P_256);
+        bob.setXCoordinate(parseBigInteger(ECDH_X));
+        bob.setYCoordinate(parseBigInteger(ECDH_Y));
+        bob.setEccPrivateKey(parseSecret(ECDH_D));
+        final ECPrivateJWK jwk = bob.build();
+
+        final BigInteger x = parseBigInteger(ECDH_EPK_X);
+        final BigInteger y = parseBigInteger(ECDH_EPK_Y);
+        final ECPublicJWK[] invalid = {
+                publicJWK(ECCurve.P_256, x, y.add(BigInteger.ONE)),
+                publicJWK(ECCurve.P_384, x, y),
+                null };
+
+        for (ECPublicJWK epk: invalid) {
+            final JWEHeader.Builder header = new JWEHeader.Builder();
+            header.setAlgorithm(JWEAlgorithm.ECDH_ES);
+            header.setEncryption(JWEEncryption.A128GCM);
+            header.setEphemeralPublicKey(epk);
+            try {
+                JWEKeyManagementEngine.getInstance(JWEAlgorithm.ECDH_ES).decrypt(jwk, header.build(), new Bytes(new byte[0]));
+                fail("Invalid ephemeral public key accepted");
+            } catch (InvalidKeyException exception) {
+                /* Expected */
+            }
+        }
+    }
+
+    @Test
+    public void testECDHKeyPool()
+    throws Exception {
+        try (JWEEphemeralKeyPool pool = new JWEEphemeralKeyPool(4)) {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(ECCurve.P_256.getECParameterSpec());
+            final ECPublicKey publicKey = (ECPublicKey) generator.generateKeyPair().getPublic();
+            final ECPublicJWK recipient = publicJWK(ECCurve.P_256, publicKey.getW().getAffineX(), publicKey.getW().getAffineY());
+
+            final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(JWEAlgorithm.ECDH_ES, pool);
+            assertEquals(engine.getAlgorithm(), JWEAlgorithm.ECDH_ES, "Wrong algorithm");
+
+            for (int x = 0; x < 10; x ++) engine.encrypt(recipient, JWEEncryption.A128GCM, new JWEHeader.Builder(), new JWE.Builder());
+            assertEquals(pool.hits(ECCurve.P_256) + pool.misses(ECCurve.P_256), 10L, "Wrong number of key pairs taken");
+        }
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testECDHKeyPoolWrongAlgorithm() {
+        try (JWEEphemeralKeyPool pool = new JWEEphemeralKeyPool(4)) {
+            JWEKeyManagementEngine.getInstance(JWEAlgorithm.A128KW, pool);
+        }
+    }
+
+    @Test
+    public void testRSAVectors()
+    throws Exception {
+        final RSAPrivateJWK jwk = rsaJWK(null);
+        final String[] encryptedKeys = { RSA1_5_ENCRYPTED_KEY, RSA_OAEP_ENCRYPTED_KEY, RSA_OAEP_256_ENCRYPTED_KEY };
+
+        for (int x = 0; x < RSA_ALGORITHMS.length; x ++) {
+            final JWEHeader.Builder header = new JWEHeader.Builder();
+            header.setAlgorithm(RSA_ALGORITHMS[x]);
+            header.setEncryption(JWEEncryption.A128CBC_HS256);
+
+            final SecretKey key = JWEKeyManagementEngine.getInstance(RSA_ALGORITHMS[x])
+                                                        .decrypt(jwk, header.build(), parseBytes(encryptedKeys[x]));
+            assertEquals(new Bytes(key.getEncoded()), parseBytes(RSA_CONTENT_KEY), "Wrong content encryption key for " + RSA_ALGORITHMS[x]);
+        }
+    }
+
+    @Test
+    public void testRSARoundTrip()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        final KeyPair pair = generator.generateKeyPair();
+        final RSAPrivateCrtKey privateKey = (RSAPrivateCrtKey) pair.getPrivate();
+
+        final RSAPublicJWK.Builder publicBuilder = new RSAPublicJWK.Builder();
+        publicBuilder.setKeyType(JWKKeyType.RSA);
+        publicBuilder.setModulus(privateKey.getModulus());
+        publicBuilder.setPublicExponent(privateKey.getPublicExponent());
+        final RSAPublicJWK recipient = publicBuilder.build();
+
+        final RSAPrivateJWK.Builder privateBuilder = new RSAPrivateJWK.Builder();
+        privateBuilder.setKeyType(JWKKeyType.RSA);
+        privateBuilder.setModulus(privateKey.getModulus());
+        privateBuilder.setPublicExponent(privateKey.getPublicExponent());
+        privateBuilder.setPrivateExponent(Secret.valueOf(privateKey.getPrivateExponent()));
+        final RSAPrivateJWK jwk = privateBuilder.build();
+
+        for (JWEAlgorithm algorithm: RSA_ALGORITHMS) {
+            final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(algorithm);
+            for (JWEEncryption encryption: new JWEEncryption[] { JWEEncryption.A128GCM, JWEEncryption.A256CBC_HS512 }) {
+                final JWEHeader.Builder header = new JWEHeader.Builder();
+                final JWE.Builder builder = new JWE.Builder();
+                final SecretKey key = engine.encrypt(recipient, encryption, header, builder);
+                final JWE jwe = builder.setHeader(header.build()).build();
+
+                assertEquals(jwe.getHeader().getAlgorithm(), algorithm, "Wrong algorithm");
+                assertEquals(jwe.getEncryptedKey().length(), 256, "Wrong encrypted key length");
+                for (int x = 0; x < 3; x ++) {
+                    assertEquals(new Bytes(engine.decrypt(jwk, jwe).getEncoded()), new Bytes(key.getEncoded()),
+                                 "Wrong content encryption key for " + algorithm + " and " + encryption);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTamperedRSA()
+    throws Exception {
+        final RSAPrivateJWK jwk = rsaJWK(null);
+        final JWEHeader.Builder header = new JWEHeader.Builder();
+        header.setEncryption(JWEEncryption.A128CBC_HS256);
+
+        /* RSA1_5 never fails, but returns a random key of the right length */
+        final byte[] encryptedKey = parseBytes(RSA1_5_ENCRYPTED_KEY).getBytes();
+        encryptedKey[10] ^= 1;
+        final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(JWEAlgorithm.RSA1_5);
+        final Bytes first = new Bytes(engine.decrypt(jwk, header.build(), new Bytes(encryptedKey)).getEncoded());
+        final Bytes second = new Bytes(engine.decrypt(jwk, header.build(), new Bytes(encryptedKey)).getEncoded());
+        assertEquals(first.length(), 32, "Wrong random key length");
+        assertNotEquals(first, parseBytes(RSA_CONTENT_KEY), "Tampered key decrypted");
+        assertNotEquals(first, second, "Random keys not random");
+
+        /* Same for a properly padded key of the wrong length */
+        header.setEncryption(JWEEncryption.A256CBC_HS512);
+        final SecretKey key = engine.decrypt(jwk, header.build(), parseBytes(RSA1_5_ENCRYPTED_KEY));
+        assertEquals(key.getEncoded().length, 64, "Wrong random key length");
+
+        /* RSA-OAEP simply fails */
+        final byte[] oaepKey = parseBytes(RSA_OAEP_ENCRYPTED_KEY).getBytes();
+        oaepKey[10] ^= 1;
+        header.setEncryption(JWEEncryption.A128CBC_HS256);
+        try {
+            JWEKeyManagementEngine.getInstance(JWEAlgorithm.RSA_OAEP).decrypt(jwk, header.build(), new Bytes(oaepKey));
+            fail("Tampered key decrypted");
+        } catch (InvalidKeyException exception) {
+            /* Expected */
+        }
+
+        /* Encrypted keys of the wrong length always fail */
+        try {
+            engine.decrypt(jwk, header.build(), parseBytes(RSA1_5_ENCRYPTED_KEY).slice(1, 255));
+            fail("Truncated key decrypted");
+        } catch (InvalidKeyException exception) {
+            /* Expected */
+        }
+    }
+
+    @Test
+    public void testInvalidRSAKeys()
+    throws Exception {
+        final JWEHeader.Builder header = new JWEHeader.Builder();
+        header.setEncryption(JWEEncryption.A128CBC_HS256);
+
+        /* Signing keys are not for encryption */
+        final RSAPrivateJWK signing = rsaJWK(null);
+        final RSAPrivateJWK.Builder builder = new RSAPrivateJWK.Builder();
+        builder.setKeyType(JWKKeyType.RSA);
+        builder.setAlgorithm(JWSAlgorithm.RS256);
+        builder.setModulus(signing.getModulus());
+        builder.setPublicExponent(signing.getPublicExponent());
+        builder.setPrivateExponent(signing.getPrivateExponent());
+        try {
+            JWEKeyManagementEngine.getInstance(JWEAlgorithm.RSA_OAEP).decrypt(builder.build(), header.build(), parseBytes(RSA_OAEP_ENCRYPTED_KEY));
+            fail("Signing key accepted");
+        } catch (InvalidKeyException exception) {
+            /* Expected */
+        }
+
+        /* Keys shorter than 2048 bits */
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        final RSAPrivateCrtKey privateKey = (RSAPrivateCrtKey) generator.generateKeyPair().getPrivate();
+        final RSAPublicJWK.Builder publicBuilder = new RSAPublicJWK.Builder();
+        publicBuilder.setKeyType(JWKKeyType.RSA);
+        publicBuilder.setModulus(privateKey.getModulus());
+        publicBuilder.setPublicExponent(privateKey.getPublicExponent());
+        try {
+            JWEKeyManagementEngine.getInstance(JWEAlgorithm.RSA_OAEP).encrypt(publicBuilder.build(), JWEEncryption.A128GCM, new JWEHeader.Builder(), new JWE.Builder());
+            fail("Short key accepted");
+        } catch (InvalidKeyException exception) {
+            /* Expected */
+        }
+    }
+
+    @Test
+    public void testRSAContentKeyCache()
+    throws Exception {
+        final JWEContentKeyCache cache = new JWEContentKeyCache(16, 1, TimeUnit.MINUTES);
+        final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(JWEAlgorithm.RSA_OAEP, cache);
+        assertEquals(engine.getAlgorithm(), JWEAlgorithm.RSA_OAEP, "Wrong algorithm");
+
+        final JWEHeader.Builder header = new JWEHeader.Builder();
+        header.setEncryption(JWEEncryption.A128CBC_HS256);
+
+        for (int x = 0; x < 10; x ++) {
+            final SecretKey key = engine.decrypt(rsaJWK(RSA_KEY_ID), header.build(), parseBytes(RSA_OAEP_ENCRYPTED_KEY));
+            assertEquals(new Bytes(key.getEncoded()), parseBytes(RSA_CONTENT_KEY), "Wrong content encryption key");
+        }
+        assertEquals(cache.misses(), 1L, "Wrong number of misses");
+        assertEquals(cache.hits(), 9L, "Wrong number of hits");
+        assertEquals(cache.size(), 1, "Wrong cache size");
+
+        /* Keys with no "kid" are never cached */
+        engine.decrypt(rsaJWK(null), header.build(), parseBytes(RSA_OAEP_ENCRYPTED_KEY));
+        assertEquals(cache.hits() + cache.misses(), 10L, "Key with no kid cached");
+
+        /* The uncached engine is left alone */
+        assertNotEquals(JWEKeyManagementEngine.getInstance(JWEAlgorithm.RSA_OAEP), engine, "Cached engine shared");
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testContentKeyCacheWrongAlgorithm() {
+        JWEKeyManagementEngine.getInstance(JWEAlgorithm.A128KW, new JWEContentKeyCache(16, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void testRFC7517AppendixC()
+    throws Exception {
+        final JWEHeader.Builder header = new JWEHeader.Builder();
+        header.setAlgorithm(JWEAlgorithm.PBES2_HS256withA128KW);
+        header.setEncryption(JWEEncryption.A128CBC_HS256);
+        header.setPbes2SaltInput(parseBytes(PBES2_SALT_INPUT));
+        header.setPbes2Count(PBES2_COUNT);
+
+        final SecretKey key = JWEKeyManagementEngine.getInstance(JWEAlgorithm.PBES2_HS256withA128KW)
+                                                    .decrypt(jwk(null, parseBytes(PBES2_PASSWORD).getBytes()), header.build(), parseBytes(PBES2_ENCRYPTED_KEY));
+        assertEquals(new Bytes(key.getEncoded()), parseBytes(PBES2_CONTENT_KEY), "Wrong content encryption key");
+    }
+
+    @Test
+    public void testPBES2RoundTrip()
+    throws Exception {
+        try (JWEPasswordKeyDeriver deriver = new JWEPasswordKeyDeriver(1000, 10000, 2)) {
+            for (JWEAlgorithm algorithm: PBES2_ALGORITHMS) {
+                final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(algorithm, deriver);
+                final OctetSequenceJWK jwk = jwk(algorithm, "correct horse battery staple".getBytes("UTF-8"));
+
+                final JWEHeader.Builder header = new JWEHeader.Builder();
+                final JWE.Builder builder = new JWE.Builder();
+                final SecretKey key = engine.encrypt(jwk, JWEEncryption.A256GCM, header, builder);
+                final JWE jwe = builder.setHeader(header.build()).build();
+
+                assertEquals(jwe.getHeader().getAlgorithm(), algorithm, "Wrong algorithm");
+                assertEquals(jwe.getHeader().getPbes2Count(), Integer.valueOf(1000), "Wrong iteration count");
+                assertEquals(jwe.getHeader().getPbes2SaltInput().length(), 16, "Wrong salt input length");
+                assertEquals(jwe.getEncryptedKey().length(), 40, "Wrong encrypted key length");
+
+                /* Derived once, then cached */
+                final long misses = deriver.misses();
+                for (int x = 0; x < 3; x ++) {
+                    assertEquals(new Bytes(engine.decrypt(jwk, jwe).getEncoded()), new Bytes(key.getEncoded()),
+                                 "Wrong content encryption key for " + algorithm);
+                }
+                assertEquals(deriver.misses(), misses + 1, "Wrong number of misses for " + algorithm);
+
+                /* A different password (even if equal) is never given a cached key */
+                final OctetSequenceJWK other = jwk(algorithm, "correct horse battery staple".getBytes("UTF-8"));
+                assertEquals(new Bytes(engine.decrypt(other, jwe).getEncoded()), new Bytes(key.getEncoded()),
+                             "Wrong content encryption key for " + algorithm);
+                assertEquals(deriver.misses(), misses + 2, "Cached key shared by passwords for " + algorithm);
+            }
+            assertEquals(deriver.hits(), 6L, "Wrong number of hits");
+            assertEquals(deriver.size(), 6, "Wrong cache size");
+        }
+    }
+
+    @Test
+    public void testInvalidPBES2Headers()
+    throws Exception {
+        final OctetSequenceJWK jwk = jwk(null, parseBytes(PBES2_PASSWORD).getBytes());
+
+        try (JWEPasswordKeyDeriver deriver = new JWEPasswordKeyDeriver(1000, PBES2_COUNT - 1, 1)) {
+            final JWEKeyManagementEngine engine = JWEKeyManagementEngine.getInstance(JWEAlgorithm.PBES2_HS256withA128KW, deriver);
+
+            final JWEHeader.Builder header = new JWEHeader.Builder();
+            header.setEncryption(JWEEncryption.A128CBC_HS256);
+            header.setPbes2SaltInput(parseBytes(PBES2_SALT_INPUT));
+            header.setPbes2Count(PBES2_COUNT);
+
+            /* Above our maximum, rejected before deriving anything */
+            try {
+                engine.decrypt(jwk, header.build(), parseBytes(PBES2_ENCRYPTED_KEY));
+                fail("Iteration count above maximum accepted");
+            } catch (InvalidKeyException exception) {
+                /* Expected */
+            }
+
+            try {
+                header.setPbes2Count(0);
+                engine.decrypt(jwk, header.build(), parseBytes(PBES2_ENCRYPTED_KEY));
+                fail("Zero iteration count accepted");
+            } catch (InvalidKeyException exception) {
+                /* Expected */
+            }
+
+            try {
+                header.setPbes2Count(1000);
+                header.setPbes2SaltInput(new Bytes(random(7)));
+                engine.decrypt(jwk, header.build(), parseBytes(PBES2_ENCRYPTED_KEY));
+                fail("Short salt input accepted");
+            } catch (InvalidKeyException exception) {
+                /* Expected */
+            }
+
+            try {
+                header.setPbes2SaltInput(null);
+                engine.decrypt(jwk, header.build(), parseBytes(PBES2_ENCRYPTED_KEY));
+                fail("Missing salt input accepted");
+            } catch (InvalidKeyException exception) {
+                /* Expected */
+            }
+
+            try {
+                engine.encrypt(jwk(null, new byte[0]), JWEEncryption.A128GCM, new JWEHeader.Builder(), new JWE.Builder());
+                fail("Empty password accepted");
+            } catch (InvalidKeyException exception) {
+                /* Expected */
+            }
+
+            assertEquals(deriver.hits() + deriver.misses(), 0L, "Keys derived");
+        }
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testPasswordKeyDeriverWrongAlgorithm() {
+        try (JWEPasswordKeyDeriver deriver = new JWEPasswordKeyDeriver(1000, 10000, 1)) {
+            JWEKeyManagementEngine.getInstance(JWEAlgorithm.A128KW, deriver);
+        }
+    }
+
+    /* ====================================================================== */
+
+    private RSAPrivateJWK rsaJWK(String keyId) {
+        final RSAPrivateJWK.Builder builder = new RSAPrivateJWK.Builder();
+        builder.setKeyType(JWKKeyType.RSA);
+        builder.setKeyId(keyId);
+        builder.setModulus(parseBigInteger(RSA_MODULUS));
+        builder.setPublicExponent(parseBigInteger(RSA_PUBLIC_EXPONENT));
+        builder.setPrivateExponent(parseSecret(RSA_PRIVATE_EXPONENT));
+        builder.setPrimeP(parseSecret(RSA_PRIME_P));
+        builder.setPrimeQ(parseSecret(RSA_PRIME_Q));
+        builder.setPrimeExponentP(parseSecret(RSA_PRIME_EXPONENT_P));
+        builder.setPrimeExponentQ(parseSecret(RSA_PRIME_EXPONENT_Q));
+        builder.setCrtCoefficient(parseSecret(RSA_CRT_COEFFICIENT));
+        return builder.build();
+    }
+
+    private static ECPublicJWK publicJWK(ECCurve curve, BigInteger x, BigInteger y) {
+        final ECPublicJWK.Builder builder = new ECPublicJWK.Builder();
+        builder.setKeyType(JWKKeyType.EC);
+        builder.setCurve(curve);
+        builder.setXCoordinate(x);
+        builder.setYCoordinate(y);
+        return builder.build();
+    }
+
+    private static int length(JWEAlgorithm algorithm) {
+        return Integer.parseInt(algorithm.joseName().substring(1, 4)) / 8;
+    }
+
+    private byte[] random(int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private OctetSequenceJWK jwk(JWEAlgorithm algorithm, byte[] key) {
+        final OctetSequenceJWK.Builder builder = new OctetSequenceJWK.Builder();
+        builder.setKeyType(JWKKeyType.OCT);
+        builder.setAlgorithm(algorithm);
+        builder.setKeyValue(new Secret(key));
+        return builder.build();
+    }
+}
@@ -0,0 +1,198 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwe;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.libs.testing.AbstractTest;
+import org.usrz.jose.jwk.JWKKeyType;
+import org.usrz.jose.jwk.oct.OctetSequenceJWK;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
+
+public class JWEPasswordKeyDeriverTest extends AbstractTest {
+
+    private static final JWEAlgorithm ALGORITHM = JWEAlgorithm.PBES2_HS256withA128KW;
+    private static final Bytes SALT_INPUT = new Bytes(new byte[16]);
+
+    @Test
+    public void testConcurrentDerivations()
+    throws Exception {
+        final OctetSequenceJWK password = password();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger derivations = new AtomicInteger();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final ExecutorService callers = Executors.newFixedThreadPool(4);
+        try (JWEPasswordKeyDeriver deriver = new JWEPasswordKeyDeriver(1000, 10000, executor, 16, 1, TimeUnit.MINUTES)) {
+
+            /* All waiting for the same (slow) derivation */
+            final List<Future<SecretKey>> futures = new ArrayList<>();
+            for (int x = 0; x < 4; x ++) {
+                futures.add(callers.submit((Callable<SecretKey>) () ->
+                    deriver.derive(password, ALGORITHM, SALT_INPUT, 1000, true, () -> {
+                        derivations.incrementAndGet();
+                        try {
+                            latch.await();
+                        } catch (InterruptedException exception) {
+                            throw new GeneralSecurityException(exception);
+                        }
+                        return new SecretKeySpec(new byte[16], "AES");
+                    })));
+            }
+
+            final long deadline = System.currentTimeMillis() + 30000;
+            while (deriver.hits() + deriver.misses() < 4) {
+                if (System.currentTimeMillis() > deadline) fail("Derivations not requested in time");
+                Thread.sleep(10);
+            }
+
+            latch.countDown();
+            for (Future<SecretKey> future: futures) assertEquals(future.get().getEncoded().length, 16, "Wrong key length");
+            assertEquals(derivations.get(), 1, "Wrong number of derivations");
+            assertEquals(deriver.misses(), 1L, "Wrong number of misses");
+            assertEquals(deriver.hits(), 3L, "Wrong number of hits");
+            assertEquals(deriver.size(), 1, "Wrong cache size");
+
+            /* Uncached derivations are always run */
+            deriver.derive(password, ALGORITHM, SALT_INPUT, 1000, false, () -> {
+                derivations.incrementAndGet();
+                return new SecretKeySpec(new byte[16], "AES");
+            });
+            assertEquals(derivations.get(), 2, "Uncached derivation not run");
+            assertEquals(deriver.size(), 1, "Uncached key cached");
+        } finally {
+            callers.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejection()
+    throws Exception {
+        final OctetSequenceJWK password = password();
+
+        /* An executor rejecting everything, as a saturated one would */
+        try (JWEPasswordKeyDeriver deriver = new JWEPasswordKeyDeriver(1000, 10000, (runnable) -> {
+                throw new RejectedExecutionException("Saturated");
+            }, 16, 1, TimeUnit.MINUTES)) {
+
+            for (int x = 0; x < 2; x ++) try {
+                deriver.derive(password, ALGORITHM, SALT_INPUT, 1000, true, () -> {
+                    fail("Rejected derivation run");
+                    return null;
+                });
+                fail("Derivation not rejected");
+            } catch (RejectedExecutionException exception) {
+                /* Expected */
+            }
+
+            /* Failures are never cached */
+            assertEquals(deriver.rejections(), 2L, "Wrong number of rejections");
+            assertEquals(deriver.misses(), 2L, "Wrong number of misses");
+            assertEquals(deriver.hits(), 0L, "Wrong number of hits");
+            assertEquals(deriver.size(), 0, "Rejected derivation cached");
+        }
+    }
+
+    @Test
+    public void testMaximumCount()
+    throws Exception {
+        try (JWEPasswordKeyDeriver deriver = new JWEPasswordKeyDeriver(1000, 10000, 1)) {
+            deriver.derive(password(), ALGORITHM, SALT_INPUT, 10001, true, () -> {
+                fail("Derivation run");
+                return null;
+            });
+            fail("Iteration count above maximum accepted");
+        } catch (InvalidKeyException exception) {
+            /* Expected */
+        }
+    }
+
+    @Test
+    public void testExpiration()
+    throws Exception {
+        final OctetSequenceJWK password = password();
+        final AtomicInteger derivations = new AtomicInteger();
+        final JWEPasswordKeyDeriver.Derivation derivation = () -> {
+            derivations.incrementAndGet();
+            return new SecretKeySpec(new byte[16], "AES");
+        };
+
+        try (JWEPasswordKeyDeriver deriver = new JWEPasswordKeyDeriver(1000, 10000, (runnable) -> runnable.run(), 2, 50, TimeUnit.MILLISECONDS)) {
+            deriver.derive(password, ALGORITHM, SALT_INPUT, 1000, true, derivation);
+            deriver.derive(password, ALGORITHM, SALT_INPUT, 1000, true, derivation);
+            assertEquals(derivations.get(), 1, "Key not cached");
+
+            Thread.sleep(100);
+            deriver.derive(password, ALGORITHM, SALT_INPUT, 1000, true, derivation);
+            assertEquals(derivations.get(), 2, "Key not expired");
+
+            /* Oldest evicted past the maximum size */
+            deriver.derive(password, ALGORITHM, SALT_INPUT, 1001, true, derivation);
+            deriver.derive(password, ALGORITHM, SALT_INPUT, 1002, true, derivation);
+            assertEquals(deriver.size(), 2, "Wrong cache size");
+        }
+    }
+
+    @Test
+    public void testDestroy()
+    throws Exception {
+        final OctetSequenceJWK password = password();
+        final OctetSequenceJWK other = password();
+        final AtomicInteger derivations = new AtomicInteger();
+        final JWEPasswordKeyDeriver.Derivation derivation = () -> {
+            derivations.incrementAndGet();
+            return new SecretKeySpec(new byte[16], "AES");
+        };
+
+        try (JWEPasswordKeyDeriver deriver = new JWEPasswordKeyDeriver(1000, 10000, (runnable) -> runnable.run(), 16, 1, TimeUnit.MINUTES)) {
+            deriver.derive(password, ALGORITHM, SALT_INPUT, 1000, true, derivation);
+            deriver.derive(other, ALGORITHM, SALT_INPUT, 1000, true, derivation);
+            assertEquals(deriver.size(), 2, "Wrong cache size");
+
+            /* Only keys derived from the destroyed password are evicted */
+            password.destroy();
+            assertEquals(deriver.size(), 1, "Keys of destroyed password not evicted");
+
+            deriver.derive(other, ALGORITHM, SALT_INPUT, 1000, true, derivation);
+            assertEquals(derivations.get(), 2, "Keys of other password evicted");
+            assertEquals(deriver.hits(), 1L, "Wrong number of hits");
+        }
+    }
+
+    private static OctetSequenceJWK password() {
+        final OctetSequenceJWK.Builder builder = new OctetSequenceJWK.Builder();
+        builder.setKeyType(JWKKeyType.OCT);
+        builder.setKeyValue(new Secret(new byte[] { 1, 2, 3, 4 }));
+        return builder.build();
+    }
+}
@@ -20,9 +20,17 @@ import static java.util.Collections.EMPTY_LIST;
 import java.math.BigInteger;
 import java.net.URL;
 import java.security.cert.X509Certificate;
+import java.security.Key;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
 import java.util.List;
 
+import javax.crypto.SecretKey;
+
 import org.testng.annotations.Test;
 import org.usrz.jose.AbstractTestParse;
 import org.usrz.jose.jwe.JWEAlgorithm;
@@ -33,7 +41,7 @@ import org.usrz.jose.jwk.oct.OctetSequenceJWK;
 import org.usrz.jose.jwk.rsa.RSAPrivateJWK;
 import org.usrz.jose.jwk.rsa.RSAPublicJWK;
 import org.usrz.jose.jws.JWSAlgorithm;
-import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
 
 public class JWKTest extends AbstractTestParse {
 
@@ -120,7 +128,7 @@ public class JWKTest extends AbstractTestParse {
 
         final BigInteger x = parseBigInteger("MKBCTNIcKUSDii11ySs3526iDZ8AiTo7Tu6KPAqv7D4");
         final BigInteger y = parseBigInteger("4Etl6SRW2YiLUrN5vfvVHuhp7x8PxltmWWlbbM4IFyM");
-        final BigInteger d = parseBigInteger("870MB6gfuTJ4HtUnUvYMyJpr5eUZNP4Bk43bVdj3eAE");
+        final Secret d = parseSecret("870MB6gfuTJ4HtUnUvYMyJpr5eUZNP4Bk43bVdj3eAE");
         assertEquals(key0.getCurve(),                         ECCurve.P_256,       "Wrong EC Curve");
         assertEquals(key0.getXCoordinate(),                   x,                   "Wrong X coordinate");
         assertEquals(key0.getYCoordinate(),                   y,                   "Wrong Y coordinate");
@@ -139,12 +147,12 @@ public class JWKTest extends AbstractTestParse {
 
         final BigInteger n = parseBigInteger("0vx7agoebGcQSuuPiLJXZptN9nndrQmbXEps2aiAFbWhM78LhWx4cbbfAAtVT86zwu1RK7aPFFxuhDR1L6tSoc_BJECPebWKRXjBZCiFV4n3oknjhMstn64tZ_2W-5JsGY4Hc5n9yBXArwl93lqt7_RN5w6Cf0h4QyQ5v-65YGjQR0_FDW2QvzqY368QQMicAtaSqzs8KJZgnYb9c7d0zgdAZHzu6qMQvRL5hajrn1n91CbOpbISD08qNLyrdkt-bFTWhAI4vMQFh6WeZu0fM4lFd2NcRwr3XPksINHaQ-G_xBniIqbw0Ls1jF44-csFCur-kEgU8awapJzKnqDKgw");
         final BigInteger e = parseBigInteger("AQAB");
-        final BigInteger dd = parseBigInteger("X4cTteJY_gn4FYPsXB8rdXix5vwsg1FLN5E3EaG6RJoVH-HLLKD9M7dx5oo7GURknchnrRweUkC7hT5fJLM0WbFAKNLWY2vv7B6NqXSzUvxT0_YSfqijwp3RTzlBaCxWp4doFk5N2o8Gy_nHNKroADIkJ46pRUohsXywbReAdYaMwFs9tv8d_cPVY3i07a3t8MN6TNwm0dSawm9v47UiCl3Sk5ZiG7xojPLu4sbg1U2jx4IBTNBznbJSzFHK66jT8bgkuqsk0GjskDJk19Z4qwjwbsnn4j2WBii3RL-Us2lGVkY8fkFzme1z0HbIkfz0Y6mqnOYtqc0X4jfcKoAC8Q");
-        final BigInteger p = parseBigInteger("83i-7IvMGXoMXCskv73TKr8637FiO7Z27zv8oj6pbWUQyLPQBQxtPVnwD20R-60eTDmD2ujnMt5PoqMrm8RfmNhVWDtjjMmCMjOpSXicFHj7XOuVIYQyqVWlWEh6dN36GVZYk93N8Bc9vY41xy8B9RzzOGVQzXvNEvn7O0nVbfs");
-        final BigInteger q = parseBigInteger("3dfOR9cuYq-0S-mkFLzgItgMEfFzB2q3hWehMuG0oCuqnb3vobLyumqjVZQO1dIrdwgTnCdpYzBcOfW5r370AFXjiWft_NGEiovonizhKpo9VVS78TzFgxkIdrecRezsZ-1kYd_s1qDbxtkDEgfAITAG9LUnADun4vIcb6yelxk");
-        final BigInteger dp = parseBigInteger("G4sPXkc6Ya9y8oJW9_ILj4xuppu0lzi_H7VTkS8xj5SdX3coE0oimYwxIi2emTAue0UOa5dpgFGyBJ4c8tQ2VF402XRugKDTP8akYhFo5tAA77Qe_NmtuYZc3C3m3I24G2GvR5sSDxUyAN2zq8Lfn9EUms6rY3Ob8YeiKkTiBj0");
-        final BigInteger dq = parseBigInteger("s9lAH9fggBsoFR8Oac2R_E2gw282rT2kGOAhvIllETE1efrA6huUUvMfBcMpn8lqeW6vzznYY5SSQF7pMdC_agI3nG8Ibp1BUb0JUiraRNqUfLhcQb_d9GF4Dh7e74WbRsobRonujTYN1xCaP6TO61jvWrX-L18txXw494Q_cgk");
-        final BigInteger qi = parseBigInteger("GyM_p6JrXySiz1toFgKbWV-JdI3jQ4ypu9rbMWx3rQJBfmt0FoYzgUIZEVFEcOqwemRN81zoDAaa-Bk0KWNGDjJHZDdDmFhW3AN7lI-puxk_mHZGJ11rxyR8O55XLSe3SPmRfKwZI6yU24ZxvQKFYItdldUKGzO6Ia6zTKhAVRU");
+        final Secret dd = parseSecret("X4cTteJY_gn4FYPsXB8rdXix5vwsg1FLN5E3EaG6RJoVH-HLLKD9M7dx5oo7GURknchnrRweUkC7hT5fJLM0WbFAKNLWY2vv7B6NqXSzUvxT0_YSfqijwp3RTzlBaCxWp4doFk5N2o8Gy_nHNKroADIkJ46pRUohsXywbReAdYaMwFs9tv8d_cPVY3i07a3t8MN6TNwm0dSawm9v47UiCl3Sk5ZiG7xojPLu4sbg1U2jx4IBTNBznbJSzFHK66jT8bgkuqsk0GjskDJk19Z4qwjwbsnn4j2WBii3RL-Us2lGVkY8fkFzme1z0HbIkfz0Y6mqnOYtqc0X4jfcKoAC8Q");
+        final Secret p = parseSecret("83i-7IvMGXoMXCskv73TKr8637FiO7Z27zv8oj6pbWUQyLPQBQxtPVnwD20R-60eTDmD2ujnMt5PoqMrm8RfmNhVWDtjjMmCMjOpSXicFHj7XOuVIYQyqVWlWEh6dN36GVZYk93N8Bc9vY41xy8B9RzzOGVQzXvNEvn7O0nVbfs");
+        final Secret q = parseSecret("3dfOR9cuYq-0S-mkFLzgItgMEfFzB2q3hWehMuG0oCuqnb3vobLyumqjVZQO1dIrdwgTnCdpYzBcOfW5r370AFXjiWft_NGEiovonizhKpo9VVS78TzFgxkIdrecRezsZ-1kYd_s1qDbxtkDEgfAITAG9LUnADun4vIcb6yelxk");
+        final Secret dp = parseSecret("G4sPXkc6Ya9y8oJW9_ILj4xuppu0lzi_H7VTkS8xj5SdX3coE0oimYwxIi2emTAue0UOa5dpgFGyBJ4c8tQ2VF402XRugKDTP8akYhFo5tAA77Qe_NmtuYZc3C3m3I24G2GvR5sSDxUyAN2zq8Lfn9EUms6rY3Ob8YeiKkTiBj0");
+        final Secret dq = parseSecret("s9lAH9fggBsoFR8Oac2R_E2gw282rT2kGOAhvIllETE1efrA6huUUvMfBcMpn8lqeW6vzznYY5SSQF7pMdC_agI3nG8Ibp1BUb0JUiraRNqUfLhcQb_d9GF4Dh7e74WbRsobRonujTYN1xCaP6TO61jvWrX-L18txXw494Q_cgk");
+        final Secret qi = parseSecret("GyM_p6JrXySiz1toFgKbWV-JdI3jQ4ypu9rbMWx3rQJBfmt0FoYzgUIZEVFEcOqwemRN81zoDAaa-Bk0KWNGDjJHZDdDmFhW3AN7lI-puxk_mHZGJ11rxyR8O55XLSe3SPmRfKwZI6yU24ZxvQKFYItdldUKGzO6Ia6zTKhAVRU");
         assertEquals(key1.getModulus(),                       n,                   "Wrong modulus");
         assertEquals(key1.getPublicExponent(),                e,                   "Wrong public exponent");
         assertEquals(key1.getPrivateExponent(),               dd,                  "Wrong private exponent");
@@ -176,7 +184,7 @@ public class JWKTest extends AbstractTestParse {
 
         final OctetSequenceJWK key0 = (OctetSequenceJWK) keys.get(0);
 
-        final Bytes b0 = parseBytes("GawgguFyGrWKav7AX4VKUg");
+        final Secret b0 = parseSecret("GawgguFyGrWKav7AX4VKUg");
         assertEquals(key0.getAlgorithm(),                     JWEAlgorithm.A128KW, "Wrong algorithm");
         assertNull  (key0.getKeyId(),                                              "Wrong key ID");
         assertEquals(key0.getKeyOperations(),                 EMPTY_LIST,          "Wrong key operations");
@@ -189,7 +197,7 @@ public class JWKTest extends AbstractTestParse {
         assertNull  (key0.getX509Url(),                                            "Wrong X509 URL");
 
         final OctetSequenceJWK key1 = (OctetSequenceJWK) keys.get(1);
-        final Bytes b1 = parseBytes("AyM1SysPpbyDfgZld3umj1qzKObwVMkoqQ-EstJQLr_T-1qS0gZH75aKtMN3Yj0iPS4hcgUuTwjAzZr1Z9CAow");
+        final Secret b1 = parseSecret("AyM1SysPpbyDfgZld3umj1qzKObwVMkoqQ-EstJQLr_T-1qS0gZH75aKtMN3Yj0iPS4hcgUuTwjAzZr1Z9CAow");
         assertNull  (key1.getAlgorithm(),                                          "Wrong algorithm");
         assertEquals(key1.getKeyId(),          "HMAC key used in JWS A.1 example", "Wrong key ID");
         assertEquals(key0.getKeyOperations(),                 EMPTY_LIST,          "Wrong key operations");
@@ -200,6 +208,13 @@ public class JWKTest extends AbstractTestParse {
         assertNull  (key1.getX509CertificateThumbprint(),                          "Wrong certificate thumbprint");
         assertNull  (key1.getX509CertificateThumbprintSHA256(),                    "Wrong certificate thumbprint (sha256)");
         assertNull  (key1.getX509Url(),                                            "Wrong X509 URL");
+
+        assertFalse(key0.isDestroyed(), "Key 0 destroyed");
+        key0.destroy();
+        assertTrue(key0.isDestroyed(), "Key 0 not destroyed");
+        assertTrue(key0.getKeyValue().isDestroyed(), "Key 0 value not destroyed");
+        assertNotEquals(key0.getKeyValue(), b0, "Destroyed key value still equal");
+        assertFalse(key1.isDestroyed(), "Key 1 destroyed");
     }
 
     @Test
@@ -260,12 +275,12 @@ public class JWKTest extends AbstractTestParse {
 
         final BigInteger n = parseBigInteger("t6Q8PWSi1dkJj9hTP8hNYFlvadM7DflW9mWepOJhJ66w7nyoK1gPNqFMSQRyO125Gp-TEkodhWr0iujjHVx7BcV0llS4w5ACGgPrcAd6ZcSR0-Iqom-QFcNP8Sjg086MwoqQU_LYywlAGZ21WSdS_PERyGFiNnj3QQlO8Yns5jCtLCRwLHL0Pb1fEv45AuRIuUfVcPySBWYnDyGxvjYGDSM-AqWS9zIQ2ZilgT-GqUmipg0XOC0Cc20rgLe2ymLHjpHciCKVAbY5-L32-lSeZO-Os6U15_aXrk9Gw8cPUaX1_I8sLGuSiVdt3C_Fn2PZ3Z8i744FPFGGcG1qs2Wz-Q");
         final BigInteger e = parseBigInteger("AQAB");
-        final BigInteger d = parseBigInteger("GRtbIQmhOZtyszfgKdg4u_N-R_mZGU_9k7JQ_jn1DnfTuMdSNprTeaSTyWfSNkuaAwnOEbIQVy1IQbWVV25NY3ybc_IhUJtfri7bAXYEReWaCl3hdlPKXy9UvqPYGR0kIXTQRqns-dVJ7jahlI7LyckrpTmrM8dWBo4_PMaenNnPiQgO0xnuToxutRZJfJvG4Ox4ka3GORQd9CsCZ2vsUDmsXOfUENOyMqADC6p1M3h33tsurY15k9qMSpG9OX_IJAXmxzAh_tWiZOwk2K4yxH9tS3Lq1yX8C1EWmeRDkK2ahecG85-oLKQt5VEpWHKmjOi_gJSdSgqcN96X52esAQ");
-        final BigInteger p = parseBigInteger("2rnSOV4hKSN8sS4CgcQHFbs08XboFDqKum3sc4h3GRxrTmQdl1ZK9uw-PIHfQP0FkxXVrx-WE-ZEbrqivH_2iCLUS7wAl6XvARt1KkIaUxPPSYB9yk31s0Q8UK96E3_OrADAYtAJs-M3JxCLfNgqh56HDnETTQhH3rCT5T3yJws");
-        final BigInteger q = parseBigInteger("1u_RiFDP7LBYh3N4GXLT9OpSKYP0uQZyiaZwBtOCBNJgQxaj10RWjsZu0c6Iedis4S7B_coSKB0Kj9PaPaBzg-IySRvvcQuPamQu66riMhjVtG6TlV8CLCYKrYl52ziqK0E_ym2QnkwsUX7eYTB7LbAHRK9GqocDE5B0f808I4s");
-        final BigInteger dp = parseBigInteger("KkMTWqBUefVwZ2_Dbj1pPQqyHSHjj90L5x_MOzqYAJMcLMZtbUtwKqvVDq3tbEo3ZIcohbDtt6SbfmWzggabpQxNxuBpoOOf_a_HgMXK_lhqigI4y_kqS1wY52IwjUn5rgRrJ-yYo1h41KR-vz2pYhEAeYrhttWtxVqLCRViD6c");
-        final BigInteger dq = parseBigInteger("AvfS0-gRxvn0bwJoMSnFxYcK1WnuEjQFluMGfwGitQBWtfZ1Er7t1xDkbN9GQTB9yqpDoYaN06H7CFtrkxhJIBQaj6nkF5KKS3TQtQ5qCzkOkmxIe3KRbBymXxkb5qwUpX5ELD5xFc6FeiafWYY63TmmEAu_lRFCOJ3xDea-ots");
-        final BigInteger qi = parseBigInteger("lSQi-w9CpyUReMErP1RsBLk7wNtOvs5EQpPqmuMvqW57NBUczScEoPwmUqqabu9V0-Py4dQ57_bapoKRu1R90bvuFnU63SHWEFglZQvJDMeAvmj4sm-Fp0oYu_neotgQ0hzbI5gry7ajdYy9-2lNx_76aBZoOUu9HCJ-UsfSOI8");
+        final Secret d = parseSecret("GRtbIQmhOZtyszfgKdg4u_N-R_mZGU_9k7JQ_jn1DnfTuMdSNprTeaSTyWfSNkuaAwnOEbIQVy1IQbWVV25NY3ybc_IhUJtfri7bAXYEReWaCl3hdlPKXy9UvqPYGR0kIXTQRqns-dVJ7jahlI7LyckrpTmrM8dWBo4_PMaenNnPiQgO0xnuToxutRZJfJvG4Ox4ka3GORQd9CsCZ2vsUDmsXOfUENOyMqADC6p1M3h33tsurY15k9qMSpG9OX_IJAXmxzAh_tWiZOwk2K4yxH9tS3Lq1yX8C1EWmeRDkK2ahecG85-oLKQt5VEpWHKmjOi_gJSdSgqcN96X52esAQ");
+        final Secret p = parseSecret("2rnSOV4hKSN8sS4CgcQHFbs08XboFDqKum3sc4h3GRxrTmQdl1ZK9uw-PIHfQP0FkxXVrx-WE-ZEbrqivH_2iCLUS7wAl6XvARt1KkIaUxPPSYB9yk31s0Q8UK96E3_OrADAYtAJs-M3JxCLfNgqh56HDnETTQhH3rCT5T3yJws");
+        final Secret q = parseSecret("1u_RiFDP7LBYh3N4GXLT9OpSKYP0uQZyiaZwBtOCBNJgQxaj10RWjsZu0c6Iedis4S7B_coSKB0Kj9PaPaBzg-IySRvvcQuPamQu66riMhjVtG6TlV8CLCYKrYl52ziqK0E_ym2QnkwsUX7eYTB7LbAHRK9GqocDE5B0f808I4s");
+        final Secret dp = parseSecret("KkMTWqBUefVwZ2_Dbj1pPQqyHSHjj90L5x_MOzqYAJMcLMZtbUtwKqvVDq3tbEo3ZIcohbDtt6SbfmWzggabpQxNxuBpoOOf_a_HgMXK_lhqigI4y_kqS1wY52IwjUn5rgRrJ-yYo1h41KR-vz2pYhEAeYrhttWtxVqLCRViD6c");
+        final Secret dq = parseSecret("AvfS0-gRxvn0bwJoMSnFxYcK1WnuEjQFluMGfwGitQBWtfZ1Er7t1xDkbN9GQTB9yqpDoYaN06H7CFtrkxhJIBQaj6nkF5KKS3TQtQ5qCzkOkmxIe3KRbBymXxkb5qwUpX5ELD5xFc6FeiafWYY63TmmEAu_lRFCOJ3xDea-ots");
+        final Secret qi = parseSecret("lSQi-w9CpyUReMErP1RsBLk7wNtOvs5EQpPqmuMvqW57NBUczScEoPwmUqqabu9V0-Py4dQ57_bapoKRu1R90bvuFnU63SHWEFglZQvJDMeAvmj4sm-Fp0oYu_neotgQ0hzbI5gry7ajdYy9-2lNx_76aBZoOUu9HCJ-UsfSOI8");
         assertEquals(rsa.getModulus(),                       n,                   "Wrong modulus");
         assertEquals(rsa.getPublicExponent(),                e,                   "Wrong public exponent");
         assertEquals(rsa.getPrivateExponent(),               d,                   "Wrong private exponent");
@@ -305,4 +320,121 @@ public class JWKTest extends AbstractTestParse {
         assertEquals(ec.getXCoordinate(),                   x,                   "Wrong X coordinate");
         assertEquals(ec.getYCoordinate(),                   y,                   "Wrong Y coordinate");
     }
+
+    @Test
+    public void testToKey()
+    throws Exception {
+        final List<JWK<?>> publicKeys = mapper.readValue(getResource("jwk-appendix-a1-public-keys.json"), JWKSet.class).getKeys();
+        final List<JWK<?>> privateKeys = mapper.readValue(getResource("jwk-appendix-a2-private-keys.json"), JWKSet.class).getKeys();
+        final List<JWK<?>> secretKeys = mapper.readValue(getResource("jwk-appendix-a3-symmetric-keys.json"), JWKSet.class).getKeys();
+
+        final ECPublicJWK ecPublic = (ECPublicJWK) publicKeys.get(0);
+        final RSAPublicJWK rsaPublic = (RSAPublicJWK) publicKeys.get(1);
+        final ECPrivateJWK ecPrivate = (ECPrivateJWK) privateKeys.get(0);
+        final RSAPrivateJWK rsaPrivate = (RSAPrivateJWK) privateKeys.get(1);
+        final OctetSequenceJWK secret = (OctetSequenceJWK) secretKeys.get(0);
+
+        final ECPublicKey ecPublicKey = ecPublic.toKey();
+        assertEquals(ecPublicKey.getW().getAffineX(), ecPublic.getXCoordinate(), "Wrong X coordinate");
+        assertEquals(ecPublicKey.getW().getAffineY(), ecPublic.getYCoordinate(), "Wrong Y coordinate");
+
+        final RSAPublicKey rsaPublicKey = rsaPublic.toKey();
+        assertEquals(rsaPublicKey.getModulus(), rsaPublic.getModulus(), "Wrong modulus");
+        assertEquals(rsaPublicKey.getPublicExponent(), rsaPublic.getPublicExponent(), "Wrong public exponent");
+
+        final ECPrivateKey ecPrivateKey = ecPrivate.toKey();
+        assertEquals(ecPrivateKey.getS(), ecPrivate.getEccPrivateKey().toBigInteger(), "Wrong private key");
+
+        final RSAPrivateKey rsaPrivateKey = rsaPrivate.toKey();
+        assertEquals(rsaPrivateKey.getModulus(), rsaPrivate.getModulus(), "Wrong modulus");
+        assertEquals(rsaPrivateKey.getPrivateExponent(), rsaPrivate.getPrivateExponent().toBigInteger(), "Wrong private exponent");
+        assertTrue(rsaPrivateKey instanceof RSAPrivateCrtKey, "RSA private key without CRT parameters");
+        assertEquals(((RSAPrivateCrtKey) rsaPrivateKey).getCrtCoefficient(), rsaPrivate.getCrtCoefficient().toBigInteger(), "Wrong CRT coefficient");
+
+        final SecretKey secretKey = secret.toKey();
+        assertEquals(secretKey.getAlgorithm(), "AES", "Wrong secret key algorithm");
+        assertEquals(secretKey.getEncoded(), secret.getKeyValue().getBytes(), "Wrong secret key value");
+
+        /* Same instances, same keys, and only hits */
+        final long hits = JWKKeyCache.hits();
+        final long misses = JWKKeyCache.misses();
+        final JWK<?>[] jwks = { ecPublic, rsaPublic, ecPrivate, rsaPrivate, secret };
+        final Key[] keys = { ecPublicKey, rsaPublicKey, ecPrivateKey, rsaPrivateKey, secretKey };
+        for (int x = 0; x < jwks.length; x ++) {
+            assertSame(jwks[x].toKey(), keys[x], "Key " + x + " not cached");
+        }
+        assertEquals(JWKKeyCache.hits() - hits, jwks.length, "Wrong number of cache hits");
+        assertEquals(JWKKeyCache.misses() - misses, 0, "Wrong number of cache misses");
+
+        /* Equal, but different instance: converted again */
+        final ECPublicJWK other = (ECPublicJWK) mapper.readValue(getResource("jwk-appendix-a1-public-keys.json"), JWKSet.class).getKeys().get(0);
+        assertNotSame(other.toKey(), ecPublicKey, "Key cached by value");
+        assertEquals(JWKKeyCache.misses() - misses, 1, "Wrong number of cache misses");
+
+        /* Destroying evicts */
+        secret.destroy();
+        try {
+            secret.toKey();
+            fail("Destroyed key converted");
+        } catch (IllegalStateException exception) {
+            /* Secret destroyed, all good */
+        }
+    }
+
+    @Test
+    public void testRSAPrivateCRT()
+    throws Exception {
+        final RSAPrivateJWK jwk = (RSAPrivateJWK) mapper.readValue(getResource("jwk-appendix-a2-private-keys.json"), JWKSet.class).getKeys().get(1);
+
+        /* No CRT parameters at all is fine */
+        final RSAPrivateJWK.Builder builder = new RSAPrivateJWK.Builder();
+        builder.setModulus(jwk.getModulus());
+        builder.setPublicExponent(jwk.getPublicExponent());
+        builder.setPrivateExponent(jwk.getPrivateExponent());
+        final RSAPrivateKey key = builder.build().toKey();
+        assertFalse(key instanceof RSAPrivateCrtKey, "RSA private key with CRT parameters");
+        assertEquals(key.getPrivateExponent(), jwk.getPrivateExponent().toBigInteger(), "Wrong private exponent");
+
+        /* Some of them are not */
+        builder.setPrimeP(jwk.getPrimeP());
+        builder.setPrimeQ(jwk.getPrimeQ());
+        try {
+            builder.build();
+            fail("Incomplete CRT parameters accepted");
+        } catch (IllegalArgumentException exception) {
+            /* Incomplete, all good */
+        }
+
+        /* All of them, but not matching */
+        builder.setPrimeExponentP(jwk.getPrimeExponentP());
+        builder.setPrimeExponentQ(jwk.getPrimeExponentQ());
+        builder.setCrtCoefficient(jwk.getPrimeExponentP());
+        try {
+            builder.build();
+            fail("Inconsistent CRT parameters accepted");
+        } catch (IllegalArgumentException exception) {
+            /* Inconsistent, all good */
+        }
+
+        builder.setCrtCoefficient(jwk.getCrtCoefficient());
+        assertTrue(builder.build().toKey() instanceof RSAPrivateCrtKey, "RSA private key without CRT parameters");
+    }
+
+    @Test
+    public void testECPublicNotOnCurve()
+    throws Exception {
+        final ECPublicJWK jwk = (ECPublicJWK) mapper.readValue(getResource("jwk-section-3-example.json"), JWK.class);
+        assertNotNull(jwk.toKey(), "Null key");
+
+        final ECPublicJWK.Builder builder = new ECPublicJWK.Builder();
+        builder.setCurve(jwk.getCurve());
+        builder.setXCoordinate(jwk.getXCoordinate());
+        builder.setYCoordinate(jwk.getYCoordinate().add(BigInteger.ONE));
+        try {
+            builder.build().toKey();
+            fail("Point not on curve converted");
+        } catch (InvalidKeySpecException exception) {
+            /* Not on curve, all good */
+        }
+    }
 }
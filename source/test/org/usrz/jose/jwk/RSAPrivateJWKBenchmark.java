@@ -0,0 +1,66 @@
+package org.usrz.jose.jwk;
+
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+import org.usrz.jose.jwk.rsa.RSAPrivateJWK;
+import org.usrz.jose.jws.JWSAlgorithm;
+import org.usrz.jose.jws.JWSEngine;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
+
+public class RSAPrivateJWKBenchmark extends AbstractBenchmark {
+
+    private final Bytes input;
+
+    public RSAPrivateJWKBenchmark() {
+        final byte[] data = new byte[256];
+        new Random().nextBytes(data);
+        input = new Bytes(data);
+    }
+
+    @Test
+    public void benchmark2048()
+    throws Exception {
+        benchmark(2048, 100);
+    }
+
+    @Test
+    public void benchmark4096()
+    throws Exception {
+        benchmark(4096, 20);
+    }
+
+    /* ====================================================================== */
+
+    private void benchmark(int size, int iterations)
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(size);
+        final RSAPrivateCrtKey key = (RSAPrivateCrtKey) generator.generateKeyPair().getPrivate();
+
+        final RSAPrivateJWK.Builder builder = new RSAPrivateJWK.Builder();
+        builder.setModulus(key.getModulus());
+        builder.setPublicExponent(key.getPublicExponent());
+        builder.setPrivateExponent(Secret.valueOf(key.getPrivateExponent()));
+        final RSAPrivateKey plain = builder.build().toKey();
+
+        builder.setPrimeP(Secret.valueOf(key.getPrimeP()));
+        builder.setPrimeQ(Secret.valueOf(key.getPrimeQ()));
+        builder.setPrimeExponentP(Secret.valueOf(key.getPrimeExponentP()));
+        builder.setPrimeExponentQ(Secret.valueOf(key.getPrimeExponentQ()));
+        builder.setCrtCoefficient(Secret.valueOf(key.getCrtCoefficient()));
+        final RSAPrivateKey crt = builder.build().toKey();
+
+        for (JWSAlgorithm algorithm: new JWSAlgorithm[] { JWSAlgorithm.RS256, JWSAlgorithm.PS256 }) {
+            final JWSEngine engine = JWSEngine.getInstance(algorithm);
+            final String name = algorithm.joseName() + " sign " + size;
+            benchmark(name + " (n, d)", iterations, () -> engine.sign(plain, input));
+            benchmark(name + " (CRT)",  iterations, () -> engine.sign(crt, input));
+        }
+    }
+}
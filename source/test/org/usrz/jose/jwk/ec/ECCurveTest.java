@@ -0,0 +1,82 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jwk.ec;
+
+import java.math.BigInteger;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+import org.usrz.libs.testing.AbstractTest;
+
+public class ECCurveTest extends AbstractTest {
+
+    private static final ECCurve[] CURVES = { ECCurve.P_256, ECCurve.P_384, ECCurve.P_521 };
+
+    @Test
+    public void testOnCurve()
+    throws Exception {
+        for (ECCurve curve: CURVES) {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(curve.getECParameterSpec());
+            final ECPublicKey key = (ECPublicKey) generator.generateKeyPair().getPublic();
+
+            final BigInteger x = key.getW().getAffineX();
+            final BigInteger y = key.getW().getAffineY();
+            final BigInteger p = ((ECFieldFp) curve.getECParameterSpec().getCurve().getField()).getP();
+
+            assertTrue(curve.isOnCurve(x, y), "Point not on curve " + curve);
+            assertTrue(curve.isOnCurve(x, p.subtract(y)), "Negated point not on curve " + curve);
+
+            assertFalse(curve.isOnCurve(x, y.add(BigInteger.ONE)), "Wrong point on curve " + curve);
+            assertFalse(curve.isOnCurve(x, y.add(p)), "Point out of field on curve " + curve);
+            assertFalse(curve.isOnCurve(x.negate(), y), "Negative coordinate on curve " + curve);
+            assertFalse(curve.isOnCurve(BigInteger.ZERO, BigInteger.ZERO), "Zero point on curve " + curve);
+            assertFalse(curve.isOnCurve(x, null), "Null coordinate on curve " + curve);
+
+            /* Also not on any other curve */
+            for (ECCurve other: CURVES) if (other != curve) {
+                assertFalse(other.isOnCurve(x, y), "Point on " + curve + " also on " + other);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentParameters()
+    throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<ECParameterSpec>> tasks = new ArrayList<>();
+            for (int x = 0; x < 32; x ++) tasks.add(() -> ECCurve.P_384.getECParameterSpec());
+
+            final ECParameterSpec expected = ECCurve.P_384.getECParameterSpec();
+            for (Future<ECParameterSpec> future: executor.invokeAll(tasks)) {
+                assertSame(future.get(), expected, "Different parameter specifications");
+            }
+            assertEquals(expected.getCurve().getField().getFieldSize(), ECCurve.P_384.getFieldSize(), "Wrong field size");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
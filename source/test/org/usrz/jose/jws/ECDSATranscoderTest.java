@@ -0,0 +1,150 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.libs.testing.AbstractTest;
+
+public class ECDSATranscoderTest extends AbstractTest {
+
+    private static final ECCurve[] CURVES = { ECCurve.P_256, ECCurve.P_384, ECCurve.P_521 };
+
+    private final Random random = new Random();
+
+    @Test
+    public void testLengths() {
+        assertEquals(ECDSATranscoder.getInstance(ECCurve.P_256).getConcatLength(),  64, "Wrong P-256 length");
+        assertEquals(ECDSATranscoder.getInstance(ECCurve.P_384).getConcatLength(),  96, "Wrong P-384 length");
+        assertEquals(ECDSATranscoder.getInstance(ECCurve.P_521).getConcatLength(), 132, "Wrong P-521 length");
+    }
+
+    @Test
+    public void testRoundTrip()
+    throws Exception {
+        for (ECCurve curve: CURVES) {
+            final ECDSATranscoder transcoder = ECDSATranscoder.getInstance(curve);
+            final byte[] der = new byte[transcoder.getMaximumDERLength() + 10];
+            final byte[] concat = new byte[transcoder.getConcatLength() + 10];
+
+            for (int x = 0; x < 1000; x ++) {
+                final byte[] signature = new byte[transcoder.getConcatLength()];
+                random.nextBytes(signature);
+
+                /* Exercise leading zeroes and high bits on both integers */
+                final int half = signature.length / 2;
+                if ((x & 1) != 0) Arrays.fill(signature, 0, x % half, (byte) 0);
+                if ((x & 2) != 0) Arrays.fill(signature, half, half + x % half, (byte) 0);
+                if ((x & 4) != 0) signature[0] |= 0x80;
+                if ((x & 8) != 0) signature[half] |= 0x80;
+
+                final int length = transcoder.toDER(new Bytes(signature), der, 5);
+                assertEquals(Arrays.copyOfRange(der, 5, 5 + length), reference(signature), "Wrong DER for " + curve);
+
+                transcoder.toConcat(der, 5, length, concat, 3);
+                assertEquals(Arrays.copyOfRange(concat, 3, 3 + signature.length), signature, "Wrong R||S for " + curve);
+            }
+        }
+    }
+
+    @Test
+    public void testJCA()
+    throws Exception {
+        final String[] algorithms = { "SHA256withECDSA", "SHA384withECDSA", "SHA512withECDSA" };
+        final String[] names = { "secp256r1", "secp384r1", "secp521r1" };
+        final byte[] data = new byte[100];
+        random.nextBytes(data);
+
+        for (int x = 0; x < CURVES.length; x ++) {
+            final ECDSATranscoder transcoder = ECDSATranscoder.getInstance(CURVES[x]);
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(names[x]));
+            final KeyPair pair = generator.generateKeyPair();
+
+            final Signature signer = Signature.getInstance(algorithms[x]);
+            signer.initSign(pair.getPrivate());
+            signer.update(data);
+            final byte[] der = signer.sign();
+
+            final byte[] concat = new byte[transcoder.getConcatLength()];
+            transcoder.toConcat(der, 0, der.length, concat, 0);
+
+            final byte[] buffer = new byte[transcoder.getMaximumDERLength()];
+            final int length = transcoder.toDER(new Bytes(concat), buffer, 0);
+
+            final Signature verifier = Signature.getInstance(algorithms[x]);
+            verifier.initVerify(pair.getPublic());
+            verifier.update(data);
+            assertTrue(verifier.verify(buffer, 0, length), "Transcoded signature does not verify for " + CURVES[x]);
+        }
+    }
+
+    @Test(expectedExceptions=SignatureException.class)
+    public void testMalformed()
+    throws Exception {
+        final ECDSATranscoder transcoder = ECDSATranscoder.getInstance(ECCurve.P_256);
+        final byte[] der = reference(new byte[64]);
+        der[2] = 0x04; // not an INTEGER
+        transcoder.toConcat(der, 0, der.length, new byte[64], 0);
+    }
+
+    @Test(expectedExceptions=SignatureException.class)
+    public void testTooLarge()
+    throws Exception {
+        final byte[] signature = new byte[96];
+        random.nextBytes(signature);
+        final byte[] der = reference(signature);
+        ECDSATranscoder.getInstance(ECCurve.P_256).toConcat(der, 0, der.length, new byte[64], 0);
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testWrongLength() {
+        ECDSATranscoder.getInstance(ECCurve.P_256).toDER(new Bytes(new byte[63]), new byte[100], 0);
+    }
+
+    /* ====================================================================== */
+
+    /* The simple (allocating) approach, through BigInteger */
+    private static byte[] reference(byte[] signature) {
+        final int half = signature.length / 2;
+        final byte[] r = new BigInteger(1, Arrays.copyOfRange(signature, 0, half)).toByteArray();
+        final byte[] s = new BigInteger(1, Arrays.copyOfRange(signature, half, signature.length)).toByteArray();
+
+        final int length = 2 + r.length + 2 + s.length;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(0x30);
+        if (length > 0x7F) output.write(0x81);
+        output.write(length);
+        output.write(0x02);
+        output.write(r.length);
+        output.write(r, 0, r.length);
+        output.write(0x02);
+        output.write(s.length);
+        output.write(s, 0, s.length);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+package org.usrz.jose.jws;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+import org.usrz.jose.jackson.JOSEObjectMapper;
+import org.usrz.jose.jwk.JWK;
+import org.usrz.jose.jwk.JWKKeyType;
+import org.usrz.jose.jwk.JWKSet;
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.jwk.ec.ECPublicJWK;
+import org.usrz.jose.shared.Bytes;
+
+public class JWSBatchVerifierBenchmark extends AbstractBenchmark {
+
+    private static final int KEYS = 4;
+    private static final int TOKENS = 10000;
+
+    private final JWSCompactSerialization serialization = new JWSCompactSerialization(JOSEObjectMapper.MAPPER);
+
+    @Test
+    public void benchmarkBatch()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        final JWSEngine engine = JWSEngine.getInstance(JWSAlgorithm.ES256);
+
+        final JWKSet.Builder keys = new JWKSet.Builder();
+        final KeyPair[] pairs = new KeyPair[KEYS];
+        for (int x = 0; x < KEYS; x ++) {
+            pairs[x] = generator.generateKeyPair();
+            final ECPublicKey key = (ECPublicKey) pairs[x].getPublic();
+            final ECPublicJWK.Builder builder = new ECPublicJWK.Builder();
+            builder.setKeyType(JWKKeyType.EC);
+            builder.setKeyId("key-" + x);
+            builder.setCurve(ECCurve.P_256);
+            builder.setXCoordinate(key.getW().getAffineX());
+            builder.setYCoordinate(key.getW().getAffineY());
+            keys.addKey(builder.build());
+        }
+        final JWKSet keySet = keys.build();
+
+        final List<String> tokens = new ArrayList<>();
+        for (int x = 0; x < TOKENS; x ++) {
+            final JWSHeader.Builder builder = new JWSHeader.Builder();
+            builder.setAlgorithm(JWSAlgorithm.ES256);
+            builder.setKeyId("key-" + (x % KEYS));
+            final JWSHeader header = builder.build();
+            final Bytes payload = new Bytes(("{\"event\":" + x + "}").getBytes(StandardCharsets.UTF_8));
+
+            final JWSSignature unsigned = new JWSSignature.Builder().setHeader(header).build();
+            final Bytes signingInput = serialization.signingInput(new JWS.Builder().setPayload(payload).addSignature(unsigned).build());
+            final Bytes signature = engine.sign(pairs[x % KEYS].getPrivate(), signingInput);
+            tokens.add(serialization.write(new JWS.Builder()
+                    .setPayload(payload)
+                    .addSignature(new JWSSignature.Builder().setHeader(header).setSignature(signature).build())
+                    .build()));
+        }
+
+        /* One token at a time, looking up each key (converted once, then cached) */
+        benchmarkBatch("Sequential loop (tokens)", 2, TOKENS, () -> {
+            int verified = 0;
+            for (String token: tokens) {
+                final JWS jws = serialization.parse(token);
+                for (JWK<?> key: keySet.getKeys()) {
+                    if (key.getKeyId().equals(jws.getHeader().getKeyId())) {
+                        if (engine.verify(key.toKey(), jws.getSigningInput(), jws.getSignature())) verified ++;
+                        break;
+                    }
+                }
+            }
+            return verified;
+        });
+
+        for (int parallelism: new int[] { 1, 4, 16 }) {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                final JWSBatchVerifier verifier = new JWSBatchVerifier(pool);
+                benchmarkBatch("Batch verifier (tokens, parallelism " + parallelism + ")", 2, TOKENS,
+                        () -> verifier.verify(tokens, keySet).cardinality());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+}
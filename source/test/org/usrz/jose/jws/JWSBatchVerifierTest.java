@@ -0,0 +1,147 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.usrz.jose.jackson.JOSEObjectMapper;
+import org.usrz.jose.jwk.JWKKeyType;
+import org.usrz.jose.jwk.JWKSet;
+import org.usrz.jose.jwk.ec.ECCurve;
+import org.usrz.jose.jwk.ec.ECPublicJWK;
+import org.usrz.jose.jwk.oct.OctetSequenceJWK;
+import org.usrz.jose.shared.Bytes;
+import org.usrz.jose.shared.Secret;
+import org.usrz.libs.testing.AbstractTest;
+
+public class JWSBatchVerifierTest extends AbstractTest {
+
+    private final JWSCompactSerialization serialization = new JWSCompactSerialization(JOSEObjectMapper.MAPPER);
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final JWSBatchVerifier verifier = new JWSBatchVerifier(pool);
+    private final Random random = new Random();
+
+    private final KeyPair pair;
+    private final Key secret;
+    private final JWKSet keys;
+
+    public JWSBatchVerifierTest()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        pair = generator.generateKeyPair();
+        final ECPublicKey publicKey = (ECPublicKey) pair.getPublic();
+
+        final byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        final Secret value = new Secret(bytes);
+        secret = value.toSecretKey("HmacSHA256");
+
+        final ECPublicJWK.Builder ec = new ECPublicJWK.Builder();
+        ec.setKeyType(JWKKeyType.EC);
+        ec.setKeyId("ec");
+        ec.setCurve(ECCurve.P_256);
+        ec.setXCoordinate(publicKey.getW().getAffineX());
+        ec.setYCoordinate(publicKey.getW().getAffineY());
+
+        final OctetSequenceJWK.Builder oct = new OctetSequenceJWK.Builder();
+        oct.setKeyType(JWKKeyType.OCT);
+        oct.setKeyId("hmac");
+        oct.setKeyValue(value);
+
+        keys = new JWKSet.Builder().addKey(ec.build()).addKey(oct.build()).build();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testBatch()
+    throws Exception {
+        final List<String> tokens = new ArrayList<>();
+        final BitSet expected = new BitSet();
+
+        for (int x = 0; x < 1000; x ++) {
+            final String payload = "Event number " + x;
+            switch (x % 8) {
+                case 0: tokens.add(token(JWSAlgorithm.ES256, "ec", pair.getPrivate(), payload)); expected.set(x); break;
+                case 1: tokens.add(token(JWSAlgorithm.HS256, "hmac", secret, payload)); expected.set(x); break;
+                case 2: tokens.add(token(JWSAlgorithm.ES256, null, pair.getPrivate(), payload)); expected.set(x); break;
+                case 3: tokens.add(tamper(token(JWSAlgorithm.HS256, "hmac", secret, payload))); break;
+                case 4: tokens.add(token(JWSAlgorithm.HS256, "unknown", secret, payload)); break;
+                case 5: tokens.add(token(JWSAlgorithm.HS256, "ec", secret, payload)); break;
+                case 6: tokens.add("this.is.garbage"); break;
+                default: tokens.add(token(JWSAlgorithm.NONE, "hmac", null, payload)); break;
+            }
+        }
+
+        assertEquals(verifier.verify(tokens, keys), expected, "Wrong results from list");
+        assertEquals(verifier.verify(tokens.stream(), keys), expected, "Wrong results from stream");
+    }
+
+    @Test
+    public void testEmpty()
+    throws Exception {
+        assertTrue(verifier.verify(new ArrayList<String>(), keys).isEmpty(), "Verified nothing");
+    }
+
+    /* ====================================================================== */
+
+    private String token(JWSAlgorithm algorithm, String keyId, Key key, String payload)
+    throws Exception {
+        final JWSHeader.Builder builder = new JWSHeader.Builder();
+        builder.setAlgorithm(algorithm);
+        builder.setKeyId(keyId);
+        final JWSHeader header = builder.build();
+        final Bytes bytes = new Bytes(payload.getBytes(StandardCharsets.UTF_8));
+
+        final JWS unsigned = new JWS.Builder()
+                .setPayload(bytes)
+                .addSignature(new JWSSignature.Builder().setHeader(header).build())
+                .build();
+
+        final Bytes signature = key == null ? new Bytes(new byte[0]) :
+                JWSEngine.getInstance(algorithm).sign(key, serialization.signingInput(unsigned));
+
+        return serialization.write(new JWS.Builder()
+                .setPayload(bytes)
+                .addSignature(new JWSSignature.Builder().setHeader(header).setSignature(signature).build())
+                .build());
+    }
+
+    private String tamper(String token) {
+        final char[] characters = token.toCharArray();
+        final int index = characters.length - 5;
+        characters[index] = characters[index] == 'A' ? 'B' : 'A';
+        return new String(characters);
+    }
+}
@@ -0,0 +1,145 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import static org.usrz.jose.jws.JWSAlgorithm.HS256;
+import static org.usrz.jose.shared.JOSEMediaTypes.APPLICATION_JWT_TYPE;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractTestParse;
+import org.usrz.jose.shared.Bytes;
+
+public class JWSCompactSerializationTest extends AbstractTestParse {
+
+    /* From RFC 7515, appendix A.1 */
+    private static final String HEADER = "eyJ0eXAiOiJKV1QiLA0KICJhbGciOiJIUzI1NiJ9";
+    private static final String PAYLOAD = "eyJpc3MiOiJqb2UiLA0KICJleHAiOjEzMDA4MTkzODAsDQogImh0dHA6Ly9leGFtcGxlLmNvbS9pc19yb290Ijp0cnVlfQ";
+    private static final String SIGNATURE = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+    private static final String KEY = "AyM1SysPpbyDfgZld3umj1qzKObwVMkoqQ-EstJQLr_T-1qS0gZH75aKtMN3Yj0iPS4hcgUuTwjAzZr1Z9CAow";
+    private static final String COMPACT = HEADER + "." + PAYLOAD + "." + SIGNATURE;
+
+    private final JWSCompactSerialization serialization = new JWSCompactSerialization(mapper);
+
+    @Test
+    public void testParseCharSequence()
+    throws Exception {
+        validate(serialization.parse(new StringBuilder(COMPACT)));
+    }
+
+    @Test
+    public void testParseBytes()
+    throws Exception {
+        final byte[] ascii = ("xx" + COMPACT + "yy").getBytes(StandardCharsets.US_ASCII);
+        validate(serialization.parse(ascii, 2, COMPACT.length()));
+    }
+
+    @Test
+    public void testWrite()
+    throws Exception {
+        final JWS jws = serialization.parse(COMPACT);
+
+        assertEquals(serialization.write(jws), COMPACT, "Wrong string");
+        assertEquals(serialization.write(jws, new StringBuilder("x")).toString(), "x" + COMPACT, "Wrong appended string");
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        serialization.write(jws, output);
+        assertEquals(new String(output.toByteArray(), StandardCharsets.US_ASCII), COMPACT, "Wrong stream");
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(COMPACT.length());
+        serialization.write(jws, buffer);
+        assertFalse(buffer.hasRemaining(), "Buffer not filled");
+        final byte[] written = new byte[COMPACT.length()];
+        ((ByteBuffer) buffer.flip()).get(written);
+        assertEquals(new String(written, StandardCharsets.US_ASCII), COMPACT, "Wrong buffer");
+    }
+
+    @Test
+    public void testWriteBuilt()
+    throws Exception {
+        final JWS parsed = serialization.parse(COMPACT);
+
+        final JWS jws = new JWS.Builder()
+                .setPayload(parsed.getPayload())
+                .addSignature(new JWSSignature.Builder()
+                        .setHeader(parsed.getHeader())
+                        .setSignature(parsed.getSignature())
+                        .build())
+                .build();
+
+        assertNull(jws.getSigningInput(), "Built JWS has a signing input");
+        final JWS reparsed = serialization.parse(serialization.write(jws));
+        assertEquals(reparsed.getHeader(), parsed.getHeader(), "Wrong header");
+        assertEquals(reparsed.getPayload(), parsed.getPayload(), "Wrong payload");
+        assertEquals(reparsed.getSignature(), parsed.getSignature(), "Wrong signature");
+        assertEquals(reparsed.getSigningInput(), serialization.signingInput(jws), "Wrong signing input");
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testWriteBuiltWithDeprecatedSetters()
+    throws Exception {
+        final JWS parsed = serialization.parse(COMPACT);
+
+        final JWS jws = new JWS.Builder()
+                .setSignature(parsed.getSignature())
+                .setPayload(parsed.getPayload())
+                .setHeader(parsed.getHeader())
+                .build();
+
+        assertEquals(jws.getSignatures().size(), 1, "Wrong number of signatures");
+        assertEquals(jws.getHeader(), parsed.getHeader(), "Wrong header");
+        assertEquals(jws.getSignature(), parsed.getSignature(), "Wrong signature");
+        assertEquals(serialization.parse(serialization.write(jws)).getSignature(), parsed.getSignature(), "Wrong reparsed signature");
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testTooFewParts() {
+        serialization.parse(HEADER + "." + PAYLOAD);
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testTooManyParts() {
+        serialization.parse(COMPACT + ".");
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testInvalidCharacters() {
+        serialization.parse(HEADER + "." + PAYLOAD + "." + SIGNATURE.replace('-', '+'));
+    }
+
+    private void validate(JWS jws)
+    throws Exception {
+        assertEquals(jws.getHeader().getAlgorithm(), HS256, "Wrong algorithm");
+        assertEquals(jws.getHeader().getMediaType(), APPLICATION_JWT_TYPE, "Wrong type");
+        assertEquals(jws.getPayload(), parseBytes(PAYLOAD), "Wrong payload");
+        assertEquals(jws.getSignature(), parseBytes(SIGNATURE), "Wrong signature");
+
+        final Bytes signingInput = jws.getSigningInput();
+        assertEquals(signingInput, new Bytes((HEADER + "." + PAYLOAD).getBytes(StandardCharsets.US_ASCII)), "Wrong signing input");
+
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(base64.decode(KEY), "HmacSHA256"));
+        signingInput.update(mac);
+        assertEquals(new Bytes(mac.doFinal()), jws.getSignature(), "Signature does not verify");
+    }
+}
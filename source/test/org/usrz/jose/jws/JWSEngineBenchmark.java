@@ -0,0 +1,92 @@
+package org.usrz.jose.jws;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+import org.usrz.jose.shared.Bytes;
+
+public class JWSEngineBenchmark extends AbstractBenchmark {
+
+    private static final int[] THREADS = { 1, 8, 32 };
+
+    private final Bytes input;
+
+    public JWSEngineBenchmark() {
+        final byte[] data = new byte[256];
+        new Random().nextBytes(data);
+        input = new Bytes(data);
+    }
+
+    @Test
+    public void benchmarkHMAC()
+    throws Exception {
+        final byte[] secret = new byte[32];
+        new Random().nextBytes(secret);
+        final SecretKeySpec key = new SecretKeySpec(secret, "HmacSHA256");
+
+        benchmark(JWSAlgorithm.HS256, key, key, 20000);
+    }
+
+    @Test
+    public void benchmarkRSA()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        final KeyPair pair = generator.generateKeyPair();
+
+        benchmark(JWSAlgorithm.RS256, pair.getPrivate(), pair.getPublic(), 100);
+        benchmark(JWSAlgorithm.PS256, pair.getPrivate(), pair.getPublic(), 100);
+    }
+
+    @Test
+    public void benchmarkECDSA()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        final KeyPair pair = generator.generateKeyPair();
+
+        benchmark(JWSAlgorithm.ES256, pair.getPrivate(), pair.getPublic(), 200);
+    }
+
+    /* ====================================================================== */
+
+    private void benchmark(JWSAlgorithm algorithm, Key signing, Key verifying, int iterations)
+    throws Exception {
+        final JWSEngine engine = JWSEngine.getInstance(algorithm);
+        final Bytes signature = engine.sign(signing, input);
+        final String name = algorithm.joseName();
+
+        for (int threads: THREADS) {
+            benchmark(name + " sign",   threads, iterations, () -> engine.sign(signing, input));
+            benchmark(name + " verify", threads, iterations, () -> engine.verify(verifying, input, signature));
+
+            /* The naive approach: provider lookup on every single call */
+            if (algorithm == JWSAlgorithm.HS256) {
+                benchmark(name + " verify (getInstance)", threads, iterations, () -> {
+                    final Mac mac = Mac.getInstance(algorithm.getStandardName());
+                    mac.init(verifying);
+                    input.update(mac);
+                    return MessageDigest.isEqual(mac.doFinal(), signature.getBytes());
+                });
+            } else if (algorithm == JWSAlgorithm.RS256) {
+                benchmark(name + " verify (getInstance)", threads, iterations, () -> {
+                    final Signature instance = Signature.getInstance(algorithm.getStandardName());
+                    instance.initVerify((PublicKey) verifying);
+                    input.update(instance);
+                    return instance.verify(signature.getBytes());
+                });
+            }
+        }
+    }
+}
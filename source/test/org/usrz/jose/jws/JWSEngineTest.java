@@ -0,0 +1,160 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.security.AlgorithmParameters;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Random;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractTestParse;
+import org.usrz.jose.shared.Bytes;
+
+public class JWSEngineTest extends AbstractTestParse {
+
+    /* From RFC 7515, appendix A.1 and A.3 */
+    private static final String PAYLOAD = "eyJpc3MiOiJqb2UiLA0KICJleHAiOjEzMDA4MTkzODAsDQogImh0dHA6Ly9leGFtcGxlLmNvbS9pc19yb290Ijp0cnVlfQ";
+    private static final String HS256_INPUT = "eyJ0eXAiOiJKV1QiLA0KICJhbGciOiJIUzI1NiJ9." + PAYLOAD;
+    private static final String HS256_SIGNATURE = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+    private static final String HS256_KEY = "AyM1SysPpbyDfgZld3umj1qzKObwVMkoqQ-EstJQLr_T-1qS0gZH75aKtMN3Yj0iPS4hcgUuTwjAzZr1Z9CAow";
+    private static final String ES256_INPUT = "eyJhbGciOiJFUzI1NiJ9." + PAYLOAD;
+    private static final String ES256_SIGNATURE = "DtEhU3ljbEg8L38VWAfUAqOyKAM6-Xx-F4GawxaepmXFCgfTjDxw5djxLa8ISlSApmWQxfKTUJqPP3-Kg6NU1Q";
+    private static final String ES256_X = "f83OJ3D2xF1Bg8vub9tLe1gHMzV76e8Tus9uPHvRVEU";
+    private static final String ES256_Y = "x_FEzRu9m36HLN_tue659LNpXW6pCyStikYjKIWI5a0";
+
+    private final Random random = new Random();
+
+    @Test
+    public void testHS256()
+    throws Exception {
+        final JWSEngine engine = JWSEngine.getInstance(JWSAlgorithm.HS256);
+        final SecretKeySpec key = new SecretKeySpec(base64.decode(HS256_KEY), "HmacSHA256");
+        final Bytes input = ascii(HS256_INPUT);
+
+        assertEquals(engine.sign(key, input), parseBytes(HS256_SIGNATURE), "Wrong signature");
+        assertTrue(engine.verify(key, input, parseBytes(HS256_SIGNATURE)), "Signature does not verify");
+        assertFalse(engine.verify(key, ascii(HS256_INPUT + "x"), parseBytes(HS256_SIGNATURE)), "Wrong input verifies");
+    }
+
+    @Test
+    public void testES256()
+    throws Exception {
+        final AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec("secp256r1"));
+        final ECParameterSpec spec = parameters.getParameterSpec(ECParameterSpec.class);
+        final ECPoint point = new ECPoint(parseBigInteger(ES256_X), parseBigInteger(ES256_Y));
+        final PublicKey key = KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, spec));
+
+        final JWSEngine engine = JWSEngine.getInstance(JWSAlgorithm.ES256);
+        assertTrue(engine.verify(key, ascii(ES256_INPUT), parseBytes(ES256_SIGNATURE)), "Signature does not verify");
+        assertFalse(engine.verify(key, ascii(ES256_INPUT + "x"), parseBytes(ES256_SIGNATURE)), "Wrong input verifies");
+        assertFalse(engine.verify(key, ascii(ES256_INPUT), parseBytes(ES256_SIGNATURE).slice(0, 63)), "Short signature verifies");
+    }
+
+    @Test
+    public void testHMAC()
+    throws Exception {
+        final byte[] secret = new byte[64];
+        random.nextBytes(secret);
+        roundTrip(JWSAlgorithm.HS256, new SecretKeySpec(secret, "HmacSHA256"), null, 32);
+        roundTrip(JWSAlgorithm.HS384, new SecretKeySpec(secret, "HmacSHA384"), null, 48);
+        roundTrip(JWSAlgorithm.HS512, new SecretKeySpec(secret, "HmacSHA512"), null, 64);
+    }
+
+    @Test
+    public void testRSA()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        final KeyPair pair = generator.generateKeyPair();
+
+        for (JWSAlgorithm algorithm: new JWSAlgorithm[] { JWSAlgorithm.RS256, JWSAlgorithm.RS384, JWSAlgorithm.RS512,
+                                                          JWSAlgorithm.PS256, JWSAlgorithm.PS384, JWSAlgorithm.PS512 }) {
+            roundTrip(algorithm, pair.getPrivate(), pair.getPublic(), 256);
+        }
+    }
+
+    @Test
+    public void testECDSA()
+    throws Exception {
+        roundTrip(JWSAlgorithm.ES256, ecKeyPair("secp256r1"),  64);
+        roundTrip(JWSAlgorithm.ES384, ecKeyPair("secp384r1"),  96);
+        roundTrip(JWSAlgorithm.ES512, ecKeyPair("secp521r1"), 132);
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testNone() {
+        JWSEngine.getInstance(JWSAlgorithm.NONE);
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testPublicKeySigning()
+    throws Exception {
+        final KeyPair pair = ecKeyPair("secp256r1");
+        JWSEngine.getInstance(JWSAlgorithm.ES256).sign(pair.getPublic(), ascii(ES256_INPUT));
+    }
+
+    /* ====================================================================== */
+
+    private void roundTrip(JWSAlgorithm algorithm, KeyPair pair, int length)
+    throws Exception {
+        roundTrip(algorithm, pair.getPrivate(), pair.getPublic(), length);
+    }
+
+    private void roundTrip(JWSAlgorithm algorithm, Key signing, Key verifying, int length)
+    throws Exception {
+        if (verifying == null) verifying = signing;
+        final JWSEngine engine = JWSEngine.getInstance(algorithm);
+
+        /* Many times, to exercise pooled instances and ECDSA leading zeroes */
+        for (int x = 0; x < 50; x ++) {
+            final byte[] data = new byte[x * 7];
+            random.nextBytes(data);
+            final Bytes input = new Bytes(data);
+
+            final Bytes signature = engine.sign(signing, input);
+            assertEquals(signature.length(), length, "Wrong signature length for " + algorithm);
+            assertTrue(engine.verify(verifying, input, signature), "Signature does not verify for " + algorithm);
+
+            final byte[] tampered = signature.getBytes();
+            tampered[x % tampered.length] ^= 0x01;
+            assertFalse(engine.verify(verifying, input, new Bytes(tampered)), "Tampered signature verifies for " + algorithm);
+        }
+    }
+
+    private static KeyPair ecKeyPair(String curve)
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curve));
+        return generator.generateKeyPair();
+    }
+
+    private static Bytes ascii(String string) {
+        return new Bytes(string.getBytes(US_ASCII));
+    }
+}
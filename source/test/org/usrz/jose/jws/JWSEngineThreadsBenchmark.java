@@ -0,0 +1,147 @@
+package org.usrz.jose.jws;
+
+import java.lang.management.ManagementFactory;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+import org.usrz.jose.shared.Bytes;
+
+/**
+ * Compare our keyed pools with {@link ThreadLocal} engines when every single
+ * verification runs on its own short-lived thread (as it would with one
+ * thread per request).
+ */
+public class JWSEngineThreadsBenchmark extends AbstractBenchmark {
+
+    private static final int TASKS = 100000;
+    private static final int CONCURRENCY = 64;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final byte[] input;
+
+    public JWSEngineThreadsBenchmark() {
+        input = new byte[256];
+        new Random().nextBytes(input);
+    }
+
+    @Test
+    public void benchmarkHS256()
+    throws Exception {
+        final byte[] secret = new byte[32];
+        new Random().nextBytes(secret);
+        final Key key = new SecretKeySpec(secret, "HmacSHA256");
+
+        final ThreadLocal<Mac> local = ThreadLocal.withInitial(() -> {
+            try {
+                return Mac.getInstance("HmacSHA256");
+            } catch (Exception exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+
+        final JWSEngine engine = JWSEngine.getInstance(JWSAlgorithm.HS256);
+        final Bytes signature = engine.sign(key, new Bytes(input));
+
+        run("HS256 verify (thread local)", () -> {
+            final Mac mac = local.get();
+            mac.init(key);
+            mac.update(input);
+            return signature.constantTimeEquals(mac.doFinal(), 0, signature.length());
+        });
+        run("HS256 verify (keyed pool)", () -> engine.verify(key, new Bytes(input), signature));
+    }
+
+    @Test
+    public void benchmarkRS256()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        benchmark(JWSAlgorithm.RS256, generator.generateKeyPair(), "SHA256withRSA");
+    }
+
+    @Test
+    public void benchmarkES256()
+    throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        benchmark(JWSAlgorithm.ES256, generator.generateKeyPair(), "SHA256withECDSA");
+    }
+
+    /* ====================================================================== */
+
+    private void benchmark(JWSAlgorithm algorithm, KeyPair pair, String standardName)
+    throws Exception {
+        final PublicKey key = pair.getPublic();
+
+        /* Plain JCA signature (DER for ECDSA) for the thread local approach */
+        final Signature signer = Signature.getInstance(standardName);
+        signer.initSign(pair.getPrivate());
+        signer.update(input);
+        final byte[] jca = signer.sign();
+
+        final ThreadLocal<Signature> local = ThreadLocal.withInitial(() -> {
+            try {
+                return Signature.getInstance(standardName);
+            } catch (Exception exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+
+        final JWSEngine engine = JWSEngine.getInstance(algorithm);
+        final Bytes signature = engine.sign(pair.getPrivate(), new Bytes(input));
+
+        run(algorithm.joseName() + " verify (thread local)", () -> {
+            final Signature verifier = local.get();
+            verifier.initVerify(key);
+            verifier.update(input);
+            return verifier.verify(jca);
+        });
+        run(algorithm.joseName() + " verify (keyed pool)", () -> engine.verify(key, new Bytes(input), signature));
+    }
+
+    /* Every task on a new thread, at most CONCURRENCY of them at once */
+    private void run(String name, Task task)
+    throws Exception {
+        final Semaphore semaphore = new Semaphore(CONCURRENCY);
+        final LongAdder allocated = new LongAdder();
+        final LongAdder failed = new LongAdder();
+
+        final long started = System.nanoTime();
+        for (int x = 0; x < TASKS; x ++) {
+            semaphore.acquire();
+            new Thread(() -> {
+                try {
+                    final long id = Thread.currentThread().getId();
+                    final long before = threads.getThreadAllocatedBytes(id);
+                    if (!Boolean.TRUE.equals(task.run())) failed.increment();
+                    allocated.add(threads.getThreadAllocatedBytes(id) - before);
+                } catch (Exception exception) {
+                    failed.increment();
+                } finally {
+                    semaphore.release();
+                }
+            }).start();
+        }
+        semaphore.acquire(CONCURRENCY);
+        final long elapsed = System.nanoTime() - started;
+
+        if (failed.sum() > 0) throw new IllegalStateException(failed.sum() + " verifications failed for " + name);
+
+        System.err.printf("BENCHMARK %-50s %,15.0f ops/sec %,10d bytes/op%n", name,
+                          TASKS * 1000000000.0 / elapsed, allocated.sum() / TASKS);
+    }
+}
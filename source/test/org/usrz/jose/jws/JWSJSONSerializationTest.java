@@ -0,0 +1,162 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import static org.usrz.jose.jws.JWSAlgorithm.HS256;
+import static org.usrz.jose.jws.JWSSignaturesVerifier.Policy.ALL_OF;
+import static org.usrz.jose.jws.JWSSignaturesVerifier.Policy.ANY_OF;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractTestParse;
+import org.usrz.jose.shared.Bytes;
+
+public class JWSJSONSerializationTest extends AbstractTestParse {
+
+    /* From RFC 7515, appendix A.1 */
+    private static final String HEADER = "eyJ0eXAiOiJKV1QiLA0KICJhbGciOiJIUzI1NiJ9";
+    private static final String PAYLOAD = "eyJpc3MiOiJqb2UiLA0KICJleHAiOjEzMDA4MTkzODAsDQogImh0dHA6Ly9leGFtcGxlLmNvbS9pc19yb290Ijp0cnVlfQ";
+    private static final String SIGNATURE = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+    private static final String KEY = "AyM1SysPpbyDfgZld3umj1qzKObwVMkoqQ-EstJQLr_T-1qS0gZH75aKtMN3Yj0iPS4hcgUuTwjAzZr1Z9CAow";
+
+    private static final String FLATTENED = "{\"payload\":\"" + PAYLOAD + "\","
+                                          + "\"protected\":\"" + HEADER + "\","
+                                          + "\"header\":{\"kid\":\"good\"},"
+                                          + "\"signature\":\"" + SIGNATURE + "\"}";
+
+    private static final String GENERAL = "{\"payload\":\"" + PAYLOAD + "\","
+                                        + "\"signatures\":["
+                                        + "{\"protected\":\"" + HEADER + "\",\"header\":{\"kid\":\"bad\"},\"signature\":\"AAAA\"},"
+                                        + "{\"protected\":\"" + HEADER + "\",\"header\":{\"kid\":\"good\"},\"signature\":\"" + SIGNATURE + "\"}]}";
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final JWSSignaturesVerifier verifier = new JWSSignaturesVerifier(pool, mapper);
+
+    @AfterClass
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFlattened()
+    throws Exception {
+        final JWS jws = mapper.readValue(FLATTENED, JWS.class);
+
+        assertEquals(jws.getSignatures().size(), 1, "Wrong number of signatures");
+        assertEquals(jws.getHeader().getAlgorithm(), HS256, "Wrong algorithm");
+        assertEquals(jws.getSignatures().get(0).getUnprotectedHeader().getKeyId(), "good", "Wrong key id");
+        assertEquals(jws.getPayload(), parseBytes(PAYLOAD), "Wrong payload");
+        assertEquals(jws.getSignature(), parseBytes(SIGNATURE), "Wrong signature");
+
+        assertEquals(mapper.readTree(mapper.writeValueAsString(jws)), mapper.readTree(FLATTENED), "Wrong serialization");
+        assertTrue(verifier.verify(jws, this::verify, ALL_OF), "Signature does not verify");
+    }
+
+    @Test
+    public void testGeneral()
+    throws Exception {
+        final JWS jws = mapper.readValue(GENERAL, JWS.class);
+
+        assertEquals(jws.getSignatures().size(), 2, "Wrong number of signatures");
+        assertEquals(jws.getSignatures().get(0).getUnprotectedHeader().getKeyId(), "bad", "Wrong key id");
+        assertEquals(jws.getSignatures().get(1).getUnprotectedHeader().getKeyId(), "good", "Wrong key id");
+        assertEquals(jws.getSignatures().get(1).getHeader().getAlgorithm(), HS256, "Wrong algorithm");
+
+        assertEquals(mapper.readTree(mapper.writeValueAsString(jws)), mapper.readTree(GENERAL), "Wrong serialization");
+        assertTrue(verifier.verify(jws, this::verify, ANY_OF), "No signature verifies");
+        assertFalse(verifier.verify(jws, this::verify, ALL_OF), "All signatures verify");
+    }
+
+    @Test
+    public void testBuilt()
+    throws Exception {
+        final JWS parsed = mapper.readValue(GENERAL, JWS.class);
+
+        /* Re-encode headers and payload from scratch */
+        final JWS.Builder builder = new JWS.Builder().setPayload(parsed.getPayload());
+        for (JWSSignature signature: parsed.getSignatures()) {
+            builder.addSignature(new JWSSignature.Builder()
+                    .setHeader(signature.getHeader())
+                    .setUnprotectedHeader(signature.getUnprotectedHeader())
+                    .setSignature(signature.getSignature())
+                    .build());
+        }
+
+        final JWS jws = mapper.readValue(mapper.writeValueAsString(builder.build()), JWS.class);
+        assertEquals(jws.getPayload(), parsed.getPayload(), "Wrong payload");
+        assertEquals(jws.getSignatures().get(1).getHeader(), parsed.getSignatures().get(1).getHeader(), "Wrong header");
+        assertEquals(jws.getSignatures().get(1).getSignature(), parsed.getSignatures().get(1).getSignature(), "Wrong signature");
+    }
+
+    @Test
+    public void testCompactToJSON()
+    throws Exception {
+        final JWS jws = new JWSCompactSerialization(mapper).parse(HEADER + "." + PAYLOAD + "." + SIGNATURE);
+        final String json = mapper.writeValueAsString(jws);
+        assertEquals(mapper.readTree(json), mapper.readTree("{\"payload\":\"" + PAYLOAD + "\","
+                                                          + "\"protected\":\"" + HEADER + "\","
+                                                          + "\"signature\":\"" + SIGNATURE + "\"}"), "Wrong serialization");
+    }
+
+    @Test
+    public void testExceptionsReject()
+    throws Exception {
+        final JWS jws = mapper.readValue(GENERAL, JWS.class);
+        assertFalse(verifier.verify(jws, (signature, signingInput) -> {
+            throw new IllegalStateException("Boom");
+        }, ANY_OF), "Exceptions accepted");
+    }
+
+    @Test
+    public void testEarlyCancellation()
+    throws Exception {
+        final JWS.Builder builder = new JWS.Builder().setPayload(parseBytes(PAYLOAD));
+        final JWSSignature bad = mapper.readValue(GENERAL, JWS.class).getSignatures().get(0);
+        for (int x = 0; x < 1000; x ++) builder.addSignature(bad);
+        final JWS jws = builder.build();
+
+        final AtomicInteger verified = new AtomicInteger();
+        assertFalse(verifier.verify(jws, (signature, signingInput) -> {
+            verified.incrementAndGet();
+            return verify(signature, signingInput);
+        }, ALL_OF), "Bad signatures verify");
+        assertTrue(verified.get() < 1000, "Verified all signatures");
+    }
+
+    @Test
+    public void testNoSignatures()
+    throws Exception {
+        final JWS jws = new JWS.Builder().setPayload(parseBytes(PAYLOAD)).build();
+        assertFalse(verifier.verify(jws, this::verify, ANY_OF), "No signatures verify ANY_OF");
+        assertFalse(verifier.verify(jws, this::verify, ALL_OF), "No signatures verify ALL_OF");
+    }
+
+    private boolean verify(JWSSignature signature, Bytes signingInput)
+    throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(base64.decode(KEY), "HmacSHA256"));
+        signingInput.update(mac);
+        return MessageDigest.isEqual(mac.doFinal(), signature.getSignature().getBytes());
+    }
+}
@@ -0,0 +1,39 @@
+package org.usrz.jose.jws;
+
+import java.security.Key;
+import java.util.Random;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+import org.usrz.jose.shared.Bytes;
+
+public class JWSKeyedMacBenchmark extends AbstractBenchmark {
+
+    private static final int ITERATIONS = 200000;
+
+    @Test
+    public void benchmarkVerify()
+    throws Exception {
+        final Random random = new Random();
+        final byte[] secret = new byte[64];
+        random.nextBytes(secret);
+
+        for (JWSAlgorithm algorithm: new JWSAlgorithm[] { JWSAlgorithm.HS256, JWSAlgorithm.HS384, JWSAlgorithm.HS512 }) {
+            final Key key = new SecretKeySpec(secret, algorithm.getStandardName());
+            final JWSEngine engine = JWSEngine.getInstance(algorithm);
+            final JWSKeyedMac mac = new JWSKeyedMac(algorithm, key);
+
+            /* A typical token, a couple of hundred bytes */
+            final byte[] data = new byte[200];
+            random.nextBytes(data);
+            final Bytes input = new Bytes(data);
+            final Bytes signature = mac.sign(input);
+
+            final String name = algorithm.joseName() + " verify";
+            benchmark(name + " (Mac.init)",   ITERATIONS, () -> engine.verify(key, input, signature));
+            benchmark(name + " (pre-keyed)",  ITERATIONS, () -> mac.verify(input, signature));
+        }
+    }
+}
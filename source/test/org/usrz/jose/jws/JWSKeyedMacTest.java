@@ -0,0 +1,119 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractTestParse;
+import org.usrz.jose.shared.Bytes;
+
+public class JWSKeyedMacTest extends AbstractTestParse {
+
+    /* From RFC 7515, appendix A.1 */
+    private static final String HEADER = "eyJ0eXAiOiJKV1QiLA0KICJhbGciOiJIUzI1NiJ9";
+    private static final String PAYLOAD = "eyJpc3MiOiJqb2UiLA0KICJleHAiOjEzMDA4MTkzODAsDQogImh0dHA6Ly9leGFtcGxlLmNvbS9pc19yb290Ijp0cnVlfQ";
+    private static final String SIGNATURE = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+    private static final String KEY = "AyM1SysPpbyDfgZld3umj1qzKObwVMkoqQ-EstJQLr_T-1qS0gZH75aKtMN3Yj0iPS4hcgUuTwjAzZr1Z9CAow";
+
+    @Test
+    public void testWindows()
+    throws Exception {
+        final JWSKeyedMac mac = new JWSKeyedMac(JWSAlgorithm.HS256, parseSecret(KEY));
+
+        /* Windows over a larger buffer, as in a parsed compact JWS */
+        final byte[] compact = ("xx" + HEADER + "." + PAYLOAD + "." + SIGNATURE).getBytes(US_ASCII);
+        final Bytes signingInput = new Bytes(compact, 2, HEADER.length() + 1 + PAYLOAD.length());
+        final byte[] signature = parseBytes(SIGNATURE).getBytes();
+        final byte[] padded = new byte[signature.length + 10];
+        System.arraycopy(signature, 0, padded, 5, signature.length);
+
+        assertTrue(mac.verify(signingInput, new Bytes(padded, 5, signature.length)), "Signature does not verify");
+        assertFalse(mac.verify(signingInput, new Bytes(padded, 4, signature.length)), "Wrong signature verifies");
+        assertFalse(mac.verify(signingInput.slice(1, signingInput.length() - 1), new Bytes(signature)), "Wrong input verifies");
+        assertEquals(mac.sign(signingInput), new Bytes(signature), "Wrong signature");
+    }
+
+    @Test
+    public void testEngineVerifier()
+    throws Exception {
+        final Key key = new SecretKeySpec(base64.decode(KEY), "HmacSHA256");
+        final JWSVerifier verifier = JWSEngine.getInstance(JWSAlgorithm.HS256).verifier(key);
+        assertTrue(verifier instanceof JWSKeyedMac, "Engine did not return a keyed MAC");
+
+        final JWS jws = new JWSCompactSerialization(mapper).parse(HEADER + "." + PAYLOAD + "." + SIGNATURE);
+        assertTrue(verifier.verify(jws.getSignatures().get(0), jws.getSigningInput()), "Signature does not verify");
+    }
+
+    @Test
+    public void testAlgorithms()
+    throws Exception {
+        final byte[] secret = new byte[64];
+        final byte[] data = new byte[1000];
+        new Random().nextBytes(secret);
+        new Random().nextBytes(data);
+
+        for (JWSAlgorithm algorithm: new JWSAlgorithm[] { JWSAlgorithm.HS256, JWSAlgorithm.HS384, JWSAlgorithm.HS512 }) {
+            final Key key = new SecretKeySpec(secret, algorithm.getStandardName());
+            final JWSKeyedMac mac = new JWSKeyedMac(algorithm, key);
+            final Bytes input = new Bytes(data);
+
+            final Bytes signature = JWSEngine.getInstance(algorithm).sign(key, input);
+            assertEquals(mac.sign(input), signature, "Wrong signature for " + algorithm);
+            assertTrue(mac.verify(input, signature), "Signature does not verify for " + algorithm);
+        }
+    }
+
+    @Test
+    public void testConcurrency()
+    throws Exception {
+        final JWSKeyedMac mac = new JWSKeyedMac(JWSAlgorithm.HS256, parseSecret(KEY));
+        final Bytes signingInput = new Bytes((HEADER + "." + PAYLOAD).getBytes(US_ASCII));
+        final Bytes signature = parseBytes(SIGNATURE);
+        final Bytes wrong = mac.sign(new Bytes(new byte[10]));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (int x = 0; x < 64; x ++) futures.add(executor.submit(() -> {
+                for (int y = 0; y < 1000; y ++) {
+                    if (!mac.verify(signingInput, signature)) return false;
+                    if (mac.verify(signingInput, wrong)) return false;
+                }
+                return true;
+            }));
+            for (Future<Boolean> future: futures) assertTrue(future.get(), "Concurrent verification failed");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testNotHMAC()
+    throws Exception {
+        new JWSKeyedMac(JWSAlgorithm.RS256, parseSecret(KEY));
+    }
+}
@@ -0,0 +1,255 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.jws;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractTestParse;
+import org.usrz.jose.shared.Bytes;
+
+public class JWSSigningInputTest extends AbstractTestParse {
+
+    /* From RFC 7797, section 4 */
+    private static final String KEY = "AyM1SysPpbyDfgZld3umj1qzKObwVMkoqQ-EstJQLr_T-1qS0gZH75aKtMN3Yj0iPS4hcgUuTwjAzZr1Z9CAow";
+    private static final String PAYLOAD = "$.02";
+    private static final String ENCODED = "eyJhbGciOiJIUzI1NiJ9.JC4wMg.5mvfOroL-g7HyqJoozehmsaqmvTYGEq5jTI1gVvoEoQ";
+    private static final String UNENCODED_HEADER = "eyJhbGciOiJIUzI1NiIsImI2NCI6ZmFsc2UsImNyaXQiOlsiYjY0Il19";
+    private static final String UNENCODED_SIGNATURE = "A5dxf2s96_n5FLueVuW1Z_vh161FwXZC4YLPff6dmDY";
+    private static final String UNENCODED = UNENCODED_HEADER + ".." + UNENCODED_SIGNATURE;
+
+    private final JWSCompactSerialization serialization = new JWSCompactSerialization(mapper);
+    private final JWSSigningInput signingInput = new JWSSigningInput(mapper);
+
+    @Test
+    public void testEncoded()
+    throws Exception {
+        final JWS jws = serialization.parse(ENCODED);
+        assertTrue(jws.isPayloadEncoded(), "Payload not encoded");
+        assertEquals(jws.getPayload(), new Bytes(PAYLOAD.getBytes(US_ASCII)), "Wrong payload");
+
+        final Mac mac = mac();
+        signingInput.update(jws.getSignatures().get(0), stream(PAYLOAD), mac);
+        assertTrue(JWSSigningInput.verify(jws.getSignatures().get(0), mac), "Signature does not verify");
+    }
+
+    @Test
+    public void testUnencodedDetached()
+    throws Exception {
+        final JWS jws = serialization.parse(UNENCODED);
+        assertFalse(jws.isPayloadEncoded(), "Payload encoded");
+        assertEquals(jws.getPayload().length(), 0, "Detached payload not empty");
+
+        final JWSSignature signature = jws.getSignatures().get(0);
+
+        final Mac stream = mac();
+        signingInput.update(signature, stream(PAYLOAD), stream);
+        assertTrue(JWSSigningInput.verify(signature, stream), "Stream signature does not verify");
+
+        final Mac channel = mac();
+        signingInput.update(signature, Channels.newChannel(stream(PAYLOAD)), channel);
+        assertTrue(JWSSigningInput.verify(signature, channel), "Channel signature does not verify");
+
+        final Mac wrong = mac();
+        signingInput.update(signature, stream("$.03"), wrong);
+        assertFalse(JWSSigningInput.verify(signature, wrong), "Wrong payload verifies");
+    }
+
+    @Test
+    public void testUnencodedJSON()
+    throws Exception {
+        final String json = "{\"protected\":\"" + UNENCODED_HEADER + "\","
+                          + "\"payload\":\"" + PAYLOAD + "\","
+                          + "\"signature\":\"" + UNENCODED_SIGNATURE + "\"}";
+
+        final JWS jws = mapper.readValue(json, JWS.class);
+        assertFalse(jws.isPayloadEncoded(), "Payload encoded");
+        assertEquals(jws.getPayload(), new Bytes(PAYLOAD.getBytes(UTF_8)), "Wrong payload");
+        /* Compare trees as a whole, TestNG would iterate (in order) over their values */
+        assertTrue(mapper.readTree(mapper.writeValueAsString(jws)).equals(mapper.readTree(json)), "Wrong serialization");
+
+        final Mac mac = mac();
+        serialization.signingInput(jws.getSignatures().get(0), jws).update(mac);
+        assertTrue(JWSSigningInput.verify(jws.getSignatures().get(0), mac), "Signature does not verify");
+    }
+
+    @Test
+    public void testDetachedJSON()
+    throws Exception {
+        final JWS jws = serialization.parse(UNENCODED);
+        final JWS detached = new JWS.Builder().addSignature(jws.getSignatures().get(0)).build();
+        assertEquals(mapper.readTree(mapper.writeValueAsString(detached)),
+                     mapper.readTree("{\"protected\":\"" + UNENCODED_HEADER + "\",\"signature\":\"" + UNENCODED_SIGNATURE + "\"}"),
+                     "Wrong serialization");
+        assertEquals(serialization.write(detached), UNENCODED, "Wrong compact serialization");
+    }
+
+    @Test
+    public void testBuiltUnencoded()
+    throws Exception {
+        final JWSHeader.Builder builder = new JWSHeader.Builder();
+        builder.setAlgorithm(JWSAlgorithm.HS256);
+        builder.setPayloadEncoded(false);
+        final JWSHeader header = builder.build();
+        assertFalse(header.isPayloadEncoded(), "Payload encoded");
+        assertEquals(header.getCriticalExtensions(), singletonList(JWSHeader.BASE64_PAYLOAD), "Wrong critical extensions");
+
+        /* Listed only once, however many times it's set */
+        builder.setPayloadEncoded(false);
+        assertEquals(builder.build().getCriticalExtensions(), singletonList(JWSHeader.BASE64_PAYLOAD), "Duplicate critical extensions");
+
+        /* Switched back, without touching what we built already */
+        builder.setPayloadEncoded(true);
+        final JWSHeader encoded = builder.build();
+        assertTrue(encoded.isPayloadEncoded(), "Payload not encoded");
+        assertTrue(encoded.getCriticalExtensions().isEmpty(), "Critical extensions not removed");
+        assertFalse(encoded.getAdditionalHeaders().containsKey(JWSHeader.BASE64_PAYLOAD), "Header not removed");
+        assertEquals(header.getCriticalExtensions(), singletonList(JWSHeader.BASE64_PAYLOAD), "Built header changed");
+        assertFalse(header.isPayloadEncoded(), "Built header changed");
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testUnencodedNotCritical()
+    throws Exception {
+        /* {"alg":"HS256","b64":false} */
+        serialization.parse("eyJhbGciOiJIUzI1NiIsImI2NCI6ZmFsc2V9.." + UNENCODED_SIGNATURE);
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testUnencodedWithPeriod()
+    throws Exception {
+        final JWS jws = serialization.parse(UNENCODED);
+        serialization.write(new JWS.Builder()
+                .setPayload(new Bytes(PAYLOAD.getBytes(US_ASCII)))
+                .addSignature(jws.getSignatures().get(0))
+                .build());
+    }
+
+    @Test
+    public void testLargePayloads()
+    throws Exception {
+        final byte[] payload = new byte[1048576 + 12345];
+        new Random().nextBytes(payload);
+
+        final File file = File.createTempFile("payload-", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(payload);
+        }
+
+        for (boolean encoded: new boolean[] { true, false }) {
+            final JWSHeader.Builder builder = new JWSHeader.Builder();
+            builder.setAlgorithm(JWSAlgorithm.HS256);
+            builder.setPayloadEncoded(encoded);
+
+            final JWSSignature signature = new JWSSignature.Builder()
+                    .setHeader(builder.build())
+                    .build();
+            final JWS jws = new JWS.Builder()
+                    .setPayload(new Bytes(payload))
+                    .addSignature(signature)
+                    .build();
+
+            final Mac expected = mac();
+            serialization.signingInput(signature, jws).update(expected);
+            final Bytes bytes = new Bytes(expected.doFinal());
+
+            final Mac stream = mac();
+            signingInput.update(signature, new ByteArrayInputStream(payload), stream);
+            assertEquals(new Bytes(stream.doFinal()), bytes, "Wrong stream MAC, encoded=" + encoded);
+
+            final Mac channel = mac();
+            signingInput.update(signature, Channels.newChannel(new ByteArrayInputStream(payload)), channel);
+            assertEquals(new Bytes(channel.doFinal()), bytes, "Wrong channel MAC, encoded=" + encoded);
+
+            final Mac mapped = mac();
+            try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                signingInput.update(signature, fileChannel, mapped);
+                assertEquals(fileChannel.position(), (long) payload.length, "Wrong channel position");
+            }
+            assertEquals(new Bytes(mapped.doFinal()), bytes, "Wrong mapped MAC, encoded=" + encoded);
+        }
+    }
+
+    @Test
+    public void testECDSA()
+    throws Exception {
+        final JWSAlgorithm[] algorithms = { JWSAlgorithm.ES256, JWSAlgorithm.ES384, JWSAlgorithm.ES512 };
+        final String[] curves = { "secp256r1", "secp384r1", "secp521r1" };
+        final Bytes payload = new Bytes(PAYLOAD.getBytes(US_ASCII));
+
+        for (int x = 0; x < algorithms.length; x ++) {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(curves[x]));
+            final KeyPair keyPair = generator.generateKeyPair();
+
+            for (boolean encoded: new boolean[] { true, false }) {
+                final JWSHeader.Builder builder = new JWSHeader.Builder();
+                builder.setAlgorithm(algorithms[x]);
+                builder.setPayloadEncoded(encoded);
+                final JWSHeader header = builder.build();
+
+                /* Signed by our engine, in the JOSE R||S format */
+                final JWSSignature unsigned = new JWSSignature.Builder().setHeader(header).build();
+                final JWS jws = new JWS.Builder().setPayload(payload).addSignature(unsigned).build();
+                final Bytes bytes = JWSEngine.getInstance(algorithms[x])
+                        .sign(keyPair.getPrivate(), serialization.signingInput(unsigned, jws));
+                final JWSSignature signature = new JWSSignature.Builder().setHeader(header).setSignature(bytes).build();
+
+                /* Verified streaming into a standard (DER) engine */
+                final Signature engine = Signature.getInstance(algorithms[x].getStandardName());
+                engine.initVerify(keyPair.getPublic());
+                signingInput.update(signature, stream(PAYLOAD), engine);
+                assertTrue(JWSSigningInput.verify(signature, engine), "Signature does not verify for " + algorithms[x].joseName() + ", encoded=" + encoded);
+
+                engine.initVerify(keyPair.getPublic());
+                signingInput.update(signature, stream(PAYLOAD + "!"), engine);
+                assertFalse(JWSSigningInput.verify(signature, engine), "Wrong payload verifies for " + algorithms[x].joseName() + ", encoded=" + encoded);
+            }
+        }
+    }
+
+    /* ====================================================================== */
+
+    private InputStream stream(String payload) {
+        return new ByteArrayInputStream(payload.getBytes(UTF_8));
+    }
+
+    private Mac mac()
+    throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(base64.decode(KEY), "HmacSHA256"));
+        return mac;
+    }
+}
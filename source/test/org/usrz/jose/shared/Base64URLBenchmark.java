@@ -0,0 +1,55 @@
+package org.usrz.jose.shared;
+
+import static com.fasterxml.jackson.core.Base64Variants.MODIFIED_FOR_URL;
+
+import java.util.Base64;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+
+public class Base64URLBenchmark extends AbstractBenchmark {
+
+    private static final int[] SIZES = { 32, 256, 4096, 65536 };
+
+    private static int iterations(int size) {
+        return Math.max(100, 50000000 / size);
+    }
+
+    @Test
+    public void benchmarkEncode()
+    throws Exception {
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        for (int size: SIZES) {
+            final byte[] data = random(size);
+            final byte[] output = new byte[Base64URL.encodedLength(size)];
+
+            benchmark("encode " + size + " bytes (java.util.Base64)", iterations(size), () -> encoder.encode(data, output));
+            benchmark("encode " + size + " bytes (jackson)",          iterations(size), () -> MODIFIED_FOR_URL.encode(data));
+            benchmark("encode " + size + " bytes (base64url)",        iterations(size), () -> Base64URL.encode(data, 0, size, output, 0));
+            benchmark("encode " + size + " bytes (base64url string)", iterations(size), () -> Base64URL.encode(data));
+        }
+    }
+
+    @Test
+    public void benchmarkDecode()
+    throws Exception {
+        final Base64.Decoder decoder = Base64.getUrlDecoder();
+        for (int size: SIZES) {
+            final String encoded = Base64URL.encode(random(size));
+            final byte[] ascii = encoded.getBytes("US-ASCII");
+            final byte[] output = new byte[size];
+
+            benchmark("decode " + size + " bytes (java.util.Base64)", iterations(size), () -> decoder.decode(ascii, output));
+            benchmark("decode " + size + " bytes (jackson)",          iterations(size), () -> MODIFIED_FOR_URL.decode(encoded));
+            benchmark("decode " + size + " bytes (base64url)",        iterations(size), () -> Base64URL.decode(ascii, 0, ascii.length, output, 0));
+            benchmark("decode " + size + " bytes (base64url string)", iterations(size), () -> Base64URL.decode(encoded));
+        }
+    }
+
+    private static byte[] random(int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
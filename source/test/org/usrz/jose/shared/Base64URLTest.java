@@ -0,0 +1,81 @@
+package org.usrz.jose.shared;
+
+import static com.fasterxml.jackson.core.Base64Variants.MODIFIED_FOR_URL;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+import org.usrz.libs.testing.AbstractTest;
+
+public class Base64URLTest extends AbstractTest {
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(42);
+        for (int length = 0; length < 100; length ++) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            final String expected = Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+            final byte[] ascii = expected.getBytes(StandardCharsets.US_ASCII);
+
+            assertEquals(Base64URL.encodedLength(length), expected.length(), "Wrong encoded length for " + length);
+            assertEquals(Base64URL.decodedLength(expected.length()), length, "Wrong decoded length for " + length);
+
+            assertEquals(Base64URL.encode(data), expected, "Wrong string for " + length);
+            assertEquals(Base64URL.encode(data, 0, length, new StringBuilder("x")).toString(), "x" + expected, "Wrong appended string for " + length);
+
+            final byte[] encoded = new byte[ascii.length + 1];
+            assertEquals(Base64URL.encode(data, 0, length, encoded, 1), ascii.length, "Wrong bytes written for " + length);
+            assertEquals(new String(encoded, 1, ascii.length, StandardCharsets.US_ASCII), expected, "Wrong bytes for " + length);
+
+            assertEquals(Base64URL.decode(expected), data, "Wrong decoded string for " + length);
+            assertEquals(Base64URL.decode(ascii, 0, ascii.length), data, "Wrong decoded bytes for " + length);
+            assertEquals(Base64URL.decode("." + expected + ".", 1, ascii.length + 1), data, "Wrong decoded range for " + length);
+        }
+    }
+
+    @Test
+    public void testByteBuffers() {
+        final byte[] data = "the quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+        final String expected = MODIFIED_FOR_URL.encode(data);
+
+        for (boolean direct: new boolean[] { false, true }) {
+            final ByteBuffer source = allocate(data.length, direct);
+            source.put(data).flip();
+            final ByteBuffer encoded = allocate(Base64URL.encodedLength(data.length), direct);
+            Base64URL.encode(source, encoded);
+            assertFalse(source.hasRemaining(), "Source not consumed");
+            assertFalse(encoded.hasRemaining(), "Destination not filled");
+
+            final byte[] ascii = new byte[encoded.flip().remaining()];
+            encoded.duplicate().get(ascii);
+            assertEquals(new String(ascii, StandardCharsets.US_ASCII), expected, "Wrong encoding (direct=" + direct + ")");
+
+            final ByteBuffer decoded = allocate(data.length, direct);
+            Base64URL.decode(encoded, decoded);
+            assertFalse(encoded.hasRemaining(), "Source not consumed");
+
+            final byte[] result = new byte[decoded.flip().remaining()];
+            decoded.get(result);
+            assertEquals(result, data, "Wrong decoding (direct=" + direct + ")");
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        for (String invalid: new String[] { "AAA=", "AA+A", "A/AA", "AA\u0141A", "AAAA A", "AAAAA", "AB=" }) try {
+            Base64URL.decode(invalid);
+            fail("Decoded invalid \"" + invalid + "\"");
+        } catch (IllegalArgumentException exception) {
+            // All good!
+        }
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
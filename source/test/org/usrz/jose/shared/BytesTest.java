@@ -0,0 +1,76 @@
+package org.usrz.jose.shared;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.testng.annotations.Test;
+import org.usrz.libs.testing.AbstractTest;
+
+public class BytesTest extends AbstractTest {
+
+    private final byte[] data = "header.payload.signature".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void testSlices() {
+        final Bytes bytes = new Bytes(data);
+        final Bytes header = bytes.slice(0, 6);
+        final Bytes payload = bytes.slice(7, 7);
+        final Bytes signature = new Bytes(data, 15, 9);
+
+        assertEquals(header.getBytes(), "header".getBytes(StandardCharsets.US_ASCII), "Wrong header");
+        assertEquals(payload.getBytes(), "payload".getBytes(StandardCharsets.US_ASCII), "Wrong payload");
+        assertEquals(signature.getBytes(), "signature".getBytes(StandardCharsets.US_ASCII), "Wrong signature");
+        assertEquals(payload.slice(3, 4), new Bytes("load".getBytes(StandardCharsets.US_ASCII)), "Wrong slice of slice");
+
+        assertEquals(payload.length(), 7, "Wrong length");
+        assertEquals(payload.getByte(0), (byte) 'p', "Wrong byte");
+        assertSame(bytes.slice(0, data.length), bytes, "Full slice not the same");
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        final Bytes slice = new Bytes(data, 7, 7);
+        final Bytes copy = new Bytes("payload".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(slice, copy, "Slice and copy differ");
+        assertEquals(slice.hashCode(), copy.hashCode(), "Hash codes differ");
+        assertNotEquals(slice, new Bytes(data, 7, 6), "Different lengths are equal");
+    }
+
+    @Test
+    public void testConstantTimeEquals() {
+        final Bytes slice = new Bytes(data, 7, 7);
+        final byte[] payload = "xxpayloadxx".getBytes(StandardCharsets.US_ASCII);
+
+        assertTrue(slice.constantTimeEquals(payload, 2, 7), "Equal ranges differ");
+        assertFalse(slice.constantTimeEquals(payload, 1, 7), "Different ranges are equal");
+        assertFalse(slice.constantTimeEquals(payload, 2, 6), "Different lengths are equal");
+    }
+
+    @Test
+    public void testNoCopyAccessors()
+    throws Exception {
+        final Bytes payload = new Bytes(data, 7, 7);
+
+        final ByteBuffer buffer = payload.asByteBuffer();
+        assertTrue(buffer.isReadOnly(), "Buffer is not read only");
+        assertEquals(buffer.position(), 0, "Wrong position");
+        assertEquals(buffer.remaining(), 7, "Wrong remaining");
+        assertEquals(buffer.get(0), (byte) 'p', "Wrong buffer contents");
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        payload.writeTo(output);
+        assertEquals(output.toByteArray(), payload.getBytes(), "Wrong written bytes");
+
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        payload.update(digest);
+        assertEquals(digest.digest(), MessageDigest.getInstance("SHA-256").digest(payload.getBytes()), "Wrong digest");
+    }
+
+    @Test(expectedExceptions=IndexOutOfBoundsException.class)
+    public void testInvalidSlice() {
+        new Bytes(data).slice(20, 5);
+    }
+}
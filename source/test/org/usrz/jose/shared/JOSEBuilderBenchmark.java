@@ -0,0 +1,74 @@
+package org.usrz.jose.shared;
+
+import java.math.BigInteger;
+
+import org.testng.annotations.Test;
+import org.usrz.jose.AbstractBenchmark;
+import org.usrz.jose.jwk.JWKSet;
+import org.usrz.jose.jwk.rsa.RSAPrivateJWK;
+import org.usrz.jose.jws.JWSAlgorithm;
+import org.usrz.jose.jws.JWSHeader;
+import org.usrz.jose.shared.JOSEBuilder.Maker;
+
+public class JOSEBuilderBenchmark extends AbstractBenchmark {
+
+    private static final int ITERATIONS = 1000000;
+
+    @Test
+    public void benchmarkJWSHeaderBuilder()
+    throws Exception {
+        final JWSHeader.Builder builder = new JWSHeader.Builder();
+        builder.setAlgorithm(JWSAlgorithm.RS256);
+        builder.setKeyId("the quick brown fox");
+        builder.addCriticalExtension("exp");
+        builder.addAdditionalHeader("exp", 1363284000);
+
+        final Class<? extends JWSHeader> type = builder.build().getClass();
+        benchmark(JWSHeader.Builder.class, type, builder);
+    }
+
+    @Test
+    public void benchmarkRSAPrivateJWKBuilder()
+    throws Exception {
+        final RSAPrivateJWK.Builder builder = new RSAPrivateJWK.Builder();
+        builder.setKeyId("2011-04-29");
+        builder.setModulus(BigInteger.valueOf(3233));
+        builder.setPublicExponent(BigInteger.valueOf(17));
+        builder.setPrivateExponent(Secret.valueOf(BigInteger.valueOf(413)));
+        builder.setPrimeP(Secret.valueOf(BigInteger.valueOf(61)));
+        builder.setPrimeQ(Secret.valueOf(BigInteger.valueOf(53)));
+        builder.setPrimeExponentP(Secret.valueOf(BigInteger.valueOf(53)));
+        builder.setPrimeExponentQ(Secret.valueOf(BigInteger.valueOf(49)));
+        builder.setCrtCoefficient(Secret.valueOf(BigInteger.valueOf(38)));
+
+        final Class<? extends RSAPrivateJWK> type = builder.build().getClass();
+        benchmark(RSAPrivateJWK.Builder.class, type, builder);
+    }
+
+    @Test
+    public void benchmarkJWKSetBuilder()
+    throws Exception {
+        final JWKSet.Builder builder = new JWKSet.Builder()
+                .addKey(new RSAPrivateJWK.Builder().build());
+
+        final Class<? extends JWKSet> type = builder.build().getClass();
+        benchmark(JWKSet.Builder.class, type, builder);
+    }
+
+    /* ====================================================================== */
+
+    private <T> void benchmark(Class<? extends JOSEBuilder<T>> builderType,
+                               Class<? extends T> type,
+                               JOSEBuilder<T> builder)
+    throws Exception {
+        final Maker<T> handles = JOSEBuilder.maker(builderType, type, false);
+        final Maker<T> reflection = JOSEBuilder.maker(builderType, type, true);
+
+        assertEquals(handles.build(builder), reflection.build(builder), "Different results");
+
+        final String name = builderType.getName().substring(builderType.getPackage().getName().length() + 1);
+        final double handlesOps = benchmark(name + " (method handles)", ITERATIONS, () -> handles.build(builder));
+        final double reflectionOps = benchmark(name + " (reflection)", ITERATIONS, () -> reflection.build(builder));
+        System.err.printf("BENCHMARK %-50s %15.2fx%n", name + " (speedup)", handlesOps / reflectionOps);
+    }
+}
@@ -0,0 +1,188 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.jose.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+import org.usrz.libs.testing.AbstractTest;
+
+public class KeyedPoolTest extends AbstractTest {
+
+    @Test
+    public void testReuse()
+    throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        final KeyedPool<Object, String> pool = new KeyedPool<>((key) -> "object-" + created.incrementAndGet(), 4, 2);
+
+        final Object key1 = new Object();
+        final Object key2 = new Object();
+
+        final KeyedPool.Entry<Object, String> entry1 = pool.acquire(key1);
+        assertSame(entry1.getKey(), key1, "Wrong key");
+        pool.release(entry1);
+
+        assertSame(pool.acquire(key1), entry1, "Entry not reused");
+        assertEquals(created.get(), 1, "Wrong number of objects created");
+
+        /* Not released, and a different key: always new */
+        assertNotSame(pool.acquire(key1), entry1, "Entry acquired twice");
+        assertNotSame(pool.acquire(key2).get(), entry1.get(), "Entry shared across keys");
+        assertEquals(created.get(), 3, "Wrong number of objects created");
+        assertEquals(pool.capacity(), 8, "Wrong capacity");
+    }
+
+    @Test
+    public void testIdentity()
+    throws Exception {
+        final KeyedPool<String, Object> pool = new KeyedPool<>((key) -> new Object());
+        final String key1 = new String("key");
+        final String key2 = new String("key");
+
+        final KeyedPool.Entry<String, Object> entry = pool.acquire(key1);
+        pool.release(entry);
+        assertNotSame(pool.acquire(key2), entry, "Entry reused for equal key");
+        assertSame(pool.acquire(key1), entry, "Entry not reused for same key");
+    }
+
+    @Test
+    public void testEvict()
+    throws Exception {
+        final KeyedPool<Object, Object> pool = new KeyedPool<>((key) -> new Object(), 1, 4);
+        final KeyedPool<Object, Object> other = new KeyedPool<>((key) -> new Object(), 1, 4);
+        final Object key1 = new Object();
+        final Object key2 = new Object();
+
+        final KeyedPool.Entry<Object, Object> entry1 = pool.acquire(key1);
+        final KeyedPool.Entry<Object, Object> entry2 = pool.acquire(key2);
+        final KeyedPool.Entry<Object, Object> entry3 = other.acquire(key1);
+        pool.release(entry1);
+        pool.release(entry2);
+        other.release(entry3);
+
+        pool.evict(key1);
+        assertNotSame(pool.acquire(key1), entry1, "Evicted entry reused");
+        assertSame(pool.acquire(key2), entry2, "Other key evicted");
+        pool.release(entry2);
+
+        /* In use when evicted, discarded when released */
+        final KeyedPool.Entry<Object, Object> entry4 = pool.acquire(key1);
+        KeyedPool.evictAll(key1);
+        pool.release(entry4);
+        assertNotSame(pool.acquire(key1), entry4, "Entry in use when evicted reused");
+        assertNotSame(other.acquire(key1), entry3, "Evicted entry reused in other pool");
+        assertSame(pool.acquire(key2), entry2, "Other key evicted");
+    }
+
+    @Test
+    public void testConcurrentEvict()
+    throws Exception {
+        final KeyedPool<Object, Object> pool = new KeyedPool<>((key) -> new Object(), 1, 4);
+        final int iterations = 100000;
+        final List<KeyedPool.Entry<Object, Object>> entries = new ArrayList<>();
+        for (int x = 0; x < iterations; x ++) entries.add(pool.acquire(new Object()));
+
+        /* Spinning (not parking) on each step, so that both race for real */
+        final AtomicInteger released = new AtomicInteger();
+        final AtomicInteger evicted = new AtomicInteger();
+        final AtomicInteger reused = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> releaser = executor.submit(() -> {
+                for (int x = 0; x < iterations; x ++) {
+                    while (evicted.get() < x) Thread.yield();
+                    pool.release(entries.get(x));
+                    released.incrementAndGet();
+                }
+            });
+            final Future<?> evicter = executor.submit(() -> {
+                for (int x = 0; x < iterations; x ++) {
+                    final KeyedPool.Entry<Object, Object> entry = entries.get(x);
+                    while (released.get() < x) Thread.yield();
+                    KeyedPool.evictAll(entry.getKey());
+
+                    /* Released and evicted at the same time, never pooled again */
+                    while (released.get() <= x) Thread.yield();
+                    if (pool.acquire(entry.getKey()) == entry) reused.incrementAndGet();
+                    evicted.incrementAndGet();
+                }
+                return null;
+            });
+            releaser.get();
+            evicter.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(reused.get(), 0, "Entries released while evicted reused");
+    }
+
+    @Test
+    public void testBounded()
+    throws Exception {
+        final KeyedPool<Object, Object> pool = new KeyedPool<>((key) -> new Object(), 1, 2);
+        final Object key = new Object();
+
+        final List<KeyedPool.Entry<Object, Object>> entries = new ArrayList<>();
+        for (int x = 0; x < 10; x ++) entries.add(pool.acquire(key));
+        entries.forEach(pool::release);
+
+        /* A full stripe keeps at most two entries, later releases win */
+        int reused = 0;
+        for (int x = 0; x < 10; x ++) if (entries.contains(pool.acquire(key))) reused ++;
+        assertTrue(reused <= 2, "Too many entries kept: " + reused);
+        assertTrue(reused >= 1, "No entries kept");
+    }
+
+    @Test
+    public void testConcurrent()
+    throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        final KeyedPool<Object, AtomicInteger> pool = new KeyedPool<>((key) -> {
+            created.incrementAndGet();
+            return new AtomicInteger();
+        });
+        final Object[] keys = { new Object(), new Object(), new Object() };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int x = 0; x < 8; x ++) futures.add(executor.submit(() -> {
+                for (int y = 0; y < 10000; y ++) {
+                    final Object key = keys[y % keys.length];
+                    final KeyedPool.Entry<Object, AtomicInteger> entry = pool.acquire(key);
+                    assertSame(entry.getKey(), key, "Wrong key");
+                    /* Never in use by two threads at once */
+                    assertEquals(entry.get().incrementAndGet(), 1, "Entry shared");
+                    entry.get().decrementAndGet();
+                    pool.release(entry);
+                }
+                return null;
+            }));
+            for (Future<?> future: futures) future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(created.get() < 8 * 10000, "Nothing was reused");
+    }
+}
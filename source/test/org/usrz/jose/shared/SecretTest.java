@@ -0,0 +1,79 @@
+package org.usrz.jose.shared;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+import org.usrz.libs.testing.AbstractTest;
+
+public class SecretTest extends AbstractTest {
+
+    private final byte[] data = "a very secret key".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void testAccessors()
+    throws Exception {
+        final Secret secret = new Secret(data);
+
+        assertEquals(secret.length(), data.length, "Wrong length");
+        assertEquals(secret.getBytes(), data, "Wrong bytes");
+        assertEquals(secret.toBigInteger(), new BigInteger(1, data), "Wrong big integer");
+        assertEquals(secret.toSecretKey("HmacSHA256").getEncoded(), data, "Wrong secret key");
+        assertEquals(secret, new Secret(data), "Secrets differ");
+        assertEquals(secret.hashCode(), new Secret(data).hashCode(), "Hash codes differ");
+        assertFalse(secret.toString().contains("secret"), "Secret leaked in toString()");
+
+        final byte[] copy = new byte[data.length + 2];
+        secret.copyTo(copy, 1);
+        assertEquals(copy[0], (byte) 0, "Wrong leading byte");
+        assertEquals(copy[1], data[0], "Wrong first byte");
+        assertEquals(copy[data.length], data[data.length - 1], "Wrong last byte");
+
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        secret.update(digest);
+        assertEquals(digest.digest(), MessageDigest.getInstance("SHA-256").digest(data), "Wrong digest");
+
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(data, "HmacSHA256"));
+        final byte[] expected = mac.doFinal(data);
+        secret.update(mac);
+        assertEquals(mac.doFinal(), expected, "Wrong MAC");
+    }
+
+    @Test
+    public void testBigInteger() {
+        final BigInteger value = new BigInteger("ff00", 16);
+        final Secret secret = Secret.valueOf(value);
+
+        assertEquals(secret.length(), 2, "Sign byte not stripped");
+        assertEquals(secret.toBigInteger(), value, "Wrong big integer");
+        assertEquals(Secret.valueOf(BigInteger.ZERO).length(), 1, "Wrong zero length");
+    }
+
+    @Test
+    public void testDestroy() {
+        final Secret secret = new Secret(data);
+        final Secret other = new Secret(data);
+
+        assertFalse(secret.isDestroyed(), "Secret destroyed");
+        assertFalse(Secret.isDestroyed(secret, null, other), "Secrets destroyed");
+        Secret.destroy(secret, null);
+
+        assertTrue(secret.isDestroyed(), "Secret not destroyed");
+        assertFalse(Secret.isDestroyed(secret, other), "All secrets destroyed");
+        assertNotEquals(secret, other, "Destroyed secret equals");
+        assertEquals(secret.length(), data.length, "Wrong length");
+        assertEquals(other.getBytes(), data, "Original bytes changed");
+    }
+
+    @Test(expectedExceptions=IllegalStateException.class)
+    public void testDestroyedAccess() {
+        final Secret secret = new Secret(data);
+        secret.destroy();
+        secret.getBytes();
+    }
+}